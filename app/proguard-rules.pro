@@ -18,4 +18,17 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+
+# ObjectTypes are read through reflection by the CloudDB SDK and by ObjectTypeMeta
+-keep class * extends com.huawei.agconnect.cloud.database.CloudDBZoneObject {
+    <init>();
+    <fields>;
+    <methods>;
+}
+
+# Generated accessors are looked up by name, Class.forName(objectType + "Accessor").INSTANCE,
+# see ObjectAccessors.findGenerated
+-keep class * implements com.huawei.agc.clouddb.java.util.ObjectAccessor {
+    public static ** INSTANCE;
+}
@@ -2,13 +2,18 @@ package com.huawei.agc.clouddb.java.ui;
 
 import android.app.Application;
 
-import com.huawei.agconnect.cloud.database.AGConnectCloudDB;
+import com.huawei.agc.clouddb.java.util.CloudDB;
+import com.huawei.agc.clouddb.java.util.StartupTimeline;
 
 public class CloudDBQuickStartApplication extends Application {
 
     @Override
     public void onCreate() {
         super.onCreate();
-        AGConnectCloudDB.initialize(this);
+        CloudDB cloudDB = CloudDB.getInstance();
+        StartupTimeline.Phase phase = cloudDB.getStartupTimeline().begin("Application.onCreate");
+        //AGConnectCloudDB.initialize and the local state are loaded in the background, see CloudDB.init
+        cloudDB.init(this);
+        phase.end();
     }
 }
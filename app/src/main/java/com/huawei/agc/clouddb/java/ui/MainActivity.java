@@ -21,7 +21,9 @@ import android.widget.Toast;
 
 import com.huawei.agc.clouddb.java.R;
 import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.BookDiff;
 import com.huawei.agc.clouddb.java.util.CloudDB;
+import com.huawei.agc.clouddb.java.util.StartupTimeline;
 import com.huawei.agc.clouddb.java.view.ItemAdapter;
 import com.huawei.agconnect.auth.AGConnectAuth;
 import com.huawei.agconnect.auth.AGConnectAuthCredential;
@@ -60,9 +62,20 @@ public class MainActivity extends AppCompatActivity implements CloudDB.UiCallBac
 
     //db
     private CloudDB cloudDB = CloudDB.getInstance();
+    private boolean zoneAcquired = false;
+
+    //startup
+    private StartupTimeline.Phase signInPhase;
+    private final RecyclerView.AdapterDataObserver firstContentObserver = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onFirstContent();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTimeline.Phase phase = cloudDB.getStartupTimeline().begin("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
@@ -75,9 +88,9 @@ public class MainActivity extends AppCompatActivity implements CloudDB.UiCallBac
 
         //Refresh data from CloudDB by "swipeRefreshLayout"
         swipeRefreshLayout.setOnRefreshListener(() -> {
-            swipeRefreshLayout.setRefreshing(false);
-            cloudDB.getAll();
+            cloudDB.getAll(books -> swipeRefreshLayout.setRefreshing(false));
         });
+        phase.end();
     }
 
     /**
@@ -88,9 +101,12 @@ public class MainActivity extends AppCompatActivity implements CloudDB.UiCallBac
      * 4. Create Object Type. (Can be imported from the console [ObjectTypeInfoHelper])
      *    You must implement zone/dataType on the console and download java files.
      *
-     * 5. Open CloudDB Zone. (This will be closed [onDestroy])
+     * 5. Open CloudDB Zone once in the background after the sign-in, opening it subscribes to changes
+     *    and replays the outbox, which needs a signed in user. (This will be released [onDestroy])
      *
-     * 6. Fetch all data from the CloudDB and push it to the recyclerView.
+     * 6. Push books of the local cache to the recyclerView and reconcile them with the CloudDB,
+     *    or on the first start fetch the first page of data from the CloudDB,
+     *    next pages are fetched while scrolling.
      */
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
@@ -98,6 +114,9 @@ public class MainActivity extends AppCompatActivity implements CloudDB.UiCallBac
 
         //Obtain accessToken in order to logIn and logIn
         if (requestCode == HUAWEI_ID_SIGN_IN) {
+            if (signInPhase != null) {
+                signInPhase.end();
+            }
             Task<AuthHuaweiId> authHuaweiIdTask = HuaweiIdAuthManager.parseAuthResultFromIntent(data);
             if (authHuaweiIdTask.isSuccessful()) {
                 AuthHuaweiId huaweiAccount = authHuaweiIdTask.getResult();
@@ -110,12 +129,25 @@ public class MainActivity extends AppCompatActivity implements CloudDB.UiCallBac
                         .show();
 
                     cloudDB.addCallBacks(this);
-                    // Get AGConnectCloudDB ObjectTypeInfo
-                    cloudDB.createObjectType();
-                    //Create the Cloud DB zone, And open CloudDB
-                    cloudDB.openCloudDBZone();
-                    //fetchDataFromDb()
-                    cloudDB.getAll();
+                    //Create the object type and open the Cloud DB zone off the main thread,
+                    //queries wait for it
+                    if (!zoneAcquired) {
+                        cloudDB.acquireZone();
+                        zoneAcquired = true;
+                    } else {
+                        //signed in again, the subscription and the replay failed meanwhile
+                        cloudDB.onSignedIn();
+                    }
+                    setItems(new ArrayList<>());
+                    cloudDB.hasLocalData(hasLocalData -> {
+                        if (hasLocalData) {
+                            //Show books of the local cache right away, the cloud result is reconciled later
+                            cloudDB.getAll();
+                        } else {
+                            //Show the first page of data right away, the rest is loaded while scrolling
+                            itemAdapter.loadFirstPage();
+                        }
+                    });
                 }).addOnFailureListener(e -> {
                     Log.e(MAIN_ACTIVITY_TAG, "onFailure: " + e.getMessage());
                     Toast.makeText(this, "Failed", Toast.LENGTH_LONG).show();
@@ -175,8 +207,8 @@ public class MainActivity extends AppCompatActivity implements CloudDB.UiCallBac
         saveButton.setText(R.string.save);
 
         saveButton.setOnClickListener( v -> {
+            //the id is allocated by insertBook
             Book item = new Book();
-            item.setId(cloudDB.getBookIndex() + 1);
             item.setBookName(title.getText().toString().trim());
             item.setDescription(description.getText().toString().trim());
 
@@ -209,6 +241,9 @@ public class MainActivity extends AppCompatActivity implements CloudDB.UiCallBac
         huaweiIdAuthParamsHelper.setScopeList(scopeList);
         HuaweiIdAuthParams authParams = huaweiIdAuthParamsHelper.setAccessToken().createParams();
         HuaweiIdAuthService service = HuaweiIdAuthManager.getService(this, authParams);
+        if (signInPhase == null) {
+            signInPhase = cloudDB.getStartupTimeline().begin("signIn");
+        }
         startActivityForResult(service.getSignInIntent(), HUAWEI_ID_SIGN_IN);
 
         logInMenuItem.setVisible(false);
@@ -216,33 +251,77 @@ public class MainActivity extends AppCompatActivity implements CloudDB.UiCallBac
     }
 
     /**
-     * Close the CloudDBZone
+     * Release the CloudDBZone, it is closed when no one else uses it
      */
     @Override
     public void onDestroy() {
         super.onDestroy();
-        cloudDB.closeCloudDBZone();
+        if (zoneAcquired) {
+            cloudDB.releaseZone();
+            zoneAcquired = false;
+        }
     }
 
     /**
-     * Call back to add an item
+     * Drop pages loaded ahead of the list when the system is low on memory
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (itemAdapter != null) {
+            itemAdapter.onTrimMemory(level);
+        }
+    }
+
+    /**
+     * Call back with the whole list of books, only changed rows are updated
      */
     @Override
     public void onStart(List<Book> books) {
-        items = books;
+        if (itemAdapter == null) {
+            setItems(books);
+            return;
+        }
+        itemAdapter.submitList(books);
+    }
+
+    private void setItems(List<Book> books) {
+        items = new ArrayList<>(books);
         itemAdapter = new ItemAdapter(this, (ArrayList<Book>) items);
+        itemAdapter.registerAdapterDataObserver(firstContentObserver);
         itemList.setAdapter(itemAdapter);
-        itemAdapter.notifyDataSetChanged();
+        if (!books.isEmpty()) {
+            onFirstContent();
+        }
+    }
+
+    /**
+     * Report the end of the cold start once books are shown: "Fully drawn" in the system log
+     * and the startup timeline of CloudDB
+     */
+    private void onFirstContent() {
+        StartupTimeline timeline = cloudDB.getStartupTimeline();
+        if (timeline.mark("firstContent")) {
+            reportFullyDrawn();
+            timeline.report();
+        }
     }
 
 
     @Override
     public void onAddItem(Book book) {
-        if (items != null) {
-            if (!items.contains(book)) {
-                items.add(book);
-            }
+        if (itemAdapter != null) {
+            itemAdapter.upsertItem(book);
+        }
+    }
+
+    /**
+     * Call back with remote changes of books
+     */
+    @Override
+    public void onChanged(BookDiff diff) {
+        if (itemAdapter != null) {
+            itemAdapter.applyDiff(diff);
         }
-        itemAdapter.notifyDataSetChanged();
     }
 }
\ No newline at end of file
@@ -0,0 +1,307 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * In-memory cache of books keyed by primitive id.
+ * Lookups by id are O(1) through a hash table with int keys, iteration ordered by id or by bookName
+ * (the "bookName" index of the ObjectType) is served by tree indexes in O(log n) per step.
+ * The memory used by cached books is estimated, and least recently used books are evicted
+ * when the memory bound is exceeded.
+ */
+public class BookCache {
+
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int ENTRY_OVERHEAD_BYTES = 128;  // Node, Book, boxed id and two String headers
+
+    private static final Comparator<Node> BY_ID = (first, second) -> Integer.compare(first.id, second.id);
+    private static final Comparator<Node> BY_NAME = (first, second) -> {
+        int compare = compareNames(first.bookName, second.bookName);
+        return compare != 0 ? compare : Integer.compare(first.id, second.id);
+    };
+
+    private Node[] table = new Node[INITIAL_CAPACITY];
+    private int size = 0;
+
+    //LRU list, head.after is the least recently used node
+    private final Node head = new Node(0, null);
+
+    private final TreeSet<Node> idIndex = new TreeSet<>(BY_ID);
+    private final TreeSet<Node> nameIndex = new TreeSet<>(BY_NAME);
+
+    private long maxBytes;
+    private long bytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    public BookCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        head.before = head;
+        head.after = head;
+    }
+
+    /**
+     * Get a book and mark it as recently used
+     *
+     * @param id book id
+     * @return cached book or null
+     */
+    public synchronized Book get(int id) {
+        Node node = find(id);
+        if (node == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        unlink(node);
+        linkLast(node);
+        return node.book;
+    }
+
+    /**
+     * Get a book without touching statistics and LRU order
+     *
+     * @param id book id
+     * @return cached book or null
+     */
+    public synchronized Book peek(int id) {
+        Node node = find(id);
+        return node == null ? null : node.book;
+    }
+
+    public synchronized boolean contains(int id) {
+        return find(id) != null;
+    }
+
+    /**
+     * Put a book, a cached book with the same id is replaced
+     *
+     * @param book book with id
+     * @return replaced book or null
+     */
+    public synchronized Book put(Book book) {
+        int id = book.getId();
+        Node node = find(id);
+        Book previous = null;
+        if (node != null) {
+            previous = node.book;
+            nameIndex.remove(node);
+            unlink(node);
+            bytes -= node.bytes;
+        } else {
+            node = new Node(id, book);
+            int bucket = bucket(id, table.length);
+            node.next = table[bucket];
+            table[bucket] = node;
+            idIndex.add(node);
+            if (++size > table.length * 3 / 4) {
+                resize();
+            }
+        }
+        node.book = book;
+        node.bookName = book.getBookName();
+        node.bytes = estimateBytes(book);
+        bytes += node.bytes;
+        nameIndex.add(node);
+        linkLast(node);
+        trimToMaxBytes();
+        return previous;
+    }
+
+    /**
+     * Remove a book
+     *
+     * @param id book id
+     * @return removed book or null
+     */
+    public synchronized Book remove(int id) {
+        Node node = detach(id);
+        return node == null ? null : node.book;
+    }
+
+    public synchronized void clear() {
+        table = new Node[INITIAL_CAPACITY];
+        size = 0;
+        bytes = 0;
+        head.before = head;
+        head.after = head;
+        idIndex.clear();
+        nameIndex.clear();
+    }
+
+    /**
+     * Get cached books ordered by id
+     *
+     * @return new list of books
+     */
+    public synchronized List<Book> getBooksById() {
+        List<Book> books = new ArrayList<>(size);
+        for (Node node : idIndex) {
+            books.add(node.book);
+        }
+        return books;
+    }
+
+    /**
+     * Get cached books ordered by bookName, books with the same name are ordered by id
+     *
+     * @return new list of books
+     */
+    public synchronized List<Book> getBooksByName() {
+        List<Book> books = new ArrayList<>(size);
+        for (Node node : nameIndex) {
+            books.add(node.book);
+        }
+        return books;
+    }
+
+    /**
+     * Get the greatest cached id
+     *
+     * @return max id or 0 if the cache is empty
+     */
+    public synchronized int getMaxId() {
+        return idIndex.isEmpty() ? 0 : idIndex.last().id;
+    }
+
+    /**
+     * Set the memory bound, books are evicted at once if it is exceeded
+     *
+     * @param maxBytes estimated memory bound in bytes, UNBOUNDED for no limit
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToMaxBytes();
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    private Node find(int id) {
+        Node node = table[bucket(id, table.length)];
+        while (node != null && node.id != id) {
+            node = node.next;
+        }
+        return node;
+    }
+
+    private Node detach(int id) {
+        int bucket = bucket(id, table.length);
+        Node previous = null;
+        Node node = table[bucket];
+        while (node != null && node.id != id) {
+            previous = node;
+            node = node.next;
+        }
+        if (node == null) {
+            return null;
+        }
+        if (previous == null) {
+            table[bucket] = node.next;
+        } else {
+            previous.next = node.next;
+        }
+        size--;
+        bytes -= node.bytes;
+        unlink(node);
+        idIndex.remove(node);
+        nameIndex.remove(node);
+        return node;
+    }
+
+    private void trimToMaxBytes() {
+        while (bytes > maxBytes && head.after != head) {
+            detach(head.after.id);
+            evictionCount++;
+        }
+    }
+
+    private void resize() {
+        Node[] newTable = new Node[table.length * 2];
+        for (Node node : table) {
+            while (node != null) {
+                Node next = node.next;
+                int bucket = bucket(node.id, newTable.length);
+                node.next = newTable[bucket];
+                newTable[bucket] = node;
+                node = next;
+            }
+        }
+        table = newTable;
+    }
+
+    private void linkLast(Node node) {
+        node.after = head;
+        node.before = head.before;
+        head.before.after = node;
+        head.before = node;
+    }
+
+    private void unlink(Node node) {
+        node.before.after = node.after;
+        node.after.before = node.before;
+    }
+
+    private static int bucket(int id, int length) {
+        int hash = id * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (length - 1);
+    }
+
+    private static int compareNames(String first, String second) {
+        if (first == null) {
+            return second == null ? 0 : -1;
+        }
+        return second == null ? 1 : first.compareTo(second);
+    }
+
+    private static int estimateBytes(Book book) {
+        int chars = 0;
+        if (book.getBookName() != null) {
+            chars += book.getBookName().length();
+        }
+        if (book.getDescription() != null) {
+            chars += book.getDescription().length();
+        }
+        return ENTRY_OVERHEAD_BYTES + chars * 2;
+    }
+
+    private static class Node {
+        private final int id;
+        private Book book;
+        private String bookName;
+        private int bytes;
+        private Node next;
+        private Node before;
+        private Node after;
+
+        Node(int id, Book book) {
+            this.id = id;
+            this.book = book;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Columnar list of books: ids in an int[], bookName and description as [int utf8Length][utf8 bytes]
+ * in one byte slab addressed by offset arrays. A row costs 12 bytes plus its UTF-8 strings instead of
+ * a Book, a boxed Integer and two Strings, and the GC sees four arrays instead of 4 objects per row.
+ * get decodes a new Book, so only rows which are bound to a view are materialized; ids and
+ * content comparisons read the columns directly.
+ * The columns hold their own copy of the strings. CloudDB keeps its synced books as Book objects,
+ * so rows copied from them add to the heap instead of replacing it; the saving is for lists
+ * which are the only holder of their rows, and in the allocations of building and diffing them.
+ * Inserts and removes shift the columns like ArrayList does, replaced and removed strings stay
+ * in the slab until it is compacted
+ */
+public class BookColumns extends AbstractList<Book> implements RandomAccess {
+
+    private static final int NULL_OFFSET = -1;
+    private static final int INITIAL_ROWS = 16;
+    private static final int INITIAL_SLAB_BYTES = 1024;
+    private static final int MIN_COMPACT_BYTES = 64 * 1024;
+
+    private int[] ids;
+    private int[] nameOffsets;
+    private int[] descriptionOffsets;
+    private int size = 0;
+
+    private byte[] slab;
+    private int slabEnd = 0;
+    private int garbageBytes = 0;
+
+    public BookColumns() {
+        ids = new int[INITIAL_ROWS];
+        nameOffsets = new int[INITIAL_ROWS];
+        descriptionOffsets = new int[INITIAL_ROWS];
+        slab = new byte[INITIAL_SLAB_BYTES];
+    }
+
+    public BookColumns(List<Book> books) {
+        int rows = Math.max(INITIAL_ROWS, books.size());
+        ids = new int[rows];
+        nameOffsets = new int[rows];
+        descriptionOffsets = new int[rows];
+        long bytes = 0;
+        for (Book book : books) {
+            bytes += encodedLength(book.getBookName()) + encodedLength(book.getDescription());
+        }
+        slab = new byte[(int) Math.max(INITIAL_SLAB_BYTES, Math.min(bytes, Integer.MAX_VALUE - 8))];
+        for (Book book : books) {
+            add(book);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Decode the row into a new Book
+     *
+     * @param index row index
+     * @return new book
+     */
+    @Override
+    public Book get(int index) {
+        checkIndex(index);
+        Book book = new Book();
+        book.setId(ids[index]);
+        book.setBookName(readString(nameOffsets[index]));
+        book.setDescription(readString(descriptionOffsets[index]));
+        return book;
+    }
+
+    public int getId(int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    public String getBookName(int index) {
+        checkIndex(index);
+        return readString(nameOffsets[index]);
+    }
+
+    public String getDescription(int index) {
+        checkIndex(index);
+        return readString(descriptionOffsets[index]);
+    }
+
+    /**
+     * Check whether the row holds the same content as the book without decoding it
+     *
+     * @param index row index
+     * @param book  book to compare with
+     * @return true if id, bookName and description are equal
+     */
+    public boolean sameContent(int index, Book book) {
+        checkIndex(index);
+        return book.getId() != null && ids[index] == book.getId()
+                && stringEquals(nameOffsets[index], book.getBookName())
+                && stringEquals(descriptionOffsets[index], book.getDescription());
+    }
+
+    @Override
+    public Book set(int index, Book book) {
+        Book previous = get(index);
+        replaceRow(index, book);
+        return previous;
+    }
+
+    /**
+     * Like set, without decoding the replaced row
+     *
+     * @param index row index
+     * @param book  new content of the row
+     */
+    public void replaceRow(int index, Book book) {
+        checkIndex(index);
+        garbageBytes += stringBytes(nameOffsets[index]) + stringBytes(descriptionOffsets[index]);
+        ids[index] = book.getId();
+        nameOffsets[index] = writeString(book.getBookName());
+        descriptionOffsets[index] = writeString(book.getDescription());
+        compactIfWasteful();
+    }
+
+    @Override
+    public void add(int index, Book book) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        if (size == ids.length) {
+            int capacity = ids.length + (ids.length >> 1) + 1;
+            ids = Arrays.copyOf(ids, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+            descriptionOffsets = Arrays.copyOf(descriptionOffsets, capacity);
+        }
+        shift(index, index + 1, size - index);
+        ids[index] = book.getId();
+        nameOffsets[index] = writeString(book.getBookName());
+        descriptionOffsets[index] = writeString(book.getDescription());
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Book remove(int index) {
+        Book previous = get(index);
+        removeRow(index);
+        return previous;
+    }
+
+    /**
+     * Like remove, without decoding the removed row
+     *
+     * @param index row index
+     */
+    public void removeRow(int index) {
+        checkIndex(index);
+        garbageBytes += stringBytes(nameOffsets[index]) + stringBytes(descriptionOffsets[index]);
+        shift(index + 1, index, size - index - 1);
+        size--;
+        modCount++;
+        compactIfWasteful();
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        slabEnd = 0;
+        garbageBytes = 0;
+        modCount++;
+    }
+
+    /**
+     * Binary search of an id, rows must be ordered by id
+     *
+     * @param id book id
+     * @return row index, or (-(insertion point) - 1) if there is no such row
+     */
+    public int indexOfId(int id) {
+        return Arrays.binarySearch(ids, 0, size, id);
+    }
+
+    /**
+     * Compute the difference to a new list, both ordered by id, only deleted rows are decoded
+     *
+     * @param newBooks new books ordered by id
+     * @return difference which turns this list into newBooks
+     */
+    public BookDiff diffTo(List<Book> newBooks) {
+        BookDiff diff = new BookDiff();
+        int oldIndex = 0;
+        int newIndex = 0;
+        while (oldIndex < size || newIndex < newBooks.size()) {
+            if (newIndex == newBooks.size()) {
+                diff.addDeleted(get(oldIndex++));
+                continue;
+            }
+            Book newBook = newBooks.get(newIndex);
+            if (oldIndex == size || newBook.getId() < ids[oldIndex]) {
+                diff.addInserted(newBook);
+                newIndex++;
+            } else if (newBook.getId() > ids[oldIndex]) {
+                diff.addDeleted(get(oldIndex++));
+            } else {
+                if (!sameContent(oldIndex, newBook)) {
+                    diff.addUpdated(newBook);
+                }
+                oldIndex++;
+                newIndex++;
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Estimate memory held by the columns and the slab
+     *
+     * @return bytes
+     */
+    public long estimateBytes() {
+        return 3L * 4 * ids.length + slab.length;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    private void shift(int from, int to, int count) {
+        System.arraycopy(ids, from, ids, to, count);
+        System.arraycopy(nameOffsets, from, nameOffsets, to, count);
+        System.arraycopy(descriptionOffsets, from, descriptionOffsets, to, count);
+    }
+
+    private static int encodedLength(String value) {
+        return value == null ? 0 : 4 + ObjectAccessors.utf8Length(value);
+    }
+
+    private int stringBytes(int offset) {
+        return stringBytes(offset, slab);
+    }
+
+    private int writeString(String value) {
+        if (value == null) {
+            return NULL_OFFSET;
+        }
+        int length = encodedLength(value);
+        if (slab.length - slabEnd < length) {
+            long capacity = Math.max((long) slab.length + (slab.length >> 1), (long) slabEnd + length);
+            slab = Arrays.copyOf(slab, (int) Math.min(capacity, Integer.MAX_VALUE - 8));
+        }
+        int offset = slabEnd;
+        ByteBuffer buffer = ByteBuffer.wrap(slab, offset, length);
+        ObjectAccessors.putString(buffer, value);
+        slabEnd += length;
+        return offset;
+    }
+
+    private static int readLength(byte[] slab, int offset) {
+        return (slab[offset] & 0xFF) << 24 | (slab[offset + 1] & 0xFF) << 16
+                | (slab[offset + 2] & 0xFF) << 8 | (slab[offset + 3] & 0xFF);
+    }
+
+    private String readString(int offset) {
+        if (offset == NULL_OFFSET) {
+            return null;
+        }
+        return new String(slab, offset + 4, readLength(slab, offset), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compare a stored string with a string by its UTF-8 bytes, without decoding
+     */
+    private boolean stringEquals(int offset, String value) {
+        if (offset == NULL_OFFSET || value == null) {
+            return offset == NULL_OFFSET && value == null;
+        }
+        int length = readLength(slab, offset);
+        //every char takes at least one UTF-8 byte
+        if (length < value.length()) {
+            return false;
+        }
+        int position = offset + 4;
+        int end = position + length;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (position == end) {
+                return false;
+            }
+            if (c < 0x80) {
+                if (slab[position++] != (byte) c) {
+                    return false;
+                }
+            } else {
+                //rare in titles, compare the code point decoded from the slab
+                int codePoint = Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))
+                        ? Character.toCodePoint(c, value.charAt(++i))
+                        : Character.isSurrogate(c) ? '?' : c;
+                int first = slab[position] & 0xFF;
+                int bytes = first < 0x80 ? 1 : first < 0xE0 ? 2 : first < 0xF0 ? 3 : 4;
+                if (end - position < bytes) {
+                    return false;
+                }
+                int decoded = bytes == 1 ? first
+                        : bytes == 2 ? first & 0x1F
+                        : bytes == 3 ? first & 0x0F : first & 0x07;
+                for (int j = 1; j < bytes; j++) {
+                    decoded = decoded << 6 | (slab[position + j] & 0x3F);
+                }
+                if (decoded != codePoint) {
+                    return false;
+                }
+                position += bytes;
+            }
+        }
+        return position == end;
+    }
+
+    private void compactIfWasteful() {
+        if (garbageBytes < MIN_COMPACT_BYTES || garbageBytes < slabEnd / 2) {
+            return;
+        }
+        byte[] compacted = new byte[Math.max(INITIAL_SLAB_BYTES, slabEnd - garbageBytes)];
+        int end = 0;
+        for (int i = 0; i < size; i++) {
+            nameOffsets[i] = copyString(nameOffsets[i], compacted, end);
+            end += stringBytes(nameOffsets[i], compacted);
+            descriptionOffsets[i] = copyString(descriptionOffsets[i], compacted, end);
+            end += stringBytes(descriptionOffsets[i], compacted);
+        }
+        slab = compacted;
+        slabEnd = end;
+        garbageBytes = 0;
+    }
+
+    private int copyString(int offset, byte[] target, int targetOffset) {
+        if (offset == NULL_OFFSET) {
+            return NULL_OFFSET;
+        }
+        System.arraycopy(slab, offset, target, targetOffset, stringBytes(offset));
+        return targetOffset;
+    }
+
+    private static int stringBytes(int offset, byte[] slab) {
+        return offset == NULL_OFFSET ? 0 : 4 + readLength(slab, offset);
+    }
+}
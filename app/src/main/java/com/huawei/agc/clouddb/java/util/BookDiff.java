@@ -0,0 +1,109 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Difference between two states of the book list keyed by primary key (id).
+ * Every list is ordered by id
+ */
+public class BookDiff {
+
+    public static final Comparator<Book> BY_ID = (first, second) -> Integer.compare(first.getId(), second.getId());
+
+    private final List<Book> inserted = new ArrayList<>();
+    private final List<Book> updated = new ArrayList<>();
+    private final List<Book> deleted = new ArrayList<>();
+
+    /**
+     * Compute the difference between two book lists, both ordered by id
+     *
+     * @param oldBooks current books
+     * @param newBooks new books
+     * @return difference which turns oldBooks into newBooks
+     */
+    public static BookDiff between(List<Book> oldBooks, List<Book> newBooks) {
+        BookDiff diff = new BookDiff();
+        int oldIndex = 0;
+        int newIndex = 0;
+        while (oldIndex < oldBooks.size() || newIndex < newBooks.size()) {
+            if (newIndex == newBooks.size()) {
+                diff.deleted.add(oldBooks.get(oldIndex++));
+                continue;
+            }
+            if (oldIndex == oldBooks.size()) {
+                diff.inserted.add(newBooks.get(newIndex++));
+                continue;
+            }
+            Book oldBook = oldBooks.get(oldIndex);
+            Book newBook = newBooks.get(newIndex);
+            int compare = BY_ID.compare(oldBook, newBook);
+            if (compare < 0) {
+                diff.deleted.add(oldBook);
+                oldIndex++;
+            } else if (compare > 0) {
+                diff.inserted.add(newBook);
+                newIndex++;
+            } else {
+                if (!sameContent(oldBook, newBook)) {
+                    diff.updated.add(newBook);
+                }
+                oldIndex++;
+                newIndex++;
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Check whether two versions of a book have the same fields
+     *
+     * @param first  first version
+     * @param second second version
+     * @return true if all fields are equal
+     */
+    public static boolean sameContent(Book first, Book second) {
+        return Objects.equals(first.getId(), second.getId())
+                && Objects.equals(first.getBookName(), second.getBookName())
+                && Objects.equals(first.getDescription(), second.getDescription());
+    }
+
+    void addInserted(Book book) {
+        inserted.add(book);
+    }
+
+    void addUpdated(Book book) {
+        updated.add(book);
+    }
+
+    void addDeleted(Book book) {
+        deleted.add(book);
+    }
+
+    void sort() {
+        Collections.sort(inserted, BY_ID);
+        Collections.sort(updated, BY_ID);
+        Collections.sort(deleted, BY_ID);
+    }
+
+    public List<Book> getInserted() {
+        return inserted;
+    }
+
+    public List<Book> getUpdated() {
+        return updated;
+    }
+
+    public List<Book> getDeleted() {
+        return deleted;
+    }
+
+    public boolean isEmpty() {
+        return inserted.isEmpty() && updated.isEmpty() && deleted.isEmpty();
+    }
+}
@@ -0,0 +1,536 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File formats of book import and export. Records are streamed through a fixed buffer,
+ * so memory doesn't depend on the file size.
+ * CSV: header "id,bookName,description", RFC 4180 quoting, an empty field is null and "" is empty.
+ * NDJSON: one {"id":1,"bookName":"...","description":"..."} object per line.
+ * BINARY: header [int magic], then records [int size][ObjectCodec of Book]
+ */
+public enum BookFormat {
+    CSV {
+        @Override
+        public RecordReader newReader(ReadableByteChannel channel) {
+            return new CsvReader(newTextReader(channel));
+        }
+
+        @Override
+        public RecordWriter newWriter(WritableByteChannel channel) throws IOException {
+            return new CsvWriter(newTextWriter(channel));
+        }
+    },
+    NDJSON {
+        @Override
+        public RecordReader newReader(ReadableByteChannel channel) {
+            return new JsonReader(newTextReader(channel));
+        }
+
+        @Override
+        public RecordWriter newWriter(WritableByteChannel channel) {
+            return new JsonWriter(newTextWriter(channel));
+        }
+    },
+    BINARY {
+        @Override
+        public RecordReader newReader(ReadableByteChannel channel) throws IOException {
+            return new BinaryReader(channel, requireCodec());
+        }
+
+        @Override
+        public RecordWriter newWriter(WritableByteChannel channel) throws IOException {
+            return new BinaryWriter(channel, requireCodec());
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BINARY_MAGIC = 0x424B4231;  // "BKB1"
+    private static final String CSV_HEADER = "id,bookName,description";
+
+    public abstract RecordReader newReader(ReadableByteChannel channel) throws IOException;
+
+    public abstract RecordWriter newWriter(WritableByteChannel channel) throws IOException;
+
+    /**
+     * Streams books out of a file
+     */
+    public interface RecordReader {
+        /**
+         * Read the next book
+         *
+         * @return book, null at the end of the file
+         * @throws IOException if the file can't be read or is malformed
+         */
+        Book read() throws IOException;
+    }
+
+    /**
+     * Streams books into a file, flush must be called after the last book
+     */
+    public interface RecordWriter {
+        void write(Book book) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    private static BufferedReader newTextReader(ReadableByteChannel channel) {
+        return new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE),
+                BUFFER_SIZE);
+    }
+
+    private static BufferedWriter newTextWriter(WritableByteChannel channel) {
+        return new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE),
+                BUFFER_SIZE);
+    }
+
+    private static ObjectCodec<Book> requireCodec() throws IOException {
+        ObjectCodec<Book> codec = ObjectAccessors.codecOf(Book.class);
+        if (codec == null) {
+            throw new IOException("Binary codec of Book is not generated");
+        }
+        return codec;
+    }
+
+    private static Book newBook(Integer id, String bookName, String description) throws IOException {
+        if (id == null) {
+            throw new IOException("Book without id");
+        }
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName(bookName);
+        book.setDescription(description);
+        return book;
+    }
+
+    private static Integer parseId(String value) throws IOException {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed id: " + value);
+        }
+    }
+
+    private static class CsvReader implements RecordReader {
+        private final Reader reader;
+        private final List<String> fields = new ArrayList<>(3);
+        private final StringBuilder field = new StringBuilder();
+        private boolean headerChecked = false;
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Book read() throws IOException {
+            while (readRecord()) {
+                if (!headerChecked) {
+                    headerChecked = true;
+                    if (CSV_HEADER.equals(String.join(",", fields))) {
+                        continue;
+                    }
+                }
+                if (fields.size() == 1 && fields.get(0) == null) {
+                    //empty line
+                    continue;
+                }
+                if (fields.size() != 3) {
+                    throw new IOException("Expected 3 fields, found " + fields.size());
+                }
+                return newBook(parseId(fields.get(0)), fields.get(1), fields.get(2));
+            }
+            return null;
+        }
+
+        /**
+         * Read fields up to the next line break outside of quotes
+         *
+         * @return false at the end of the file
+         */
+        private boolean readRecord() throws IOException {
+            fields.clear();
+            field.setLength(0);
+            boolean quoted = false;
+            boolean inQuotes = false;
+            int c = reader.read();
+            if (c == -1) {
+                return false;
+            }
+            while (true) {
+                if (inQuotes) {
+                    if (c == -1) {
+                        throw new EOFException("Unterminated quoted field");
+                    }
+                    if (c == '"') {
+                        reader.mark(1);
+                        int next = reader.read();
+                        if (next == '"') {
+                            field.append('"');
+                        } else {
+                            inQuotes = false;
+                            reader.reset();
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0 && !quoted) {
+                    quoted = true;
+                    inQuotes = true;
+                } else if (c == ',' || c == '\n' || c == -1) {
+                    fields.add(quoted || field.length() > 0 ? field.toString() : null);
+                    field.setLength(0);
+                    quoted = false;
+                    if (c != ',') {
+                        return true;
+                    }
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = reader.read();
+            }
+        }
+    }
+
+    private static class CsvWriter implements RecordWriter {
+        private final Writer writer;
+
+        CsvWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        @Override
+        public void write(Book book) throws IOException {
+            writer.write(String.valueOf(book.getId()));
+            writer.write(',');
+            writeField(book.getBookName());
+            writer.write(',');
+            writeField(book.getDescription());
+            writer.write('\n');
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (!value.isEmpty() && value.indexOf(',') < 0 && value.indexOf('"') < 0
+                    && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+    }
+
+    private static class JsonReader implements RecordReader {
+        private final BufferedReader reader;
+        private final StringBuilder value = new StringBuilder();
+        private String line;
+        private int position;
+
+        JsonReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Book read() throws IOException {
+            while ((line = reader.readLine()) != null) {
+                position = 0;
+                skipSpaces();
+                if (position == line.length()) {
+                    continue;
+                }
+                return parseObject();
+            }
+            return null;
+        }
+
+        private Book parseObject() throws IOException {
+            expect('{');
+            Integer id = null;
+            String bookName = null;
+            String description = null;
+            skipSpaces();
+            if (peek() == '}') {
+                position++;
+                return newBook(null, null, null);
+            }
+            while (true) {
+                skipSpaces();
+                String key = parseString();
+                skipSpaces();
+                expect(':');
+                skipSpaces();
+                String fieldValue = peek() == '"' ? parseString() : parseLiteral();
+                if ("id".equals(key)) {
+                    id = parseId(fieldValue);
+                } else if ("bookName".equals(key)) {
+                    bookName = fieldValue;
+                } else if ("description".equals(key)) {
+                    description = fieldValue;
+                }
+                skipSpaces();
+                char c = next();
+                if (c == '}') {
+                    return newBook(id, bookName, description);
+                }
+                if (c != ',') {
+                    throw malformed();
+                }
+            }
+        }
+
+        private String parseString() throws IOException {
+            expect('"');
+            value.setLength(0);
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                c = next();
+                switch (c) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > line.length()) {
+                            throw malformed();
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(line.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw malformed();
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        value.append(c);
+                }
+            }
+        }
+
+        /**
+         * Parse a number or null, other literals are not used by books
+         */
+        private String parseLiteral() throws IOException {
+            int start = position;
+            while (position < line.length() && ",} \t".indexOf(line.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = line.substring(start, position);
+            if (literal.isEmpty()) {
+                throw malformed();
+            }
+            return "null".equals(literal) ? null : literal;
+        }
+
+        private void skipSpaces() {
+            while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() throws IOException {
+            if (position >= line.length()) {
+                throw malformed();
+            }
+            return line.charAt(position);
+        }
+
+        private char next() throws IOException {
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        private void expect(char expected) throws IOException {
+            if (next() != expected) {
+                throw malformed();
+            }
+        }
+
+        private IOException malformed() {
+            return new IOException("Malformed JSON at " + position + ": " + line);
+        }
+    }
+
+    private static class JsonWriter implements RecordWriter {
+        private final Writer writer;
+
+        JsonWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(Book book) throws IOException {
+            writer.write("{\"id\":");
+            writer.write(String.valueOf(book.getId()));
+            writer.write(",\"bookName\":");
+            writeString(book.getBookName());
+            writer.write(",\"description\":");
+            writeString(book.getDescription());
+            writer.write("}\n");
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writer.write("null");
+                return;
+            }
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    writer.write('\\');
+                    writer.write(c);
+                } else if (c < 0x20) {
+                    writer.write(String.format("\\u%04x", (int) c));
+                } else {
+                    writer.write(c);
+                }
+            }
+            writer.write('"');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+    }
+
+    private static class BinaryReader implements RecordReader {
+        private final ReadableByteChannel channel;
+        private final ObjectCodec<Book> codec;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private boolean headerChecked = false;
+
+        BinaryReader(ReadableByteChannel channel, ObjectCodec<Book> codec) {
+            this.channel = channel;
+            this.codec = codec;
+            buffer.flip();
+        }
+
+        @Override
+        public Book read() throws IOException {
+            if (!headerChecked) {
+                headerChecked = true;
+                if (!fill(4) || buffer.getInt() != BINARY_MAGIC) {
+                    throw new IOException("Not a binary book file");
+                }
+            }
+            if (!fill(4)) {
+                return null;
+            }
+            int size = buffer.getInt();
+            if (size <= 0 || !fill(size)) {
+                throw new IOException("Truncated binary record");
+            }
+            ByteBuffer record = buffer.slice();
+            record.limit(size);
+            buffer.position(buffer.position() + size);
+            return codec.decode(record);
+        }
+
+        /**
+         * Make count bytes available in the buffer
+         *
+         * @return false if the channel ended before
+         */
+        private boolean fill(int count) throws IOException {
+            if (buffer.remaining() >= count) {
+                return true;
+            }
+            if (buffer.capacity() < count) {
+                ByteBuffer larger = ByteBuffer.allocate(count);
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < count) {
+                if (channel.read(buffer) < 0) {
+                    buffer.flip();
+                    return false;
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+    }
+
+    private static class BinaryWriter implements RecordWriter {
+        private final WritableByteChannel channel;
+        private final ObjectCodec<Book> codec;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        BinaryWriter(WritableByteChannel channel, ObjectCodec<Book> codec) {
+            this.channel = channel;
+            this.codec = codec;
+            buffer.putInt(BINARY_MAGIC);
+        }
+
+        @Override
+        public void write(Book book) throws IOException {
+            int size = codec.getEncodedSize(book);
+            if (buffer.remaining() < 4 + size) {
+                flush();
+                if (buffer.capacity() < 4 + size) {
+                    buffer = ByteBuffer.allocate(4 + size);
+                }
+            }
+            buffer.putInt(size);
+            codec.encode(book, buffer);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
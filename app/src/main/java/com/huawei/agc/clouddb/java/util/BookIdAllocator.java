@@ -0,0 +1,99 @@
+package com.huawei.agc.clouddb.java.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free allocator of new book ids.
+ * maxSeenId is the greatest id known to exist (read from the cloud or written), new ids
+ * are handed out from a separate counter which never goes below maxSeenId + 1, so two
+ * quick adds never get the same id. Bulk inserts lease a whole block of ids with a single CAS.
+ */
+public class BookIdAllocator {
+
+    private final AtomicInteger maxSeenId = new AtomicInteger(0);
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    /**
+     * Record an existing id, later allocations are above it
+     *
+     * @param id id read from the cloud or written
+     */
+    public void observe(int id) {
+        int current = maxSeenId.get();
+        while (id > current) {
+            if (maxSeenId.compareAndSet(current, id)) {
+                return;
+            }
+            current = maxSeenId.get();
+        }
+    }
+
+    /**
+     * Get the greatest existing id
+     *
+     * @return max seen id
+     */
+    public int getMaxSeenId() {
+        return maxSeenId.get();
+    }
+
+    /**
+     * Allocate one new id
+     *
+     * @return id which was never allocated nor seen before
+     */
+    public int nextId() {
+        return reserve(1);
+    }
+
+    /**
+     * Lease a block of consecutive new ids
+     *
+     * @param count ids count in the block
+     * @return leased block
+     */
+    public IdBlock reserveBlock(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive: " + count);
+        }
+        int start = reserve(count);
+        return new IdBlock(start, start + count);
+    }
+
+    private int reserve(int count) {
+        while (true) {
+            int current = nextId.get();
+            int start = Math.max(current, maxSeenId.get() + 1);
+            if (nextId.compareAndSet(current, start + count)) {
+                return start;
+            }
+        }
+    }
+
+    /**
+     * Leased range of ids [start, end), ids are taken from it without contention
+     */
+    public static class IdBlock {
+        private final int end;
+        private final AtomicInteger next;
+
+        IdBlock(int start, int end) {
+            this.end = end;
+            this.next = new AtomicInteger(start);
+        }
+
+        /**
+         * Take the next id of the block
+         *
+         * @return id, or -1 if the block is exhausted
+         */
+        public int next() {
+            int id = next.getAndIncrement();
+            return id < end ? id : -1;
+        }
+
+        public int remaining() {
+            return Math.max(0, end - next.get());
+        }
+    }
+}
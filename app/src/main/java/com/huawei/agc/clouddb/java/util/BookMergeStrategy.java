@@ -0,0 +1,45 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import java.util.Objects;
+
+/**
+ * Resolves an update of a book which was changed on cloud side since the edit started,
+ * see CloudDB.updateBook. Implement it for a custom merge
+ */
+public interface BookMergeStrategy {
+
+    /**
+     * Fields changed by the local edit win, other fields take the cloud state.
+     * A field changed on both sides takes the local value, as this device writes last.
+     * A book deleted on cloud side is written again
+     */
+    BookMergeStrategy FIELD_LAST_WRITER_WINS = (base, local, remote) -> {
+        if (remote == null) {
+            return local;
+        }
+        Book merged = new Book();
+        merged.setId(local.getId());
+        merged.setBookName(Objects.equals(local.getBookName(), base.getBookName())
+                ? remote.getBookName() : local.getBookName());
+        merged.setDescription(Objects.equals(local.getDescription(), base.getDescription())
+                ? remote.getDescription() : local.getDescription());
+        return merged;
+    };
+
+    /**
+     * The cloud state wins and the local edit is dropped
+     */
+    BookMergeStrategy REMOTE_WINS = (base, local, remote) -> null;
+
+    /**
+     * Merge a conflicting update, called on a worker thread
+     *
+     * @param base   state the local edit started from
+     * @param local  edited book
+     * @param remote current cloud state, null if the book was deleted on cloud side
+     * @return book to write, null to drop the local edit
+     */
+    Book merge(Book base, Book local, Book remote);
+}
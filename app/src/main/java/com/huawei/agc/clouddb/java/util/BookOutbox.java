@@ -0,0 +1,525 @@
+package com.huawei.agc.clouddb.java.util;
+
+import android.util.Log;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static com.huawei.agc.clouddb.java.util.Constants.CLOUD_TAG;
+
+/**
+ * Durable write-ahead outbox of book upserts and deletes.
+ * Every write is appended to a memory-mapped log before it is queued and acknowledged once
+ * the cloud has accepted it. Appends are forced to disk by a group commit every
+ * COMMIT_INTERVAL_MILLIS, so many writes share one fsync. On open the log is replayed,
+ * deduplicated by primary key, and the writes which were not acknowledged are kept for
+ * getRecovered. While the process runs, a log of mostly acknowledged writes is compacted
+ * in the background, see compact.
+ *
+ * File layout: header [int magic][long epoch], then records
+ * [int payloadLength][payload][int crc32(payload)], terminated by a zero length.
+ * Payload: [long epoch][long seq][byte type][int id], upserts add bookName and description
+ * as [int utf8Length (-1 for null)][bytes], acks add [long ackedSeq].
+ */
+public class BookOutbox {
+
+    private static final int MAGIC = 0x424F5842;  // "BOXB"
+    private static final int HEADER_SIZE = 12;
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    private static final long COMMIT_INTERVAL_MILLIS = 10;
+    private static final long CLOSE_TIMEOUT_MILLIS = 1_000;
+    //records per pending write above which the log is compacted
+    private static final int COMPACT_RATIO = 4;
+
+    private static final byte TYPE_UPSERT = 1;
+    private static final byte TYPE_DELETE = 2;
+    private static final byte TYPE_ACK = 3;
+
+    private final File file;
+    private final ScheduledExecutorService committer = Executors.newSingleThreadScheduledExecutor();
+    private final CRC32 crc = new CRC32();
+
+    //not acknowledged writes, the last one per id
+    private final Map<Integer, Entry> pending = new LinkedHashMap<>();
+    private List<Entry> recovered = new ArrayList<>();
+
+    private File mappedFile;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+    private long epoch;
+    private long nextSeq = 1;
+    private int position;
+    private int records = 0;
+    private boolean dirty = false;
+    private boolean compacting = false;
+
+    public BookOutbox(File file) throws IOException {
+        this.file = file;
+        open();
+        committer.scheduleWithFixedDelay(this::commit, COMMIT_INTERVAL_MILLIS, COMMIT_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get writes of a previous process which were never acknowledged. A write is returned
+     * by every call until it is acknowledged or superseded by a newer write of its id,
+     * so a replay which fails can be repeated
+     *
+     * @return recovered writes in log order
+     */
+    public synchronized List<Entry> getRecovered() {
+        List<Entry> entries = new ArrayList<>(recovered.size());
+        for (Entry entry : recovered) {
+            if (pending.get(entry.book.getId()) == entry) {
+                entries.add(entry);
+            }
+        }
+        recovered = entries;
+        return new ArrayList<>(entries);
+    }
+
+    public synchronized void appendUpsert(Book book) {
+        append(new Entry(nextSeq++, copyOf(book), false));
+    }
+
+    public synchronized void appendDelete(Book book) {
+        append(new Entry(nextSeq++, copyOf(book), true));
+    }
+
+    /**
+     * Acknowledge written books. A book is acknowledged only if it is the last state logged
+     * for its id, so a newer write of the same id stays in the outbox
+     *
+     * @param books  books accepted by the cloud
+     * @param delete true if the books were deleted
+     */
+    public synchronized void ack(List<Book> books, boolean delete) {
+        for (Book book : books) {
+            Entry entry = pending.get(book.getId());
+            if (entry == null || entry.delete != delete
+                    || !(delete || BookDiff.sameContent(entry.book, book))) {
+                continue;
+            }
+            pending.remove(book.getId());
+            writeRecord(TYPE_ACK, entry.book.getId(), null, entry.seq);
+        }
+        if (position <= INITIAL_CAPACITY / 2) {
+            return;
+        }
+        if (pending.isEmpty()) {
+            reset();
+        } else if (!compacting && records > pending.size() * COMPACT_RATIO) {
+            compacting = true;
+            try {
+                committer.execute(this::compact);
+            } catch (RejectedExecutionException e) {
+                //closed, the next open compacts the log
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * Force appended records to disk now. The fsync runs outside of the lock,
+     * so appends on the main thread don't wait for it
+     */
+    public void commit() {
+        MappedByteBuffer appended;
+        synchronized (this) {
+            if (!dirty || buffer == null) {
+                return;
+            }
+            appended = buffer;
+            dirty = false;
+        }
+        appended.force();
+    }
+
+    /**
+     * Force appended records to disk and stop the group commit, the outbox must not be used afterwards
+     */
+    public void close() {
+        committer.shutdown();
+        try {
+            //a compaction in progress is finished
+            committer.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        commit();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void append(Entry entry) {
+        if (entry.book.getId() == null) {
+            return;
+        }
+        pending.remove(entry.book.getId());
+        pending.put(entry.book.getId(), entry);
+        writeEntry(entry);
+    }
+
+    private void writeEntry(Entry entry) {
+        writeRecord(entry.delete ? TYPE_DELETE : TYPE_UPSERT, entry.book.getId(),
+                entry.delete ? null : entry.book, entry.seq);
+    }
+
+    private void writeRecord(byte type, int id, Book book, long seq) {
+        byte[] name = null;
+        byte[] description = null;
+        int payloadLength = 8 + 8 + 1 + 4;
+        if (type == TYPE_UPSERT) {
+            name = utf8(book.getBookName());
+            description = utf8(book.getDescription());
+            payloadLength += 4 + (name == null ? 0 : name.length) + 4 + (description == null ? 0 : description.length);
+        } else if (type == TYPE_ACK) {
+            payloadLength += 8;
+        }
+        if (scratch.capacity() < payloadLength) {
+            scratch = ByteBuffer.allocate(Math.max(payloadLength, scratch.capacity() * 2));
+        }
+        scratch.clear();
+        scratch.putLong(epoch);
+        scratch.putLong(type == TYPE_ACK ? nextSeq++ : seq);
+        scratch.put(type);
+        scratch.putInt(id);
+        if (type == TYPE_UPSERT) {
+            putBytes(scratch, name);
+            putBytes(scratch, description);
+        } else if (type == TYPE_ACK) {
+            scratch.putLong(seq);
+        }
+        crc.reset();
+        crc.update(scratch.array(), 0, payloadLength);
+
+        try {
+            ensureCapacity(position + 4 + payloadLength + 4 + 4);
+        } catch (IOException e) {
+            Log.e(CLOUD_TAG, "Outbox can't grow: " + e.getMessage());
+            return;
+        }
+        buffer.position(position);
+        buffer.putInt(payloadLength);
+        buffer.put(scratch.array(), 0, payloadLength);
+        buffer.putInt((int) crc.getValue());
+        position = buffer.position();
+        //terminator, overwritten by the next record
+        buffer.putInt(0);
+        records++;
+        dirty = true;
+    }
+
+    private void open() throws IOException {
+        Map<Integer, Entry> logged = new LinkedHashMap<>();
+        if (file.exists() && file.length() >= HEADER_SIZE) {
+            readLog(logged);
+        }
+        recovered = new ArrayList<>(logged.values());
+
+        //compact: rewrite the not acknowledged writes into a new log and swap it in
+        File compacted = new File(file.getPath() + ".tmp");
+        if (compacted.exists() && !compacted.delete()) {
+            throw new IOException("Can't delete " + compacted);
+        }
+        map(compacted, INITIAL_CAPACITY);
+        epoch = System.currentTimeMillis();
+        writeHeader();
+        for (Entry entry : recovered) {
+            entry.seq = nextSeq++;
+            append(entry);
+        }
+        buffer.force();
+        if (!compacted.renameTo(file)) {
+            throw new IOException("Can't rename " + compacted + " to " + file);
+        }
+        mappedFile = file;
+    }
+
+    private void readLog(Map<Integer, Entry> logged) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel inputChannel = input.getChannel()) {
+            MappedByteBuffer log = inputChannel.map(FileChannel.MapMode.READ_ONLY, 0, inputChannel.size());
+            if (log.getInt() != MAGIC) {
+                Log.w(CLOUD_TAG, "Outbox has unknown format, it is dropped");
+                return;
+            }
+            long logEpoch = log.getLong();
+            CRC32 checksum = new CRC32();
+            byte[] payload = new byte[256];
+            ByteBuffer record = ByteBuffer.wrap(payload);
+            while (log.remaining() >= 4) {
+                int payloadLength = log.getInt();
+                if (payloadLength <= 0 || payloadLength + 4 > log.remaining()) {
+                    break;
+                }
+                int payloadStart = log.position();
+                if (payload.length < payloadLength) {
+                    payload = new byte[Math.max(payloadLength, payload.length * 2)];
+                    record = ByteBuffer.wrap(payload);
+                }
+                log.get(payload, 0, payloadLength);
+                checksum.reset();
+                checksum.update(payload, 0, payloadLength);
+                if (log.getInt() != (int) checksum.getValue()) {
+                    Log.w(CLOUD_TAG, "Outbox record at " + payloadStart + " is torn, replay stops");
+                    break;
+                }
+                record.clear();
+                record.limit(payloadLength);
+                if (record.getLong() != logEpoch) {
+                    break;
+                }
+                long seq = record.getLong();
+                byte type = record.get();
+                int id = record.getInt();
+                if (type == TYPE_ACK) {
+                    long ackedSeq = record.getLong();
+                    Entry entry = logged.get(id);
+                    if (entry != null && entry.seq <= ackedSeq) {
+                        logged.remove(id);
+                    }
+                    continue;
+                }
+                Book book = new Book();
+                book.setId(id);
+                if (type == TYPE_UPSERT) {
+                    book.setBookName(getString(record));
+                    book.setDescription(getString(record));
+                }
+                logged.remove(id);
+                logged.put(id, new Entry(seq, book, type == TYPE_DELETE));
+            }
+        }
+    }
+
+    /**
+     * Rewrite the pending writes into a new log and swap it in, like open does.
+     * The new log is written under the lock but forced without it, appends go on into the current log
+     * meanwhile; writes and acknowledgements made since are copied over before the swap
+     */
+    private void compact() {
+        File compacted = new File(file.getPath() + ".tmp");
+        LogState next;
+        Map<Integer, Entry> written;
+        long writtenSeq;
+        synchronized (this) {
+            LogState current = saveLog();
+            try {
+                if (compacted.exists() && !compacted.delete()) {
+                    throw new IOException("Can't delete " + compacted);
+                }
+                map(compacted, INITIAL_CAPACITY);
+                epoch++;
+                writeHeader();
+                for (Entry entry : pending.values()) {
+                    writeEntry(entry);
+                }
+                next = saveLog();
+            } catch (IOException e) {
+                Log.w(CLOUD_TAG, "Outbox can't be compacted: " + e.getMessage());
+                closeLog(saveLog(), current);
+                next = null;
+            }
+            restoreLog(current);
+            if (next == null) {
+                compacting = false;
+                return;
+            }
+            written = new LinkedHashMap<>(pending);
+            writtenSeq = nextSeq;
+        }
+        next.buffer.force();
+        synchronized (this) {
+            LogState current = saveLog();
+            restoreLog(next);
+            //copy what went into the current log meanwhile
+            for (Entry entry : pending.values()) {
+                if (entry.seq >= writtenSeq) {
+                    writeEntry(entry);
+                }
+            }
+            for (Entry entry : written.values()) {
+                if (!pending.containsKey(entry.book.getId())) {
+                    writeRecord(TYPE_ACK, entry.book.getId(), null, entry.seq);
+                }
+            }
+            if (compacted.renameTo(file)) {
+                mappedFile = file;
+                closeLog(current, null);
+            } else {
+                Log.w(CLOUD_TAG, "Can't rename " + compacted + " to " + file + ", the log isn't compacted");
+                closeLog(saveLog(), current);
+                restoreLog(current);
+            }
+            compacting = false;
+        }
+    }
+
+    private LogState saveLog() {
+        return new LogState(mappedFile, randomAccessFile, channel, buffer, position, epoch, records);
+    }
+
+    private void restoreLog(LogState state) {
+        mappedFile = state.mappedFile;
+        randomAccessFile = state.randomAccessFile;
+        channel = state.channel;
+        buffer = state.buffer;
+        position = state.position;
+        epoch = state.epoch;
+        records = state.records;
+    }
+
+    /**
+     * Close the file of a log which is not used anymore
+     *
+     * @param state log to close
+     * @param kept  log which stays in use, its file is not closed
+     */
+    private static void closeLog(LogState state, LogState kept) {
+        if (kept != null && state.channel == kept.channel) {
+            return;
+        }
+        try {
+            state.channel.close();
+            state.randomAccessFile.close();
+        } catch (IOException e) {
+            Log.w(CLOUD_TAG, "Outbox log can't be closed: " + e.getMessage());
+        }
+    }
+
+    private void reset() {
+        epoch++;
+        writeHeader();
+        buffer.putInt(0);
+        buffer.force();
+        dirty = false;
+    }
+
+    private void writeHeader() {
+        buffer.position(0);
+        buffer.putInt(MAGIC);
+        buffer.putLong(epoch);
+        position = HEADER_SIZE;
+        records = 0;
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        if (required <= buffer.capacity()) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        //the mapped pages stay in the page cache, the next commit forces them through the new mapping
+        channel.close();
+        randomAccessFile.close();
+        map(mappedFile, capacity);
+    }
+
+    private void map(File target, int capacity) throws IOException {
+        mappedFile = target;
+        randomAccessFile = new RandomAccessFile(target, "rw");
+        channel = randomAccessFile.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+    }
+
+    private static Book copyOf(Book book) {
+        Book copy = new Book();
+        copy.setId(book.getId());
+        copy.setBookName(book.getBookName());
+        copy.setDescription(book.getDescription());
+        return copy;
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer target, byte[] bytes) {
+        if (bytes == null) {
+            target.putInt(-1);
+            return;
+        }
+        target.putInt(bytes.length);
+        target.put(bytes);
+    }
+
+    private static String getString(ByteBuffer source) {
+        int length = source.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(source.array(), source.position(), length, StandardCharsets.UTF_8);
+        source.position(source.position() + length);
+        return value;
+    }
+
+    /**
+     * Mapped log file and the write position in it
+     */
+    private static class LogState {
+        private final File mappedFile;
+        private final RandomAccessFile randomAccessFile;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int position;
+        private final long epoch;
+        private final int records;
+
+        LogState(File mappedFile, RandomAccessFile randomAccessFile, FileChannel channel, MappedByteBuffer buffer,
+                int position, long epoch, int records) {
+            this.mappedFile = mappedFile;
+            this.randomAccessFile = randomAccessFile;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.position = position;
+            this.epoch = epoch;
+            this.records = records;
+        }
+    }
+
+    /**
+     * Logged write of a book
+     */
+    public static class Entry {
+        private long seq;
+        private final Book book;
+        private final boolean delete;
+
+        Entry(long seq, Book book, boolean delete) {
+            this.seq = seq;
+            this.book = book;
+            this.delete = delete;
+        }
+
+        public Book getBook() {
+            return book;
+        }
+
+        public boolean isDelete() {
+            return delete;
+        }
+    }
+}
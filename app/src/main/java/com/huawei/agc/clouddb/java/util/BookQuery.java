@@ -0,0 +1,326 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agconnect.cloud.database.CloudDBZoneQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fluent query of books which is executed by the cloud: filters, order and limit are pushed down
+ * into CloudDBZoneQuery, so only matching rows are transferred and materialized.
+ * The shape of a query (filters, order and whether it has a limit) is compiled once into a Plan,
+ * later queries of the same shape only bind their values.
+ * CloudDBZoneQuery has no projection, so rows always hold every field.
+ * A BookZone which is not backed by the SDK evaluates the query itself with matches, getOrder and getLimit
+ */
+public class BookQuery {
+
+    private static final int MAX_CACHED_PLANS = 64;
+    private static final Map<String, Plan> PLANS = new ConcurrentHashMap<>();
+
+    private final CloudDB cloudDB;
+    private final List<Filter> filters = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+    private String orderField;
+    private boolean descending = false;
+    private int limit = 0;
+
+    BookQuery(CloudDB cloudDB) {
+        this.cloudDB = cloudDB;
+    }
+
+    public BookQuery nameEqualTo(String bookName) {
+        return filter(Filter.NAME_EQUAL_TO, bookName);
+    }
+
+    /**
+     * Match books whose bookName starts with the prefix, uses the bookName index
+     */
+    public BookQuery nameBeginsWith(String prefix) {
+        return filter(Filter.NAME_BEGINS_WITH, prefix);
+    }
+
+    public BookQuery idEqualTo(int id) {
+        return filter(Filter.ID_EQUAL_TO, id);
+    }
+
+    public BookQuery idGreaterThan(int id) {
+        return filter(Filter.ID_GREATER_THAN, id);
+    }
+
+    public BookQuery idAtLeast(int id) {
+        return filter(Filter.ID_AT_LEAST, id);
+    }
+
+    public BookQuery idLessThan(int id) {
+        return filter(Filter.ID_LESS_THAN, id);
+    }
+
+    public BookQuery idAtMost(int id) {
+        return filter(Filter.ID_AT_MOST, id);
+    }
+
+    /**
+     * Match books with id from first to last inclusive
+     */
+    public BookQuery idBetween(int first, int last) {
+        return idAtLeast(first).idAtMost(last);
+    }
+
+    /**
+     * Match books with one of the ids
+     */
+    public BookQuery idIn(Integer... ids) {
+        return filter(Filter.ID_IN, ids.clone());
+    }
+
+    public BookQuery orderById(boolean descending) {
+        return orderBy("id", descending);
+    }
+
+    public BookQuery orderByName(boolean descending) {
+        return orderBy("bookName", descending);
+    }
+
+    /**
+     * Return at most count books, with sharding every zone returns count books before the merge
+     *
+     * @param count max books count, 0 for no limit
+     */
+    public BookQuery limit(int count) {
+        this.limit = Math.max(0, count);
+        return this;
+    }
+
+    /**
+     * Execute the query on every zone, matching books are merged into the synced books
+     *
+     * @param callBack callback to receive books in the requested order, called on the main thread
+     */
+    public void execute(CloudDB.BookListCallBack callBack) {
+        cloudDB.executeBookQuery(this, callBack);
+    }
+
+    /**
+     * Check whether the book passes every filter of the query
+     *
+     * @param book book to check
+     * @return true if the book is a result of the query
+     */
+    public boolean matches(Book book) {
+        for (int i = 0; i < filters.size(); i++) {
+            if (!filters.get(i).matches(book, values.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the order of the results, ties of bookName are ordered by id
+     *
+     * @return comparator, null if unordered
+     */
+    public Comparator<Book> getOrder() {
+        return getPlan().getOrder();
+    }
+
+    /**
+     * @return max books count, 0 for no limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    CloudDBZoneQuery<Book> toZoneQuery() {
+        return getPlan().build(values.toArray(), limit);
+    }
+
+    private BookQuery filter(Filter filter, Object value) {
+        filters.add(filter);
+        values.add(value);
+        return this;
+    }
+
+    private BookQuery orderBy(String field, boolean descending) {
+        this.orderField = field;
+        this.descending = descending;
+        return this;
+    }
+
+    Plan getPlan() {
+        StringBuilder shape = new StringBuilder();
+        for (Filter filter : filters) {
+            shape.append(filter.ordinal()).append(',');
+        }
+        shape.append(orderField).append(descending ? " desc" : " asc").append(limit > 0 ? " limit" : "");
+        String key = shape.toString();
+        Plan plan = PLANS.get(key);
+        if (plan == null) {
+            plan = new Plan(filters.toArray(new Filter[0]), orderField, descending, limit > 0);
+            if (PLANS.size() < MAX_CACHED_PLANS) {
+                PLANS.put(key, plan);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Compiled shape of a query, shared by every query with the same filters and order
+     */
+    static class Plan {
+        private final Filter[] filters;
+        private final String orderField;
+        private final boolean descending;
+        private final boolean limited;
+        private final Comparator<Book> order;
+
+        Plan(Filter[] filters, String orderField, boolean descending, boolean limited) {
+            this.filters = filters;
+            this.orderField = orderField;
+            this.descending = descending;
+            this.limited = limited;
+            Comparator<Book> ascending = orderField == null ? null
+                    : "id".equals(orderField) ? ShardedSnapshot.BY_ID : ShardedSnapshot.BY_NAME;
+            this.order = ascending == null || !descending ? ascending : ascending.reversed();
+        }
+
+        /**
+         * Build the CloudDBZoneQuery of a shard
+         *
+         * @param values filter values in the order of the filters
+         * @param limit  max books count, ignored if the plan has no limit
+         * @return query
+         */
+        CloudDBZoneQuery<Book> build(Object[] values, int limit) {
+            CloudDBZoneQuery<Book> query = CloudDBZoneQuery.where(Book.class);
+            for (int i = 0; i < filters.length; i++) {
+                query = filters[i].apply(query, values[i]);
+            }
+            if (orderField != null) {
+                query = descending ? query.orderByDesc(orderField) : query.orderByAsc(orderField);
+                if (!"id".equals(orderField)) {
+                    //ties are ordered by id, as the merge of the shards expects
+                    query = descending ? query.orderByDesc("id") : query.orderByAsc("id");
+                }
+            }
+            if (limited) {
+                query = query.limit(limit);
+            }
+            return query;
+        }
+
+        /**
+         * Get the order of the results to merge the shards in
+         *
+         * @return comparator, null if unordered
+         */
+        Comparator<Book> getOrder() {
+            return order;
+        }
+    }
+
+    enum Filter {
+        NAME_EQUAL_TO {
+            @Override
+            CloudDBZoneQuery<Book> apply(CloudDBZoneQuery<Book> query, Object value) {
+                return query.equalTo("bookName", (String) value);
+            }
+
+            @Override
+            boolean matches(Book book, Object value) {
+                return Objects.equals(book.getBookName(), value);
+            }
+        },
+        NAME_BEGINS_WITH {
+            @Override
+            CloudDBZoneQuery<Book> apply(CloudDBZoneQuery<Book> query, Object value) {
+                return query.beginsWith("bookName", (String) value);
+            }
+
+            @Override
+            boolean matches(Book book, Object value) {
+                return book.getBookName() != null && book.getBookName().startsWith((String) value);
+            }
+        },
+        ID_EQUAL_TO {
+            @Override
+            CloudDBZoneQuery<Book> apply(CloudDBZoneQuery<Book> query, Object value) {
+                return query.equalTo("id", (Integer) value);
+            }
+
+            @Override
+            boolean matches(Book book, Object value) {
+                return book.getId() != null && book.getId().equals(value);
+            }
+        },
+        ID_GREATER_THAN {
+            @Override
+            CloudDBZoneQuery<Book> apply(CloudDBZoneQuery<Book> query, Object value) {
+                return query.greaterThan("id", (Integer) value);
+            }
+
+            @Override
+            boolean matches(Book book, Object value) {
+                return book.getId() != null && book.getId() > (Integer) value;
+            }
+        },
+        ID_AT_LEAST {
+            @Override
+            CloudDBZoneQuery<Book> apply(CloudDBZoneQuery<Book> query, Object value) {
+                return query.greaterThanOrEqualTo("id", (Integer) value);
+            }
+
+            @Override
+            boolean matches(Book book, Object value) {
+                return book.getId() != null && book.getId() >= (Integer) value;
+            }
+        },
+        ID_LESS_THAN {
+            @Override
+            CloudDBZoneQuery<Book> apply(CloudDBZoneQuery<Book> query, Object value) {
+                return query.lessThan("id", (Integer) value);
+            }
+
+            @Override
+            boolean matches(Book book, Object value) {
+                return book.getId() != null && book.getId() < (Integer) value;
+            }
+        },
+        ID_AT_MOST {
+            @Override
+            CloudDBZoneQuery<Book> apply(CloudDBZoneQuery<Book> query, Object value) {
+                return query.lessThanOrEqualTo("id", (Integer) value);
+            }
+
+            @Override
+            boolean matches(Book book, Object value) {
+                return book.getId() != null && book.getId() <= (Integer) value;
+            }
+        },
+        ID_IN {
+            @Override
+            CloudDBZoneQuery<Book> apply(CloudDBZoneQuery<Book> query, Object value) {
+                return query.in("id", (Integer[]) value);
+            }
+
+            @Override
+            boolean matches(Book book, Object value) {
+                return book.getId() != null && Arrays.asList((Integer[]) value).contains(book.getId());
+            }
+        };
+
+        abstract CloudDBZoneQuery<Book> apply(CloudDBZoneQuery<Book> query, Object value);
+
+        /**
+         * Evaluate the filter on a book like the cloud does
+         */
+        abstract boolean matches(Book book, Object value);
+    }
+}
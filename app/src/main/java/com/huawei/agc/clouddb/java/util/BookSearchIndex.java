@@ -0,0 +1,456 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Local full-text index over bookName and description.
+ * Text is split into lower-cased letter/digit tokens. Every term keeps a posting list of book ids
+ * with the term frequency per field, compressed as varint id deltas. Changes are buffered per term
+ * and merged in batches, so in-order inserts only append and updates don't rewrite long lists
+ * one by one. Terms are kept sorted, so each query token also matches terms it is a prefix of,
+ * and books have to match every query token. Books are ranked by
+ * (NAME_WEIGHT * frequency in bookName + frequency in description) * idf, prefix matches count
+ * PREFIX_FACTOR of an exact match.
+ */
+public class BookSearchIndex {
+
+    private static final float NAME_WEIGHT = 3f;
+    private static final float PREFIX_FACTOR = 0.5f;
+    private static final int MAX_TOKEN_LENGTH = 32;
+    private static final int MAX_FREQUENCY = 15;
+    private static final int EMPTY_SLOT = -1;  // ids are not negative
+
+    //terms sorted for prefix lookups, and hashed for exact lookups while indexing
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final Map<String, Postings> termsByWord = new HashMap<>();
+    //terms and weights of every indexed book, to remove them when the book changes
+    private final Map<Integer, Document> documents = new HashMap<>();
+
+    //search scratch reused between searches: an open-addressing table of the books matching
+    //the first token, sized by their count rather than by the largest id, so sparse ids cost nothing
+    private int[] slotIds = new int[0];
+    private int[] hits = new int[0];
+    private float[] scores = new float[0];
+    private int[] touched = new int[64];
+
+    /**
+     * Index a book or update its entry
+     *
+     * @param book synced book
+     */
+    public synchronized void put(Book book) {
+        Integer id = book.getId();
+        if (id == null || id < 0) {
+            return;
+        }
+        Map<String, int[]> tokens = new LinkedHashMap<>();
+        tokenize(book.getBookName(), tokens, 0);
+        tokenize(book.getDescription(), tokens, 1);
+        String[] words = new String[tokens.size()];
+        byte[] weights = new byte[tokens.size()];
+        int i = 0;
+        for (Map.Entry<String, int[]> token : tokens.entrySet()) {
+            words[i] = token.getKey();
+            weights[i] = weight(token.getValue()[0], token.getValue()[1]);
+            i++;
+        }
+        Document old = documents.get(id);
+        if (old != null && old.sameAs(words, weights)) {
+            return;
+        }
+        if (old != null) {
+            removePostings(id, old);
+        }
+        Postings[] postings = new Postings[words.length];
+        for (int j = 0; j < words.length; j++) {
+            Postings termPostings = termsByWord.get(words[j]);
+            if (termPostings == null) {
+                termPostings = new Postings();
+                terms.put(words[j], termPostings);
+                termsByWord.put(words[j], termPostings);
+            }
+            termPostings.add(id, weights[j]);
+            postings[j] = termPostings;
+        }
+        documents.put(id, new Document(words, postings, weights));
+    }
+
+    public synchronized void remove(int id) {
+        Document old = documents.remove(id);
+        if (old != null) {
+            removePostings(id, old);
+        }
+    }
+
+    public synchronized void clear() {
+        terms.clear();
+        termsByWord.clear();
+        documents.clear();
+        slotIds = new int[0];
+        hits = new int[0];
+        scores = new float[0];
+    }
+
+    public synchronized int size() {
+        return documents.size();
+    }
+
+    public synchronized int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * Find books matching every token of the query, a token also matches the terms it is a prefix of
+     *
+     * @param query text typed by user
+     * @param limit max ids count
+     * @return book ids, best match first
+     */
+    public synchronized int[] search(String query, int limit) {
+        Map<String, int[]> parsed = new LinkedHashMap<>();
+        tokenize(query, parsed, 0);
+        if (parsed.isEmpty() || limit <= 0 || documents.isEmpty()) {
+            return new int[0];
+        }
+        int touchedCount = 0;
+        int tokenIndex = 0;
+        int mask = 0;
+        float documentCount = documents.size();
+        for (String token : parsed.keySet()) {
+            NavigableMap<String, Postings> matches = terms.subMap(token, true, token + Character.MAX_VALUE, false);
+            if (tokenIndex == 0) {
+                //every candidate is in a posting list of the first token
+                int candidates = 0;
+                for (Postings postings : matches.values()) {
+                    postings.merge();
+                    candidates += postings.size;
+                }
+                if (candidates == 0) {
+                    return new int[0];
+                }
+                mask = prepareScratch(candidates);
+            }
+            for (Map.Entry<String, Postings> match : matches.entrySet()) {
+                Postings postings = match.getValue();
+                postings.merge();
+                if (postings.size == 0) {
+                    continue;
+                }
+                float termFactor = (float) Math.log(1 + documentCount / postings.size)
+                        * (match.getKey().length() == token.length() ? 1f : PREFIX_FACTOR);
+                byte[] data = postings.data;
+                int position = 0;
+                int id = 0;
+                for (int n = 0; n < postings.size; n++) {
+                    int delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = data[position++];
+                        delta |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    id += delta;
+                    int weight = data[position++] & 0xFF;
+                    int slot = slotOf(id, mask);
+                    if (tokenIndex == 0) {
+                        if (slotIds[slot] != id) {
+                            slotIds[slot] = id;
+                            hits[slot] = 0;
+                            scores[slot] = 0;
+                            if (touchedCount == touched.length) {
+                                touched = Arrays.copyOf(touched, touchedCount * 2);
+                            }
+                            touched[touchedCount++] = slot;
+                        }
+                    } else if (slotIds[slot] != id || hits[slot] < tokenIndex) {
+                        //missed an earlier token
+                        continue;
+                    }
+                    hits[slot] = tokenIndex + 1;
+                    scores[slot] += (NAME_WEIGHT * (weight >> 4) + (weight & 0x0F)) * termFactor;
+                }
+            }
+            tokenIndex++;
+        }
+
+        //keep the best limit matches in a min-heap of slots
+        float[] score = scores;
+        int[] ids = slotIds;
+        PriorityQueue<Integer> best = new PriorityQueue<>(Math.min(limit, touchedCount) + 1, (first, second) -> {
+            int compare = Float.compare(score[first], score[second]);
+            return compare != 0 ? compare : Integer.compare(ids[second], ids[first]);
+        });
+        for (int i = 0; i < touchedCount; i++) {
+            int slot = touched[i];
+            if (hits[slot] != tokenIndex) {
+                continue;
+            }
+            best.add(slot);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        int[] result = new int[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = ids[best.poll()];
+        }
+        return result;
+    }
+
+    /**
+     * Clear the scratch table for the candidates, it grows to the largest candidates count seen
+     *
+     * @param candidates upper bound of the books matching the first token
+     * @return mask of the table, half of it at most is used
+     */
+    private int prepareScratch(int candidates) {
+        int capacity = 16;
+        while (capacity < candidates * 2) {
+            capacity <<= 1;
+        }
+        if (slotIds.length < capacity) {
+            slotIds = new int[capacity];
+            hits = new int[capacity];
+            scores = new float[capacity];
+        }
+        Arrays.fill(slotIds, 0, capacity, EMPTY_SLOT);
+        return capacity - 1;
+    }
+
+    /**
+     * Find the slot of an id by linear probing
+     *
+     * @return slot holding the id, or the empty slot where it goes
+     */
+    private int slotOf(int id, int mask) {
+        int hash = id * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (slotIds[slot] != id && slotIds[slot] != EMPTY_SLOT) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void removePostings(int id, Document document) {
+        for (int i = 0; i < document.words.length; i++) {
+            Postings postings = document.postings[i];
+            postings.remove(id);
+            if (postings.isEmpty()) {
+                terms.remove(document.words[i]);
+                termsByWord.remove(document.words[i]);
+            }
+        }
+    }
+
+    private static byte weight(int nameFrequency, int descriptionFrequency) {
+        return (byte) (Math.min(nameFrequency, MAX_FREQUENCY) << 4 | Math.min(descriptionFrequency, MAX_FREQUENCY));
+    }
+
+    /**
+     * Split text into lower-cased tokens and count them per field
+     *
+     * @param text   text or null
+     * @param tokens frequencies [bookName, description] by token
+     * @param field  0 for bookName, 1 for description
+     */
+    static void tokenize(String text, Map<String, int[]> tokens, int field) {
+        if (text == null) {
+            return;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (token.length() < MAX_TOKEN_LENGTH) {
+                    token.append(Character.toLowerCase(c));
+                }
+                continue;
+            }
+            if (token.length() > 0) {
+                String word = token.toString();
+                int[] frequencies = tokens.get(word);
+                if (frequencies == null) {
+                    frequencies = new int[2];
+                    tokens.put(word, frequencies);
+                }
+                frequencies[field]++;
+                token.setLength(0);
+            }
+        }
+    }
+
+    private static class Document {
+        private final String[] words;
+        private final Postings[] postings;
+        private final byte[] weights;
+
+        Document(String[] words, Postings[] postings, byte[] weights) {
+            this.words = words;
+            this.postings = postings;
+            this.weights = weights;
+        }
+
+        boolean sameAs(String[] otherWords, byte[] otherWeights) {
+            return Arrays.equals(words, otherWords) && Arrays.equals(weights, otherWeights);
+        }
+    }
+
+    /**
+     * Sorted ids of books containing a term: [varint id delta][byte weight] per book.
+     * Appends in id order go straight to the compressed data, other changes are buffered
+     * and merged once the buffer holds a quarter of the list
+     */
+    static class Postings {
+        private static final int MIN_PENDING = 16;
+        private static final byte REMOVED = 0;
+
+        private byte[] data = new byte[8];
+        private int length = 0;
+        private int size = 0;
+        private int lastId = -1;
+
+        private int[] pendingIds;
+        private byte[] pendingWeights;
+        private int pendingCount = 0;
+
+        //end of the varint read by readVarint, merges run under the index lock
+        private int varintEnd;
+
+        void add(int id, byte weight) {
+            if (pendingCount == 0 && id > lastId) {
+                append(id, weight);
+                return;
+            }
+            addPending(id, weight);
+        }
+
+        void remove(int id) {
+            addPending(id, REMOVED);
+        }
+
+        boolean isEmpty() {
+            if (pendingCount > 0 && size <= pendingCount) {
+                merge();
+            }
+            return size == 0 && pendingCount == 0;
+        }
+
+        private void addPending(int id, byte weight) {
+            if (pendingIds == null) {
+                pendingIds = new int[MIN_PENDING];
+                pendingWeights = new byte[MIN_PENDING];
+            } else if (pendingCount == pendingIds.length) {
+                pendingIds = Arrays.copyOf(pendingIds, pendingCount * 2);
+                pendingWeights = Arrays.copyOf(pendingWeights, pendingCount * 2);
+            }
+            pendingIds[pendingCount] = id;
+            pendingWeights[pendingCount] = weight;
+            pendingCount++;
+            if (pendingCount >= Math.max(MIN_PENDING, size >> 2)) {
+                merge();
+            }
+        }
+
+        /**
+         * Apply buffered changes, the last change of an id wins
+         */
+        void merge() {
+            if (pendingCount == 0) {
+                return;
+            }
+            //sort changes by id, then by arrival
+            long[] changes = new long[pendingCount];
+            for (int i = 0; i < pendingCount; i++) {
+                changes[i] = (long) pendingIds[i] << 32 | i;
+            }
+            Arrays.sort(changes);
+
+            byte[] old = data;
+            int oldSize = size;
+            int oldPosition = 0;
+            int oldId = 0;
+            int oldIndex = 0;
+            int oldWeight = 0;
+            boolean hasOld = oldSize > 0;
+            if (hasOld) {
+                oldId = readVarint(old, 0);
+                oldPosition = varintEnd;
+                oldWeight = old[oldPosition++];
+            }
+            data = new byte[Math.max(8, length + pendingCount * 6)];
+            length = 0;
+            size = 0;
+            lastId = -1;
+            int change = 0;
+            while (hasOld || change < changes.length) {
+                int changeId = change < changes.length ? (int) (changes[change] >> 32) : Integer.MAX_VALUE;
+                if (hasOld && (change == changes.length || oldId < changeId)) {
+                    append(oldId, (byte) oldWeight);
+                } else {
+                    //skip to the last change of this id
+                    while (change + 1 < changes.length && (int) (changes[change + 1] >> 32) == changeId) {
+                        change++;
+                    }
+                    byte weight = pendingWeights[(int) changes[change]];
+                    change++;
+                    if (weight != REMOVED) {
+                        append(changeId, weight);
+                    }
+                    if (!(hasOld && oldId == changeId)) {
+                        continue;
+                    }
+                }
+                //advance the old list
+                if (++oldIndex < oldSize) {
+                    oldId += readVarint(old, oldPosition);
+                    oldPosition = varintEnd;
+                    oldWeight = old[oldPosition++];
+                } else {
+                    hasOld = false;
+                }
+            }
+            pendingCount = 0;
+            if (pendingIds.length > MIN_PENDING * 4) {
+                pendingIds = null;
+                pendingWeights = null;
+            }
+        }
+
+        private void append(int id, byte weight) {
+            if (length + 6 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 6));
+            }
+            int delta = lastId < 0 ? id : id - lastId;
+            while ((delta & ~0x7F) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+            data[length++] = weight;
+            lastId = id;
+            size++;
+        }
+
+        private int readVarint(byte[] source, int position) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = source[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            varintEnd = position;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bulk import and export of books in a BookFormat. Rows are streamed, at most
+ * batchSize * maxInFlight books are held in memory whatever the file size.
+ * An import sends batches of batchSize books with up to maxInFlight batches waiting for
+ * their acknowledgement, and saves the count of rows acknowledged without a gap into a checkpoint
+ * file, so a failed import restarts after the last acknowledged row of the same file.
+ * Both directions block the calling thread, they must not be called on the main thread.
+ * Only java.nio and java.io are used, so the same code runs on a plain JVM,
+ * see BookTransferCli of the benchmark module
+ */
+public class BookTransfer {
+
+    private final int batchSize;
+    private final int maxInFlight;
+
+    public BookTransfer() {
+        this(Constants.TRANSFER_BATCH_SIZE, Constants.TRANSFER_MAX_IN_FLIGHT);
+    }
+
+    public BookTransfer(int batchSize, int maxInFlight) {
+        if (batchSize <= 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("batchSize and maxInFlight must be positive");
+        }
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Import books from the channel into the sink
+     *
+     * @param channel    file content
+     * @param format     file format
+     * @param sink       receives batches, e.g. CloudDB.getImportSink()
+     * @param checkpoint file keeping the progress, null to always start from the first row
+     * @return imported rows and throughput
+     * @throws IOException          if the file can't be read or a batch failed, the checkpoint is kept
+     * @throws InterruptedException if the thread was interrupted while waiting for batches
+     */
+    public Result importBooks(ReadableByteChannel channel, BookFormat format, Sink sink, File checkpoint)
+            throws IOException, InterruptedException {
+        long startTime = System.nanoTime();
+        long skipped = readCheckpoint(checkpoint);
+        BookFormat.RecordReader reader = format.newReader(channel);
+        for (long row = 0; row < skipped; row++) {
+            if (reader.read() == null) {
+                throw new IOException("Checkpoint is after the end of the file: " + skipped + " rows");
+            }
+        }
+
+        Progress progress = new Progress(skipped);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long savedRows = skipped;
+        int batchIndex = 0;
+        try {
+            List<Book> batch = new ArrayList<>(batchSize);
+            Book book;
+            do {
+                book = reader.read();
+                if (book != null) {
+                    batch.add(book);
+                }
+                if (batch.size() == batchSize || (book == null && !batch.isEmpty())) {
+                    inFlight.acquire();
+                    if (progress.getError() != null) {
+                        inFlight.release();
+                        break;
+                    }
+                    int index = batchIndex++;
+                    List<Book> sent = batch;
+                    try {
+                        sink.write(sent, (result, e) -> {
+                            progress.onBatchDone(index, sent.size(), e);
+                            inFlight.release();
+                        });
+                    } catch (RuntimeException e) {
+                        progress.onBatchDone(index, 0, e);
+                        inFlight.release();
+                    }
+                    batch = new ArrayList<>(batchSize);
+                    long ackedRows = progress.getAckedRows();
+                    if (ackedRows != savedRows) {
+                        writeCheckpoint(checkpoint, ackedRows);
+                        savedRows = ackedRows;
+                    }
+                }
+            } while (book != null && progress.getError() == null);
+        } finally {
+            //wait for the batches in flight, their acknowledgements move the checkpoint
+            inFlight.acquireUninterruptibly(maxInFlight);
+            if (progress.getAckedRows() != savedRows) {
+                writeCheckpoint(checkpoint, progress.getAckedRows());
+            }
+        }
+        Exception error = progress.getError();
+        if (error != null) {
+            throw new IOException("Import is failed after " + progress.getAckedRows() + " rows", error);
+        }
+        if (checkpoint != null && checkpoint.exists() && !checkpoint.delete()) {
+            //a finished import must not make the next one skip rows
+            writeCheckpoint(checkpoint, 0);
+        }
+        return new Result(progress.getAckedRows() - skipped, skipped, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Export all books of the source ordered by id into the channel.
+     * The next page is requested before the current one is written
+     *
+     * @param source  pages of books, e.g. CloudDB.getExportSource()
+     * @param format  file format
+     * @param channel target file
+     * @return exported rows and throughput
+     * @throws IOException          if the file can't be written or a page failed
+     * @throws InterruptedException if the thread was interrupted while waiting for a page
+     */
+    public Result exportBooks(Source source, BookFormat format, WritableByteChannel channel)
+            throws IOException, InterruptedException {
+        long startTime = System.nanoTime();
+        BookFormat.RecordWriter writer = format.newWriter(channel);
+        long rows = 0;
+        PendingPage page = new PendingPage(source, 0, batchSize);
+        while (true) {
+            List<Book> books = page.await();
+            boolean hasMore = books.size() == batchSize;
+            if (hasMore) {
+                page = new PendingPage(source, books.get(books.size() - 1).getId(), batchSize);
+            }
+            for (Book book : books) {
+                writer.write(book);
+            }
+            rows += books.size();
+            if (!hasMore) {
+                break;
+            }
+        }
+        writer.flush();
+        return new Result(rows, 0, System.nanoTime() - startTime);
+    }
+
+    private static long readCheckpoint(File checkpoint) throws IOException {
+        if (checkpoint == null || !checkpoint.exists()) {
+            return 0;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(checkpoint), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            return line == null ? 0 : Long.parseLong(line.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed import checkpoint " + checkpoint, e);
+        }
+    }
+
+    /**
+     * Replace the checkpoint through a temporary file, so a crash leaves the old or the new one
+     */
+    private static void writeCheckpoint(File checkpoint, long rows) throws IOException {
+        if (checkpoint == null) {
+            return;
+        }
+        File temp = new File(checkpoint.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write((rows + "\n").getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(checkpoint)) {
+            throw new IOException("Can't replace the import checkpoint " + checkpoint);
+        }
+    }
+
+    /**
+     * Tracks acknowledged batches, batches may complete out of order
+     */
+    private static class Progress {
+        private final Map<Integer, Integer> doneRows = new HashMap<>();
+        private int nextBatch = 0;
+        private long ackedRows;
+        private Exception error;
+
+        Progress(long skippedRows) {
+            this.ackedRows = skippedRows;
+        }
+
+        synchronized void onBatchDone(int index, int rows, Exception e) {
+            if (e != null) {
+                if (error == null) {
+                    error = e;
+                }
+                return;
+            }
+            doneRows.put(index, rows);
+            Integer next;
+            while ((next = doneRows.remove(nextBatch)) != null) {
+                ackedRows += next;
+                nextBatch++;
+            }
+        }
+
+        synchronized long getAckedRows() {
+            return ackedRows;
+        }
+
+        synchronized Exception getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Page requested from the source, the caller waits for it with await
+     */
+    private static class PendingPage {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile List<Book> books;
+        private volatile Exception error;
+
+        PendingPage(Source source, int afterId, int count) {
+            source.read(afterId, count, (result, e) -> {
+                books = result;
+                error = e;
+                latch.countDown();
+            });
+        }
+
+        List<Book> await() throws IOException, InterruptedException {
+            latch.await();
+            if (error != null || books == null) {
+                throw new IOException("Export page is failed", error);
+            }
+            return books;
+        }
+    }
+
+    /**
+     * Receives import batches, completion must be called once per batch, also for an empty one
+     */
+    public interface Sink {
+        void write(List<Book> books, RetryExecutor.Completion<Integer> completion);
+    }
+
+    /**
+     * Provides export pages: up to count books with id above afterId ordered by id
+     */
+    public interface Source {
+        void read(int afterId, int count, RetryExecutor.Completion<List<Book>> completion);
+    }
+
+    public static class Result {
+        private final long rows;
+        private final long skippedRows;
+        private final long elapsedNanos;
+
+        Result(long rows, long skippedRows, long elapsedNanos) {
+            this.rows = rows;
+            this.skippedRows = skippedRows;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * Get rows skipped because the checkpoint says they were imported before
+         */
+        public long getSkippedRows() {
+            return skippedRows;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rows * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return rows + " rows (" + skippedRows + " skipped) in " + elapsedNanos / 1_000_000 + "ms, "
+                    + Math.round(getRowsPerSecond()) + " rows/s";
+        }
+    }
+}
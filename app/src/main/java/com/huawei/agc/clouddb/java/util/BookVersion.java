@@ -0,0 +1,56 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+/**
+ * State of a book an edit started from, kept alongside the generated Book which has no version field.
+ * The version is the fingerprint of every persisted field, so it changes with any write on cloud side
+ * and needs no schema change; the copy is the base of three-way merges
+ */
+public final class BookVersion {
+
+    private static final ObjectAccessor<Book> ACCESSOR = ObjectAccessors.of(Book.class);
+
+    private final Book base;
+    private final long fingerprint;
+
+    private BookVersion(Book base) {
+        this.base = base;
+        this.fingerprint = ACCESSOR.fingerprint(base);
+    }
+
+    /**
+     * Capture the version of a book before it is edited in place
+     *
+     * @param book book as read from the cloud or the cache
+     * @return version holding a copy of the book
+     */
+    public static BookVersion of(Book book) {
+        return new BookVersion(ACCESSOR.copy(book));
+    }
+
+    public int getId() {
+        return base.getId();
+    }
+
+    /**
+     * Get the copy of the book taken by of, must not be modified
+     */
+    public Book getBase() {
+        return base;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Check whether the book is still in this version
+     *
+     * @param book current state, null if it was deleted
+     * @return true if every field is unchanged
+     */
+    public boolean matches(Book book) {
+        return book != null && ACCESSOR.fingerprint(book) == fingerprint && ACCESSOR.sameContent(book, base);
+    }
+}
@@ -0,0 +1,326 @@
+package com.huawei.agc.clouddb.java.util;
+
+import android.util.Log;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.huawei.agc.clouddb.java.util.Constants.CLOUD_TAG;
+
+/**
+ * Write-behind queue for book upserts and deletes.
+ * Writes to the same primary key are merged, so only the last state of a book is sent,
+ * and an upsert of a new book followed by its delete sends nothing.
+ * Pending writes are flushed as list-based executeUpsert/executeDelete calls
+ * when the batch size or the delay limit is reached, failed calls are retried by the RetryExecutor.
+ * Writes of a book are sent in order: while a write of an id is in flight or waiting for a retry,
+ * later writes of the id are held back in the queue, merged there, and sent with the first flush
+ * after it completed, so a retried upsert can't land after a newer delete or the other way round.
+ */
+public class BookWriteQueue {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 50;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 200;
+
+    private final Object lock = new Object();
+    private final Map<Integer, PendingWrite> pending = new LinkedHashMap<>();
+    //ids of sent writes which are not completed yet, including retries
+    private final Set<Integer> inFlightIds = new HashSet<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Sender sender;
+    private final BatchCallBack batchCallBack;
+    private final RetryExecutor retryExecutor;
+
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+    private ScheduledFuture<?> scheduledFlush;
+    private int inFlight = 0;
+
+    public BookWriteQueue(Sender sender, BatchCallBack batchCallBack, RetryExecutor retryExecutor) {
+        this.sender = sender;
+        this.batchCallBack = batchCallBack;
+        this.retryExecutor = retryExecutor;
+    }
+
+    /**
+     * Set the flush policy
+     *
+     * @param maxBatchSize   pending writes count which triggers a flush
+     * @param maxDelayMillis max time a write stays in the queue
+     */
+    public void setPolicy(int maxBatchSize, long maxDelayMillis) {
+        synchronized (lock) {
+            this.maxBatchSize = Math.max(1, maxBatchSize);
+            this.maxDelayMillis = Math.max(0, maxDelayMillis);
+        }
+    }
+
+    /**
+     * Queue an upsert
+     *
+     * @param book  book added or modified from local
+     * @param isNew true if the book does not exist in the cloud yet
+     * @return true if the upsert replaced a pending write of the same book
+     */
+    public boolean upsert(Book book, boolean isNew) {
+        if (book.getId() == null) {
+            Log.w(CLOUD_TAG, "Book without id can't be written");
+            return false;
+        }
+        synchronized (lock) {
+            PendingWrite write = pending.get(book.getId());
+            if (write == null) {
+                pending.put(book.getId(), new PendingWrite(book, false, isNew));
+            } else {
+                write.book = book;
+                write.delete = false;
+            }
+            onQueued();
+            return write != null;
+        }
+    }
+
+    /**
+     * Queue a delete
+     *
+     * @param book book selected by user
+     * @return false if nothing has to be sent, because the book has never reached the cloud
+     */
+    public boolean delete(Book book) {
+        if (book.getId() == null) {
+            Log.w(CLOUD_TAG, "Book without id can't be deleted");
+            return false;
+        }
+        synchronized (lock) {
+            PendingWrite write = pending.get(book.getId());
+            if (write == null) {
+                pending.put(book.getId(), new PendingWrite(book, true, false));
+            } else if (write.isNew && !inFlightIds.contains(book.getId())) {
+                //the book has never reached the cloud, nothing to send
+                pending.remove(book.getId());
+                return false;
+            } else {
+                write.book = book;
+                write.delete = true;
+            }
+            onQueued();
+            return true;
+        }
+    }
+
+    /**
+     * Send all pending writes now, except writes of ids which still have a write in flight
+     */
+    public void flush() {
+        List<Book> upserts = new ArrayList<>();
+        List<Book> deletes = new ArrayList<>();
+        synchronized (lock) {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            Iterator<PendingWrite> iterator = pending.values().iterator();
+            while (iterator.hasNext()) {
+                PendingWrite write = iterator.next();
+                if (!inFlightIds.add(write.book.getId())) {
+                    //held back until the previous write of the id is completed
+                    continue;
+                }
+                if (write.delete) {
+                    deletes.add(write.book);
+                } else {
+                    upserts.add(write.book);
+                }
+                iterator.remove();
+            }
+            if (upserts.isEmpty() && deletes.isEmpty()) {
+                return;
+            }
+            inFlight++;
+        }
+        send(new Batch(upserts, deletes));
+    }
+
+    /**
+     * Flush and wait until every sent batch and every write held back by it is completed.
+     * Must not be called on the thread that delivers the Sender results
+     *
+     * @param timeout max time to wait
+     * @param unit    unit of the timeout
+     * @return true if all batches are completed, false if the timeout elapsed
+     * @throws InterruptedException if the waiting thread was interrupted
+     */
+    public boolean awaitFlush(long timeout, TimeUnit unit) throws InterruptedException {
+        flush();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            while (inFlight > 0 || !pending.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get count of writes waiting for a flush
+     *
+     * @return pending writes count
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    private void onQueued() {
+        if (pending.size() >= maxBatchSize) {
+            scheduler.execute(this::flush);
+        } else if (scheduledFlush == null) {
+            scheduledFlush = scheduler.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void send(Batch batch) {
+        //one call per owning zone, each retried on its own
+        List<List<Book>> upserts = splitByShard(batch.upserts);
+        List<List<Book>> deletes = splitByShard(batch.deletes);
+        BatchResult result = new BatchResult(batch, upserts.size() + deletes.size());
+        for (List<Book> books : upserts) {
+            retryExecutor.<Integer>execute(CloudDBMetrics.Operation.UPSERT,
+                    attempt -> sender.upsert(books, attempt), (integer, e) -> result.onTaskDone(e));
+        }
+        for (List<Book> books : deletes) {
+            retryExecutor.<Integer>execute(CloudDBMetrics.Operation.DELETE,
+                    attempt -> sender.delete(books, attempt), (integer, e) -> result.onTaskDone(e));
+        }
+    }
+
+    private List<List<Book>> splitByShard(List<Book> books) {
+        if (books.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Integer, List<Book>> byShard = new LinkedHashMap<>();
+        for (Book book : books) {
+            byShard.computeIfAbsent(sender.shardOf(book), shard -> new ArrayList<>()).add(book);
+        }
+        return new ArrayList<>(byShard.values());
+    }
+
+    private void onBatchDone(Batch batch, Exception error) {
+        try {
+            if (error == null) {
+                batchCallBack.onBatchSuccess(batch);
+            } else {
+                batchCallBack.onBatchFailure(batch, error);
+            }
+        } finally {
+            synchronized (lock) {
+                inFlight--;
+                for (Book book : batch.upserts) {
+                    inFlightIds.remove(book.getId());
+                }
+                for (Book book : batch.deletes) {
+                    inFlightIds.remove(book.getId());
+                }
+                if (!pending.isEmpty()) {
+                    //writes held back by this batch have waited long enough
+                    scheduler.execute(this::flush);
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static class PendingWrite {
+        private Book book;
+        private boolean delete;
+        private final boolean isNew;
+
+        PendingWrite(Book book, boolean delete, boolean isNew) {
+            this.book = book;
+            this.delete = delete;
+            this.isNew = isNew;
+        }
+    }
+
+    private class BatchResult {
+        private final Batch batch;
+        private int remainingTasks;
+        private Exception error;
+
+        BatchResult(Batch batch, int remainingTasks) {
+            this.batch = batch;
+            this.remainingTasks = remainingTasks;
+        }
+
+        void onTaskDone(Exception e) {
+            synchronized (this) {
+                if (e != null && error == null) {
+                    error = e;
+                }
+                if (--remainingTasks > 0) {
+                    return;
+                }
+            }
+            onBatchDone(batch, error);
+        }
+    }
+
+    /**
+     * Writes sent together by one flush
+     */
+    public static class Batch {
+        private final List<Book> upserts;
+        private final List<Book> deletes;
+
+        Batch(List<Book> upserts, List<Book> deletes) {
+            this.upserts = Collections.unmodifiableList(upserts);
+            this.deletes = Collections.unmodifiableList(deletes);
+        }
+
+        public List<Book> getUpserts() {
+            return upserts;
+        }
+
+        public List<Book> getDeletes() {
+            return deletes;
+        }
+    }
+
+    /**
+     * Sends a batch to the CloudDBZone, books of one call belong to the same shard.
+     * A call returns false if it can't be made, e.g. the zone is closed
+     */
+    public interface Sender {
+        boolean upsert(List<Book> books, RetryExecutor.Completion<Integer> completion);
+        boolean delete(List<Book> books, RetryExecutor.Completion<Integer> completion);
+
+        default int shardOf(Book book) {
+            return 0;
+        }
+    }
+
+    /**
+     * Call back for each flushed batch
+     */
+    public interface BatchCallBack {
+        void onBatchSuccess(Batch batch);
+        void onBatchFailure(Batch batch, Exception e);
+    }
+}
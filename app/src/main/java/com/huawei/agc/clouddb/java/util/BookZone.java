@@ -0,0 +1,67 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agconnect.cloud.database.CloudDBZoneQuery;
+import com.huawei.agconnect.cloud.database.exceptions.AGConnectCloudDBException;
+
+import java.util.List;
+
+/**
+ * Zone of books as CloudDB calls it: queries, list writes and snapshot subscriptions.
+ * CloudDB wraps every opened CloudDBZone, a zone which keeps books in memory lets tests and
+ * benchmarks run CloudDB without the SDK, see CloudDB.withZones.
+ * Every completion is called once, on any thread
+ */
+public interface BookZone {
+
+    /**
+     * Query books like CloudDBZone.executeQuery
+     *
+     * @param query      filters, order and limit
+     * @param policy     query policy
+     * @param completion receives the snapshot, which must be released
+     */
+    void executeQuery(BookQuery query, CloudDBZoneQuery.CloudDBZoneQueryPolicy policy,
+            RetryExecutor.Completion<Snapshot> completion);
+
+    void executeUpsert(List<Book> books, RetryExecutor.Completion<Integer> completion);
+
+    void executeDelete(List<Book> books, RetryExecutor.Completion<Integer> completion);
+
+    /**
+     * Subscribe to changes of books matching the query, from cloud side
+     *
+     * @param query    books to observe, order and limit are not used
+     * @param listener receives every snapshot, or the error which ended the subscription
+     * @return registration to remove the subscription
+     * @throws AGConnectCloudDBException if the subscription can't be made
+     */
+    Registration subscribeSnapshot(BookQuery query, SnapshotListener listener) throws AGConnectCloudDBException;
+
+    /**
+     * Query result or subscription snapshot, like CloudDBZoneSnapshot
+     */
+    interface Snapshot {
+        ShardedSnapshot.Cursor getSnapshotObjects();
+
+        ShardedSnapshot.Cursor getUpsertedObjects();
+
+        ShardedSnapshot.Cursor getDeletedObjects();
+
+        void release();
+    }
+
+    /**
+     * Active snapshot subscription
+     */
+    interface Registration {
+        void remove();
+    }
+
+    /**
+     * Receives snapshots of a subscription, snapshot is null when e is set
+     */
+    interface SnapshotListener {
+        void onSnapshot(Snapshot snapshot, Exception e);
+    }
+}
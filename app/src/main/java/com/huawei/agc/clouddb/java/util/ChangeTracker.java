@@ -0,0 +1,82 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agconnect.cloud.database.CloudDBZoneObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last state of objects which the cloud has or will have, keyed by primary key.
+ * Objects are edited in place by the UI, so the tracker keeps a fingerprint of every persisted field
+ * and a shallow copy, and tells whether an edit changed anything since the last synced or queued state.
+ * The fingerprint answers most checks; when it matches, the copy is compared field by field, so
+ * a fingerprint collision can't hide an edit. A copy shares the field values, it costs one object
+ *
+ * @param <T> ObjectType class
+ */
+public class ChangeTracker<T extends CloudDBZoneObject> {
+
+    private final ObjectAccessor<T> accessor;
+    private final Map<Object, State<T>> states = new ConcurrentHashMap<>();
+
+    public ChangeTracker(Class<T> type) {
+        this.accessor = ObjectAccessors.of(type);
+    }
+
+    /**
+     * Record the state read from the cloud or queued for writing
+     *
+     * @param object object with a primary key
+     */
+    public void markClean(T object) {
+        Object key = accessor.getKey(object);
+        if (key != null) {
+            states.put(key, new State<>(accessor.fingerprint(object), accessor.copy(object)));
+        }
+    }
+
+    /**
+     * Check whether the object differs from its last recorded state
+     *
+     * @param object object with a primary key
+     * @return true if the object is unknown or any field changed
+     */
+    public boolean isDirty(T object) {
+        Object key = accessor.getKey(object);
+        if (key == null) {
+            return true;
+        }
+        State<T> state = states.get(key);
+        return state == null || state.fingerprint != accessor.fingerprint(object)
+                || !accessor.sameContent(state.copy, object);
+    }
+
+    /**
+     * Forget the state of an object, e.g. when it is deleted or its write failed
+     *
+     * @param key primary key
+     */
+    public void forget(Object key) {
+        if (key != null) {
+            states.remove(key);
+        }
+    }
+
+    public void clear() {
+        states.clear();
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    private static class State<T> {
+        private final long fingerprint;
+        private final T copy;
+
+        State(long fingerprint, T copy) {
+            this.fingerprint = fingerprint;
+            this.copy = copy;
+        }
+    }
+}
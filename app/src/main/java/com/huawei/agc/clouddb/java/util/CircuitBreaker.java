@@ -0,0 +1,89 @@
+package com.huawei.agc.clouddb.java.util;
+
+/**
+ * Circuit breaker over CloudDBZone calls.
+ * After failureThreshold consecutive failures the circuit opens and calls fail fast for
+ * openMillis, then a single trial call is let through: its success closes the circuit,
+ * its failure opens it again.
+ */
+public class CircuitBreaker {
+
+    /**
+     * Circuit states
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private boolean trialInFlight = false;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Check whether a call may be made now
+     *
+     * @return false if the call must fail fast
+     */
+    public synchronized boolean allowCall() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && !trialInFlight) {
+            trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * The allowed call was not made, e.g. the zone is closed
+     */
+    public synchronized void onCancelled() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Thrown to callers while the circuit is open
+     */
+    public static class CircuitOpenException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException() {
+            super("CloudDB circuit is open, call is rejected");
+        }
+    }
+}
@@ -1,41 +1,177 @@
 package com.huawei.agc.clouddb.java.util;
 
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.huawei.agc.clouddb.java.model.Book;
 import com.huawei.agconnect.cloud.database.AGConnectCloudDB;
 import com.huawei.agconnect.cloud.database.CloudDBZone;
 import com.huawei.agconnect.cloud.database.CloudDBZoneConfig;
-import com.huawei.agconnect.cloud.database.CloudDBZoneObjectList;
+import com.huawei.agconnect.cloud.database.CloudDBZoneObject;
 import com.huawei.agconnect.cloud.database.CloudDBZoneQuery;
-import com.huawei.agconnect.cloud.database.CloudDBZoneSnapshot;
-import com.huawei.agconnect.cloud.database.CloudDBZoneTask;
-import com.huawei.agconnect.cloud.database.ListenerHandler;
 import com.huawei.agconnect.cloud.database.exceptions.AGConnectCloudDBException;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 import static com.huawei.agc.clouddb.java.model.ObjectTypeInfoHelper.getObjectTypeInfo;
 import static com.huawei.agc.clouddb.java.util.Constants.CLOUD_TAG;
+import static com.huawei.agc.clouddb.java.util.Constants.FULL_SYNC_AT_KEY;
+import static com.huawei.agc.clouddb.java.util.Constants.FULL_SYNC_INTERVAL_MILLIS;
+import static com.huawei.agc.clouddb.java.util.Constants.GET_ALL_FRESHNESS_MILLIS;
+import static com.huawei.agc.clouddb.java.util.Constants.HIGH_WATER_MARK_KEY;
+import static com.huawei.agc.clouddb.java.util.Constants.OUTBOX_FILE_NAME;
+import static com.huawei.agc.clouddb.java.util.Constants.PREFERENCES_NAME;
+import static com.huawei.agc.clouddb.java.util.Constants.SHARD_ZONE_SUFFIX;
 import static com.huawei.agc.clouddb.java.util.Constants.ZONE_NAME;
 
 public class CloudDB {
 
     private static volatile CloudDB cloudDB;
 
-    private AGConnectCloudDB agConnectCloudDB  = AGConnectCloudDB.getInstance();
-    private CloudDBZone cloudDBZone;
-    private ListenerHandler register;
-    private CloudDBZoneConfig config;
-    private UiCallBack uiCallBack;
-    private int bookIndex = 0;
-    private ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    private static final long CIRCUIT_OPEN_MILLIS = 30_000;
+    private static final RetryPolicy DEFAULT_WRITE_RETRY_POLICY = new RetryPolicy(4, 500, 10_000);
+    private static final long CLOSE_FLUSH_TIMEOUT_MILLIS = 5_000;
+    private static final RetryPolicy SUBSCRIBE_RETRY_POLICY = new RetryPolicy(8, 1_000, 60_000);
+
+    //set by init on zoneExecutor, so the SDK is initialized off the main thread
+    private volatile AGConnectCloudDB agConnectCloudDB;
+    private volatile CloudDBZone cloudDBZone;
+    //snapshot subscriptions by shard, a new subscription round drops the retries of the previous one
+    private final Object subscriptionLock = new Object();
+    private BookZone.Registration[] registers = new BookZone.Registration[0];
+    private int subscription = 0;
+    private volatile UiCallBack uiCallBack;
+    private final BookIdAllocator idAllocator = new BookIdAllocator();
+    private final CloudDBMetrics metrics = new CloudDBMetrics();
+    //query results are processed on workers, only finished results reach the main thread,
+    //snapshots dropped under backpressure are replaced by one full reconcile
+    private final CloudDBDispatcher dispatcher;
+
+    //zone lifecycle, opened once on zoneExecutor and closed when the last user releases it
+    private final ExecutorService zoneExecutor = Executors.newSingleThreadExecutor();
+    private final ZoneLifecycle<CloudDBZone> zoneLifecycle =
+            new ZoneLifecycle<>(zoneExecutor, this::openZoneInBackground, this::closeCloudDBZone);
+
+    //startup, the SDK and the local state are loaded while the user signs in
+    private final StartupTimeline startupTimeline = new StartupTimeline();
+    //calls made before init is finished, run in order once it is
+    private final List<Runnable> afterInit = new ArrayList<>();
+    private boolean initDone = true;
+    private final AtomicReference<CompletableFuture<Void>> localCachePreload = new AtomicReference<>();
+
+    //zones by shard, empty until every shard is opened; cloudDBZone is the SDK zone of shard 0
+    private volatile BookZone[] shardZones = new BookZone[0];
+    //SDK zones opened by openCloudDBZone, closed by closeCloudDBZone
+    private volatile CloudDBZone[] openedZones = new CloudDBZone[0];
+    private volatile int shardCount = 1;
+    private volatile ShardFunction shardFunction = ShardFunction.MODULO;
+
+    //delta sync
+    private SharedPreferences preferences;
+    private boolean deltaSyncEnabled = true;
+    //remote edits and deletes made while no subscription was active are only seen by a full sync
+    private volatile long fullSyncIntervalMillis = FULL_SYNC_INTERVAL_MILLIS;
+    private volatile long lastFullSyncMillis = 0;
+    private QueryPolicy queryPolicy = QueryPolicy.CACHE_THEN_NETWORK;
+
+    //single-flight getAll, all books are one request
+    private static final Integer ALL_BOOKS = 0;
+    private final RequestCoalescer<Integer, BookListCallBack> getAllRequests =
+            new RequestCoalescer<>(SystemClock::elapsedRealtime, GET_ALL_FRESHNESS_MILLIS);
+    //single-flight book reads by id
+    private final RequestCoalescer<Integer, BookCallBack> bookReads =
+            new RequestCoalescer<>(SystemClock::elapsedRealtime, 0);
+
+    //true once the UI callback got a whole list, later results reach it as diffs
+    private volatile boolean listShown = false;
+    //synced books, the source of delta sync and of lookups by id. Never bounded: reconcile and the
+    //whole lists passed to the UI need every synced book, an evicted one would be lost as deleted
+    private final BookCache bookCache = new BookCache(BookCache.UNBOUNDED);
+    //full-text index of synced books, books evicted from a bounded cache stay indexed
+    private final BookSearchIndex searchIndex = new BookSearchIndex();
+    //fingerprints of the last synced or queued state of books, to skip upserts which change nothing
+    private final ChangeTracker<Book> bookTracker = new ChangeTracker<>(Book.class);
+    //optimistic concurrency of updateBook, ids with upserts of this device the cloud didn't confirm yet
+    private volatile BookMergeStrategy mergeStrategy = BookMergeStrategy.FIELD_LAST_WRITER_WINS;
+    private final Map<Integer, Integer> unconfirmedUpserts = new ConcurrentHashMap<>();
+
+    //retries of idempotent writes and fail fast while the backend is unhealthy
+    private final RetryExecutor retryExecutor = new RetryExecutor(
+            new CircuitBreaker(CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_MILLIS));
+
+    //batched writes, logged in the outbox until the cloud accepts them
+    private BookOutbox outbox;
+    private final BookWriteQueue writeQueue = new BookWriteQueue(
+            new BookWriteQueue.Sender() {
+                @Override
+                public boolean upsert(List<Book> books, RetryExecutor.Completion<Integer> completion) {
+                    return sendUpserts(books, completion);
+                }
+
+                @Override
+                public boolean delete(List<Book> books, RetryExecutor.Completion<Integer> completion) {
+                    return sendDeletes(books, completion);
+                }
+
+                @Override
+                public int shardOf(Book book) {
+                    return CloudDB.this.shardOf(book);
+                }
+            },
+            new BookWriteQueue.BatchCallBack() {
+                @Override
+                public void onBatchSuccess(BookWriteQueue.Batch batch) {
+                    dispatcher.process(() -> CloudDB.this.onBatchSuccess(batch));
+                }
+
+                @Override
+                public void onBatchFailure(BookWriteQueue.Batch batch, Exception e) {
+                    dispatcher.process(() -> CloudDB.this.onBatchFailure(batch, e));
+                }
+            },
+            retryExecutor);
+    private volatile BookWriteQueue.BatchCallBack writeBatchCallBack;
+
+    //repositories of other object types, sharing the zone, metrics and retries
+    private final Map<Class<?>, Repository<?>> repositories = new ConcurrentHashMap<>();
 
     private CloudDB() {
+        this(null);
+    }
+
+    /**
+     * @param mainThread runs UI callbacks, null for the main looper
+     */
+    private CloudDB(Executor mainThread) {
+        dispatcher = mainThread == null
+                ? new CloudDBDispatcher(() -> uiCallBack, this::getSyncedBooks, this::reconcileAll)
+                : new CloudDBDispatcher(() -> uiCallBack, this::getSyncedBooks, this::reconcileAll, mainThread);
+        //upserts and deletes by primary key are idempotent, so they are safe to retry
+        retryExecutor.setPolicy(CloudDBMetrics.Operation.UPSERT, DEFAULT_WRITE_RETRY_POLICY);
+        retryExecutor.setPolicy(CloudDBMetrics.Operation.DELETE, DEFAULT_WRITE_RETRY_POLICY);
     }
 
     public static CloudDB getInstance() {
@@ -51,154 +187,1787 @@ public class CloudDB {
         return localCloudDB;
     }
 
+    /**
+     * Create a CloudDB over zones which are opened already, e.g. in-memory zones of tests and
+     * benchmarks. It has no SDK, persisted state or outbox, so init, acquireZone and getRepository
+     * are not used with it. Books are spread over the zones by ShardFunction.MODULO
+     *
+     * @param mainThread runs UI callbacks and result callbacks in order
+     * @param zones      zone of every shard
+     * @return new CloudDB, subscribed to the zones
+     */
+    public static CloudDB withZones(Executor mainThread, BookZone... zones) {
+        CloudDB localCloudDB = new CloudDB(Objects.requireNonNull(mainThread));
+        localCloudDB.shardCount = Math.max(1, zones.length);
+        localCloudDB.shardZones = zones.clone();
+        localCloudDB.subscribeSnapshot();
+        return localCloudDB;
+    }
+
+    /**
+     * Initialize AGConnectCloudDB, restore the persisted high-water mark (max synced book id) used by
+     * delta sync and open the outbox of pending writes.
+     * The work runs on the zone executor, so the calling thread doesn't wait for the SDK and file I/O,
+     * and a zone acquired later is opened after it. Writes and checks called meanwhile are run
+     * once it is finished, see runAfterInit
+     *
+     * @param context application context
+     */
+    public void init(Context context) {
+        synchronized (afterInit) {
+            initDone = false;
+        }
+        zoneExecutor.execute(() -> {
+            try {
+                loadSdkAndLocalState(context);
+            } finally {
+                runInitWaiters();
+            }
+        });
+    }
+
+    private void loadSdkAndLocalState(Context context) {
+        StartupTimeline.Phase sdkPhase = startupTimeline.begin("AGConnectCloudDB.initialize");
+        AGConnectCloudDB.initialize(context);
+        agConnectCloudDB = AGConnectCloudDB.getInstance();
+        sdkPhase.end();
+
+        StartupTimeline.Phase localStatePhase = startupTimeline.begin("CloudDB.loadLocalState");
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        idAllocator.observe(preferences.getInt(HIGH_WATER_MARK_KEY, 0));
+        lastFullSyncMillis = preferences.getLong(FULL_SYNC_AT_KEY, 0);
+        try {
+            outbox = new BookOutbox(new File(context.getFilesDir(), OUTBOX_FILE_NAME));
+        } catch (IOException e) {
+            Log.w(CLOUD_TAG, "Outbox can't be opened, pending writes won't survive process death: "
+                    + e.getMessage());
+        }
+        localStatePhase.end();
+    }
+
+    /**
+     * Run the action now if init is finished, otherwise queue it behind init without blocking
+     * the calling thread. Queued actions run in call order on the zone executor
+     *
+     * @param action action which needs the restored high-water mark or the outbox
+     */
+    private void runAfterInit(Runnable action) {
+        synchronized (afterInit) {
+            if (!initDone) {
+                afterInit.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    private void runInitWaiters() {
+        while (true) {
+            List<Runnable> actions;
+            synchronized (afterInit) {
+                if (afterInit.isEmpty()) {
+                    //calls made from now on run directly, after the ones queued before
+                    initDone = true;
+                    return;
+                }
+                actions = new ArrayList<>(afterInit);
+                afterInit.clear();
+            }
+            for (Runnable action : actions) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    Log.e(CLOUD_TAG, "Call queued behind init is failed", e);
+                }
+            }
+        }
+    }
+
+    private AGConnectCloudDB getCloudDBSdk() {
+        AGConnectCloudDB sdk = agConnectCloudDB;
+        if (sdk == null) {
+            //initialized by the app itself
+            sdk = AGConnectCloudDB.getInstance();
+            agConnectCloudDB = sdk;
+        }
+        return sdk;
+    }
+
+    /**
+     * Get the timeline of startup phases: SDK initialization, local state, schema, zone opening
+     * and the local cache read; the UI adds its own phases
+     *
+     * @return startup timeline of the process
+     */
+    public StartupTimeline getStartupTimeline() {
+        return startupTimeline;
+    }
+
+    /**
+     * Delta sync asks the cloud only for books with id above the high-water mark,
+     * when disabled every getAll() downloads the whole table again
+     *
+     * @param enabled true to enable delta sync (default)
+     */
+    public void setDeltaSyncEnabled(boolean enabled) {
+        this.deltaSyncEnabled = enabled;
+    }
+
+    /**
+     * Set how often delta sync is replaced by a full reconcile. The snapshot subscription delivers
+     * remote edits and deletes while the zone is opened, the delta query only sees books above the
+     * high-water mark, so changes of older books made while this device wasn't subscribed
+     * (offline, zone closed, dropped snapshots) reach it with the next full reconcile
+     *
+     * @param intervalMillis time between full reconciles, 0 to reconcile on every getAll
+     */
+    public void setFullSyncInterval(long intervalMillis) {
+        this.fullSyncIntervalMillis = Math.max(0, intervalMillis);
+    }
+
+    private boolean isFullSyncDue() {
+        return System.currentTimeMillis() - lastFullSyncMillis >= fullSyncIntervalMillis;
+    }
+
+    private void onFullSynced() {
+        lastFullSyncMillis = System.currentTimeMillis();
+        if (preferences != null) {
+            preferences.edit().putLong(FULL_SYNC_AT_KEY, lastFullSyncMillis).apply();
+        }
+    }
+
+    /**
+     * Spread books over several zones by id. Shard 0 is ZONE_NAME, so with one shard the layout is
+     * the same as without sharding. Writes go to the zone which owns the id, queries are sent to
+     * every zone in parallel and their results are merged.
+     * Must be called before the zone is acquired, books are not moved when the shard count changes
+     *
+     * @param shardCount    zones count
+     * @param shardFunction picks the zone of an id
+     */
+    public void setSharding(int shardCount, ShardFunction shardFunction) {
+        synchronized (zoneLifecycle) {
+            if (zoneLifecycle.isAcquired() || isZoneOpened()) {
+                Log.w(CLOUD_TAG, "setSharding: zone is already opened");
+                return;
+            }
+            this.shardCount = Math.max(1, shardCount);
+            this.shardFunction = shardFunction;
+        }
+    }
+
+    /**
+     * Get the name of the zone of a shard
+     *
+     * @param shard shard index
+     * @return zone name
+     */
+    public static String getZoneName(int shard) {
+        return shard == 0 ? ZONE_NAME : ZONE_NAME + SHARD_ZONE_SUFFIX + shard;
+    }
+
+    private boolean isZoneOpened() {
+        return shardZones.length > 0;
+    }
+
+    private int shardOf(Book book) {
+        return book.getId() == null ? 0 : shardFunction.shardOf(book.getId(), shardCount);
+    }
+
+    /**
+     * Take a reference to the cloudDBZone. The first user triggers createObjectType and
+     * openCloudDBZone on a background executor, queries started before the zone is opened
+     * wait for it. Every call must be paired with releaseZone
+     *
+     * @return future completed with the opened zone (null if it can't be opened)
+     */
+    public CompletableFuture<CloudDBZone> acquireZone() {
+        return zoneLifecycle.acquire();
+    }
+
+    private CloudDBZone openZoneInBackground() {
+        StartupTimeline.Phase schemaPhase = startupTimeline.begin("createObjectType");
+        createObjectType();
+        schemaPhase.end();
+        StartupTimeline.Phase openPhase = startupTimeline.begin("openCloudDBZone");
+        openCloudDBZone();
+        openPhase.end();
+        preloadLocalCache();
+        return cloudDBZone;
+    }
+
+    /**
+     * Release a reference taken by acquireZone, the zone is closed when the last user releases it
+     */
+    public void releaseZone() {
+        if (!zoneLifecycle.release()) {
+            Log.w(CLOUD_TAG, "releaseZone: zone is not acquired");
+        }
+    }
+
+    /**
+     * Run the action once the zone opening in progress is finished
+     *
+     * @param action action to run
+     * @return false if no zone opening is in progress
+     */
+    private boolean runWhenZoneReady(Runnable action) {
+        CompletableFuture<CloudDBZone> future = zoneLifecycle.getOpening();
+        if (future == null || future.isDone()) {
+            return false;
+        }
+        future.whenComplete((zone, e) -> action.run());
+        return true;
+    }
+
     /**
      * Call AGConnectCloudDB.createObjectType to init schema
      */
     public void createObjectType() {
         try {
-            agConnectCloudDB.createObjectType(getObjectTypeInfo());
+            getCloudDBSdk().createObjectType(getObjectTypeInfo());
         } catch (AGConnectCloudDBException e) {
             Log.w(CLOUD_TAG, "createObjectType: " + e.getMessage());
         }
     }
 
     /**
-     * Call AGConnectCloudDB.openCloudDBZone to open a cloudDBZone.
+     * Call AGConnectCloudDB.openCloudDBZone to open the zone of every shard synchronously,
+     * prefer acquireZone which opens them once off the calling thread.
      * We set it with cloud cache mode, and data can be store in local storage
      */
     public void openCloudDBZone() {
-        config = new CloudDBZoneConfig(
-                ZONE_NAME,
-                CloudDBZoneConfig.CloudDBZoneSyncProperty.CLOUDDBZONE_CLOUD_CACHE,
-                CloudDBZoneConfig.CloudDBZoneAccessProperty.CLOUDDBZONE_PUBLIC
-        );
+        CloudDBZone[] zones = new CloudDBZone[shardCount];
+        for (int shard = 0; shard < zones.length; shard++) {
+            CloudDBZoneConfig config = new CloudDBZoneConfig(
+                    getZoneName(shard),
+                    CloudDBZoneConfig.CloudDBZoneSyncProperty.CLOUDDBZONE_CLOUD_CACHE,
+                    CloudDBZoneConfig.CloudDBZoneAccessProperty.CLOUDDBZONE_PUBLIC
+            );
 
-        config.setPersistenceEnabled(true);
-        try {
-            cloudDBZone = agConnectCloudDB.openCloudDBZone(config, true);
-        } catch (AGConnectCloudDBException e) {
-            Log.w(CLOUD_TAG, "openCloudDBZone: " + e.getMessage());
+            config.setPersistenceEnabled(true);
+            try {
+                zones[shard] = getCloudDBSdk().openCloudDBZone(config, true);
+            } catch (AGConnectCloudDBException e) {
+                Log.w(CLOUD_TAG, "openCloudDBZone " + getZoneName(shard) + ": " + e.getMessage());
+                //books of the missing shard would look deleted, so no shard is used
+                closeZones(zones);
+                return;
+            }
+        }
+        BookZone[] bookZones = new BookZone[zones.length];
+        for (int shard = 0; shard < zones.length; shard++) {
+            bookZones[shard] = new SdkBookZone(zones[shard]);
         }
+        openedZones = zones;
+        cloudDBZone = zones[0];
+        shardZones = bookZones;
+        subscribeSnapshot();
+        replayOutbox();
     }
 
+    private void closeZones(CloudDBZone[] zones) {
+        for (CloudDBZone zone : zones) {
+            if (zone == null) {
+                continue;
+            }
+            try {
+                getCloudDBSdk().closeCloudDBZone(zone);
+            } catch (AGConnectCloudDBException e) {
+                Log.w(CLOUD_TAG, "closeCloudDBZone: " + e.getMessage());
+            }
+        }
+    }
 
     /**
-     * Call AGConnectCloudDB.closeCloudDBZone
+     * Read the books of the local cache into the synced books right after the zone is opened,
+     * so the first getAll shows them without waiting for another local query
      */
-    public void closeCloudDBZone() {
-        try {
-            register.remove();
-            agConnectCloudDB.closeCloudDBZone(cloudDBZone);
-        } catch (AGConnectCloudDBException e) {
-            Log.w(CLOUD_TAG, "closeCloudDBZone: " + e.getMessage());
+    private void preloadLocalCache() {
+        if (!isZoneOpened() || queryPolicy != QueryPolicy.CACHE_THEN_NETWORK
+                || bookCache.size() > 0 || getBookIndex() == 0) {
+            return;
         }
+        StartupTimeline.Phase phase = startupTimeline.begin("localCache.preload");
+        CompletableFuture<Void> preload = new CompletableFuture<>();
+        localCachePreload.set(preload);
+        ShardedQueryTask localTask = executeQuery(
+                shard -> query(),
+                CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_LOCAL_ONLY, null);
+
+        localTask.addOnSuccessListener(snapshot -> dispatcher.process(() -> {
+            mergeQueryResult(snapshot);
+            phase.end();
+            preload.complete(null);
+        })).addOnFailureListener(e -> {
+            Log.w(CLOUD_TAG, "Local cache preload is failed: " + e.getMessage());
+            phase.end();
+            preload.complete(null);
+        });
     }
 
     /**
-     * Query all books in storage from cloud side with CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY
+     * Queue writes which were not acknowledged before the previous process died.
+     * They stay recovered until the cloud accepts them, so a replay which fails, e.g. before
+     * the user signed in, is repeated on the next open or sign-in
      */
-    public void getAll() {
-        if (cloudDBZone == null) {
-            Log.w(CLOUD_TAG, "CloudDBZone is null, try re-open it");
+    private void replayOutbox() {
+        if (outbox == null || !isZoneOpened()) {
             return;
         }
-        CloudDBZoneTask<CloudDBZoneSnapshot<Book>> queryTask = cloudDBZone.executeQuery(
-                CloudDBZoneQuery.where(Book.class),
-                CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY);
+        List<BookOutbox.Entry> recovered = outbox.getRecovered();
+        for (BookOutbox.Entry entry : recovered) {
+            if (entry.isDelete()) {
+                writeQueue.delete(entry.getBook());
+            } else {
+                writeQueue.upsert(entry.getBook(), false);
+            }
+        }
+        if (!recovered.isEmpty()) {
+            Log.i(CLOUD_TAG, "Replayed " + recovered.size() + " pending writes from the outbox");
+        }
+    }
 
-        queryTask.addOnSuccessListener(snapshot -> {
-            processQueryResult(snapshot);
-        }).addOnFailureListener(e -> {
-            Log.e(CLOUD_TAG, Objects.requireNonNull(e.getMessage()));
+    /**
+     * Subscribe to changes of books in the zone of every shard,
+     * every snapshot is turned into a diff keyed by id for UiCallBack.onChanged.
+     * The whole table of the zone is subscribed, so inserts, edits and deletes of any book arrive;
+     * upserted books equal to the synced ones are dropped from the diff, so a snapshot which
+     * repeats synced books doesn't reach the UI.
+     * A failed subscription is retried with SUBSCRIBE_RETRY_POLICY
+     */
+    private void subscribeSnapshot() {
+        BookZone[] zones = shardZones;
+        if (zones.length == 0) {
+            return;
+        }
+        int round;
+        synchronized (subscriptionLock) {
+            removeRegisters();
+            round = ++subscription;
+            registers = new BookZone.Registration[zones.length];
+        }
+        for (int shard = 0; shard < zones.length; shard++) {
+            subscribeShard(round, shard, zones[shard], 1);
+        }
+    }
+
+    /**
+     * Subscribe to the zone of a shard, replacing its previous subscription of the same round
+     *
+     * @param round         subscription round, the call is dropped if the zone was closed or
+     *                      subscribed again since
+     * @param shard         shard index
+     * @param zone    zone of the shard, it holds only the books of the shard
+     * @param attempt number of this attempt, starting from 1
+     */
+    private void subscribeShard(int round, int shard, BookZone zone, int attempt) {
+        synchronized (subscriptionLock) {
+            if (round != subscription) {
+                return;
+            }
+            if (registers[shard] != null) {
+                registers[shard].remove();
+                registers[shard] = null;
+            }
+        }
+        BookZone.Registration register;
+        try {
+            register = zone.subscribeSnapshot(query(), (snapshot, e) -> {
+                if (e != null) {
+                    Log.w(CLOUD_TAG, "onSnapshot: " + e.getMessage());
+                    retrySubscription(round, shard, zone, attempt);
+                    return;
+                }
+                dispatcher.processDroppable(() -> processSnapshot(snapshot), snapshot::release);
+            });
+        } catch (AGConnectCloudDBException e) {
+            Log.w(CLOUD_TAG, "subscribeSnapshot " + getZoneName(shard) + ": " + e.getMessage());
+            retrySubscription(round, shard, zone, attempt);
+            return;
+        }
+        synchronized (subscriptionLock) {
+            if (round == subscription) {
+                registers[shard] = register;
+                return;
+            }
+        }
+        //the zone was closed while subscribing
+        register.remove();
+    }
+
+    private void retrySubscription(int round, int shard, BookZone zone, int attempt) {
+        boolean scheduled = retryExecutor.retryLater(SUBSCRIBE_RETRY_POLICY, attempt, () -> zoneExecutor.execute(
+                () -> subscribeShard(round, shard, zone, attempt + 1)));
+        if (!scheduled) {
+            Log.w(CLOUD_TAG, "Snapshot subscription of " + getZoneName(shard)
+                    + " is given up, remote changes are seen on refresh");
+        }
+    }
+
+    private void removeRegisters() {
+        synchronized (subscriptionLock) {
+            subscription++;
+            for (BookZone.Registration register : registers) {
+                if (register != null) {
+                    register.remove();
+                }
+            }
+            registers = new BookZone.Registration[0];
+        }
+    }
+
+    /**
+     * Subscribe to snapshots and replay the outbox again once the user signed in again,
+     * both fail while no user is signed in. Does nothing while the zone is not opened,
+     * acquireZone after the sign-in does both
+     */
+    public void onSignedIn() {
+        zoneExecutor.execute(() -> {
+            subscribeSnapshot();
+            replayOutbox();
         });
     }
 
-    public void processQueryResult(CloudDBZoneSnapshot<Book> snapshot) {
-        CloudDBZoneObjectList<Book> bookInfoCursor = snapshot.getSnapshotObjects();
-        List<Book> bookList = new ArrayList();
+    /**
+     * Turn upserted and deleted objects of the snapshot into a diff keyed by id
+     *
+     * @param snapshot changes reported by the subscription
+     */
+    private void processSnapshot(BookZone.Snapshot snapshot) {
+        BookDiff diff = new BookDiff();
+        int maxId = 0;
         try {
-            while (bookInfoCursor.hasNext()) {
-                Book book = bookInfoCursor.next();
-                bookList.add(book);
-                updateBookIndex(book);
+            ShardedSnapshot.Cursor upserted = snapshot.getUpsertedObjects();
+            while (upserted.hasNext()) {
+                Book book = upserted.next();
+                if (book.getId() == null) {
+                    continue;
+                }
+                Book current = bookCache.peek(book.getId());
+                if (current == null) {
+                    diff.addInserted(book);
+                } else if (!BookDiff.sameContent(current, book)) {
+                    diff.addUpdated(book);
+                }
+                putSyncedBook(book);
+                maxId = Math.max(maxId, book.getId());
+            }
+            ShardedSnapshot.Cursor deleted = snapshot.getDeletedObjects();
+            while (deleted.hasNext()) {
+                Book book = deleted.next();
+                if (book.getId() != null && bookCache.peek(book.getId()) != null) {
+                    diff.addDeleted(book);
+                    removeSyncedBook(book.getId());
+                }
             }
         } catch (AGConnectCloudDBException e) {
-            Log.w(CLOUD_TAG, "processQueryResult: " + e.getMessage());
+            Log.w(CLOUD_TAG, "processSnapshot: " + e.getMessage());
         }
         snapshot.release();
-        uiCallBack.onStart(bookList);
+        idAllocator.observe(maxId);
+        if (!diff.isEmpty()) {
+            diff.sort();
+            saveHighWaterMark();
+            dispatcher.postChanged(diff);
+        }
+    }
+
+
+    /**
+     * Call AGConnectCloudDB.closeCloudDBZone for the zone of every shard,
+     * prefer releaseZone when the zone was acquired.
+     * Queued writes are sent first and the zones are closed once they are completed or
+     * CLOSE_FLUSH_TIMEOUT_MILLIS elapsed, writes still unfinished then stay in the outbox.
+     * Must not be called on the main thread, which delivers the write results
+     */
+    public void closeCloudDBZone() {
+        try {
+            if (!writeQueue.awaitFlush(CLOSE_FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                Log.w(CLOUD_TAG, "Pending writes are not completed, the zone is closed anyway");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        removeRegisters();
+        for (Repository<?> repository : repositories.values()) {
+            repository.unsubscribe();
+        }
+        CloudDBZone[] zones = openedZones;
+        shardZones = new BookZone[0];
+        cloudDBZone = null;
+        openedZones = new CloudDBZone[0];
+        closeZones(zones);
+        getAllRequests.invalidate();
+    }
+
+    /**
+     * Query all books in storage.
+     * With QueryPolicy.CACHE_THEN_NETWORK books of the local persisted cache are delivered first
+     * and the cloud result is reconciled in the background, only differences are passed to
+     * UiCallBack.onChanged.
+     * With delta sync only books newer than the high-water mark are fetched from the cloud
+     * and merged into the already synced books, otherwise the whole table is fetched
+     * with CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY.
+     * Remote edits and deletes of older books arrive through the snapshot subscription while the
+     * zone is opened. The delta query can't see the ones made while it wasn't, also for books in
+     * the local cache after a cold start, so once per full sync interval
+     * (see setFullSyncInterval) the whole table is fetched and reconciled instead.
+     * Only the first result after addCallBacks is passed to UiCallBack.onStart as a whole list,
+     * later ones are passed to UiCallBack.onChanged as differences
+     */
+    public void getAll() {
+        getAll(null);
     }
 
     /**
-     * Delete book
+     * Query all books in storage, see getAll().
+     * Calls made while a getAll is in flight join it instead of starting another query,
+     * and calls within the freshness window after a finished getAll are answered from the synced
+     * books, which the snapshot subscription keeps up to date
      *
-     * @param bookList books selected by user
+     * @param callBack callback to receive the synced books once the query is finished, may be null
      */
-    public void deleteBook(List<Book> bookList) {
-        if (cloudDBZone == null) {
+    public void getAll(BookListCallBack callBack) {
+        if (!isZoneOpened()) {
+            if (runWhenZoneReady(() -> getAll(callBack))) {
+                return;
+            }
             Log.w(CLOUD_TAG, "CloudDBZone is null, try re-open it");
+            if (callBack != null) {
+                List<Book> books = getSyncedBooks();
+                dispatcher.post(() -> callBack.onBooks(books));
+            }
             return;
         }
-        CloudDBZoneTask<Integer> deleteTask = cloudDBZone.executeDelete(bookList);
-        deleteTask.addOnSuccessListener(integer -> {
-            Log.d(CLOUD_TAG, "Item deleted");
-        }).addOnFailureListener(e -> {
-            Log.e(CLOUD_TAG, "Delete book is failed: " + e.getMessage());
-        });
+        RequestCoalescer.Join join = getAllRequests.join(ALL_BOOKS, callBack);
+        if (join == RequestCoalescer.Join.JOINED) {
+            metrics.onCoalesced(CloudDBMetrics.Operation.QUERY);
+            return;
+        }
+        if (join == RequestCoalescer.Join.FRESH) {
+            metrics.onCoalesced(CloudDBMetrics.Operation.QUERY);
+            //the UI already shows the synced books, the subscription posts their changes
+            dispatcher.process(() -> {
+                if (!listShown) {
+                    postFirstFill();
+                }
+                if (callBack != null) {
+                    List<Book> books = getSyncedBooks();
+                    dispatcher.post(() -> callBack.onBooks(books));
+                }
+            });
+            return;
+        }
+        CompletableFuture<Void> preload = localCachePreload.getAndSet(null);
+        if (preload != null) {
+            //the local cache is read while the zone is opened, show it and reconcile with the cloud
+            preload.whenComplete((result, e) -> dispatcher.process(() -> {
+                postFirstFill();
+                syncFromCloud(true);
+            }));
+            return;
+        }
+        if (queryPolicy == QueryPolicy.CACHE_THEN_NETWORK && bookCache.size() == 0) {
+            ShardedQueryTask localTask = executeQuery(
+                    shard -> query(),
+                    CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_LOCAL_ONLY, null);
+
+            localTask.addOnSuccessListener(snapshot -> dispatcher.process(() -> {
+                mergeQueryResult(snapshot);
+                postFirstFill();
+                syncFromCloud(true);
+            })).addOnFailureListener(e -> {
+                Log.w(CLOUD_TAG, "Local cache query is failed: " + e.getMessage());
+                syncFromCloud(false);
+            });
+            return;
+        }
+        syncFromCloud(false);
     }
 
     /**
-     * Insert book
+     * Finish the getAll in flight and pass the synced books to the calls which joined it
      *
-     * @param book book added or modified from local
+     * @param success true if the cloud query is succeeded, then the freshness window starts
      */
-    public void insertBook(Book book) {
-        if (cloudDBZone == null) {
-            Log.w(CLOUD_TAG, "CloudDBZone is null, try re-open it");
+    private void onGetAllDone(boolean success) {
+        List<BookListCallBack> waiters = getAllRequests.complete(ALL_BOOKS, success);
+        if (waiters.isEmpty()) {
             return;
         }
-
-        CloudDBZoneTask<Integer> insertTask  = cloudDBZone.executeUpsert(book);
-        insertTask.addOnSuccessListener(integer -> {
-            Log.d(CLOUD_TAG, "inserted");
-            uiCallBack.onAddItem(book);
-        }).addOnFailureListener(e -> {
-            Log.e(CLOUD_TAG, "onFailure: " + e.getMessage());
+        List<Book> books = getSyncedBooks();
+        dispatcher.post(() -> {
+            for (BookListCallBack waiter : waiters) {
+                waiter.onBooks(books);
+            }
         });
     }
 
     /**
-     * Get max id of books
+     * Post the synced books as a whole list for the first fill of the UI callback. Later results
+     * are posted as diffs built on the result thread, so the main thread doesn't diff the whole
+     * list on every refresh
+     */
+    private void postFirstFill() {
+        listShown = true;
+        dispatcher.postStart(getSyncedBooks());
+    }
+
+    /**
+     * Set how long the result of getAll is answered to repeated calls without a query
      *
-     * @return max book id
+     * @param freshnessMillis freshness window, 0 to query on every call
      */
-    public int getBookIndex() {
-        try {
-            readWriteLock.readLock().lock();
-            return bookIndex;
-        } finally {
-            readWriteLock.readLock().unlock();
+    public void setGetAllFreshness(long freshnessMillis) {
+        getAllRequests.setFreshnessMillis(freshnessMillis);
+    }
+
+    /**
+     * Get books from cloud side
+     *
+     * @param reconcile true to pass only differences to UiCallBack.onChanged, false to pass
+     *                  the whole list to UiCallBack.onStart unless the UI got one already
+     */
+    private void syncFromCloud(boolean reconcile) {
+        if (!deltaSyncEnabled || isFullSyncDue()) {
+            ShardedQueryTask queryTask = executeQuery(
+                    shard -> query(),
+                    CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY, null);
+
+            queryTask.addOnSuccessListener(snapshot -> dispatcher.process(() -> {
+                try {
+                    if (!reconcile && !listShown) {
+                        processQueryResult(snapshot);
+                        onFullSynced();
+                        return;
+                    }
+                    BookDiff diff = new BookDiff();
+                    if (reconcileQueryResult(snapshot, true, diff)) {
+                        onFullSynced();
+                    }
+                    onReconciled(diff);
+                } finally {
+                    onGetAllDone(true);
+                }
+            })).addOnFailureListener(e -> {
+                onGetAllDone(false);
+                Log.e(CLOUD_TAG, Objects.requireNonNull(e.getMessage()));
+            });
+            return;
+        }
+
+        int highWaterMark = getBookIndex();
+        if (bookCache.size() == 0 && highWaterMark > 0) {
+            //Cold start: books up to the high-water mark are already in the local cache
+            ShardedQueryTask localTask = executeQuery(
+                    shard -> query().idAtMost(highWaterMark),
+                    CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_LOCAL_ONLY, null);
+
+            localTask.addOnSuccessListener(snapshot -> dispatcher.process(() -> {
+                mergeQueryResult(snapshot);
+                getDelta(highWaterMark, reconcile);
+            })).addOnFailureListener(e -> {
+                Log.w(CLOUD_TAG, "Local cache query is failed: " + e.getMessage());
+                getDelta(0, reconcile);
+            });
+            return;
         }
+        getDelta(highWaterMark, reconcile);
     }
 
-    public void updateBookIndex(Book book) {
-        try {
-            readWriteLock.writeLock().lock();
-            if (book.getId() != null && bookIndex < book.getId()) {
-                bookIndex = book.getId();
+    /**
+     * Query books with id above the high-water mark from cloud side
+     *
+     * @param highWaterMark max book id already synced
+     * @param reconcile     true to pass only differences to UiCallBack.onChanged, as is done
+     *                      anyway once the UI got a whole list
+     */
+    private void getDelta(int highWaterMark, boolean reconcile) {
+        ShardedQueryTask queryTask = executeQuery(
+                shard -> query().idGreaterThan(highWaterMark),
+                CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY, null);
+
+        queryTask.addOnSuccessListener(snapshot -> dispatcher.process(() -> {
+            try {
+                if (reconcile || listShown) {
+                    BookDiff diff = new BookDiff();
+                    reconcileQueryResult(snapshot, false, diff);
+                    onReconciled(diff);
+                    return;
+                }
+                mergeQueryResult(snapshot);
+                saveHighWaterMark();
+                postFirstFill();
+            } finally {
+                onGetAllDone(true);
             }
-        } finally {
-            readWriteLock.writeLock().unlock();
-        }
+        })).addOnFailureListener(e -> {
+            onGetAllDone(false);
+            Log.e(CLOUD_TAG, Objects.requireNonNull(e.getMessage()));
+        });
     }
 
     /**
-     * Add a callback to update book info list
+     * Merge a cloud query result into the synced books and collect the differences
      *
-     * @param uiCallBack callback to update book list
+     * @param snapshot   query result
+     * @param fullResult true if the result holds every book, then missing books are deleted.
+     *                   A result which can't be read to the end deletes nothing
+     * @param diff       receives the differences between synced books and the result
+     * @return false if the result can't be read to the end
      */
-    public void addCallBacks(UiCallBack uiCallBack) {
-        this.uiCallBack = uiCallBack;
+    private boolean reconcileQueryResult(ShardedSnapshot snapshot, boolean fullResult, BookDiff diff) {
+        List<Book> before = fullResult ? bookCache.getBooksById() : Collections.emptyList();
+        //ids may be sparse or negative, so they are not used as indexes
+        Set<Integer> seenIds = fullResult ? new HashSet<>(before.size() * 2) : Collections.emptySet();
+        ShardedSnapshot.Cursor bookInfoCursor = snapshot.getSnapshotObjects();
+        int rows = 0;
+        long bytes = 0;
+        int maxId = 0;
+        boolean complete = false;
+        try {
+            while (bookInfoCursor.hasNext()) {
+                Book book = bookInfoCursor.next();
+                rows++;
+                bytes += CloudDBMetrics.estimateBytes(book);
+                if (book.getId() == null) {
+                    continue;
+                }
+                if (fullResult) {
+                    seenIds.add(book.getId());
+                }
+                maxId = Math.max(maxId, book.getId());
+                Book current = bookCache.peek(book.getId());
+                if (current == null) {
+                    diff.addInserted(book);
+                } else if (!BookDiff.sameContent(current, book)) {
+                    diff.addUpdated(book);
+                }
+                putSyncedBook(book);
+            }
+            complete = true;
+        } catch (AGConnectCloudDBException e) {
+            Log.w(CLOUD_TAG, "reconcileQueryResult: " + e.getMessage());
+        }
+        snapshot.release();
+        idAllocator.observe(maxId);
+        metrics.addRows(CloudDBMetrics.Operation.QUERY, rows, bytes);
+        if (!complete) {
+            //books after the failed row weren't read, they are not missing on cloud side
+            diff.sort();
+            return false;
+        }
+        for (Book book : before) {
+            if (!seenIds.contains(book.getId())) {
+                diff.addDeleted(book);
+                removeSyncedBook(book.getId());
+            }
+        }
+        diff.sort();
+        return true;
+    }
+
+    /**
+     * Fetch every book and pass the differences to UiCallBack.onChanged, in place of snapshots
+     * dropped by the dispatcher. A failure makes the next getAll reconcile the whole table
+     */
+    private void reconcileAll() {
+        if (!isZoneOpened()) {
+            return;
+        }
+        ShardedQueryTask queryTask = executeQuery(
+                shard -> query(),
+                CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY, null);
+
+        queryTask.addOnSuccessListener(snapshot -> dispatcher.process(() -> {
+            BookDiff diff = new BookDiff();
+            if (reconcileQueryResult(snapshot, true, diff)) {
+                onFullSynced();
+            } else {
+                lastFullSyncMillis = 0;
+            }
+            onReconciled(diff);
+        })).addOnFailureListener(e -> {
+            Log.w(CLOUD_TAG, "Reconcile of dropped snapshots is failed: " + e.getMessage());
+            lastFullSyncMillis = 0;
+        });
+    }
+
+    private void onReconciled(BookDiff diff) {
+        saveHighWaterMark();
+        if (!diff.isEmpty()) {
+            dispatcher.postChanged(diff);
+        }
+    }
+
+    /**
+     * Set how getAll combines the local persisted cache and the cloud
+     *
+     * @param queryPolicy query policy
+     */
+    public void setQueryPolicy(QueryPolicy queryPolicy) {
+        this.queryPolicy = queryPolicy;
+    }
+
+    /**
+     * Check whether books were synced before, so they can be read from the local cache.
+     * The answer needs the restored high-water mark, so it is delivered on the main thread
+     * once init is finished
+     *
+     * @param callBack called with true if the high-water mark is known
+     */
+    public void hasLocalData(LocalDataCallBack callBack) {
+        runAfterInit(() -> dispatcher.post(() -> callBack.onLocalData(getBookIndex() > 0)));
+    }
+
+    /**
+     * Query one page of books ordered by id from cloud side.
+     * Every zone returns its own first page and the pages are merged by id, the rest is dropped.
+     * The page is merged into the synced books and its snapshot is released before
+     * the callback is called, so only one page is held by the cursor at a time
+     *
+     * @param afterId  id of the last book of the previous page, 0 for the first page
+     * @param pageSize max books count in the page
+     * @param callBack callback to receive the page
+     */
+    public void queryPage(int afterId, int pageSize, PageCallBack callBack) {
+        if (!isZoneOpened()) {
+            if (runWhenZoneReady(() -> queryPage(afterId, pageSize, callBack))) {
+                return;
+            }
+            Log.w(CLOUD_TAG, "CloudDBZone is null, try re-open it");
+            //reported like a failed query, so the caller retries later
+            dispatcher.post(() -> callBack.onPage(Collections.emptyList(), true));
+            return;
+        }
+        ShardedQueryTask queryTask = executeQuery(
+                shard -> query().idGreaterThan(afterId).orderById(false).limit(pageSize),
+                CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY, ShardedSnapshot.BY_ID);
+
+        queryTask.addOnSuccessListener(snapshot -> dispatcher.process(() -> {
+            List<Book> page = new ArrayList<>(pageSize);
+            ShardedSnapshot.Cursor bookInfoCursor = snapshot.getSnapshotObjects();
+            long bytes = 0;
+            int maxId = 0;
+            try {
+                while (page.size() < pageSize && bookInfoCursor.hasNext()) {
+                    Book book = bookInfoCursor.next();
+                    page.add(book);
+                    if (book.getId() != null) {
+                        putSyncedBook(book);
+                        maxId = Math.max(maxId, book.getId());
+                    }
+                    bytes += CloudDBMetrics.estimateBytes(book);
+                }
+            } catch (AGConnectCloudDBException e) {
+                Log.w(CLOUD_TAG, "queryPage: " + e.getMessage());
+            }
+            snapshot.release();
+            idAllocator.observe(maxId);
+            metrics.addRows(CloudDBMetrics.Operation.QUERY, page.size(), bytes);
+            saveHighWaterMark();
+            dispatcher.post(() -> callBack.onPage(page, page.size() == pageSize));
+        })).addOnFailureListener(e -> {
+            Log.e(CLOUD_TAG, "Query page is failed: " + e.getMessage());
+            //keep hasMore, so the page is requested again on the next scroll
+            dispatcher.post(() -> callBack.onPage(Collections.emptyList(), true));
+        });
+    }
+
+    /**
+     * Query the first books ordered by bookName from cloud side.
+     * Every zone returns its own first books and the results are merged by bookName
+     *
+     * @param limit    max books count
+     * @param callBack callback to receive books ordered by bookName
+     */
+    public void queryByName(int limit, BookListCallBack callBack) {
+        query().orderByName(false).limit(limit).execute(callBack);
+    }
+
+    /**
+     * Start a query which filters, orders and limits books on cloud side, see BookQuery
+     *
+     * @return new query of all books
+     */
+    public BookQuery query() {
+        return new BookQuery(this);
+    }
+
+    /**
+     * Execute a query on every zone and merge the results in the order of the query
+     *
+     * @param query    filters, order and limit
+     * @param callBack callback to receive books
+     */
+    void executeBookQuery(BookQuery query, BookListCallBack callBack) {
+        if (!isZoneOpened()) {
+            if (runWhenZoneReady(() -> executeBookQuery(query, callBack))) {
+                return;
+            }
+            Log.w(CLOUD_TAG, "CloudDBZone is null, try re-open it");
+            dispatcher.post(() -> callBack.onBooks(Collections.emptyList()));
+            return;
+        }
+        int limit = query.getLimit();
+        ShardedQueryTask queryTask = executeQuery(shard -> query,
+                CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY, query.getOrder());
+
+        queryTask.addOnSuccessListener(snapshot -> dispatcher.process(() -> {
+            List<Book> books = new ArrayList<>();
+            ShardedSnapshot.Cursor bookInfoCursor = snapshot.getSnapshotObjects();
+            long bytes = 0;
+            int maxId = 0;
+            try {
+                while ((limit == 0 || books.size() < limit) && bookInfoCursor.hasNext()) {
+                    Book book = bookInfoCursor.next();
+                    books.add(book);
+                    if (book.getId() != null) {
+                        putSyncedBook(book);
+                        maxId = Math.max(maxId, book.getId());
+                    }
+                    bytes += CloudDBMetrics.estimateBytes(book);
+                }
+            } catch (AGConnectCloudDBException e) {
+                Log.w(CLOUD_TAG, "executeBookQuery: " + e.getMessage());
+            }
+            snapshot.release();
+            idAllocator.observe(maxId);
+            metrics.addRows(CloudDBMetrics.Operation.QUERY, books.size(), bytes);
+            dispatcher.post(() -> callBack.onBooks(books));
+        })).addOnFailureListener(e -> {
+            Log.e(CLOUD_TAG, "Book query is failed: " + e.getMessage());
+            dispatcher.post(() -> callBack.onBooks(Collections.emptyList()));
+        });
+    }
+
+    /**
+     * Call BookZone.executeQuery of every shard in parallel and record the latency of the slowest
+     * one and failures, rows are counted while the result is drained
+     *
+     * @param queryOfShard builds the query of a shard, null to skip the shard
+     * @param policy       query policy
+     * @param order        order of the shard queries to merge them in, null if unordered
+     * @return task completed when every shard answered
+     */
+    private ShardedQueryTask executeQuery(IntFunction<BookQuery> queryOfShard,
+            CloudDBZoneQuery.CloudDBZoneQueryPolicy policy, Comparator<Book> order) {
+        long startTime = metrics.onStart(CloudDBMetrics.Operation.QUERY);
+        BookZone[] zones = shardZones;
+        BookQuery[] queries = new BookQuery[zones.length];
+        int queried = 0;
+        for (int shard = 0; shard < zones.length; shard++) {
+            queries[shard] = queryOfShard.apply(shard);
+            if (queries[shard] != null) {
+                queried++;
+            }
+        }
+        ShardedQueryTask queryTask = new ShardedQueryTask(queried, order);
+        int index = 0;
+        for (int shard = 0; shard < zones.length; shard++) {
+            if (queries[shard] != null) {
+                zones[shard].executeQuery(queries[shard], policy, queryTask.getShardCompletion(index++));
+            }
+        }
+        queryTask.addOnSuccessListener(snapshot -> {
+            metrics.onSuccess(CloudDBMetrics.Operation.QUERY, startTime, 0, 0);
+        }).addOnFailureListener(e -> {
+            metrics.onFailure(CloudDBMetrics.Operation.QUERY, startTime, e);
+        });
+        return queryTask;
+    }
+
+    private RetryExecutor.Completion<Integer> recordWrite(CloudDBMetrics.Operation operation, List<Book> books,
+            RetryExecutor.Completion<Integer> completion) {
+        long startTime = metrics.onStart(operation);
+        return (result, e) -> {
+            if (e == null) {
+                long bytes = 0;
+                for (Book book : books) {
+                    bytes += CloudDBMetrics.estimateBytes(book);
+                }
+                metrics.onSuccess(operation, startTime, books.size(), bytes);
+            } else {
+                metrics.onFailure(operation, startTime, e);
+            }
+            completion.onComplete(result, e);
+        };
+    }
+
+    public void processQueryResult(ShardedSnapshot snapshot) {
+        clearSyncedBooks();
+        mergeQueryResult(snapshot);
+        saveHighWaterMark();
+        postFirstFill();
+    }
+
+    /**
+     * Merge books of the snapshot into the synced books and release the snapshot
+     *
+     * @param snapshot query result
+     */
+    private void mergeQueryResult(ShardedSnapshot snapshot) {
+        ShardedSnapshot.Cursor bookInfoCursor = snapshot.getSnapshotObjects();
+        int rows = 0;
+        long bytes = 0;
+        int maxId = 0;
+        try {
+            while (bookInfoCursor.hasNext()) {
+                Book book = bookInfoCursor.next();
+                if (book.getId() != null) {
+                    putSyncedBook(book);
+                    maxId = Math.max(maxId, book.getId());
+                }
+                rows++;
+                bytes += CloudDBMetrics.estimateBytes(book);
+            }
+        } catch (AGConnectCloudDBException e) {
+            Log.w(CLOUD_TAG, "processQueryResult: " + e.getMessage());
+        }
+        snapshot.release();
+        idAllocator.observe(maxId);
+        metrics.addRows(CloudDBMetrics.Operation.QUERY, rows, bytes);
+    }
+
+    /**
+     * Get synced books ordered by id
+     *
+     * @return new list of synced books
+     */
+    private List<Book> getSyncedBooks() {
+        return bookCache.getBooksById();
+    }
+
+    private void putSyncedBook(Book book) {
+        bookCache.put(book);
+        searchIndex.put(book);
+        bookTracker.markClean(book);
+    }
+
+    private void removeSyncedBook(int id) {
+        bookCache.remove(id);
+        searchIndex.remove(id);
+        bookTracker.forget(id);
+    }
+
+    private void clearSyncedBooks() {
+        bookCache.clear();
+        searchIndex.clear();
+        bookTracker.clear();
+    }
+
+    private void saveHighWaterMark() {
+        if (preferences != null) {
+            preferences.edit().putInt(HIGH_WATER_MARK_KEY, getBookIndex()).apply();
+        }
+    }
+
+    /**
+     * Delete book, the delete is queued and sent with the next batch.
+     * Called before init is finished, it is queued behind init
+     *
+     * @param bookList books selected by user
+     */
+    public void deleteBook(List<Book> bookList) {
+        runAfterInit(() -> {
+            for (Book book : bookList) {
+                bookTracker.forget(book.getId());
+                if (outbox != null) {
+                    outbox.appendDelete(book);
+                }
+                if (!writeQueue.delete(book) && outbox != null) {
+                    outbox.ack(Collections.singletonList(book), true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Insert book, the upsert is queued and sent with the next batch.
+     * An upsert which changes no field since the last synced or queued state is skipped,
+     * edits of a book waiting in the queue are sent as one write.
+     * A book without id gets the next free id. Called before init is finished, it is queued
+     * behind init, so the id is allocated above the restored high-water mark
+     *
+     * @param book book added or modified from local
+     */
+    public void insertBook(Book book) {
+        runAfterInit(() -> {
+            if (book.getId() == null) {
+                book.setId(nextBookId());
+            }
+            if (!bookTracker.isDirty(book)) {
+                metrics.onAvoided(CloudDBMetrics.Operation.UPSERT);
+                return;
+            }
+            boolean isNew = bookCache.peek(book.getId()) == null;
+            if (outbox != null) {
+                outbox.appendUpsert(book);
+            }
+            if (writeQueue.upsert(book, isNew)) {
+                metrics.onAvoided(CloudDBMetrics.Operation.UPSERT);
+            } else {
+                unconfirmedUpserts.merge(book.getId(), 1, Integer::sum);
+            }
+            bookTracker.markClean(book);
+        });
+    }
+
+    /**
+     * Update a book with optimistic concurrency. The cloud state is read before the write,
+     * and if another device changed the book since base was read, the merge strategy resolves
+     * the conflict locally and the merged book is written and shown, without a getAll round trip.
+     * CloudDBZone has no conditional upsert, so a write of another device between this read
+     * and the queued write still wins; the next update of the book merges it again
+     *
+     * @param base  version the edit started from, null for a new book
+     * @param local edited book
+     */
+    public void updateBook(BookVersion base, Book local) {
+        if (base == null || local.getId() == null || local.getId() != base.getId()) {
+            insertBook(local);
+            return;
+        }
+        if (!bookTracker.isDirty(local)) {
+            metrics.onAvoided(CloudDBMetrics.Operation.UPSERT);
+            return;
+        }
+        if (!isZoneOpened()) {
+            if (runWhenZoneReady(() -> updateBook(base, local))) {
+                return;
+            }
+            //offline, the write waits in the outbox and is sent as is
+            insertBook(local);
+            return;
+        }
+        int id = local.getId();
+        int owner = shardFunction.shardOf(id, shardCount);
+        ShardedQueryTask queryTask = executeQuery(
+                shard -> shard == owner ? query().idEqualTo(id) : null,
+                CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY, null);
+
+        queryTask.addOnSuccessListener(snapshot -> dispatcher.process(() -> {
+            Book remote = null;
+            try {
+                ShardedSnapshot.Cursor bookInfoCursor = snapshot.getSnapshotObjects();
+                if (bookInfoCursor.hasNext()) {
+                    remote = bookInfoCursor.next();
+                    metrics.addRows(CloudDBMetrics.Operation.QUERY, 1, CloudDBMetrics.estimateBytes(remote));
+                }
+            } catch (AGConnectCloudDBException e) {
+                snapshot.release();
+                Log.w(CLOUD_TAG, "Book " + id + " can't be checked for conflicts, it is written as is: "
+                        + e.getMessage());
+                insertBook(local);
+                return;
+            }
+            snapshot.release();
+            resolveUpdate(base, local, remote);
+        })).addOnFailureListener(e -> {
+            Log.w(CLOUD_TAG, "Book " + id + " can't be checked for conflicts, it is written as is: "
+                    + e.getMessage());
+            dispatcher.process(() -> insertBook(local));
+        });
+    }
+
+    /**
+     * Write the update if the cloud still has its base, otherwise merge it with the cloud state
+     */
+    private void resolveUpdate(BookVersion base, Book local, Book remote) {
+        //an own upsert in flight isn't on cloud side yet, edits of one device don't conflict
+        if (base.matches(remote) || unconfirmedUpserts.containsKey(local.getId())) {
+            insertBook(local);
+            return;
+        }
+        metrics.onConflict(CloudDBMetrics.Operation.UPSERT);
+        Log.d(CLOUD_TAG, "Book " + local.getId() + " was changed on cloud side, the update is merged");
+        if (remote != null) {
+            putSyncedBook(remote);
+        } else {
+            removeSyncedBook(local.getId());
+        }
+        Book merged = mergeStrategy.merge(base.getBase(), local, remote);
+        if (merged != null) {
+            //skipped by insertBook if the merge equals the cloud state
+            insertBook(merged);
+            dispatcher.postAddItem(merged);
+        } else if (remote != null) {
+            dispatcher.postAddItem(remote);
+        } else {
+            BookDiff diff = new BookDiff();
+            diff.addDeleted(local);
+            dispatcher.postChanged(diff);
+        }
+    }
+
+    /**
+     * Set how updateBook resolves books changed on cloud side since the edit started
+     *
+     * @param mergeStrategy strategy, e.g. BookMergeStrategy.FIELD_LAST_WRITER_WINS or a custom merge
+     */
+    public void setMergeStrategy(BookMergeStrategy mergeStrategy) {
+        this.mergeStrategy = Objects.requireNonNull(mergeStrategy);
+    }
+
+    /**
+     * Set the flush policy of the write queue
+     *
+     * @param maxBatchSize   pending writes count which triggers a flush
+     * @param maxDelayMillis max time a write waits before it is sent
+     */
+    public void setWriteBatchPolicy(int maxBatchSize, long maxDelayMillis) {
+        writeQueue.setPolicy(maxBatchSize, maxDelayMillis);
+    }
+
+    /**
+     * Set a callback notified about every flushed write batch
+     *
+     * @param batchCallBack callback for batch results, null to remove
+     */
+    public void setWriteBatchCallBack(BookWriteQueue.BatchCallBack batchCallBack) {
+        this.writeBatchCallBack = batchCallBack;
+    }
+
+    /**
+     * Set the retry policy of an operation type
+     *
+     * @param operation operation type
+     * @param policy    retry policy, RetryPolicy.NO_RETRY to disable retries
+     */
+    public void setRetryPolicy(CloudDBMetrics.Operation operation, RetryPolicy policy) {
+        retryExecutor.setPolicy(operation, policy);
+    }
+
+    /**
+     * Set how many failed writes may wait for a retry at the same time
+     *
+     * @param maxConcurrentRetries max waiting retries, further failures are reported at once
+     */
+    public void setMaxConcurrentRetries(int maxConcurrentRetries) {
+        retryExecutor.setMaxConcurrentRetries(maxConcurrentRetries);
+    }
+
+    /**
+     * Get the circuit breaker of CloudDBZone writes, e.g. to show the backend state
+     *
+     * @return circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return retryExecutor.getCircuitBreaker();
+    }
+
+    /**
+     * Send all queued writes now
+     */
+    public void flushWrites() {
+        writeQueue.flush();
+    }
+
+    /**
+     * Send all queued writes and wait for their results.
+     * Must not be called on the main thread
+     *
+     * @param timeout max time to wait
+     * @param unit    unit of the timeout
+     * @return true if all writes are completed
+     * @throws InterruptedException if the waiting thread was interrupted
+     */
+    public boolean awaitWrites(long timeout, TimeUnit unit) throws InterruptedException {
+        return writeQueue.awaitFlush(timeout, unit);
+    }
+
+    /**
+     * Get the sink which writes BookTransfer import batches straight to the zones.
+     * Batches bypass the write queue and the outbox, the import checkpoint makes them resumable;
+     * every batch is split by shard and each part is retried like queued upserts
+     *
+     * @return import sink
+     */
+    public BookTransfer.Sink getImportSink() {
+        return (books, completion) -> {
+            if (books.isEmpty()) {
+                completion.onComplete(0, null);
+                return;
+            }
+            Map<Integer, List<Book>> groups = new HashMap<>();
+            for (Book book : books) {
+                int shard = shardOf(book);
+                List<Book> group = groups.get(shard);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    groups.put(shard, group);
+                }
+                group.add(book);
+            }
+            int[] remaining = {groups.size()};
+            Exception[] error = {null};
+            for (List<Book> group : groups.values()) {
+                retryExecutor.<Integer>execute(CloudDBMetrics.Operation.UPSERT,
+                        attempt -> sendUpserts(group, attempt), (result, e) -> {
+                    if (e == null) {
+                        dispatcher.process(() -> onImported(group));
+                    }
+                    boolean done;
+                    synchronized (remaining) {
+                        if (e != null && error[0] == null) {
+                            error[0] = e;
+                        }
+                        done = --remaining[0] == 0;
+                    }
+                    if (done) {
+                        completion.onComplete(books.size(), error[0]);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Merge imported books into the synced books, the list gets one change event per batch
+     */
+    private void onImported(List<Book> books) {
+        BookDiff diff = new BookDiff();
+        int maxId = 0;
+        for (Book book : books) {
+            if (bookCache.peek(book.getId()) == null) {
+                diff.addInserted(book);
+            } else {
+                diff.addUpdated(book);
+            }
+            putSyncedBook(book);
+            maxId = Math.max(maxId, book.getId());
+        }
+        idAllocator.observe(maxId);
+        saveHighWaterMark();
+        dispatcher.postChanged(diff);
+    }
+
+    /**
+     * Get the source which reads BookTransfer export pages from cloud side,
+     * every zone returns its next books and the results are merged by id
+     *
+     * @return export source
+     */
+    public BookTransfer.Source getExportSource() {
+        return (afterId, count, completion) -> {
+            if (!isZoneOpened()) {
+                completion.onComplete(null, new IllegalStateException("CloudDBZone is null"));
+                return;
+            }
+            ShardedQueryTask queryTask = executeQuery(
+                    shard -> query().idGreaterThan(afterId).orderById(false).limit(count),
+                    CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY, ShardedSnapshot.BY_ID);
+
+            queryTask.addOnSuccessListener(snapshot -> executeOrFail(() -> {
+                List<Book> page = new ArrayList<>(count);
+                ShardedSnapshot.Cursor bookInfoCursor = snapshot.getSnapshotObjects();
+                long bytes = 0;
+                try {
+                    while (page.size() < count && bookInfoCursor.hasNext()) {
+                        Book book = bookInfoCursor.next();
+                        page.add(book);
+                        bytes += CloudDBMetrics.estimateBytes(book);
+                    }
+                } catch (AGConnectCloudDBException e) {
+                    snapshot.release();
+                    completion.onComplete(null, e);
+                    return;
+                }
+                snapshot.release();
+                metrics.addRows(CloudDBMetrics.Operation.QUERY, page.size(), bytes);
+                completion.onComplete(page, null);
+            }, e -> {
+                snapshot.release();
+                completion.onComplete(null, e);
+            })).addOnFailureListener(e -> completion.onComplete(null, e));
+        };
+    }
+
+    /**
+     * Run independent work on the dispatcher workers, or report that they are saturated
+     */
+    private void executeOrFail(Runnable task, Consumer<Exception> rejected) {
+        try {
+            dispatcher.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.accept(e);
+        }
+    }
+
+    private boolean sendUpserts(List<Book> books, RetryExecutor.Completion<Integer> completion) {
+        BookZone zone = getOwningZone(books.get(0));
+        if (zone == null) {
+            Log.w(CLOUD_TAG, "CloudDBZone is null, try re-open it");
+            return false;
+        }
+        zone.executeUpsert(books, recordWrite(CloudDBMetrics.Operation.UPSERT, books, completion));
+        return true;
+    }
+
+    private boolean sendDeletes(List<Book> books, RetryExecutor.Completion<Integer> completion) {
+        BookZone zone = getOwningZone(books.get(0));
+        if (zone == null) {
+            Log.w(CLOUD_TAG, "CloudDBZone is null, try re-open it");
+            return false;
+        }
+        zone.executeDelete(books, recordWrite(CloudDBMetrics.Operation.DELETE, books, completion));
+        return true;
+    }
+
+    /**
+     * Get the zone which owns the book, the write queue sends books of one shard per call
+     */
+    private BookZone getOwningZone(Book book) {
+        BookZone[] zones = shardZones;
+        if (zones.length == 0) {
+            return null;
+        }
+        return zones[shardOf(book)];
+    }
+
+    private void onBatchSuccess(BookWriteQueue.Batch batch) {
+        Log.d(CLOUD_TAG, "Batch written: " + batch.getUpserts().size() + " upserted, "
+                + batch.getDeletes().size() + " deleted");
+        if (outbox != null) {
+            outbox.ack(batch.getUpserts(), false);
+            outbox.ack(batch.getDeletes(), true);
+        }
+        for (Book book : batch.getDeletes()) {
+            removeSyncedBook(book.getId());
+        }
+        int maxId = 0;
+        for (Book book : batch.getUpserts()) {
+            putSyncedBook(book);
+            confirmUpsert(book.getId());
+            maxId = Math.max(maxId, book.getId());
+        }
+        idAllocator.observe(maxId);
+        saveHighWaterMark();
+        for (Book book : batch.getUpserts()) {
+            dispatcher.postAddItem(book);
+        }
+        BookWriteQueue.BatchCallBack callBack = writeBatchCallBack;
+        if (callBack != null) {
+            dispatcher.post(() -> callBack.onBatchSuccess(batch));
+        }
+    }
+
+    private void onBatchFailure(BookWriteQueue.Batch batch, Exception e) {
+        Log.e(CLOUD_TAG, "Write batch is failed: " + e.getMessage());
+        //the cloud doesn't have these states, so the next save must be sent even without changes
+        for (Book book : batch.getUpserts()) {
+            bookTracker.forget(book.getId());
+            confirmUpsert(book.getId());
+        }
+        BookWriteQueue.BatchCallBack callBack = writeBatchCallBack;
+        if (callBack != null) {
+            dispatcher.post(() -> callBack.onBatchFailure(batch, e));
+        }
+    }
+
+    private void confirmUpsert(int id) {
+        unconfirmedUpserts.computeIfPresent(id, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Get a synced book by id, read through to the cloud if it is not cached,
+     * concurrent reads of the same id share one query
+     *
+     * @param id       book id
+     * @param callBack callback to receive the book, null if there is no such book
+     */
+    public void getBook(int id, BookCallBack callBack) {
+        Book cached = bookCache.get(id);
+        if (cached != null) {
+            callBack.onBook(cached);
+            return;
+        }
+        if (!isZoneOpened()) {
+            if (runWhenZoneReady(() -> getBook(id, callBack))) {
+                return;
+            }
+            Log.w(CLOUD_TAG, "CloudDBZone is null, try re-open it");
+            dispatcher.post(() -> callBack.onBook(null));
+            return;
+        }
+        if (bookReads.join(id, callBack) == RequestCoalescer.Join.JOINED) {
+            //the same book is being read, share its result
+            metrics.onCoalesced(CloudDBMetrics.Operation.QUERY);
+            return;
+        }
+        int owner = shardFunction.shardOf(id, shardCount);
+        ShardedQueryTask queryTask = executeQuery(
+                shard -> shard == owner ? query().idEqualTo(id) : null,
+                CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY, null);
+
+        queryTask.addOnSuccessListener(snapshot -> dispatcher.process(() -> {
+            Book book = null;
+            try {
+                ShardedSnapshot.Cursor bookInfoCursor = snapshot.getSnapshotObjects();
+                if (bookInfoCursor.hasNext()) {
+                    book = bookInfoCursor.next();
+                    putSyncedBook(book);
+                    metrics.addRows(CloudDBMetrics.Operation.QUERY, 1, CloudDBMetrics.estimateBytes(book));
+                }
+            } catch (AGConnectCloudDBException e) {
+                Log.w(CLOUD_TAG, "getBook: " + e.getMessage());
+            }
+            snapshot.release();
+            onBookRead(id, book);
+        })).addOnFailureListener(e -> {
+            Log.e(CLOUD_TAG, "Query book is failed: " + e.getMessage());
+            onBookRead(id, null);
+        });
+    }
+
+    private void onBookRead(int id, Book book) {
+        List<BookCallBack> waiters = bookReads.complete(id, book != null);
+        if (waiters.isEmpty()) {
+            return;
+        }
+        dispatcher.post(() -> {
+            for (BookCallBack waiter : waiters) {
+                waiter.onBook(book);
+            }
+        });
+    }
+
+    /**
+     * Search synced books by words of bookName and description, see BookSearchIndex.
+     * Matches evicted from a bounded cache are read from the cloud with one query.
+     * The callback is always posted to the main thread, also when every match is cached
+     *
+     * @param query    text typed by user, every word must match a word or a word prefix of the book
+     * @param limit    max books count
+     * @param callBack callback to receive books, best match first
+     */
+    public void search(String query, int limit, BookListCallBack callBack) {
+        int[] ids = searchIndex.search(query, limit);
+        Book[] found = new Book[ids.length];
+        //missing ids by the shard which owns them
+        Map<Integer, List<Integer>> missing = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            found[i] = bookCache.peek(ids[i]);
+            if (found[i] == null) {
+                missing.computeIfAbsent(shardFunction.shardOf(ids[i], shardCount), shard -> new ArrayList<>())
+                        .add(ids[i]);
+            }
+        }
+        if (missing.isEmpty() || !isZoneOpened()) {
+            List<Book> books = compact(found);
+            dispatcher.post(() -> callBack.onBooks(books));
+            return;
+        }
+        ShardedQueryTask queryTask = executeQuery(shard -> {
+            List<Integer> shardIds = missing.get(shard);
+            return shardIds == null ? null : query().idIn(shardIds.toArray(new Integer[0]));
+        }, CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY, null);
+
+        queryTask.addOnSuccessListener(snapshot -> dispatcher.process(() -> {
+            Map<Integer, Book> fetched = new HashMap<>();
+            long bytes = 0;
+            try {
+                ShardedSnapshot.Cursor bookInfoCursor = snapshot.getSnapshotObjects();
+                while (bookInfoCursor.hasNext()) {
+                    Book book = bookInfoCursor.next();
+                    if (book.getId() != null) {
+                        fetched.put(book.getId(), book);
+                        putSyncedBook(book);
+                        bytes += CloudDBMetrics.estimateBytes(book);
+                    }
+                }
+            } catch (AGConnectCloudDBException e) {
+                Log.w(CLOUD_TAG, "search: " + e.getMessage());
+            }
+            snapshot.release();
+            metrics.addRows(CloudDBMetrics.Operation.QUERY, fetched.size(), bytes);
+            for (int i = 0; i < ids.length; i++) {
+                if (found[i] == null) {
+                    found[i] = fetched.get(ids[i]);
+                }
+            }
+            List<Book> books = compact(found);
+            dispatcher.post(() -> callBack.onBooks(books));
+        })).addOnFailureListener(e -> {
+            Log.e(CLOUD_TAG, "Search query is failed: " + e.getMessage());
+            List<Book> books = compact(found);
+            dispatcher.post(() -> callBack.onBooks(books));
+        });
+    }
+
+    private static List<Book> compact(Book[] books) {
+        List<Book> list = new ArrayList<>(books.length);
+        for (Book book : books) {
+            if (book != null) {
+                list.add(book);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Get the full-text index to read its size
+     *
+     * @return search index of synced books
+     */
+    public BookSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Get cached books ordered by the bookName index
+     *
+     * @return new list of books
+     */
+    public List<Book> getBooksByName() {
+        return bookCache.getBooksByName();
+    }
+
+    /**
+     * Get the cache of synced books to read its hit and miss counters.
+     * It must not be bounded with BookCache.setMaxBytes, reconcile and the lists passed to
+     * UiCallBack.onStart need every synced book
+     *
+     * @return book cache
+     */
+    public BookCache getBookCache() {
+        return bookCache;
+    }
+
+    /**
+     * Get the dispatcher of query results to read how long the main thread spends on them
+     *
+     * @return dispatcher of this CloudDB
+     */
+    public CloudDBDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Get latency histograms and counters of CloudDBZone calls
+     *
+     * @return metrics of this CloudDB
+     */
+    public CloudDBMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the repository of an object type, it uses the zone opened by acquireZone (shard 0 when sharded).
+     * Books keep using the methods of CloudDB, which add delta sync and the outbox
+     *
+     * @param type ObjectType class
+     * @param <T>  ObjectType class
+     * @return repository of the type
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends CloudDBZoneObject> Repository<T> getRepository(Class<T> type) {
+        Repository<?> repository = repositories.get(type);
+        if (repository == null) {
+            ObjectAccessor<T> accessor = ObjectAccessors.of(type);
+            repository = new Repository<>(type, () -> {
+                CloudDBZone zone = cloudDBZone;
+                return zone == null ? null : new SdkObjectZone<>(zone, accessor);
+            }, metrics, retryExecutor);
+            Repository<?> existing = repositories.putIfAbsent(type, repository);
+            if (existing != null) {
+                repository = existing;
+            }
+        }
+        return (Repository<T>) repository;
+    }
+
+    /**
+     * Get max id of books
+     *
+     * @return max book id
+     */
+    public int getBookIndex() {
+        return idAllocator.getMaxSeenId();
+    }
+
+    /**
+     * Raise the max book id to the id of the book, results are reduced to one max id per batch instead
+     *
+     * @param book book with a known id
+     */
+    public void updateBookIndex(Book book) {
+        if (book.getId() != null) {
+            idAllocator.observe(book.getId());
+        }
+    }
+
+    /**
+     * Allocate an id for a new book, ids are never handed out twice in this process
+     *
+     * @return new book id
+     */
+    public int nextBookId() {
+        return idAllocator.nextId();
+    }
+
+    /**
+     * Lease a block of ids for a bulk insert
+     *
+     * @param count ids count
+     * @return leased block of ids
+     */
+    public BookIdAllocator.IdBlock reserveBookIds(int count) {
+        return idAllocator.reserveBlock(count);
+    }
+
+    /**
+     * Add a callback to update book info list, the next getAll passes it the whole list
+     * and later ones only differences
+     *
+     * @param uiCallBack callback to update book list
+     */
+    public void addCallBacks(UiCallBack uiCallBack) {
+        this.uiCallBack = uiCallBack;
+        listShown = false;
+    }
+
+    /**
+     * How getAll combines the local persisted cache and the cloud
+     */
+    public enum QueryPolicy {
+        /**
+         * Books are fetched from the cloud before anything is delivered
+         */
+        CLOUD_ONLY,
+        /**
+         * Books of the local cache are delivered first, then the cloud result is reconciled
+         */
+        CACHE_THEN_NETWORK
+    }
+
+    /**
+     * Call back to receive a single book
+     */
+    public interface BookCallBack {
+        void onBook(Book book);
+    }
+
+    /**
+     * Call back to receive a list of books
+     */
+    public interface BookListCallBack {
+        void onBooks(List<Book> books);
+    }
+
+    /**
+     * Call back to receive whether books were synced before
+     */
+    public interface LocalDataCallBack {
+        void onLocalData(boolean hasLocalData);
+    }
+
+    /**
+     * Call back to receive a page of books
+     */
+    public interface PageCallBack {
+        void onPage(List<Book> books, boolean hasMore);
     }
 
     /**
@@ -207,5 +1976,6 @@ public class CloudDB {
     public interface UiCallBack {
         void onStart(List<Book> books);
         void onAddItem(Book book);
+        void onChanged(BookDiff diff);
     }
 }
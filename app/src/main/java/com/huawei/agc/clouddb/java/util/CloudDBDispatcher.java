@@ -0,0 +1,350 @@
+package com.huawei.agc.clouddb.java.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.huawei.agc.clouddb.java.util.Constants.CLOUD_TAG;
+
+/**
+ * Threading model of CloudDB.
+ * CloudDBZoneTask results are drained and merged off the main thread. Results passed to process
+ * run one at a time in delivery order on the result thread, so synced books are never mutated
+ * concurrently; independent work passed to execute runs in parallel on a bounded worker pool.
+ * No method blocks or runs work on the calling thread, which is usually the main thread delivering
+ * SDK results. Backpressure: when MAX_PENDING_RESULTS droppable results (snapshots) are queued
+ * they are dropped and replaced by one overflow task, e.g. a full refresh, and execute rejects work
+ * while WORKER_QUEUE_CAPACITY tasks wait for a worker.
+ * Only finished results reach the main thread. UI events queued while the main thread is busy are
+ * delivered by one message, a full list drops the view events queued before it, and when
+ * MAX_PENDING_UI_EVENTS view events pile up they are replaced by one full list of synced books.
+ */
+public class CloudDBDispatcher {
+
+    public static final int WORKER_THREADS = 2;
+    public static final int WORKER_QUEUE_CAPACITY = 64;
+    public static final int MAX_PENDING_RESULTS = 16;
+    public static final int MAX_PENDING_UI_EVENTS = 8;
+
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService resultThread;
+    private final Executor mainThread;
+    private final Supplier<CloudDB.UiCallBack> uiCallBack;
+    private final Supplier<List<Book>> syncedBooks;
+    private final Runnable overflow;
+
+    //ordered results, droppable ones are counted to bound them
+    private final ArrayDeque<Result> results = new ArrayDeque<>();
+    private int pendingDroppable = 0;
+    private boolean overflowQueued = false;
+    private boolean processing = false;
+    private long droppedResults = 0;
+
+    //events waiting for the main thread
+    private final List<UiEvent> uiEvents = new ArrayList<>();
+    private int pendingViewEvents = 0;
+    private boolean uiPosted = false;
+    private final LatencyHistogram uiTimeMicros = new LatencyHistogram();
+
+    /**
+     * @param uiCallBack  receives UI events on the main thread
+     * @param syncedBooks full list which replaces view events when the UI is behind
+     * @param overflow    processed instead of droppable results dropped under backpressure,
+     *                    it must bring the synced books up to date, e.g. by a full refresh
+     */
+    public CloudDBDispatcher(Supplier<CloudDB.UiCallBack> uiCallBack, Supplier<List<Book>> syncedBooks,
+            Runnable overflow) {
+        this(uiCallBack, syncedBooks, overflow, new Handler(Looper.getMainLooper())::post);
+    }
+
+    /**
+     * @param mainThread runs UI events and posted actions in order, e.g. a test thread
+     */
+    CloudDBDispatcher(Supplier<CloudDB.UiCallBack> uiCallBack, Supplier<List<Book>> syncedBooks,
+            Runnable overflow, Executor mainThread) {
+        this.mainThread = mainThread;
+        this.uiCallBack = uiCallBack;
+        this.syncedBooks = syncedBooks;
+        this.overflow = overflow;
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "cloudDB-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        workers = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(WORKER_QUEUE_CAPACITY), threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+        workers.allowCoreThreadTimeOut(true);
+        resultThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cloudDB-results");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Process a result after the results delivered before it, never dropped
+     *
+     * @param task drains the result and posts what the UI needs
+     */
+    public void process(Runnable task) {
+        enqueueResult(new Result(task, null));
+    }
+
+    /**
+     * Process a result which may be dropped under backpressure, e.g. a subscription snapshot.
+     * When MAX_PENDING_RESULTS droppable results are queued they are all dropped and the overflow
+     * task is processed once in their place
+     *
+     * @param task    drains the result
+     * @param dropped releases the result if it is dropped, e.g. CloudDBZoneSnapshot.release
+     */
+    public void processDroppable(Runnable task, Runnable dropped) {
+        List<Runnable> released;
+        synchronized (results) {
+            if (pendingDroppable < MAX_PENDING_RESULTS) {
+                enqueueResult(new Result(task, dropped));
+                return;
+            }
+            //the overflow task covers this result as well
+            released = dropResults();
+            released.add(dropped);
+            droppedResults++;
+        }
+        for (Runnable release : released) {
+            release.run();
+        }
+        Log.w(CLOUD_TAG, "Results pile up, " + released.size() + " are replaced by the overflow task");
+    }
+
+    /**
+     * Run independent work on the worker pool
+     *
+     * @param task work which doesn't touch synced books
+     * @throws RejectedExecutionException if WORKER_QUEUE_CAPACITY tasks are waiting already,
+     *                                    the task is never run on the calling thread
+     */
+    public void execute(Runnable task) {
+        workers.execute(task);
+    }
+
+    /**
+     * Get how many droppable results were dropped under backpressure
+     *
+     * @return dropped results count
+     */
+    public long getDroppedResults() {
+        synchronized (results) {
+            return droppedResults;
+        }
+    }
+
+    /**
+     * Remove every queued droppable result and queue the overflow task once
+     *
+     * @return release actions of the removed results, to run outside of the lock
+     */
+    private List<Runnable> dropResults() {
+        List<Runnable> released = new ArrayList<>();
+        Iterator<Result> iterator = results.iterator();
+        while (iterator.hasNext()) {
+            Result result = iterator.next();
+            if (result.dropped != null) {
+                iterator.remove();
+                released.add(result.dropped);
+            }
+        }
+        droppedResults += released.size();
+        pendingDroppable = 0;
+        if (!overflowQueued) {
+            overflowQueued = true;
+            results.add(new Result(() -> {
+                synchronized (results) {
+                    overflowQueued = false;
+                }
+                overflow.run();
+            }, null));
+            startProcessing();
+        }
+        return released;
+    }
+
+    private void enqueueResult(Result result) {
+        synchronized (results) {
+            results.add(result);
+            if (result.dropped != null) {
+                pendingDroppable++;
+            }
+            startProcessing();
+        }
+    }
+
+    private void startProcessing() {
+        if (!processing) {
+            processing = true;
+            resultThread.execute(this::drainResults);
+        }
+    }
+
+    private void drainResults() {
+        while (true) {
+            Result result;
+            synchronized (results) {
+                result = results.poll();
+                if (result == null) {
+                    processing = false;
+                    return;
+                }
+                if (result.dropped != null) {
+                    pendingDroppable--;
+                }
+            }
+            try {
+                result.task.run();
+            } catch (RuntimeException e) {
+                Log.e(CLOUD_TAG, "Result processing is failed", e);
+            }
+        }
+    }
+
+    public void postStart(List<Book> books) {
+        synchronized (uiEvents) {
+            //the full list supersedes view events which are not delivered yet
+            dropViewEvents();
+            addUiEvent(new UiEvent(UiEvent.START, books));
+        }
+    }
+
+    public void postChanged(BookDiff diff) {
+        addViewEvent(new UiEvent(UiEvent.CHANGED, diff));
+    }
+
+    public void postAddItem(Book book) {
+        addViewEvent(new UiEvent(UiEvent.ADD_ITEM, book));
+    }
+
+    /**
+     * Run an action on the main thread in order with the posted UI events
+     *
+     * @param action action, e.g. a result callback
+     */
+    public void post(Runnable action) {
+        synchronized (uiEvents) {
+            addUiEvent(new UiEvent(UiEvent.RUN, action));
+        }
+    }
+
+    /**
+     * Get how long the main thread spent delivering UI events per message, in microseconds
+     *
+     * @return main thread time histogram
+     */
+    public LatencyHistogram getUiTimeMicros() {
+        return uiTimeMicros;
+    }
+
+    private void addViewEvent(UiEvent event) {
+        synchronized (uiEvents) {
+            if (pendingViewEvents >= MAX_PENDING_UI_EVENTS) {
+                //the UI is behind, one full list is cheaper than the queued events
+                dropViewEvents();
+                addUiEvent(new UiEvent(UiEvent.START, syncedBooks.get()));
+                return;
+            }
+            addUiEvent(event);
+        }
+    }
+
+    private void addUiEvent(UiEvent event) {
+        uiEvents.add(event);
+        if (event.type != UiEvent.RUN) {
+            pendingViewEvents++;
+        }
+        if (!uiPosted) {
+            uiPosted = true;
+            mainThread.execute(this::deliverUiEvents);
+        }
+    }
+
+    private void dropViewEvents() {
+        Iterator<UiEvent> iterator = uiEvents.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().type != UiEvent.RUN) {
+                iterator.remove();
+            }
+        }
+        pendingViewEvents = 0;
+    }
+
+    private void deliverUiEvents() {
+        long startTime = System.nanoTime();
+        List<UiEvent> events;
+        synchronized (uiEvents) {
+            events = new ArrayList<>(uiEvents);
+            uiEvents.clear();
+            pendingViewEvents = 0;
+            uiPosted = false;
+        }
+        CloudDB.UiCallBack callBack = uiCallBack.get();
+        for (UiEvent event : events) {
+            if (event.type == UiEvent.RUN) {
+                ((Runnable) event.payload).run();
+            } else if (callBack == null) {
+                continue;
+            } else if (event.type == UiEvent.START) {
+                @SuppressWarnings("unchecked")
+                List<Book> books = (List<Book>) event.payload;
+                callBack.onStart(books);
+            } else if (event.type == UiEvent.CHANGED) {
+                callBack.onChanged((BookDiff) event.payload);
+            } else {
+                callBack.onAddItem((Book) event.payload);
+            }
+        }
+        uiTimeMicros.record((System.nanoTime() - startTime) / 1000);
+    }
+
+    private static class Result {
+        private final Runnable task;
+        //null if the result must not be dropped
+        private final Runnable dropped;
+
+        Result(Runnable task, Runnable dropped) {
+            this.task = task;
+            this.dropped = dropped;
+        }
+    }
+
+    private static class UiEvent {
+        private static final int START = 0;
+        private static final int CHANGED = 1;
+        private static final int ADD_ITEM = 2;
+        private static final int RUN = 3;
+
+        private final int type;
+        private final Object payload;
+
+        UiEvent(int type, Object payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms and counters of CloudDB operations.
+ * Recording a successful call only touches atomics and preallocated histogram buckets,
+ * failures are additionally counted by exception type.
+ */
+public class CloudDBMetrics {
+
+    /**
+     * CloudDBZone operation kinds
+     */
+    public enum Operation {
+        QUERY,
+        UPSERT,
+        DELETE
+    }
+
+    private final Map<Operation, OperationMetrics> operations = new EnumMap<>(Operation.class);
+    private final CopyOnWriteArrayList<Exporter> exporters = new CopyOnWriteArrayList<>();
+
+    public CloudDBMetrics() {
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationMetrics());
+        }
+    }
+
+    /**
+     * Mark the start of a call
+     *
+     * @param operation operation kind
+     * @return start time to pass to onSuccess or onFailure
+     */
+    public long onStart(Operation operation) {
+        operations.get(operation).inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Record a successful call
+     *
+     * @param operation operation kind
+     * @param startTime value returned by onStart
+     * @param rows      rows read or written
+     * @param bytes     estimated payload bytes
+     */
+    public void onSuccess(Operation operation, long startTime, int rows, long bytes) {
+        OperationMetrics metrics = operations.get(operation);
+        metrics.inFlight.decrementAndGet();
+        metrics.latencyMicros.record((System.nanoTime() - startTime) / 1000);
+        metrics.rows.addAndGet(rows);
+        metrics.bytes.addAndGet(bytes);
+    }
+
+    /**
+     * Record a call answered by another call in flight or by a fresh result, without a backend call
+     *
+     * @param operation operation kind
+     */
+    public void onCoalesced(Operation operation) {
+        operations.get(operation).coalesced.incrementAndGet();
+    }
+
+    /**
+     * Record a write which was not sent, because it didn't change the object or was merged
+     * into a pending write of the same object
+     *
+     * @param operation operation kind
+     */
+    public void onAvoided(Operation operation) {
+        operations.get(operation).avoided.incrementAndGet();
+    }
+
+    /**
+     * Record a write whose object was changed on cloud side since the writer read it
+     *
+     * @param operation operation kind
+     */
+    public void onConflict(Operation operation) {
+        operations.get(operation).conflicts.incrementAndGet();
+    }
+
+    /**
+     * Add rows read or written outside of onSuccess, e.g. while a query cursor is drained
+     *
+     * @param operation operation kind
+     * @param rows      rows read or written
+     * @param bytes     estimated payload bytes
+     */
+    public void addRows(Operation operation, int rows, long bytes) {
+        OperationMetrics metrics = operations.get(operation);
+        metrics.rows.addAndGet(rows);
+        metrics.bytes.addAndGet(bytes);
+    }
+
+    /**
+     * Record a failed call
+     *
+     * @param operation operation kind
+     * @param startTime value returned by onStart
+     * @param e         failure
+     */
+    public void onFailure(Operation operation, long startTime, Exception e) {
+        OperationMetrics metrics = operations.get(operation);
+        metrics.inFlight.decrementAndGet();
+        metrics.latencyMicros.record((System.nanoTime() - startTime) / 1000);
+        String type = e == null ? "unknown" : e.getClass().getSimpleName();
+        AtomicLong counter = metrics.failures.get(type);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = metrics.failures.putIfAbsent(type, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Estimate payload bytes of a book: the id and the UTF-16 strings
+     *
+     * @param book book
+     * @return estimated bytes
+     */
+    public static long estimateBytes(Book book) {
+        long bytes = 4;
+        if (book.getBookName() != null) {
+            bytes += book.getBookName().length() * 2L;
+        }
+        if (book.getDescription() != null) {
+            bytes += book.getDescription().length() * 2L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Take a snapshot of all metrics, e.g. for a debug screen
+     *
+     * @return snapshot per operation
+     */
+    public Map<Operation, Snapshot> snapshot() {
+        Map<Operation, Snapshot> snapshots = new EnumMap<>(Operation.class);
+        for (Map.Entry<Operation, OperationMetrics> entry : operations.entrySet()) {
+            snapshots.put(entry.getKey(), new Snapshot(entry.getValue()));
+        }
+        return snapshots;
+    }
+
+    public void reset() {
+        for (OperationMetrics metrics : operations.values()) {
+            metrics.latencyMicros.reset();
+            metrics.rows.set(0);
+            metrics.bytes.set(0);
+            metrics.coalesced.set(0);
+            metrics.avoided.set(0);
+            metrics.conflicts.set(0);
+            metrics.failures.clear();
+        }
+    }
+
+    public void addExporter(Exporter exporter) {
+        exporters.addIfAbsent(exporter);
+    }
+
+    public void removeExporter(Exporter exporter) {
+        exporters.remove(exporter);
+    }
+
+    /**
+     * Pass a snapshot to every exporter
+     */
+    public void export() {
+        if (exporters.isEmpty()) {
+            return;
+        }
+        Map<Operation, Snapshot> snapshots = snapshot();
+        for (Exporter exporter : exporters) {
+            exporter.export(snapshots);
+        }
+    }
+
+    private static class OperationMetrics {
+        private final LatencyHistogram latencyMicros = new LatencyHistogram();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+        private final AtomicLong avoided = new AtomicLong();
+        private final AtomicLong conflicts = new AtomicLong();
+        private final ConcurrentHashMap<String, AtomicLong> failures = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Metrics of one operation kind at a point in time, latencies are in microseconds
+     */
+    public static class Snapshot {
+        private final long count;
+        private final int inFlight;
+        private final long rows;
+        private final long bytes;
+        private final long coalesced;
+        private final long avoided;
+        private final long conflicts;
+        private final double meanMicros;
+        private final long p50Micros;
+        private final long p90Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+        private final Map<String, Long> failures;
+
+        Snapshot(OperationMetrics metrics) {
+            count = metrics.latencyMicros.getCount();
+            inFlight = metrics.inFlight.get();
+            rows = metrics.rows.get();
+            bytes = metrics.bytes.get();
+            coalesced = metrics.coalesced.get();
+            avoided = metrics.avoided.get();
+            conflicts = metrics.conflicts.get();
+            meanMicros = metrics.latencyMicros.getMean();
+            p50Micros = metrics.latencyMicros.getValueAtPercentile(50);
+            p90Micros = metrics.latencyMicros.getValueAtPercentile(90);
+            p99Micros = metrics.latencyMicros.getValueAtPercentile(99);
+            maxMicros = metrics.latencyMicros.getMax();
+            Map<String, Long> failureCounts = new HashMap<>();
+            for (Map.Entry<String, AtomicLong> entry : metrics.failures.entrySet()) {
+                failureCounts.put(entry.getKey(), entry.getValue().get());
+            }
+            failures = Collections.unmodifiableMap(failureCounts);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Get count of calls which didn't reach the backend, because they joined a call in flight
+         * or were answered by a fresh result
+         *
+         * @return coalesced calls count
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * Get count of writes which were not sent, because they changed nothing or were merged
+         * into a pending write
+         *
+         * @return avoided writes count
+         */
+        public long getAvoided() {
+            return avoided;
+        }
+
+        /**
+         * Get count of writes which found a newer cloud state and were merged with it
+         *
+         * @return conflicts count
+         */
+        public long getConflicts() {
+            return conflicts;
+        }
+
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP90Micros() {
+            return p90Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public long getFailureCount() {
+            long total = 0;
+            for (long failures : failures.values()) {
+                total += failures;
+            }
+            return total;
+        }
+
+        public Map<String, Long> getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", inFlight=" + inFlight + ", rows=" + rows + ", bytes=" + bytes
+                    + ", coalesced=" + coalesced + ", avoided=" + avoided + ", conflicts=" + conflicts + ", p50=" + p50Micros
+                    + "us, p90=" + p90Micros + "us, p99=" + p99Micros + "us, max=" + maxMicros
+                    + "us, failures=" + failures;
+        }
+    }
+
+    /**
+     * Receives metrics snapshots, e.g. to log them or send them to a backend
+     */
+    public interface Exporter {
+        void export(Map<Operation, Snapshot> snapshots);
+    }
+}
@@ -4,5 +4,17 @@ public class Constants {
     public static final String CLOUD_TAG = "cloudDB";
     public static final String MAIN_ACTIVITY_TAG = "mainActivity";
     public static final int HUAWEI_ID_SIGN_IN = 888;
+    public static final String PREFERENCES_NAME = "cloudDB";
+    public static final String HIGH_WATER_MARK_KEY = "bookHighWaterMark";  // Max book id already synced from the cloud
+    public static final String FULL_SYNC_AT_KEY = "bookFullSyncAt";  // Wall time of the last full reconcile with the cloud
+    public static final long FULL_SYNC_INTERVAL_MILLIS = 15 * 60 * 1_000;  // Delta sync misses remote edits and deletes of older books, a full reconcile catches them
+    public static final String OUTBOX_FILE_NAME = "book_outbox.log";  // Pending writes, see BookOutbox
+    public static final long GET_ALL_FRESHNESS_MILLIS = 2_000;  // Repeated getAll() calls are answered from the last result
+    public static final int PAGE_SIZE = 50;
+    public static final int PAGE_PREFETCH_DISTANCE = 10;  // Rows left before the end of the list which trigger the next page
+    public static final int MAX_PREFETCH_PAGES = 4;  // Pages loaded ahead of the list while scrolling fast, see PagePrefetcher
     public static final String ZONE_NAME = "QuickStartDemo";  // Name of the zone (see in the developer console)
+    public static final String SHARD_ZONE_SUFFIX = "_shard";  // Zone of shard n > 0 is ZONE_NAME + SHARD_ZONE_SUFFIX + n
+    public static final int TRANSFER_BATCH_SIZE = 500;  // Books per executeUpsert call or export page of BookTransfer
+    public static final int TRANSFER_MAX_IN_FLIGHT = 4;  // Import batches sent and not yet acknowledged
 }
@@ -0,0 +1,99 @@
+package com.huawei.agc.clouddb.java.util;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Primary key, index and content accessors of an ObjectType class.
+ * Implemented by the classes which ObjectAccessorProcessor generates at compile time,
+ * and by ObjectTypeMeta with cached reflection for types without a generated accessor.
+ * Use ObjectAccessors.of to get the accessor of a type
+ *
+ * @param <T> ObjectType class
+ */
+public interface ObjectAccessor<T> {
+
+    Class<T> getType();
+
+    String getPrimaryKeyName();
+
+    /**
+     * Check whether the primary key is an int/Integer, then getIntKey and keyset paging can be used
+     *
+     * @return true for int keys
+     */
+    boolean hasIntKey();
+
+    Object getKey(T object);
+
+    /**
+     * Read an int primary key without boxing
+     *
+     * @param object object
+     * @return key value, 0 if it is null
+     */
+    int getIntKey(T object);
+
+    boolean keyEquals(T first, T second);
+
+    int keyHashCode(T object);
+
+    /**
+     * Get names of the indexes declared with @IsIndex
+     *
+     * @return index names in declaration order
+     */
+    List<String> getIndexNames();
+
+    String getIndexFieldName(String indexName);
+
+    Object getIndexValue(T object, String indexName);
+
+    /**
+     * Get a comparator by the index field, objects with equal values are ordered by primary key
+     *
+     * @param indexName index name of @IsIndex
+     * @return comparator, nulls go first
+     */
+    Comparator<T> getIndexComparator(String indexName);
+
+    /**
+     * Get a comparator by primary key
+     *
+     * @return comparator, nulls go first
+     */
+    Comparator<T> getKeyComparator();
+
+    /**
+     * Check whether all persisted fields of two objects are equal
+     *
+     * @param first  first object
+     * @param second second object
+     * @return true if every field is equal
+     */
+    boolean sameContent(T first, T second);
+
+    /**
+     * Copy every persisted field into a new object
+     *
+     * @param object object
+     * @return new object with the same content
+     */
+    T copy(T object);
+
+    /**
+     * Get a 64-bit hash of all persisted fields, see ObjectAccessors.fingerprint
+     *
+     * @param object object
+     * @return fingerprint, equal for objects with the same content
+     */
+    long fingerprint(T object);
+
+    /**
+     * Estimate payload bytes of an object: 8 bytes per field and the UTF-16 strings
+     *
+     * @param object object
+     * @return estimated bytes
+     */
+    long estimateBytes(T object);
+}
@@ -0,0 +1,207 @@
+package com.huawei.agc.clouddb.java.util;
+
+import android.util.Log;
+
+import com.huawei.agconnect.cloud.database.CloudDBZoneObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.huawei.agc.clouddb.java.util.Constants.CLOUD_TAG;
+
+/**
+ * Lookup of generated accessors and helpers shared by the generated code.
+ * The accessor of a type T is the class T + GENERATED_SUFFIX in the package of T,
+ * written by ObjectAccessorProcessor. It is looked up once per type, types without it
+ * fall back to the reflective ObjectTypeMeta.
+ */
+public final class ObjectAccessors {
+
+    public static final String GENERATED_SUFFIX = "Accessor";
+    public static final long FINGERPRINT_SEED = 0xCBF29CE484222325L;
+    private static final long FINGERPRINT_PRIME = 0x100000001B3L;
+
+    private static final Map<Class<?>, ObjectAccessor<?>> ACCESSORS = new ConcurrentHashMap<>();
+
+    private ObjectAccessors() {
+    }
+
+    /**
+     * Get the accessor of the ObjectType class, the generated one if it exists
+     *
+     * @param type ObjectType class
+     * @param <T>  ObjectType class
+     * @return cached accessor
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends CloudDBZoneObject> ObjectAccessor<T> of(Class<T> type) {
+        ObjectAccessor<?> accessor = ACCESSORS.get(type);
+        if (accessor == null) {
+            accessor = findGenerated(type);
+            if (accessor == null) {
+                accessor = ObjectTypeMeta.of(type);
+            }
+            ObjectAccessor<?> existing = ACCESSORS.putIfAbsent(type, accessor);
+            if (existing != null) {
+                accessor = existing;
+            }
+        }
+        return (ObjectAccessor<T>) accessor;
+    }
+
+    /**
+     * Get the binary codec of the ObjectType class
+     *
+     * @param type ObjectType class
+     * @param <T>  ObjectType class
+     * @return generated codec, null if the type has no generated accessor
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends CloudDBZoneObject> ObjectCodec<T> codecOf(Class<T> type) {
+        ObjectAccessor<T> accessor = of(type);
+        return accessor instanceof ObjectCodec ? (ObjectCodec<T>) accessor : null;
+    }
+
+    private static ObjectAccessor<?> findGenerated(Class<?> type) {
+        try {
+            Class<?> generated = Class.forName(type.getName() + GENERATED_SUFFIX, true, type.getClassLoader());
+            return (ObjectAccessor<?>) generated.getField("INSTANCE").get(null);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            Log.w(CLOUD_TAG, "Generated accessor of " + type.getName() + " can't be used: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Compare two values, nulls go first
+     */
+    public static <V extends Comparable<V>> int compare(V first, V second) {
+        if (first == null) {
+            return second == null ? 0 : -1;
+        }
+        if (second == null) {
+            return 1;
+        }
+        return first.compareTo(second);
+    }
+
+    /**
+     * Mix a field value into a fingerprint started with FINGERPRINT_SEED, strings are hashed to
+     * 64 bits so edits of one field practically never collide
+     *
+     * @param hash  fingerprint of the previous fields
+     * @param value field value, may be null
+     * @return fingerprint including the value
+     */
+    public static long fingerprint(long hash, Object value) {
+        long valueHash;
+        if (value == null) {
+            valueHash = 0x9E3779B97F4A7C15L;
+        } else if (value instanceof String) {
+            String string = (String) value;
+            valueHash = FINGERPRINT_SEED;
+            for (int i = 0; i < string.length(); i++) {
+                valueHash = (valueHash ^ string.charAt(i)) * FINGERPRINT_PRIME;
+            }
+        } else if (value instanceof Long) {
+            valueHash = (Long) value;
+        } else if (value instanceof Double) {
+            valueHash = Double.doubleToLongBits((Double) value);
+        } else if (value instanceof Date) {
+            valueHash = ((Date) value).getTime();
+        } else {
+            valueHash = value.hashCode();
+        }
+        return (hash ^ valueHash) * FINGERPRINT_PRIME + 1;
+    }
+
+    public static long estimateBytes(String value) {
+        return value == null ? 8 : value.length() * 2L;
+    }
+
+    /**
+     * Get the UTF-8 length of a string without encoding it
+     *
+     * @param value string
+     * @return bytes count
+     */
+    public static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Write [int utf8Length][utf8 bytes] without an intermediate array,
+     * unpaired surrogates are written as '?' like String.getBytes does
+     *
+     * @param buffer target buffer
+     * @param value  string, not null
+     */
+    public static void putString(ByteBuffer buffer, String value) {
+        buffer.putInt(utf8Length(value));
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Read a string written by putString
+     *
+     * @param buffer source buffer
+     * @return string
+     */
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,38 @@
+package com.huawei.agc.clouddb.java.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary form of an ObjectType, implemented by generated accessors.
+ * Layout: [long nullBits] then every field in declaration order, a boxed field whose bit is set
+ * is null and takes no bytes. Numbers are big-endian, booleans one byte, dates epoch millis,
+ * strings [int utf8Length][utf8 bytes]
+ *
+ * @param <T> ObjectType class
+ */
+public interface ObjectCodec<T> {
+
+    /**
+     * Get the exact count of bytes encode writes, without encoding the object
+     *
+     * @param object object
+     * @return encoded size in bytes
+     */
+    int getEncodedSize(T object);
+
+    /**
+     * Write the object at the buffer position, the buffer must have getEncodedSize bytes remaining
+     *
+     * @param object object
+     * @param buffer target buffer
+     */
+    void encode(T object, ByteBuffer buffer);
+
+    /**
+     * Read an object written by encode at the buffer position
+     *
+     * @param buffer source buffer
+     * @return new object
+     */
+    T decode(ByteBuffer buffer);
+}
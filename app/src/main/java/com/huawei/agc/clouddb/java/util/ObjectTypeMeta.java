@@ -0,0 +1,248 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agconnect.cloud.database.CloudDBZoneObject;
+import com.huawei.agconnect.cloud.database.annotations.IsIndex;
+import com.huawei.agconnect.cloud.database.annotations.PrimaryKey;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reflective ObjectAccessor, used for ObjectType classes without a generated accessor.
+ * Fields are looked up by reflection once per class and cached, so per-object calls only
+ * read already accessible fields.
+ *
+ * @param <T> ObjectType class
+ */
+public class ObjectTypeMeta<T extends CloudDBZoneObject> implements ObjectAccessor<T> {
+
+    private static final Map<Class<?>, ObjectTypeMeta<?>> CACHE = new ConcurrentHashMap<>();
+
+    private final Class<T> type;
+    //null if the class has no constructor without parameters, then copy is not supported
+    private final Constructor<T> constructor;
+    private final Field primaryKey;
+    private final boolean intKey;
+    private final List<Field> fields;
+    private final Map<String, Field> indexes;
+    private final Map<String, Comparator<T>> indexComparators = new ConcurrentHashMap<>();
+
+    /**
+     * Get the cached reflective meta of the ObjectType class,
+     * prefer ObjectAccessors.of which returns the generated accessor if it exists
+     *
+     * @param type ObjectType class
+     * @param <T>  ObjectType class
+     * @return meta of the class
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends CloudDBZoneObject> ObjectTypeMeta<T> of(Class<T> type) {
+        ObjectTypeMeta<?> meta = CACHE.get(type);
+        if (meta == null) {
+            meta = new ObjectTypeMeta<>(type);
+            ObjectTypeMeta<?> existing = CACHE.putIfAbsent(type, meta);
+            if (existing != null) {
+                meta = existing;
+            }
+        }
+        return (ObjectTypeMeta<T>) meta;
+    }
+
+    private ObjectTypeMeta(Class<T> type) {
+        this.type = type;
+        Field key = null;
+        List<Field> persisted = new ArrayList<>();
+        Map<String, Field> indexFields = new LinkedHashMap<>();
+        for (Field field : type.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                continue;
+            }
+            field.setAccessible(true);
+            persisted.add(field);
+            if (field.isAnnotationPresent(PrimaryKey.class) && key == null) {
+                key = field;
+            }
+            IsIndex index = field.getAnnotation(IsIndex.class);
+            if (index != null) {
+                indexFields.put(index.indexName(), field);
+            }
+        }
+        if (key == null) {
+            throw new IllegalArgumentException(type.getName() + " has no @PrimaryKey field");
+        }
+        this.primaryKey = key;
+        this.intKey = key.getType() == int.class || key.getType() == Integer.class;
+        this.fields = Collections.unmodifiableList(persisted);
+        this.indexes = Collections.unmodifiableMap(indexFields);
+        Constructor<T> noArgs;
+        try {
+            noArgs = type.getDeclaredConstructor();
+            noArgs.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            noArgs = null;
+        }
+        this.constructor = noArgs;
+    }
+
+    @Override
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public String getPrimaryKeyName() {
+        return primaryKey.getName();
+    }
+
+    @Override
+    public boolean hasIntKey() {
+        return intKey;
+    }
+
+    @Override
+    public Object getKey(T object) {
+        return get(primaryKey, object);
+    }
+
+    @Override
+    public boolean keyEquals(T first, T second) {
+        return Objects.equals(getKey(first), getKey(second));
+    }
+
+    @Override
+    public int keyHashCode(T object) {
+        return Objects.hashCode(getKey(object));
+    }
+
+    @Override
+    public int getIntKey(T object) {
+        if (!intKey) {
+            throw new IllegalStateException(type.getName() + " primary key is not an int");
+        }
+        try {
+            if (primaryKey.getType() == int.class) {
+                return primaryKey.getInt(object);
+            }
+            Object value = primaryKey.get(object);
+            return value == null ? 0 : (Integer) value;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public List<String> getIndexNames() {
+        return new ArrayList<>(indexes.keySet());
+    }
+
+    @Override
+    public String getIndexFieldName(String indexName) {
+        return requireIndex(indexName).getName();
+    }
+
+    @Override
+    public Object getIndexValue(T object, String indexName) {
+        return get(requireIndex(indexName), object);
+    }
+
+    @Override
+    public Comparator<T> getIndexComparator(String indexName) {
+        Comparator<T> comparator = indexComparators.get(indexName);
+        if (comparator == null) {
+            Field field = requireIndex(indexName);
+            comparator = (first, second) -> {
+                int compare = compareValues(get(field, first), get(field, second));
+                return compare != 0 ? compare : compareValues(getKey(first), getKey(second));
+            };
+            indexComparators.put(indexName, comparator);
+        }
+        return comparator;
+    }
+
+    @Override
+    public Comparator<T> getKeyComparator() {
+        return (first, second) -> compareValues(getKey(first), getKey(second));
+    }
+
+    @Override
+    public boolean sameContent(T first, T second) {
+        for (Field field : fields) {
+            if (!Objects.equals(get(field, first), get(field, second))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public T copy(T object) {
+        if (constructor == null) {
+            throw new UnsupportedOperationException(type.getName() + " has no constructor without parameters");
+        }
+        try {
+            T copy = constructor.newInstance();
+            for (Field field : fields) {
+                field.set(copy, field.get(object));
+            }
+            return copy;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public long fingerprint(T object) {
+        long hash = ObjectAccessors.FINGERPRINT_SEED;
+        for (Field field : fields) {
+            hash = ObjectAccessors.fingerprint(hash, get(field, object));
+        }
+        return hash;
+    }
+
+    @Override
+    public long estimateBytes(T object) {
+        long bytes = 0;
+        for (Field field : fields) {
+            Object value = get(field, object);
+            bytes += value instanceof String ? ((String) value).length() * 2L : 8;
+        }
+        return bytes;
+    }
+
+    private Field requireIndex(String indexName) {
+        Field field = indexes.get(indexName);
+        if (field == null) {
+            throw new IllegalArgumentException(type.getName() + " has no index " + indexName);
+        }
+        return field;
+    }
+
+    private static Object get(Field field, Object object) {
+        try {
+            return field.get(object);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object first, Object second) {
+        if (first == null) {
+            return second == null ? 0 : -1;
+        }
+        if (second == null) {
+            return 1;
+        }
+        return ((Comparable<Object>) first).compareTo(second);
+    }
+}
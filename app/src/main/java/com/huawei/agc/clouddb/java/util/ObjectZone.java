@@ -0,0 +1,61 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agconnect.cloud.database.CloudDBZoneObject;
+import com.huawei.agconnect.cloud.database.exceptions.AGConnectCloudDBException;
+
+import java.util.List;
+
+/**
+ * Zone of one ObjectType as Repository calls it, like BookZone for books.
+ * Query results are read from their snapshots, which are released, so a zone which keeps
+ * objects in memory lets tests run Repository without the SDK.
+ * Every completion is called once, on any thread
+ *
+ * @param <T> ObjectType class
+ */
+public interface ObjectZone<T extends CloudDBZoneObject> {
+
+    /**
+     * Query all objects from cloud side
+     *
+     * @param completion receives the objects
+     */
+    void queryAll(RetryExecutor.Completion<List<T>> completion);
+
+    /**
+     * Query objects with an int primary key greater than afterKey, ordered by it
+     *
+     * @param afterKey   key of the last object of the previous page
+     * @param limit      max objects count
+     * @param completion receives the objects
+     */
+    void queryPage(int afterKey, int limit, RetryExecutor.Completion<List<T>> completion);
+
+    /**
+     * Query the object with the primary key
+     *
+     * @param key        primary key, Integer or String
+     * @param completion receives the object, or nothing if there is no such object
+     */
+    void queryByKey(Object key, RetryExecutor.Completion<List<T>> completion);
+
+    void executeUpsert(List<T> objects, RetryExecutor.Completion<Integer> completion);
+
+    void executeDelete(List<T> objects, RetryExecutor.Completion<Integer> completion);
+
+    /**
+     * Subscribe to changes of all objects, from cloud side
+     *
+     * @param listener receives every snapshot, or the error which ended the subscription
+     * @return registration to remove the subscription
+     * @throws AGConnectCloudDBException if the subscription can't be made
+     */
+    BookZone.Registration subscribeSnapshot(SnapshotListener<T> listener) throws AGConnectCloudDBException;
+
+    /**
+     * Receives the objects of each snapshot, the lists are empty when e is set
+     */
+    interface SnapshotListener<T> {
+        void onSnapshot(List<T> upserted, List<T> deleted, Exception e);
+    }
+}
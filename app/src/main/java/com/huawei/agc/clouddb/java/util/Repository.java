@@ -0,0 +1,384 @@
+package com.huawei.agc.clouddb.java.util;
+
+import android.util.Log;
+
+import com.huawei.agconnect.cloud.database.CloudDBZoneObject;
+import com.huawei.agconnect.cloud.database.exceptions.AGConnectCloudDBException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.huawei.agc.clouddb.java.util.Constants.CLOUD_TAG;
+
+/**
+ * Queries, writes and change subscriptions of one ObjectType, for types which don't need
+ * the Book-specific delta sync and outbox of CloudDB.
+ * Primary key and index fields come from the ObjectAccessor of the type, generated at compile
+ * time or reflective, so synced objects are kept by primary key and diffed without per-call
+ * reflection lookups.
+ * Writes go through the RetryExecutor of CloudDB and all calls are recorded in its metrics.
+ * The zone is reached through an ObjectZone, see SdkObjectZone.
+ *
+ * @param <T> ObjectType class
+ */
+public class Repository<T extends CloudDBZoneObject> {
+
+    private final ObjectAccessor<T> accessor;
+    private final ZoneProvider<T> zoneProvider;
+    private final CloudDBMetrics metrics;
+    private final RetryExecutor retryExecutor;
+
+    //synced objects by primary key
+    private final Map<Object, T> synced = new HashMap<>();
+    private BookZone.Registration register;
+
+    public Repository(Class<T> type, ZoneProvider<T> zoneProvider, CloudDBMetrics metrics,
+            RetryExecutor retryExecutor) {
+        this.accessor = ObjectAccessors.of(type);
+        this.zoneProvider = zoneProvider;
+        this.metrics = metrics;
+        this.retryExecutor = retryExecutor;
+    }
+
+    public ObjectAccessor<T> getAccessor() {
+        return accessor;
+    }
+
+    /**
+     * Query all objects from cloud side, they replace the synced objects
+     *
+     * @param callBack callback to receive objects ordered by primary key
+     */
+    public void getAll(ListCallBack<T> callBack) {
+        boolean issued = executeQuery(ObjectZone::queryAll, (objects, e) -> {
+            if (e != null) {
+                Log.e(CLOUD_TAG, "Query " + accessor.getType().getSimpleName() + " is failed: " + e.getMessage());
+                callBack.onResult(Collections.emptyList());
+                return;
+            }
+            synchronized (synced) {
+                synced.clear();
+                putSynced(objects);
+            }
+            Collections.sort(objects, accessor.getKeyComparator());
+            callBack.onResult(objects);
+        });
+        if (!issued) {
+            callBack.onResult(Collections.emptyList());
+        }
+    }
+
+    /**
+     * Query one page of objects ordered by an int primary key from cloud side
+     *
+     * @param afterKey key of the last object of the previous page, 0 for the first page
+     * @param pageSize max objects count in the page
+     * @param callBack callback to receive the page
+     */
+    public void queryPage(int afterKey, int pageSize, PageCallBack<T> callBack) {
+        if (!accessor.hasIntKey()) {
+            throw new IllegalStateException(accessor.getType().getName() + " primary key is not an int");
+        }
+        boolean issued = executeQuery((zone, completion) -> zone.queryPage(afterKey, pageSize, completion),
+                (page, e) -> {
+                    if (e != null) {
+                        Log.e(CLOUD_TAG, "Query page is failed: " + e.getMessage());
+                        //keep hasMore, so the page is requested again
+                        callBack.onPage(Collections.emptyList(), true);
+                        return;
+                    }
+                    synchronized (synced) {
+                        putSynced(page);
+                    }
+                    callBack.onPage(page, page.size() == pageSize);
+                });
+        if (!issued) {
+            callBack.onPage(Collections.emptyList(), true);
+        }
+    }
+
+    /**
+     * Get an object by primary key, read through to the cloud if it is not synced
+     *
+     * @param key      primary key, Integer or String
+     * @param callBack callback to receive the object, null if there is no such object
+     */
+    public void get(Object key, ObjectCallBack<T> callBack) {
+        T cached;
+        synchronized (synced) {
+            cached = synced.get(key);
+        }
+        if (cached != null) {
+            callBack.onResult(cached);
+            return;
+        }
+        if (!(key instanceof Integer) && !(key instanceof String)) {
+            throw new IllegalArgumentException("Unsupported key " + key);
+        }
+        boolean issued = executeQuery((zone, completion) -> zone.queryByKey(key, completion), (objects, e) -> {
+            if (e != null) {
+                Log.e(CLOUD_TAG, "Query " + accessor.getType().getSimpleName() + " is failed: " + e.getMessage());
+                callBack.onResult(null);
+                return;
+            }
+            synchronized (synced) {
+                putSynced(objects);
+            }
+            callBack.onResult(objects.isEmpty() ? null : objects.get(0));
+        });
+        if (!issued) {
+            callBack.onResult(null);
+        }
+    }
+
+    /**
+     * Get synced objects ordered by an @IsIndex field
+     *
+     * @param indexName index name
+     * @return new list of objects
+     */
+    public List<T> getSyncedByIndex(String indexName) {
+        List<T> objects;
+        synchronized (synced) {
+            objects = new ArrayList<>(synced.values());
+        }
+        Collections.sort(objects, accessor.getIndexComparator(indexName));
+        return objects;
+    }
+
+    /**
+     * Upsert objects with one list-based call, objects equal to their synced state are skipped
+     *
+     * @param objects  objects to write
+     * @param callBack callback for the result, may be null
+     */
+    public void upsert(List<T> objects, WriteCallBack<T> callBack) {
+        List<T> changed = new ArrayList<>(objects.size());
+        synchronized (synced) {
+            for (T object : objects) {
+                T current = synced.get(accessor.getKey(object));
+                if (current == null || !accessor.sameContent(current, object)) {
+                    changed.add(object);
+                } else {
+                    metrics.onAvoided(CloudDBMetrics.Operation.UPSERT);
+                }
+            }
+        }
+        if (changed.isEmpty()) {
+            if (callBack != null) {
+                callBack.onWritten(changed, null);
+            }
+            return;
+        }
+        retryExecutor.<Integer>execute(CloudDBMetrics.Operation.UPSERT,
+                attempt -> write(CloudDBMetrics.Operation.UPSERT, changed, attempt),
+                (integer, e) -> {
+                    if (e == null) {
+                        synchronized (synced) {
+                            putSynced(changed);
+                        }
+                    }
+                    if (callBack != null) {
+                        callBack.onWritten(changed, e);
+                    }
+                });
+    }
+
+    /**
+     * Delete objects with one list-based call
+     *
+     * @param objects  objects to delete
+     * @param callBack callback for the result, may be null
+     */
+    public void delete(List<T> objects, WriteCallBack<T> callBack) {
+        if (objects.isEmpty()) {
+            if (callBack != null) {
+                callBack.onWritten(objects, null);
+            }
+            return;
+        }
+        List<T> deletes = new ArrayList<>(objects);
+        retryExecutor.<Integer>execute(CloudDBMetrics.Operation.DELETE,
+                attempt -> write(CloudDBMetrics.Operation.DELETE, deletes, attempt),
+                (integer, e) -> {
+                    if (e == null) {
+                        synchronized (synced) {
+                            for (T object : deletes) {
+                                synced.remove(accessor.getKey(object));
+                            }
+                        }
+                    }
+                    if (callBack != null) {
+                        callBack.onWritten(deletes, e);
+                    }
+                });
+    }
+
+    /**
+     * Subscribe to changes of the ObjectType, only objects which differ from their synced state
+     * are passed to the callback. A previous subscription is replaced
+     *
+     * @param callBack callback to receive changes
+     */
+    public void subscribe(ChangeCallBack<T> callBack) {
+        ObjectZone<T> zone = zoneProvider.getZone();
+        if (zone == null) {
+            Log.w(CLOUD_TAG, "CloudDBZone is null, try re-open it");
+            return;
+        }
+        unsubscribe();
+        try {
+            register = zone.subscribeSnapshot((upserted, deleted, e) -> {
+                if (e != null) {
+                    Log.w(CLOUD_TAG, "onSnapshot: " + e.getMessage());
+                    return;
+                }
+                processSnapshot(upserted, deleted, callBack);
+            });
+        } catch (AGConnectCloudDBException e) {
+            Log.w(CLOUD_TAG, "subscribeSnapshot: " + e.getMessage());
+        }
+    }
+
+    public void unsubscribe() {
+        if (register != null) {
+            register.remove();
+            register = null;
+        }
+    }
+
+    private void processSnapshot(List<T> upsertedObjects, List<T> deletedObjects, ChangeCallBack<T> callBack) {
+        List<T> upserted = new ArrayList<>();
+        List<T> deleted = new ArrayList<>();
+        synchronized (synced) {
+            for (T object : upsertedObjects) {
+                T current = synced.put(accessor.getKey(object), object);
+                if (current == null || !accessor.sameContent(current, object)) {
+                    upserted.add(object);
+                }
+            }
+            for (T object : deletedObjects) {
+                if (synced.remove(accessor.getKey(object)) != null) {
+                    deleted.add(object);
+                }
+            }
+        }
+        if (!upserted.isEmpty() || !deleted.isEmpty()) {
+            callBack.onChanged(upserted, deleted);
+        }
+    }
+
+    /**
+     * Issue a query on the zone, its objects are recorded in the metrics
+     *
+     * @return false if the zone is closed, then the completion is not called
+     */
+    private boolean executeQuery(Query<T> query, RetryExecutor.Completion<List<T>> completion) {
+        ObjectZone<T> zone = zoneProvider.getZone();
+        if (zone == null) {
+            Log.w(CLOUD_TAG, "CloudDBZone is null, try re-open it");
+            return false;
+        }
+        long startTime = metrics.onStart(CloudDBMetrics.Operation.QUERY);
+        query.execute(zone, (objects, e) -> {
+            if (e != null) {
+                metrics.onFailure(CloudDBMetrics.Operation.QUERY, startTime, e);
+            } else {
+                metrics.onSuccess(CloudDBMetrics.Operation.QUERY, startTime, 0, 0);
+                metrics.addRows(CloudDBMetrics.Operation.QUERY, objects.size(), estimateBytes(objects));
+            }
+            completion.onComplete(objects, e);
+        });
+        return true;
+    }
+
+    private boolean write(CloudDBMetrics.Operation operation, List<T> objects,
+            RetryExecutor.Completion<Integer> completion) {
+        ObjectZone<T> zone = zoneProvider.getZone();
+        if (zone == null) {
+            Log.w(CLOUD_TAG, "CloudDBZone is null, try re-open it");
+            return false;
+        }
+        long startTime = metrics.onStart(operation);
+        RetryExecutor.Completion<Integer> recorded = (integer, e) -> {
+            if (e != null) {
+                metrics.onFailure(operation, startTime, e);
+            } else {
+                metrics.onSuccess(operation, startTime, objects.size(), estimateBytes(objects));
+            }
+            completion.onComplete(integer, e);
+        };
+        if (operation == CloudDBMetrics.Operation.DELETE) {
+            zone.executeDelete(objects, recorded);
+        } else {
+            zone.executeUpsert(objects, recorded);
+        }
+        return true;
+    }
+
+    private void putSynced(List<T> objects) {
+        for (T object : objects) {
+            synced.put(accessor.getKey(object), object);
+        }
+    }
+
+    private long estimateBytes(List<T> objects) {
+        long bytes = 0;
+        for (T object : objects) {
+            bytes += accessor.estimateBytes(object);
+        }
+        return bytes;
+    }
+
+    /**
+     * Supplies the zone of the currently opened CloudDBZone, null while it is closed
+     */
+    public interface ZoneProvider<T extends CloudDBZoneObject> {
+        ObjectZone<T> getZone();
+    }
+
+    /**
+     * Issues one query of the repository on a zone
+     */
+    private interface Query<T extends CloudDBZoneObject> {
+        void execute(ObjectZone<T> zone, RetryExecutor.Completion<List<T>> completion);
+    }
+
+    /**
+     * Call back to receive a query result
+     */
+    public interface ListCallBack<T> {
+        void onResult(List<T> objects);
+    }
+
+    /**
+     * Call back to receive a single object
+     */
+    public interface ObjectCallBack<T> {
+        void onResult(T object);
+    }
+
+    /**
+     * Call back to receive a page of objects
+     */
+    public interface PageCallBack<T> {
+        void onPage(List<T> objects, boolean hasMore);
+    }
+
+    /**
+     * Call back for a write, e is null on success
+     */
+    public interface WriteCallBack<T> {
+        void onWritten(List<T> objects, Exception e);
+    }
+
+    /**
+     * Call back for changes reported by the subscription
+     */
+    public interface ChangeCallBack<T> {
+        void onChanged(List<T> upserted, List<T> deleted);
+    }
+}
@@ -0,0 +1,99 @@
+package com.huawei.agc.clouddb.java.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Single-flight requests by key: the first call for a key starts the request, calls made while it
+ * is in flight join it and get its result. A succeeded request stays fresh for freshnessMillis,
+ * calls within that window are answered from the last result without a request.
+ * CloudDB coalesces getAll (one key) and getBook (by id) with it
+ *
+ * @param <K> request key
+ * @param <C> callback of a caller
+ */
+public class RequestCoalescer<K, C> {
+
+    /**
+     * What the caller of join has to do
+     */
+    public enum Join {
+        //start the request and call complete once it is finished
+        STARTED,
+        //the request in flight calls back
+        JOINED,
+        //answer from the last result
+        FRESH
+    }
+
+    private final LongSupplier clock;
+    private final Map<K, List<C>> waiters = new HashMap<>();
+    private final Map<K, Long> succeededAt = new HashMap<>();
+    private long freshnessMillis;
+
+    /**
+     * @param clock           monotonic clock in milliseconds, e.g. SystemClock::elapsedRealtime
+     * @param freshnessMillis freshness window of a succeeded request, 0 to start a request on every call
+     */
+    public RequestCoalescer(LongSupplier clock, long freshnessMillis) {
+        this.clock = clock;
+        this.freshnessMillis = freshnessMillis;
+    }
+
+    public synchronized void setFreshnessMillis(long freshnessMillis) {
+        this.freshnessMillis = freshnessMillis;
+    }
+
+    /**
+     * Start or join the request of the key
+     *
+     * @param key      request key
+     * @param callBack callback of the caller, kept for complete if the request is started or joined, may be null
+     * @return what the caller has to do
+     */
+    public synchronized Join join(K key, C callBack) {
+        List<C> inFlight = waiters.get(key);
+        if (inFlight != null) {
+            if (callBack != null) {
+                inFlight.add(callBack);
+            }
+            return Join.JOINED;
+        }
+        Long succeeded = succeededAt.get(key);
+        if (succeeded != null && clock.getAsLong() - succeeded < freshnessMillis) {
+            return Join.FRESH;
+        }
+        inFlight = new ArrayList<>();
+        if (callBack != null) {
+            inFlight.add(callBack);
+        }
+        waiters.put(key, inFlight);
+        return Join.STARTED;
+    }
+
+    /**
+     * Finish the request of the key
+     *
+     * @param key     request key
+     * @param success true if the request is succeeded, then its freshness window starts
+     * @return callbacks of the calls which started or joined the request, to be called with its result
+     */
+    public synchronized List<C> complete(K key, boolean success) {
+        if (success) {
+            succeededAt.put(key, clock.getAsLong());
+        }
+        List<C> inFlight = waiters.remove(key);
+        return inFlight == null ? Collections.emptyList() : inFlight;
+    }
+
+    /**
+     * End the freshness window of every key, e.g. because the source was closed
+     */
+    public synchronized void invalidate() {
+        succeededAt.clear();
+    }
+}
@@ -0,0 +1,162 @@
+package com.huawei.agc.clouddb.java.util;
+
+import android.util.Log;
+
+import com.huawei.agconnect.cloud.database.CloudDBZoneTask;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.huawei.agc.clouddb.java.util.Constants.CLOUD_TAG;
+
+/**
+ * Runs CloudDBZone calls with retries and a circuit breaker.
+ * Failed calls are retried with the jittered exponential backoff of their operation type,
+ * at most maxConcurrentRetries retries wait at the same time, others fail at once.
+ * While the circuit is open calls fail fast with CircuitBreaker.CircuitOpenException.
+ */
+public class RetryExecutor {
+
+    public static final int DEFAULT_MAX_CONCURRENT_RETRIES = 4;
+
+    private final Map<CloudDBMetrics.Operation, RetryPolicy> policies = new EnumMap<>(CloudDBMetrics.Operation.class);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicInteger waitingRetries = new AtomicInteger();
+    private final CircuitBreaker circuitBreaker;
+    private volatile int maxConcurrentRetries = DEFAULT_MAX_CONCURRENT_RETRIES;
+
+    public RetryExecutor(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        for (CloudDBMetrics.Operation operation : CloudDBMetrics.Operation.values()) {
+            policies.put(operation, RetryPolicy.NO_RETRY);
+        }
+    }
+
+    /**
+     * Set the retry policy of an operation type, only idempotent operations should be retried
+     *
+     * @param operation operation type
+     * @param policy    retry policy
+     */
+    public synchronized void setPolicy(CloudDBMetrics.Operation operation, RetryPolicy policy) {
+        policies.put(operation, policy);
+    }
+
+    public void setMaxConcurrentRetries(int maxConcurrentRetries) {
+        this.maxConcurrentRetries = maxConcurrentRetries;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Run the call, retrying it on failure
+     *
+     * @param operation  operation type to pick the retry policy
+     * @param call       issues the CloudDBZone call, may be called several times
+     * @param completion called once with the result or the last failure
+     * @param <T>        result type
+     */
+    public <T> void execute(CloudDBMetrics.Operation operation, Call<T> call, Completion<T> completion) {
+        RetryPolicy policy;
+        synchronized (this) {
+            policy = policies.get(operation);
+        }
+        attempt(operation, policy, 1, call, completion);
+    }
+
+    private <T> void attempt(CloudDBMetrics.Operation operation, RetryPolicy policy, int attempt,
+            Call<T> call, Completion<T> completion) {
+        if (!circuitBreaker.allowCall()) {
+            completion.onComplete(null, new CircuitBreaker.CircuitOpenException());
+            return;
+        }
+        boolean issued = call.execute((result, e) -> {
+            if (e == null) {
+                circuitBreaker.onSuccess();
+                completion.onComplete(result, null);
+                return;
+            }
+            circuitBreaker.onFailure();
+            if (attempt >= policy.getMaxAttempts()) {
+                completion.onComplete(null, e);
+                return;
+            }
+            if (waitingRetries.incrementAndGet() > maxConcurrentRetries) {
+                waitingRetries.decrementAndGet();
+                Log.w(CLOUD_TAG, "Too many retries in flight, " + operation + " is failed");
+                completion.onComplete(null, e);
+                return;
+            }
+            long delay = policy.getDelayMillis(attempt);
+            Log.d(CLOUD_TAG, operation + " attempt " + attempt + " is failed, retry in " + delay + "ms");
+            scheduler.schedule(() -> {
+                waitingRetries.decrementAndGet();
+                attempt(operation, policy, attempt + 1, call, completion);
+            }, delay, TimeUnit.MILLISECONDS);
+        });
+        if (!issued) {
+            circuitBreaker.onCancelled();
+            completion.onComplete(null, new IllegalStateException("CloudDBZone is null"));
+        }
+    }
+
+    /**
+     * Pass the result of a CloudDBZoneTask to a completion, for calls issued with the SDK
+     *
+     * @param task       task of the call, null if the call couldn't be made
+     * @param completion receives the result
+     * @param <T>        result type
+     * @return false if task is null
+     */
+    public static <T> boolean complete(CloudDBZoneTask<T> task, Completion<T> completion) {
+        if (task == null) {
+            return false;
+        }
+        task.addOnSuccessListener(result -> completion.onComplete(result, null))
+                .addOnFailureListener(e -> completion.onComplete(null, e));
+        return true;
+    }
+
+    /**
+     * Run a call which doesn't complete a Completion, e.g. a snapshot subscription,
+     * again after the backoff of its failed attempt
+     *
+     * @param policy  retry policy of the call
+     * @param attempt number of the failed attempt, starting from 1
+     * @param action  makes the next attempt
+     * @return false if the policy allows no more attempts, then the action is not run
+     */
+    public boolean retryLater(RetryPolicy policy, int attempt, Runnable action) {
+        if (attempt >= policy.getMaxAttempts()) {
+            return false;
+        }
+        scheduler.schedule(action, policy.getDelayMillis(attempt), TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Issues a CloudDBZone call
+     */
+    public interface Call<T> {
+        /**
+         * Issue the call once
+         *
+         * @param completion receives the result of this attempt
+         * @return false if the call can't be made, e.g. the zone is closed
+         */
+        boolean execute(Completion<T> completion);
+    }
+
+    /**
+     * Receives the final result, e is null on success
+     */
+    public interface Completion<T> {
+        void onComplete(T result, Exception e);
+    }
+}
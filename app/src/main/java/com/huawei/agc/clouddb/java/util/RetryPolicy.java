@@ -0,0 +1,43 @@
+package com.huawei.agc.clouddb.java.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry policy of an operation type: attempts count and jittered exponential backoff
+ */
+public class RetryPolicy {
+
+    public static final RetryPolicy NO_RETRY = new RetryPolicy(1, 0, 0);
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * @param maxAttempts     attempts count including the first call
+     * @param baseDelayMillis delay before the first retry, doubled for every next retry
+     * @param maxDelayMillis  upper bound of a delay
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = Math.max(0, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Get the delay before a retry with "full jitter": a random value up to the exponential delay,
+     * so clients failed together don't retry together
+     *
+     * @param attempt number of the failed attempt, starting from 1
+     * @return delay in milliseconds
+     */
+    public long getDelayMillis(int attempt) {
+        int shift = Math.min(attempt - 1, 30);
+        long delay = Math.min(maxDelayMillis, baseDelayMillis << shift);
+        return delay == 0 ? 0 : ThreadLocalRandom.current().nextLong(delay + 1);
+    }
+}
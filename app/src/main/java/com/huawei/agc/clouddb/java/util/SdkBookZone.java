@@ -0,0 +1,104 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agconnect.cloud.database.CloudDBZone;
+import com.huawei.agconnect.cloud.database.CloudDBZoneObjectList;
+import com.huawei.agconnect.cloud.database.CloudDBZoneQuery;
+import com.huawei.agconnect.cloud.database.CloudDBZoneSnapshot;
+import com.huawei.agconnect.cloud.database.ListenerHandler;
+import com.huawei.agconnect.cloud.database.exceptions.AGConnectCloudDBException;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * BookZone of an opened CloudDBZone, queries are built by the plan of the BookQuery
+ */
+class SdkBookZone implements BookZone {
+
+    private final CloudDBZone zone;
+
+    SdkBookZone(CloudDBZone zone) {
+        this.zone = zone;
+    }
+
+    @Override
+    public void executeQuery(BookQuery query, CloudDBZoneQuery.CloudDBZoneQueryPolicy policy,
+            RetryExecutor.Completion<Snapshot> completion) {
+        zone.executeQuery(query.toZoneQuery(), policy)
+                .addOnSuccessListener(snapshot -> completion.onComplete(new SdkSnapshot(snapshot), null))
+                .addOnFailureListener(e -> completion.onComplete(null, e));
+    }
+
+    @Override
+    public void executeUpsert(List<Book> books, RetryExecutor.Completion<Integer> completion) {
+        RetryExecutor.complete(zone.executeUpsert(books), completion);
+    }
+
+    @Override
+    public void executeDelete(List<Book> books, RetryExecutor.Completion<Integer> completion) {
+        RetryExecutor.complete(zone.executeDelete(books), completion);
+    }
+
+    @Override
+    public Registration subscribeSnapshot(BookQuery query, SnapshotListener listener)
+            throws AGConnectCloudDBException {
+        ListenerHandler register = zone.subscribeSnapshot(query.toZoneQuery(),
+                CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY,
+                (snapshot, e) -> listener.onSnapshot(e == null ? new SdkSnapshot(snapshot) : null, e));
+        return register::remove;
+    }
+
+    private static class SdkSnapshot implements Snapshot {
+        private final CloudDBZoneSnapshot<Book> snapshot;
+
+        SdkSnapshot(CloudDBZoneSnapshot<Book> snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public ShardedSnapshot.Cursor getSnapshotObjects() {
+            return new ObjectListCursor(snapshot::getSnapshotObjects);
+        }
+
+        @Override
+        public ShardedSnapshot.Cursor getUpsertedObjects() {
+            return new ObjectListCursor(snapshot::getUpsertedObjects);
+        }
+
+        @Override
+        public ShardedSnapshot.Cursor getDeletedObjects() {
+            return new ObjectListCursor(snapshot::getDeletedObjects);
+        }
+
+        @Override
+        public void release() {
+            snapshot.release();
+        }
+    }
+
+    /**
+     * Books of an object list, the list is requested on the first read
+     */
+    private static class ObjectListCursor implements ShardedSnapshot.Cursor {
+        private final Supplier<CloudDBZoneObjectList<Book>> list;
+        private CloudDBZoneObjectList<Book> objects;
+
+        ObjectListCursor(Supplier<CloudDBZoneObjectList<Book>> list) {
+            this.list = list;
+        }
+
+        @Override
+        public boolean hasNext() throws AGConnectCloudDBException {
+            if (objects == null) {
+                objects = list.get();
+            }
+            return objects != null && objects.hasNext();
+        }
+
+        @Override
+        public Book next() throws AGConnectCloudDBException {
+            return hasNext() ? objects.next() : null;
+        }
+    }
+}
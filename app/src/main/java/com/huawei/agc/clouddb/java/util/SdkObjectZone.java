@@ -0,0 +1,125 @@
+package com.huawei.agc.clouddb.java.util;
+
+import android.util.Log;
+
+import com.huawei.agconnect.cloud.database.CloudDBZone;
+import com.huawei.agconnect.cloud.database.CloudDBZoneObject;
+import com.huawei.agconnect.cloud.database.CloudDBZoneObjectList;
+import com.huawei.agconnect.cloud.database.CloudDBZoneQuery;
+import com.huawei.agconnect.cloud.database.CloudDBZoneSnapshot;
+import com.huawei.agconnect.cloud.database.ListenerHandler;
+import com.huawei.agconnect.cloud.database.exceptions.AGConnectCloudDBException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.huawei.agc.clouddb.java.util.Constants.CLOUD_TAG;
+
+/**
+ * ObjectZone of an opened CloudDBZone, queries are built from the primary key of the accessor
+ *
+ * @param <T> ObjectType class
+ */
+class SdkObjectZone<T extends CloudDBZoneObject> implements ObjectZone<T> {
+
+    private final CloudDBZone zone;
+    private final ObjectAccessor<T> accessor;
+
+    SdkObjectZone(CloudDBZone zone, ObjectAccessor<T> accessor) {
+        this.zone = zone;
+        this.accessor = accessor;
+    }
+
+    @Override
+    public void queryAll(RetryExecutor.Completion<List<T>> completion) {
+        execute(CloudDBZoneQuery.where(accessor.getType()), completion);
+    }
+
+    @Override
+    public void queryPage(int afterKey, int limit, RetryExecutor.Completion<List<T>> completion) {
+        String key = accessor.getPrimaryKeyName();
+        execute(CloudDBZoneQuery.where(accessor.getType())
+                .greaterThan(key, afterKey)
+                .orderByAsc(key)
+                .limit(limit), completion);
+    }
+
+    @Override
+    public void queryByKey(Object key, RetryExecutor.Completion<List<T>> completion) {
+        CloudDBZoneQuery<T> query = CloudDBZoneQuery.where(accessor.getType());
+        if (key instanceof Integer) {
+            query = query.equalTo(accessor.getPrimaryKeyName(), (int) (Integer) key);
+        } else {
+            query = query.equalTo(accessor.getPrimaryKeyName(), (String) key);
+        }
+        execute(query, completion);
+    }
+
+    @Override
+    public void executeUpsert(List<T> objects, RetryExecutor.Completion<Integer> completion) {
+        RetryExecutor.complete(zone.executeUpsert(objects), completion);
+    }
+
+    @Override
+    public void executeDelete(List<T> objects, RetryExecutor.Completion<Integer> completion) {
+        RetryExecutor.complete(zone.executeDelete(objects), completion);
+    }
+
+    @Override
+    public BookZone.Registration subscribeSnapshot(SnapshotListener<T> listener) throws AGConnectCloudDBException {
+        ListenerHandler register = zone.subscribeSnapshot(CloudDBZoneQuery.where(accessor.getType()),
+                CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY,
+                (snapshot, e) -> {
+                    if (e != null) {
+                        listener.onSnapshot(Collections.emptyList(), Collections.emptyList(), e);
+                        return;
+                    }
+                    List<T> upserted;
+                    List<T> deleted;
+                    try {
+                        upserted = read(snapshot.getUpsertedObjects());
+                        deleted = read(snapshot.getDeletedObjects());
+                    } catch (AGConnectCloudDBException readError) {
+                        snapshot.release();
+                        listener.onSnapshot(Collections.emptyList(), Collections.emptyList(), readError);
+                        return;
+                    }
+                    snapshot.release();
+                    listener.onSnapshot(upserted, deleted, null);
+                });
+        return register::remove;
+    }
+
+    private void execute(CloudDBZoneQuery<T> query, RetryExecutor.Completion<List<T>> completion) {
+        zone.executeQuery(query, CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_CLOUD_ONLY)
+                .addOnSuccessListener(snapshot -> completion.onComplete(drain(snapshot), null))
+                .addOnFailureListener(e -> completion.onComplete(null, e));
+    }
+
+    /**
+     * Read all objects of the snapshot and release it
+     */
+    private List<T> drain(CloudDBZoneSnapshot<T> snapshot) {
+        List<T> objects = new ArrayList<>();
+        try {
+            CloudDBZoneObjectList<T> cursor = snapshot.getSnapshotObjects();
+            while (cursor.hasNext()) {
+                objects.add(cursor.next());
+            }
+        } catch (AGConnectCloudDBException e) {
+            Log.w(CLOUD_TAG, "Read " + accessor.getType().getSimpleName() + " is failed: " + e.getMessage());
+        }
+        snapshot.release();
+        return objects;
+    }
+
+    private static <T extends CloudDBZoneObject> List<T> read(CloudDBZoneObjectList<T> objects)
+            throws AGConnectCloudDBException {
+        List<T> list = new ArrayList<>();
+        while (objects != null && objects.hasNext()) {
+            list.add(objects.next());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,21 @@
+package com.huawei.agc.clouddb.java.util;
+
+/**
+ * Picks the zone which owns a book by its primary key (id)
+ */
+public interface ShardFunction {
+
+    /**
+     * Ids are spread round robin, sequential ids of nextBookId land on every zone in turn
+     */
+    ShardFunction MODULO = (id, shardCount) -> Math.floorMod(id, shardCount);
+
+    /**
+     * Get the shard of an id, must return the same shard for the same id and shard count
+     *
+     * @param id         book id
+     * @param shardCount zones count
+     * @return shard index from 0 to shardCount - 1
+     */
+    int shardOf(int id, int shardCount);
+}
@@ -0,0 +1,130 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Queries sent to several zones at once, completed when every zone answered.
+ * Listeners are used like the listeners of CloudDBZoneTask, a listener added after completion
+ * is called at once. If a zone fails, the snapshots of the other zones are released
+ */
+public class ShardedQueryTask {
+
+    private final BookZone.Snapshot[] snapshots;
+    private final Comparator<Book> order;
+    private int remaining;
+    private boolean done = false;
+    private ShardedSnapshot result;
+    private Exception error;
+    private final List<OnSuccessListener> successListeners = new ArrayList<>();
+    private final List<OnFailureListener> failureListeners = new ArrayList<>();
+
+    /**
+     * @param shards count of queried zones, each of them must complete getShardCompletion once
+     * @param order  order of every zone result, null if unordered
+     */
+    public ShardedQueryTask(int shards, Comparator<Book> order) {
+        this.snapshots = new BookZone.Snapshot[shards];
+        this.order = order;
+        this.remaining = shards;
+        if (shards == 0) {
+            onShardDone(-1, null, null);
+        }
+    }
+
+    /**
+     * Get the completion which receives the result of a queried zone
+     *
+     * @param shard index of the queried zone, from 0 to shards - 1
+     * @return completion of the zone query
+     */
+    public RetryExecutor.Completion<BookZone.Snapshot> getShardCompletion(int shard) {
+        return (snapshot, e) -> onShardDone(shard, snapshot, e);
+    }
+
+    public ShardedQueryTask addOnSuccessListener(OnSuccessListener listener) {
+        ShardedSnapshot completed;
+        synchronized (this) {
+            if (!done) {
+                successListeners.add(listener);
+                return this;
+            }
+            completed = result;
+        }
+        if (completed != null) {
+            listener.onSuccess(completed);
+        }
+        return this;
+    }
+
+    public ShardedQueryTask addOnFailureListener(OnFailureListener listener) {
+        Exception failed;
+        synchronized (this) {
+            if (!done) {
+                failureListeners.add(listener);
+                return this;
+            }
+            failed = error;
+        }
+        if (failed != null) {
+            listener.onFailure(failed);
+        }
+        return this;
+    }
+
+    private void onShardDone(int shard, BookZone.Snapshot snapshot, Exception e) {
+        List<OnSuccessListener> onSuccess;
+        List<OnFailureListener> onFailure;
+        synchronized (this) {
+            if (shard >= 0) {
+                snapshots[shard] = snapshot;
+                if (e != null && error == null) {
+                    error = e;
+                }
+                if (--remaining > 0) {
+                    return;
+                }
+            }
+            done = true;
+            if (error == null) {
+                result = new ShardedSnapshot(Arrays.asList(snapshots), order);
+            }
+            onSuccess = new ArrayList<>(successListeners);
+            onFailure = new ArrayList<>(failureListeners);
+            successListeners.clear();
+            failureListeners.clear();
+        }
+        if (result != null) {
+            for (OnSuccessListener listener : onSuccess) {
+                listener.onSuccess(result);
+            }
+            return;
+        }
+        for (BookZone.Snapshot succeeded : snapshots) {
+            if (succeeded != null) {
+                succeeded.release();
+            }
+        }
+        for (OnFailureListener listener : onFailure) {
+            listener.onFailure(error);
+        }
+    }
+
+    /**
+     * Receives the merged result of all zones
+     */
+    public interface OnSuccessListener {
+        void onSuccess(ShardedSnapshot snapshot);
+    }
+
+    /**
+     * Receives the first failure of a zone
+     */
+    public interface OnFailureListener {
+        void onFailure(Exception e);
+    }
+}
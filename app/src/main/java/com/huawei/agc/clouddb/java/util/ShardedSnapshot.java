@@ -0,0 +1,168 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agconnect.cloud.database.exceptions.AGConnectCloudDBException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Query result of every zone of a sharded query.
+ * When the shard queries are ordered, the cursor merges them with a k-way merge in the same order,
+ * so only one book per zone is held besides the snapshots themselves
+ */
+public class ShardedSnapshot {
+
+    public static final Comparator<Book> BY_ID = BookDiff.BY_ID;
+    public static final Comparator<Book> BY_NAME = (first, second) -> {
+        int compare = ObjectAccessors.compare(first.getBookName(), second.getBookName());
+        return compare != 0 ? compare : Integer.compare(first.getId(), second.getId());
+    };
+
+    private final List<BookZone.Snapshot> snapshots;
+    private final Comparator<Book> order;
+
+    /**
+     * @param snapshots results by shard
+     * @param order     order of every shard result, null to read the shards one after another
+     */
+    public ShardedSnapshot(List<BookZone.Snapshot> snapshots, Comparator<Book> order) {
+        this.snapshots = snapshots;
+        this.order = order;
+    }
+
+    /**
+     * Get a cursor over books of all shards, like CloudDBZoneSnapshot.getSnapshotObjects
+     *
+     * @return new cursor
+     */
+    public Cursor getSnapshotObjects() {
+        List<Cursor> shards = new ArrayList<>(snapshots.size());
+        for (BookZone.Snapshot snapshot : snapshots) {
+            shards.add(snapshot.getSnapshotObjects());
+        }
+        return order == null ? concat(shards) : merge(shards, order);
+    }
+
+    /**
+     * Read the shard cursors one after another
+     *
+     * @param shards cursor of every shard
+     * @return cursor over all books
+     */
+    static Cursor concat(List<Cursor> shards) {
+        return new ConcatCursor(shards);
+    }
+
+    /**
+     * Merge the shard cursors with a k-way merge, every shard must be ordered by order
+     *
+     * @param shards cursor of every shard
+     * @param order  order of every shard and of the merged books
+     * @return cursor over all books in order
+     */
+    static Cursor merge(List<Cursor> shards, Comparator<Book> order) {
+        return new MergeCursor(shards, order);
+    }
+
+    public int getShardCount() {
+        return snapshots.size();
+    }
+
+    /**
+     * Release the snapshot of every shard
+     */
+    public void release() {
+        for (BookZone.Snapshot snapshot : snapshots) {
+            snapshot.release();
+        }
+    }
+
+    /**
+     * Cursor over books of all shards
+     */
+    public interface Cursor {
+        boolean hasNext() throws AGConnectCloudDBException;
+
+        Book next() throws AGConnectCloudDBException;
+    }
+
+    private static class ConcatCursor implements Cursor {
+        private final List<Cursor> shards;
+        private int shard = 0;
+
+        ConcatCursor(List<Cursor> shards) {
+            this.shards = shards;
+        }
+
+        @Override
+        public boolean hasNext() throws AGConnectCloudDBException {
+            while (shard < shards.size()) {
+                if (shards.get(shard).hasNext()) {
+                    return true;
+                }
+                shard++;
+            }
+            return false;
+        }
+
+        @Override
+        public Book next() throws AGConnectCloudDBException {
+            if (!hasNext()) {
+                return null;
+            }
+            return shards.get(shard).next();
+        }
+    }
+
+    private static class MergeCursor implements Cursor {
+        private final List<Cursor> shards;
+        private final Comparator<Book> order;
+        private PriorityQueue<Head> heads;
+
+        MergeCursor(List<Cursor> shards, Comparator<Book> order) {
+            this.shards = shards;
+            this.order = order;
+        }
+
+        @Override
+        public boolean hasNext() throws AGConnectCloudDBException {
+            if (heads == null) {
+                heads = new PriorityQueue<>(Math.max(1, shards.size()),
+                        (first, second) -> order.compare(first.book, second.book));
+                for (Cursor objects : shards) {
+                    if (objects.hasNext()) {
+                        heads.add(new Head(objects, objects.next()));
+                    }
+                }
+            }
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Book next() throws AGConnectCloudDBException {
+            if (!hasNext()) {
+                return null;
+            }
+            Head head = heads.poll();
+            Book book = head.book;
+            if (head.objects.hasNext()) {
+                head.book = head.objects.next();
+                heads.add(head);
+            }
+            return book;
+        }
+    }
+
+    private static class Head {
+        private final Cursor objects;
+        private Book book;
+
+        Head(Cursor objects, Book book) {
+            this.objects = objects;
+            this.book = book;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.huawei.agc.clouddb.java.util;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.huawei.agc.clouddb.java.util.Constants.CLOUD_TAG;
+
+/**
+ * Timeline of the startup phases of the process, in uptime milliseconds since the process was forked.
+ * Phases may run on any thread and overlap, marks are instants like the first shown content.
+ * The timeline is logged once when the first content is shown, so cold starts of different builds
+ * can be compared from logcat
+ */
+public class StartupTimeline {
+
+    private final long originMillis = Process.getStartUptimeMillis();
+    private final List<Phase> phases = new ArrayList<>();
+    private boolean reported = false;
+
+    /**
+     * Start a phase, end it with Phase.end on any thread
+     *
+     * @param name phase name
+     * @return started phase
+     */
+    public Phase begin(String name) {
+        Phase phase = new Phase(name, SystemClock.uptimeMillis(), Thread.currentThread().getName());
+        synchronized (phases) {
+            phases.add(phase);
+        }
+        return phase;
+    }
+
+    /**
+     * Record an instant, a mark with the same name is recorded only once
+     *
+     * @param name mark name
+     * @return true if the mark is new
+     */
+    public boolean mark(String name) {
+        synchronized (phases) {
+            for (Phase phase : phases) {
+                if (phase.name.equals(name)) {
+                    return false;
+                }
+            }
+            Phase phase = new Phase(name, SystemClock.uptimeMillis(), Thread.currentThread().getName());
+            phase.endMillis = phase.startMillis;
+            phases.add(phase);
+            return true;
+        }
+    }
+
+    /**
+     * Get the phases recorded so far in start order
+     *
+     * @return copy of the phases
+     */
+    public List<Phase> getPhases() {
+        synchronized (phases) {
+            return new ArrayList<>(phases);
+        }
+    }
+
+    /**
+     * Log the timeline, only the first call logs
+     */
+    public void report() {
+        synchronized (phases) {
+            if (reported) {
+                return;
+            }
+            reported = true;
+        }
+        Log.i(CLOUD_TAG, "Startup timeline:\n" + this);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Phase phase : getPhases()) {
+            builder.append(String.format("%6dms %6s %s [%s]%n", phase.startMillis - originMillis,
+                    phase.endMillis < 0 ? "..." : phase.getDurationMillis() + "ms", phase.name, phase.thread));
+        }
+        return builder.toString();
+    }
+
+    public static class Phase {
+        private final String name;
+        private final long startMillis;
+        private final String thread;
+        private volatile long endMillis = -1;
+
+        Phase(String name, long startMillis, String thread) {
+            this.name = name;
+            this.startMillis = startMillis;
+            this.thread = thread;
+        }
+
+        public void end() {
+            endMillis = SystemClock.uptimeMillis();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        /**
+         * Get the duration, -1 while the phase runs
+         */
+        public long getDurationMillis() {
+            long end = endMillis;
+            return end < 0 ? -1 : end - startMillis;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.huawei.agc.clouddb.java.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Reference counted lifecycle of a zone: the first acquire opens it on the executor, the last
+ * release closes it on the same executor, so a close is always ordered after the open it ends.
+ * Methods are synchronized on the instance, callers may hold its monitor to check and act atomically.
+ * CloudDB manages its CloudDBZone with it
+ *
+ * @param <Z> zone type
+ */
+public class ZoneLifecycle<Z> {
+
+    private final Executor executor;
+    private final Supplier<Z> opener;
+    private final Runnable closer;
+    private volatile CompletableFuture<Z> opening;
+    private int users = 0;
+
+    /**
+     * @param executor single thread executor the zone is opened and closed on
+     * @param opener   opens the zone, returns null if it can't be opened
+     * @param closer   closes the zone
+     */
+    public ZoneLifecycle(Executor executor, Supplier<Z> opener, Runnable closer) {
+        this.executor = executor;
+        this.opener = opener;
+        this.closer = closer;
+    }
+
+    /**
+     * Take a reference to the zone, the first user opens it
+     *
+     * @return future completed with the opened zone (null if it can't be opened)
+     */
+    public synchronized CompletableFuture<Z> acquire() {
+        users++;
+        if (opening == null) {
+            opening = CompletableFuture.supplyAsync(opener, executor);
+        }
+        return opening;
+    }
+
+    /**
+     * Release a reference taken by acquire, the last user closes the zone
+     *
+     * @return false if the zone is not acquired
+     */
+    public synchronized boolean release() {
+        if (users == 0) {
+            return false;
+        }
+        if (--users > 0) {
+            return true;
+        }
+        opening = null;
+        executor.execute(closer);
+        return true;
+    }
+
+    /**
+     * @return true while someone holds a reference
+     */
+    public synchronized boolean isAcquired() {
+        return users > 0;
+    }
+
+    /**
+     * Get the opening of the current users
+     *
+     * @return future of the zone, null if the zone is not acquired
+     */
+    public CompletableFuture<Z> getOpening() {
+        return opening;
+    }
+}
@@ -14,6 +14,9 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.huawei.agc.clouddb.java.R;
 import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.BookColumns;
+import com.huawei.agc.clouddb.java.util.BookDiff;
+import com.huawei.agc.clouddb.java.util.BookVersion;
 import com.huawei.agc.clouddb.java.util.CloudDB;
 
 import java.util.ArrayList;
@@ -23,17 +26,21 @@ import java.util.List;
 public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder> {
 
     private Context context;
-    private List<Book> items;
+    //rows are kept columnar, a Book is decoded only when its row is bound
+    private BookColumns items;
     private CloudDB cloudDB;
 
+    //paging, pages are loaded ahead of the scroll position by the prefetcher
+    private boolean hasMore = false;
+    private int lastLoadedId = 0;
+    private final PagePrefetcher prefetcher;
+
     public ItemAdapter(Context context, ArrayList<Book> items) {
 
         cloudDB = CloudDB.getInstance();
         this.context = context;
-        this.items = items;
-
-        cloudDB.createObjectType();
-        cloudDB.openCloudDBZone();
+        this.items = new BookColumns(items);
+        this.prefetcher = new PagePrefetcher(cloudDB, this::appendPage);
     }
 
     @NonNull
@@ -46,6 +53,47 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
     @Override
     public void onBindViewHolder(@NonNull ItemViewHolder holder, int position) {
         holder.bind(items.get(position));
+        if (hasMore) {
+            prefetcher.onBind(position, items.size());
+        }
+    }
+
+    /**
+     * Show the first page right away, next pages are loaded while the user scrolls
+     */
+    public void loadFirstPage() {
+        hasMore = true;
+        lastLoadedId = 0;
+        prefetcher.start();
+    }
+
+    private void appendPage(List<Book> books, boolean more) {
+        hasMore = more;
+        if (books.isEmpty()) {
+            return;
+        }
+        lastLoadedId = books.get(books.size() - 1).getId();
+        int start = items.size();
+        items.addAll(books);
+        notifyItemRangeInserted(start, books.size());
+    }
+
+    /**
+     * Release memory held by pages loaded ahead, see ComponentCallbacks2.onTrimMemory
+     *
+     * @param level trim level
+     */
+    public void onTrimMemory(int level) {
+        prefetcher.onTrimMemory(level);
+    }
+
+    /**
+     * Get the prefetcher, e.g. to read its hit and stall counts
+     *
+     * @return prefetcher of this adapter
+     */
+    public PagePrefetcher getPrefetcher() {
+        return prefetcher;
     }
 
     @Override
@@ -53,10 +101,140 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
         return items.size();
     }
 
+    /**
+     * Replace items by the new list, only changed rows are rebound
+     *
+     * @param books new books ordered by id
+     */
+    public void submitList(List<Book> books) {
+        hasMore = false;
+        if (!books.isEmpty()) {
+            lastLoadedId = Math.max(lastLoadedId, books.get(books.size() - 1).getId());
+        }
+        prefetcher.stop(lastLoadedId);
+        applyDiff(items.diffTo(books));
+    }
+
+    /**
+     * Insert the book or update it if a book with the same id is already shown
+     *
+     * @param book book added or modified
+     */
+    public void upsertItem(Book book) {
+        int index = indexOf(book.getId());
+        if (index >= 0) {
+            items.replaceRow(index, book);
+            notifyItemChanged(index);
+        } else if (!hasMore || book.getId() <= lastLoadedId) {
+            index = -index - 1;
+            items.add(index, book);
+            notifyItemInserted(index);
+        }
+    }
+
+    /**
+     * Apply the diff to items with range notifications
+     *
+     * @param diff inserted, updated and deleted books ordered by id
+     */
+    public void applyDiff(BookDiff diff) {
+        //deleted, from the end so positions of pending rows don't move
+        int rangeStart = -1;
+        int rangeCount = 0;
+        List<Book> deleted = diff.getDeleted();
+        for (int i = deleted.size() - 1; i >= 0; i--) {
+            int index = indexOf(deleted.get(i).getId());
+            if (index < 0) {
+                continue;
+            }
+            items.removeRow(index);
+            if (rangeCount > 0 && index == rangeStart - 1) {
+                rangeStart = index;
+                rangeCount++;
+            } else {
+                notifyRangeRemoved(rangeStart, rangeCount);
+                rangeStart = index;
+                rangeCount = 1;
+            }
+        }
+        notifyRangeRemoved(rangeStart, rangeCount);
+
+        //updated
+        rangeStart = -1;
+        rangeCount = 0;
+        for (Book book : diff.getUpdated()) {
+            int index = indexOf(book.getId());
+            if (index < 0) {
+                continue;
+            }
+            items.replaceRow(index, book);
+            if (rangeCount > 0 && index == rangeStart + rangeCount) {
+                rangeCount++;
+            } else {
+                notifyRangeChanged(rangeStart, rangeCount);
+                rangeStart = index;
+                rangeCount = 1;
+            }
+        }
+        notifyRangeChanged(rangeStart, rangeCount);
+
+        //inserted, books above the last loaded page come with the next pages
+        rangeStart = -1;
+        rangeCount = 0;
+        for (Book book : diff.getInserted()) {
+            if (hasMore && book.getId() > lastLoadedId) {
+                break;
+            }
+            int index = indexOf(book.getId());
+            if (index >= 0) {
+                continue;
+            }
+            index = -index - 1;
+            items.add(index, book);
+            if (rangeCount > 0 && index == rangeStart + rangeCount) {
+                rangeCount++;
+            } else {
+                notifyRangeInserted(rangeStart, rangeCount);
+                rangeStart = index;
+                rangeCount = 1;
+            }
+        }
+        notifyRangeInserted(rangeStart, rangeCount);
+    }
+
+    private void notifyRangeRemoved(int start, int count) {
+        if (count > 0) {
+            notifyItemRangeRemoved(start, count);
+        }
+    }
+
+    private void notifyRangeChanged(int start, int count) {
+        if (count > 0) {
+            notifyItemRangeChanged(start, count);
+        }
+    }
+
+    private void notifyRangeInserted(int start, int count) {
+        if (count > 0) {
+            notifyItemRangeInserted(start, count);
+        }
+    }
+
+    /**
+     * Binary search of the book position, items are ordered by id
+     *
+     * @param id book id
+     * @return position of the book, or (-(insertion point) - 1) if it is not shown
+     */
+    private int indexOf(int id) {
+        return items.indexOfId(id);
+    }
+
     public class ItemViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         private TextView title;
         private TextView desc;
         private Context context;
+        private Book book;
 
         public ItemViewHolder(@NonNull View view, @NonNull Context context) {
             super(view);
@@ -71,28 +249,31 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
         }
 
         public void bind(Book book) {
+            this.book = book;
             title.setText(book.getBookName());
             desc.setText(book.getDescription());
         }
 
         @Override
         public void onClick(View view) {
-            Book item;
-
+            if (book == null) {
+                return;
+            }
             if (view.getId() == R.id.editButton) {
-                item = items.get(getAdapterPosition());
-                editItem(item);
+                editItem(book);
             }
             if (view.getId() == R.id.deleteButton) {
-                item = items.get(getAdapterPosition());
-                deleteItem(item);
+                deleteItem(book);
             }
         }
 
         private void deleteItem(Book item) {
             cloudDB.deleteBook(Collections.singletonList(item));
-            items.remove(getAdapterPosition());
-            notifyItemRemoved(getAdapterPosition());
+            int index = indexOf(item.getId());
+            if (index >= 0) {
+                items.removeRow(index);
+                notifyItemRemoved(index);
+            }
         }
 
         private void editItem(Book item) {
@@ -115,21 +296,15 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
             description.setText(item.getDescription());
             saveButton.setText(context.getString(R.string.update));
 
+            //the shown state, another device may change the book while it is edited
+            BookVersion base = BookVersion.of(item);
             saveButton.setOnClickListener(view1 -> {
                 item.setBookName(title.getText().toString().trim());
                 item.setDescription(description.getText().toString().trim());
 
-                cloudDB.insertBook(item);
-                notifyItemChanged(getAdapterPosition());
-                alertDialog.dismiss();
-            });
-
-            saveButton.setOnClickListener ( view1 -> {
-                item.setBookName(title.getText().toString().trim());
-                item.setDescription(description.getText().toString().trim());
-
-                cloudDB.insertBook(item);
-                notifyItemChanged(getAdapterPosition());
+                cloudDB.updateBook(base, item);
+                //the row holds a copy, so the edited book is written back to it
+                upsertItem(item);
                 alertDialog.dismiss();
             });
         }
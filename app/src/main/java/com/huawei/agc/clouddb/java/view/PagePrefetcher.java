@@ -0,0 +1,345 @@
+package com.huawei.agc.clouddb.java.view;
+
+import android.content.ComponentCallbacks2;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.CloudDB;
+import com.huawei.agc.clouddb.java.util.LatencyHistogram;
+import com.huawei.agc.clouddb.java.util.RetryPolicy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.huawei.agc.clouddb.java.util.Constants.MAX_PREFETCH_PAGES;
+import static com.huawei.agc.clouddb.java.util.Constants.PAGE_PREFETCH_DISTANCE;
+import static com.huawei.agc.clouddb.java.util.Constants.PAGE_SIZE;
+
+/**
+ * Loads pages ahead of the bind position of an adapter. Bind positions give the scroll speed,
+ * query times give the fetch latency, and enough pages are kept ready to cover the rows scrolled
+ * during one fetch, up to MAX_PREFETCH_PAGES. A page is handed to the adapter when its rows are
+ * close to being shown; a hit if it was ready, a stall if the adapter had to wait for it.
+ * Under memory pressure ready pages beyond the nearest one are dropped and fetched again later.
+ * A failed fetch is retried with PAGE_RETRY_POLICY backoff until it succeeds or paging is reset.
+ * All methods must be called on the main thread
+ */
+public class PagePrefetcher {
+
+    private static final long IDLE_MILLIS = 1_000;
+    private static final double VELOCITY_WEIGHT = 0.3;
+    private static final double FETCH_WEIGHT = 0.2;
+    private static final long INITIAL_FETCH_MILLIS = 300;
+    //attempts are not limited, only the backoff of the policy is used
+    private static final RetryPolicy PAGE_RETRY_POLICY = new RetryPolicy(Integer.MAX_VALUE, 500, 30_000);
+
+    private final Environment environment;
+    private final PageConsumer consumer;
+    private final Runnable retryFetch = () -> {
+        retryPending = false;
+        schedule();
+    };
+
+    //pages fetched and not yet handed to the consumer, ordered by id
+    private final ArrayDeque<List<Book>> ready = new ArrayDeque<>();
+    private int nextAfterId = 0;
+    private boolean hasMore = false;
+    private boolean inFlight = false;
+    //the consumer reached the end of its rows, stallSince is -1 if that is the first page
+    private boolean waiting = false;
+    private long stallSince = -1;
+    //a page is posted to the consumer and its rows are not counted by onBind yet
+    private boolean delivering = false;
+    //pages posted before a reset and the page in flight before a reset or an eviction are dropped
+    private int generation = 0;
+    private int request = 0;
+    private int windowLimit = MAX_PREFETCH_PAGES;
+    //consecutive failed fetches, the next one waits for retryFetch
+    private int failures = 0;
+    private boolean retryPending = false;
+
+    //scroll speed in rows per millisecond and page fetch time, both moving averages
+    private int lastPosition = -1;
+    private long lastBindMillis = 0;
+    private double rowsPerMilli = 0;
+    private double fetchMillis = INITIAL_FETCH_MILLIS;
+
+    //metrics
+    private long hits = 0;
+    private long stalls = 0;
+    private long evictedPages = 0;
+    private final LatencyHistogram stallMillis = new LatencyHistogram();
+
+    public PagePrefetcher(CloudDB cloudDB, PageConsumer consumer) {
+        this(new CloudDBEnvironment(cloudDB), consumer);
+    }
+
+    PagePrefetcher(Environment environment, PageConsumer consumer) {
+        this.environment = environment;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Start paging from the first book, pages of a previous start are dropped
+     */
+    public void start() {
+        reset(0, true);
+        waiting = true;
+        schedule();
+    }
+
+    /**
+     * Stop paging, e.g. because the adapter got the whole list
+     *
+     * @param lastId id of the last book the consumer has
+     */
+    public void stop(int lastId) {
+        reset(lastId, false);
+    }
+
+    /**
+     * Report a bound position, hands over the next page when the end of the list is close
+     *
+     * @param position  bound position
+     * @param itemCount rows the consumer has
+     */
+    public void onBind(int position, int itemCount) {
+        long now = environment.uptimeMillis();
+        if (lastPosition >= 0) {
+            long elapsed = now - lastBindMillis;
+            if (elapsed > IDLE_MILLIS) {
+                rowsPerMilli = 0;
+            } else if (elapsed > 0 && position > lastPosition) {
+                double sample = (double) (position - lastPosition) / elapsed;
+                rowsPerMilli += VELOCITY_WEIGHT * (sample - rowsPerMilli);
+            }
+        }
+        lastPosition = position;
+        lastBindMillis = now;
+
+        if (position >= itemCount - PAGE_PREFETCH_DISTANCE && !waiting && !delivering) {
+            if (!ready.isEmpty()) {
+                hits++;
+                deliver(ready.poll());
+            } else if (hasMore) {
+                stalls++;
+                waiting = true;
+                stallSince = now;
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * Drop ready pages which are far from the bind position, see ComponentCallbacks2.onTrimMemory
+     *
+     * @param level trim level
+     */
+    public void onTrimMemory(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return;
+        }
+        windowLimit = 1;
+        if (ready.size() <= 1) {
+            return;
+        }
+        while (ready.size() > 1) {
+            ready.pollLast();
+            evictedPages++;
+        }
+        //continue after the kept page, a page in flight followed a dropped one
+        List<Book> kept = ready.peekLast();
+        nextAfterId = kept.get(kept.size() - 1).getId();
+        hasMore = true;
+        if (inFlight) {
+            request++;
+            inFlight = false;
+        }
+    }
+
+    /**
+     * Get how many pages were ready when the adapter needed them
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get how many times the adapter reached the end of its rows before the next page arrived
+     */
+    public long getStalls() {
+        return stalls;
+    }
+
+    public long getEvictedPages() {
+        return evictedPages;
+    }
+
+    /**
+     * Get how long stalls lasted, in milliseconds
+     */
+    public LatencyHistogram getStallMillis() {
+        return stallMillis;
+    }
+
+    /**
+     * Get the pages the current scroll speed needs ahead of the adapter
+     */
+    int getTargetPages() {
+        double rowsPerFetch = rowsPerMilli * fetchMillis;
+        int pages = 1 + (int) Math.ceil(rowsPerFetch / PAGE_SIZE);
+        return Math.max(1, Math.min(pages, windowLimit));
+    }
+
+    private void reset(int lastId, boolean more) {
+        generation++;
+        request++;
+        ready.clear();
+        inFlight = false;
+        waiting = false;
+        stallSince = -1;
+        delivering = false;
+        nextAfterId = lastId;
+        hasMore = more;
+        lastPosition = -1;
+        rowsPerMilli = 0;
+        windowLimit = MAX_PREFETCH_PAGES;
+        environment.removeCallbacks(retryFetch);
+        retryPending = false;
+        failures = 0;
+    }
+
+    private void schedule() {
+        if (inFlight || retryPending || !hasMore || (!waiting && ready.size() >= getTargetPages())) {
+            return;
+        }
+        inFlight = true;
+        int requestId = ++request;
+        long startTime = environment.uptimeMillis();
+        environment.queryPage(nextAfterId, PAGE_SIZE, (books, more) -> {
+            if (requestId != request) {
+                return;
+            }
+            inFlight = false;
+            if (books.isEmpty() && more) {
+                //failed, no bind may come to request it again, e.g. for the first page
+                failures++;
+                retryPending = true;
+                environment.postDelayed(retryFetch, PAGE_RETRY_POLICY.getDelayMillis(failures));
+                return;
+            }
+            failures = 0;
+            long elapsed = environment.uptimeMillis() - startTime;
+            fetchMillis += FETCH_WEIGHT * (elapsed - fetchMillis);
+            hasMore = more;
+            if (!books.isEmpty()) {
+                nextAfterId = books.get(books.size() - 1).getId();
+                if (waiting) {
+                    if (stallSince >= 0) {
+                        stallMillis.record(environment.uptimeMillis() - stallSince);
+                    }
+                    deliver(books);
+                } else {
+                    ready.add(books);
+                }
+            } else {
+                waiting = false;
+                stallSince = -1;
+            }
+            schedule();
+        });
+    }
+
+    private void deliver(List<Book> page) {
+        waiting = false;
+        stallSince = -1;
+        delivering = true;
+        if (windowLimit < MAX_PREFETCH_PAGES) {
+            windowLimit++;
+        }
+        //a ready page may have waited while its books were edited, hand over the synced state
+        List<Book> books = new ArrayList<>(page.size());
+        for (Book book : page) {
+            Book synced = environment.getSyncedBook(book.getId());
+            books.add(synced != null ? synced : book);
+        }
+        //onBind may run inside a layout pass, where the adapter must not change
+        int deliveryGeneration = generation;
+        environment.post(() -> {
+            if (deliveryGeneration != generation) {
+                return;
+            }
+            delivering = false;
+            consumer.onPage(books, hasMore || !ready.isEmpty());
+        });
+    }
+
+    /**
+     * Receives pages in id order, on the main thread
+     */
+    public interface PageConsumer {
+        void onPage(List<Book> books, boolean hasMore);
+    }
+
+    /**
+     * Pages, synced books, the main thread and the clock of the prefetcher
+     */
+    interface Environment {
+        void queryPage(int afterId, int pageSize, CloudDB.PageCallBack callBack);
+
+        Book getSyncedBook(int id);
+
+        /**
+         * Run the action on the main thread in order with the UI events of CloudDB
+         */
+        void post(Runnable action);
+
+        void postDelayed(Runnable action, long delayMillis);
+
+        void removeCallbacks(Runnable action);
+
+        long uptimeMillis();
+    }
+
+    private static class CloudDBEnvironment implements Environment {
+        private final CloudDB cloudDB;
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        CloudDBEnvironment(CloudDB cloudDB) {
+            this.cloudDB = cloudDB;
+        }
+
+        @Override
+        public void queryPage(int afterId, int pageSize, CloudDB.PageCallBack callBack) {
+            cloudDB.queryPage(afterId, pageSize, callBack);
+        }
+
+        @Override
+        public Book getSyncedBook(int id) {
+            return cloudDB.getBookCache().peek(id);
+        }
+
+        @Override
+        public void post(Runnable action) {
+            cloudDB.getDispatcher().post(action);
+        }
+
+        @Override
+        public void postDelayed(Runnable action, long delayMillis) {
+            handler.postDelayed(action, delayMillis);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable action) {
+            handler.removeCallbacks(action);
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BookCacheTest {
+
+    @Test
+    public void putReplacesTheBookWithTheSameId() {
+        BookCache cache = new BookCache(BookCache.UNBOUNDED);
+        Book first = book(1, "a");
+        Book second = book(1, "b");
+
+        assertNull(cache.put(first));
+        assertSame(first, cache.put(second));
+        assertEquals(1, cache.size());
+        assertSame(second, cache.peek(1));
+        assertEquals(1, cache.getBooksByName().size());
+    }
+
+    @Test
+    public void getCountsHitsAndMisses() {
+        BookCache cache = new BookCache(BookCache.UNBOUNDED);
+        cache.put(book(1, "a"));
+
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        cache.peek(2);
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void booksAreOrderedByIdAndByName() {
+        BookCache cache = new BookCache(BookCache.UNBOUNDED);
+        cache.put(book(3, "a"));
+        cache.put(book(1, "c"));
+        cache.put(book(2, null));
+        cache.put(book(4, "a"));
+
+        assertIds(cache.getBooksById(), 1, 2, 3, 4);
+        //null names first, equal names by id
+        assertIds(cache.getBooksByName(), 2, 3, 4, 1);
+        assertEquals(4, cache.getMaxId());
+    }
+
+    @Test
+    public void renamedBookMovesInTheNameOrder() {
+        BookCache cache = new BookCache(BookCache.UNBOUNDED);
+        cache.put(book(1, "a"));
+        cache.put(book(2, "b"));
+
+        cache.put(book(1, "c"));
+
+        assertIds(cache.getBooksByName(), 2, 1);
+    }
+
+    @Test
+    public void leastRecentlyUsedBookIsEvicted() {
+        Book probe = book(0, "a");
+        long entryBytes = entryBytes(probe);
+        BookCache cache = new BookCache(entryBytes * 3);
+        cache.put(book(1, "a"));
+        cache.put(book(2, "a"));
+        cache.put(book(3, "a"));
+        //1 becomes the most recently used, 2 the least
+        cache.get(1);
+
+        cache.put(book(4, "a"));
+
+        assertNull(cache.peek(2));
+        assertIds(cache.getBooksById(), 1, 3, 4);
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(entryBytes * 3, cache.getBytes());
+    }
+
+    @Test
+    public void loweringTheBoundEvictsAtOnce() {
+        BookCache cache = new BookCache(BookCache.UNBOUNDED);
+        for (int id = 1; id <= 10; id++) {
+            cache.put(book(id, "a"));
+        }
+
+        cache.setMaxBytes(entryBytes(book(0, "a")) * 2);
+
+        assertIds(cache.getBooksById(), 9, 10);
+        assertEquals(8, cache.getEvictionCount());
+    }
+
+    @Test
+    public void removeKeepsTheIndexesConsistent() {
+        BookCache cache = new BookCache(BookCache.UNBOUNDED);
+        for (int id = 1; id <= 1000; id++) {
+            cache.put(book(id * 7919, "name" + id % 10));
+        }
+        for (int id = 1; id <= 1000; id += 2) {
+            assertNotNull(cache.remove(id * 7919));
+        }
+
+        assertEquals(500, cache.size());
+        assertEquals(500, cache.getBooksById().size());
+        assertEquals(500, cache.getBooksByName().size());
+        assertNull(cache.peek(7919));
+        assertNotNull(cache.peek(2 * 7919));
+        assertNull(cache.remove(7919));
+    }
+
+    @Test
+    public void clearEmptiesTheCache() {
+        BookCache cache = new BookCache(BookCache.UNBOUNDED);
+        cache.put(book(1, "a"));
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertEquals(0, cache.getMaxId());
+        assertNull(cache.peek(1));
+    }
+
+    private static long entryBytes(Book book) {
+        BookCache cache = new BookCache(BookCache.UNBOUNDED);
+        cache.put(book);
+        return cache.getBytes();
+    }
+
+    private static void assertIds(List<Book> books, int... ids) {
+        assertEquals(ids.length, books.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], (int) books.get(i).getId());
+        }
+    }
+
+    private static Book book(int id, String name) {
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName(name);
+        return book;
+    }
+}
@@ -0,0 +1,204 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BookColumnsTest {
+
+    //Cyrillic, CJK and an emoji outside the BMP
+    private static final String UNICODE = "\u041a\u043d\u0438\u0433\u0430 \u4e66 \ud83d\udcda";
+
+    @Test
+    public void rowsAreDecodedAsStored() {
+        BookColumns columns = new BookColumns();
+        columns.add(book(1, "name", "description"));
+        columns.add(book(2, null, UNICODE));
+        columns.add(book(3, "", null));
+
+        assertBook(columns.get(0), 1, "name", "description");
+        assertBook(columns.get(1), 2, null, UNICODE);
+        assertBook(columns.get(2), 3, "", null);
+        assertEquals(2, columns.getId(1));
+        assertEquals(UNICODE, columns.getDescription(1));
+        assertNull(columns.getBookName(1));
+    }
+
+    @Test
+    public void insertAndRemoveShiftTheRows() {
+        BookColumns columns = new BookColumns();
+        for (int id = 1; id <= 100; id += 2) {
+            columns.add(book(id, "book " + id, null));
+        }
+
+        columns.add(1, book(2, "book 2", null));
+        columns.removeRow(0);
+        Book removed = columns.remove(columns.size() - 1);
+
+        assertEquals(49, columns.size());
+        assertEquals(99, (int) removed.getId());
+        assertBook(columns.get(0), 2, "book 2", null);
+        assertBook(columns.get(1), 3, "book 3", null);
+        assertBook(columns.get(48), 97, "book 97", null);
+    }
+
+    @Test
+    public void replacedRowKeepsItsPosition() {
+        BookColumns columns = new BookColumns(Arrays.asList(book(1, "a", "b"), book(2, "c", "d")));
+
+        Book previous = columns.set(0, book(1, "new", null));
+        columns.replaceRow(1, book(2, UNICODE, "d"));
+
+        assertBook(previous, 1, "a", "b");
+        assertBook(columns.get(0), 1, "new", null);
+        assertBook(columns.get(1), 2, UNICODE, "d");
+    }
+
+    @Test
+    public void indexOfIdSearchesTheIdColumn() {
+        BookColumns columns = new BookColumns();
+        for (int id = 10; id <= 100; id += 10) {
+            columns.add(book(id, null, null));
+        }
+
+        assertEquals(4, columns.indexOfId(50));
+        assertEquals(-1, columns.indexOfId(5));
+        assertEquals(-6, columns.indexOfId(55));
+    }
+
+    @Test
+    public void sameContentComparesUtf8Bytes() {
+        BookColumns columns = new BookColumns();
+        columns.add(book(1, UNICODE, null));
+
+        assertTrue(columns.sameContent(0, book(1, UNICODE, null)));
+        assertFalse(columns.sameContent(0, book(1, UNICODE.replace('\u4e66', '\u4e67'), null)));
+        assertFalse(columns.sameContent(0, book(1, UNICODE, "")));
+        assertFalse(columns.sameContent(0, book(2, UNICODE, null)));
+        assertFalse(columns.sameContent(0, book(1, "\u041a", null)));
+    }
+
+    @Test
+    public void sameContentStopsAtTheEndOfTheStoredString() {
+        BookColumns columns = new BookColumns();
+        columns.add(book(1, "ab", "cd"));
+        columns.add(book(2, "\u00e9", "\u00e9\u00e9"));
+
+        assertFalse(columns.sameContent(0, book(1, "abc", "cd")));
+        assertFalse(columns.sameContent(0, book(1, "a", "cd")));
+        assertFalse(columns.sameContent(1, book(2, "\u00e9\u00e9", "\u00e9\u00e9")));
+        assertFalse(columns.sameContent(1, book(2, "ab", "\u00e9\u00e9")));
+        assertTrue(columns.sameContent(1, book(2, "\u00e9", "\u00e9\u00e9")));
+    }
+
+    @Test
+    public void diffToFindsInsertedUpdatedAndDeletedRows() {
+        BookColumns columns = new BookColumns(Arrays.asList(
+                book(1, "a", null), book(2, "b", null), book(3, "c", null)));
+
+        BookDiff diff = columns.diffTo(Arrays.asList(
+                book(2, "b", null), book(3, "changed", null), book(4, "d", null)));
+
+        assertEquals(1, diff.getInserted().size());
+        assertEquals(4, (int) diff.getInserted().get(0).getId());
+        assertEquals(1, diff.getUpdated().size());
+        assertEquals(3, (int) diff.getUpdated().get(0).getId());
+        assertEquals(1, diff.getDeleted().size());
+        assertBook(diff.getDeleted().get(0), 1, "a", null);
+    }
+
+    @Test
+    public void compactionKeepsTheContent() {
+        BookColumns columns = new BookColumns();
+        for (int id = 0; id < 100; id++) {
+            columns.add(book(id, "name " + id, null));
+        }
+        long before = columns.estimateBytes();
+        char[] filler = new char[1000];
+        Arrays.fill(filler, 'x');
+        String longText = new String(filler);
+        //about 1MB of replaced strings, compaction has to run many times
+        for (int round = 0; round < 10; round++) {
+            for (int id = 0; id < 100; id++) {
+                columns.replaceRow(id, book(id, "name " + id, longText + round));
+            }
+        }
+
+        for (int id = 0; id < 100; id++) {
+            assertBook(columns.get(id), id, "name " + id, longText + 9);
+        }
+        //the slab holds the live strings, not every replaced one
+        assertTrue(columns.estimateBytes() - before < 4 * 100 * 1010);
+    }
+
+    @Test
+    public void clearEmptiesTheList() {
+        BookColumns columns = new BookColumns(Arrays.asList(book(1, "a", null)));
+
+        columns.clear();
+        columns.add(book(2, "b", null));
+
+        assertEquals(1, columns.size());
+        assertBook(columns.get(0), 2, "b", null);
+    }
+
+    @Test
+    public void behavesLikeAList() {
+        List<Book> books = new ArrayList<>();
+        for (int id = 0; id < 1000; id++) {
+            books.add(book(id, id % 3 == 0 ? null : "name " + id, id % 5 == 0 ? UNICODE : "description"));
+        }
+        BookColumns columns = new BookColumns(books);
+
+        assertEquals(books.size(), columns.size());
+        int index = 0;
+        for (Book book : columns) {
+            Book expected = books.get(index++);
+            assertBook(book, expected.getId(), expected.getBookName(), expected.getDescription());
+        }
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void iteratorFailsOnModification() {
+        BookColumns columns = new BookColumns(Arrays.asList(book(1, "a", null), book(2, "b", null)));
+        Iterator<Book> iterator = columns.iterator();
+        iterator.next();
+
+        columns.add(book(3, "c", null));
+        iterator.next();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getBeyondTheSizeFails() {
+        BookColumns columns = new BookColumns();
+        columns.add(book(1, "a", null));
+        columns.clear();
+
+        columns.get(0);
+    }
+
+    private static void assertBook(Book book, int id, String name, String description) {
+        assertEquals(id, (int) book.getId());
+        assertEquals(name, book.getBookName());
+        assertEquals(description, book.getDescription());
+    }
+
+    private static Book book(int id, String name, String description) {
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName(name);
+        book.setDescription(description);
+        return book;
+    }
+}
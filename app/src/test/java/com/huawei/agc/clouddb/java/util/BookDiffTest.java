@@ -0,0 +1,92 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BookDiffTest {
+
+    @Test
+    public void booksAreMatchedByIdNotByPosition() {
+        List<Book> oldBooks = Arrays.asList(book(1, "a"), book(2, "b"), book(3, "c"));
+        //book 1 is gone, so every later book moved up one position
+        List<Book> newBooks = Arrays.asList(book(2, "b"), book(3, "c"), book(4, "d"));
+
+        BookDiff diff = BookDiff.between(oldBooks, newBooks);
+
+        assertEquals(Collections.singletonList(1), ids(diff.getDeleted()));
+        assertEquals(Collections.singletonList(4), ids(diff.getInserted()));
+        assertTrue(diff.getUpdated().isEmpty());
+    }
+
+    @Test
+    public void changedFieldIsAnUpdateOfTheNewVersion() {
+        Book edited = book(2, "b2");
+        BookDiff diff = BookDiff.between(Arrays.asList(book(1, "a"), book(2, "b")),
+                Arrays.asList(book(1, "a"), edited));
+
+        assertEquals(1, diff.getUpdated().size());
+        assertSame(edited, diff.getUpdated().get(0));
+        assertTrue(diff.getInserted().isEmpty());
+        assertTrue(diff.getDeleted().isEmpty());
+    }
+
+    @Test
+    public void sparseAndNegativeIdsAreKeys() {
+        List<Book> oldBooks = Arrays.asList(book(-5, "x"), book(10, "y"), book(1_000_000, "z"));
+        List<Book> newBooks = Arrays.asList(book(-5, "x2"), book(7, "w"), book(1_000_000, "z"));
+
+        BookDiff diff = BookDiff.between(oldBooks, newBooks);
+
+        assertEquals(Collections.singletonList(-5), ids(diff.getUpdated()));
+        assertEquals(Collections.singletonList(7), ids(diff.getInserted()));
+        assertEquals(Collections.singletonList(10), ids(diff.getDeleted()));
+    }
+
+    @Test
+    public void sameListsGiveAnEmptyDiff() {
+        List<Book> books = Arrays.asList(book(1, "a"), book(2, "b"));
+        List<Book> copies = Arrays.asList(book(1, "a"), book(2, "b"));
+
+        assertTrue(BookDiff.between(books, copies).isEmpty());
+        assertTrue(BookDiff.between(Collections.emptyList(), Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void sortOrdersEveryListById() {
+        BookDiff diff = new BookDiff();
+        diff.addInserted(book(9, "i"));
+        diff.addInserted(book(3, "i"));
+        diff.addUpdated(book(8, "u"));
+        diff.addUpdated(book(-1, "u"));
+        diff.addDeleted(book(5, "d"));
+        diff.addDeleted(book(4, "d"));
+
+        diff.sort();
+
+        assertEquals(Arrays.asList(3, 9), ids(diff.getInserted()));
+        assertEquals(Arrays.asList(-1, 8), ids(diff.getUpdated()));
+        assertEquals(Arrays.asList(4, 5), ids(diff.getDeleted()));
+    }
+
+    private static List<Integer> ids(List<Book> books) {
+        List<Integer> ids = new ArrayList<>();
+        for (Book book : books) {
+            ids.add(book.getId());
+        }
+        return ids;
+    }
+
+    private static Book book(int id, String name) {
+        return InMemoryBookZone.book(id, name, null);
+    }
+}
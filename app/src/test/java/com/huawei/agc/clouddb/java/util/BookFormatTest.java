@@ -0,0 +1,150 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class BookFormatTest {
+
+    private static final List<Book> ESCAPED = Arrays.asList(
+            book(1, "plain", "text"),
+            book(2, "comma, inside", "\"quoted\" and \"\"doubled\"\""),
+            book(3, "line\nbreak", "carriage\r\nreturn"),
+            book(4, "back\\slash", "tab\tand \u0001 control"),
+            book(5, "\u00e9t\u00e9 \u4e66 \ud83d\udcda", "{\"id\":9}"),
+            book(6, "", " spaces "),
+            book(7, null, null),
+            book(8, "", ""),
+            book(Integer.MAX_VALUE, null, "last"));
+
+    @Test
+    public void everyFormatRoundTripsEscapedAndNullFields() throws IOException {
+        for (BookFormat format : BookFormat.values()) {
+            assertBooks(format, ESCAPED, read(format, write(format, ESCAPED)));
+        }
+    }
+
+    @Test
+    public void everyFormatRoundTripsAnEmptyBatch() throws IOException {
+        for (BookFormat format : BookFormat.values()) {
+            byte[] file = write(format, Collections.emptyList());
+            assertEquals(format.name(), 0, read(format, file).size());
+        }
+    }
+
+    @Test
+    public void recordsLargerThanTheBufferRoundTrip() throws IOException {
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            longName.append(i % 10 == 0 ? ',' : 'a');
+        }
+        List<Book> books = new ArrayList<>();
+        books.add(book(1, longName.toString(), "\""));
+        for (int i = 2; i < 2_000; i++) {
+            books.add(book(i, "book " + i, null));
+        }
+        for (BookFormat format : BookFormat.values()) {
+            assertBooks(format, books, read(format, write(format, books)));
+        }
+    }
+
+    @Test
+    public void csvKeepsEmptyAndNullApart() throws IOException {
+        String csv = "id,bookName,description\r\n1,,\"\"\r\n\n2,\"a\"\"b\",c\n";
+        List<Book> books = read(BookFormat.CSV, csv.getBytes(StandardCharsets.UTF_8));
+
+        assertBooks(BookFormat.CSV, Arrays.asList(book(1, null, ""), book(2, "a\"b", "c")), books);
+    }
+
+    @Test
+    public void ndjsonAcceptsSpacesEscapesAndUnknownKeys() throws IOException {
+        String json = "  {\"id\" : 3, \"extra\": 1, \"bookName\":\"\\u0041\\/\\\"\", \"description\":null}\n\n";
+        List<Book> books = read(BookFormat.NDJSON, json.getBytes(StandardCharsets.UTF_8));
+
+        assertBooks(BookFormat.NDJSON, Collections.singletonList(book(3, "A/\"", null)), books);
+    }
+
+    @Test
+    public void malformedFilesAreRejected() {
+        assertMalformed(BookFormat.CSV, "id,bookName,description\n1,only two\n");
+        assertMalformed(BookFormat.CSV, "1,\"unterminated,x\n");
+        assertMalformed(BookFormat.CSV, "x,a,b\n");
+        assertMalformed(BookFormat.CSV, ",a,b\n");
+        assertMalformed(BookFormat.NDJSON, "{\"id\":1,\"bookName\":\"a\"\n");
+        assertMalformed(BookFormat.NDJSON, "{\"bookName\":\"a\"}\n");
+        assertMalformed(BookFormat.BINARY, "not binary");
+    }
+
+    @Test
+    public void truncatedBinaryRecordIsRejected() throws IOException {
+        byte[] file = write(BookFormat.BINARY, Collections.singletonList(book(1, "name", "description")));
+        try {
+            read(BookFormat.BINARY, Arrays.copyOf(file, file.length - 1));
+            fail("truncated record is read");
+        } catch (IOException expected) {
+            //expected
+        }
+    }
+
+    static byte[] write(BookFormat format, List<Book> books) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BookFormat.RecordWriter writer = format.newWriter(Channels.newChannel(out));
+        for (Book book : books) {
+            writer.write(book);
+        }
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    static List<Book> read(BookFormat format, byte[] file) throws IOException {
+        BookFormat.RecordReader reader = format.newReader(Channels.newChannel(new ByteArrayInputStream(file)));
+        List<Book> books = new ArrayList<>();
+        Book book;
+        while ((book = reader.read()) != null) {
+            books.add(book);
+        }
+        assertNull(reader.read());
+        return books;
+    }
+
+    static void assertBooks(BookFormat format, List<Book> expected, List<Book> actual) {
+        assertEquals(format.name(), expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String message = format + " row " + i;
+            assertEquals(message, expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(message, expected.get(i).getBookName(), actual.get(i).getBookName());
+            assertEquals(message, expected.get(i).getDescription(), actual.get(i).getDescription());
+        }
+    }
+
+    private static void assertMalformed(BookFormat format, String content) {
+        try {
+            read(format, content.getBytes(StandardCharsets.UTF_8));
+            fail(format + " reads " + content);
+        } catch (IOException expected) {
+            //expected
+        }
+    }
+
+    static Book book(Integer id, String name, String description) {
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName(name);
+        book.setDescription(description);
+        return book;
+    }
+}
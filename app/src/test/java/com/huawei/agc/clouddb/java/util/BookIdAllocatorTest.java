@@ -0,0 +1,132 @@
+package com.huawei.agc.clouddb.java.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BookIdAllocatorTest {
+
+    @Test
+    public void idsStartAboveTheObservedMark() {
+        BookIdAllocator allocator = new BookIdAllocator();
+        assertEquals(1, allocator.nextId());
+
+        allocator.observe(100);
+        assertEquals(101, allocator.nextId());
+        assertEquals(102, allocator.nextId());
+        assertEquals(100, allocator.getMaxSeenId());
+    }
+
+    @Test
+    public void observingALowerIdKeepsTheMark() {
+        BookIdAllocator allocator = new BookIdAllocator();
+        allocator.observe(50);
+        allocator.observe(10);
+        allocator.observe(-1);
+
+        assertEquals(50, allocator.getMaxSeenId());
+        assertEquals(51, allocator.nextId());
+    }
+
+    @Test
+    public void allocatedIdsAreNotObserved() {
+        BookIdAllocator allocator = new BookIdAllocator();
+        allocator.nextId();
+        allocator.nextId();
+
+        //the counter runs ahead of the mark until the writes are read back
+        assertEquals(0, allocator.getMaxSeenId());
+        assertEquals(3, allocator.nextId());
+    }
+
+    @Test
+    public void blocksAreConsecutiveAndDisjoint() {
+        BookIdAllocator allocator = new BookIdAllocator();
+        allocator.observe(10);
+        BookIdAllocator.IdBlock first = allocator.reserveBlock(3);
+        BookIdAllocator.IdBlock second = allocator.reserveBlock(2);
+
+        assertEquals(3, first.remaining());
+        assertEquals(11, first.next());
+        assertEquals(12, first.next());
+        assertEquals(13, first.next());
+        assertEquals(-1, first.next());
+        assertEquals(0, first.remaining());
+        assertEquals(14, second.next());
+        assertEquals(15, second.next());
+        assertEquals(-1, second.next());
+        assertEquals(16, allocator.nextId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyBlockIsRejected() {
+        new BookIdAllocator().reserveBlock(0);
+    }
+
+    @Test
+    public void concurrentAllocationsNeverRepeatOrFallToTheMark() throws Exception {
+        BookIdAllocator allocator = new BookIdAllocator();
+        int threads = 8;
+        int idsPerThread = 20_000;
+        int observers = 2;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + observers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<int[]>> allocations = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                allocations.add(executor.submit(() -> {
+                    start.await();
+                    int[] ids = new int[idsPerThread];
+                    for (int i = 0; i < ids.length; i++) {
+                        //every allocation must be above any mark observed before it
+                        int mark = allocator.getMaxSeenId();
+                        ids[i] = allocator.nextId();
+                        if (ids[i] <= mark) {
+                            throw new AssertionError("id " + ids[i] + " is not above the mark " + mark);
+                        }
+                    }
+                    return ids;
+                }));
+            }
+            //results of other devices raise the mark while ids are handed out
+            List<Future<?>> marks = new ArrayList<>();
+            for (int observer = 0; observer < observers; observer++) {
+                int offset = observer;
+                marks.add(executor.submit(() -> {
+                    start.await();
+                    for (int mark = 1_000 + offset; mark < 400_000; mark += 1_000) {
+                        allocator.observe(mark);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            BitSet seen = new BitSet();
+            for (Future<int[]> allocation : allocations) {
+                for (int id : allocation.get(30, TimeUnit.SECONDS)) {
+                    assertFalse("id " + id + " is handed out twice", seen.get(id));
+                    seen.set(id);
+                }
+            }
+            for (Future<?> mark : marks) {
+                mark.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals(threads * idsPerThread, seen.cardinality());
+            assertTrue(allocator.nextId() > allocator.getMaxSeenId());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
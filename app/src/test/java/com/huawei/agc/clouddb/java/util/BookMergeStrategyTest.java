@@ -0,0 +1,101 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BookMergeStrategyTest {
+
+    @Test
+    public void fieldsChangedOnDifferentSidesAreBothKept() {
+        Book base = book(1, "name", "description");
+        Book local = book(1, "local name", "description");
+        Book remote = book(1, "name", "remote description");
+
+        Book merged = BookMergeStrategy.FIELD_LAST_WRITER_WINS.merge(base, local, remote);
+        assertBook(merged, 1, "local name", "remote description");
+    }
+
+    @Test
+    public void fieldChangedOnBothSidesTakesTheLocalValue() {
+        Book base = book(1, "name", "description");
+        Book local = book(1, "local name", "description");
+        Book remote = book(1, "remote name", "remote description");
+
+        Book merged = BookMergeStrategy.FIELD_LAST_WRITER_WINS.merge(base, local, remote);
+        assertBook(merged, 1, "local name", "remote description");
+    }
+
+    @Test
+    public void unchangedLocalEditTakesTheCloudState() {
+        Book base = book(1, "name", null);
+        Book local = book(1, "name", null);
+        Book remote = book(1, "remote name", "remote description");
+
+        Book merged = BookMergeStrategy.FIELD_LAST_WRITER_WINS.merge(base, local, remote);
+        assertBook(merged, 1, "remote name", "remote description");
+        assertNotSame(remote, merged);
+    }
+
+    @Test
+    public void fieldClearedLocallyStaysCleared() {
+        Book base = book(1, "name", "description");
+        Book local = book(1, "name", null);
+        Book remote = book(1, "remote name", "description");
+
+        Book merged = BookMergeStrategy.FIELD_LAST_WRITER_WINS.merge(base, local, remote);
+        assertBook(merged, 1, "remote name", null);
+    }
+
+    @Test
+    public void bookDeletedOnCloudSideIsWrittenAgain() {
+        Book base = book(1, "name", "description");
+        Book local = book(1, "local name", "description");
+
+        assertSame(local, BookMergeStrategy.FIELD_LAST_WRITER_WINS.merge(base, local, null));
+    }
+
+    @Test
+    public void remoteWinsDropsTheLocalEdit() {
+        Book base = book(1, "name", "description");
+        Book local = book(1, "local name", "description");
+        Book remote = book(1, "remote name", "description");
+
+        assertNull(BookMergeStrategy.REMOTE_WINS.merge(base, local, remote));
+        assertNull(BookMergeStrategy.REMOTE_WINS.merge(base, local, null));
+    }
+
+    @Test
+    public void versionMatchesOnlyTheUnchangedBook() {
+        Book book = book(1, "name", "description");
+        BookVersion version = BookVersion.of(book);
+        assertTrue(version.matches(book(1, "name", "description")));
+
+        //the version keeps a copy, edits in place don't move it
+        book.setBookName("edited");
+        assertFalse(version.matches(book));
+        assertEquals("name", version.getBase().getBookName());
+        assertFalse(version.matches(null));
+    }
+
+    private static Book book(int id, String name, String description) {
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName(name);
+        book.setDescription(description);
+        return book;
+    }
+
+    private static void assertBook(Book book, int id, String name, String description) {
+        assertEquals(id, (int) book.getId());
+        assertEquals(name, book.getBookName());
+        assertEquals(description, book.getDescription());
+    }
+}
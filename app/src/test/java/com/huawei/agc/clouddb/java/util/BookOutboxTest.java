@@ -0,0 +1,314 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Crash recovery of the outbox: an outbox is abandoned without close like a killed process,
+ * the log file is damaged where needed and opened again
+ */
+public class BookOutboxTest {
+
+    private static final int HEADER_SIZE = 12;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<BookOutbox> opened = new ArrayList<>();
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "outbox.log");
+    }
+
+    @After
+    public void tearDown() {
+        for (BookOutbox outbox : opened) {
+            outbox.close();
+        }
+    }
+
+    @Test
+    public void recoversWritesWhichWereNotAcknowledged() throws IOException {
+        BookOutbox outbox = open();
+        outbox.appendUpsert(book(1, "first"));
+        outbox.appendUpsert(book(2, "second"));
+        outbox.appendDelete(book(3, null));
+        outbox.ack(Collections.singletonList(book(1, "first")), false);
+        outbox.commit();
+
+        List<BookOutbox.Entry> recovered = open().getRecovered();
+        assertEquals(2, recovered.size());
+        assertEntry(recovered.get(0), 2, "second", false);
+        assertEntry(recovered.get(1), 3, null, true);
+    }
+
+    @Test
+    public void ackOfAnOlderStateKeepsTheNewerWrite() throws IOException {
+        BookOutbox outbox = open();
+        outbox.appendUpsert(book(1, "old"));
+        outbox.appendUpsert(book(1, "new"));
+        outbox.ack(Collections.singletonList(book(1, "old")), false);
+        outbox.commit();
+
+        List<BookOutbox.Entry> recovered = open().getRecovered();
+        assertEquals(1, recovered.size());
+        assertEntry(recovered.get(0), 1, "new", false);
+    }
+
+    @Test
+    public void recoveredWritesStayUntilTheyAreAcknowledged() throws IOException {
+        BookOutbox outbox = open();
+        outbox.appendUpsert(book(1, "first"));
+        outbox.appendUpsert(book(2, "second"));
+        outbox.commit();
+
+        BookOutbox reopened = open();
+        assertEquals(2, reopened.getRecovered().size());
+        //a failed replay gets them again
+        assertEquals(2, reopened.getRecovered().size());
+
+        reopened.ack(Collections.singletonList(book(1, "first")), false);
+        reopened.appendUpsert(book(2, "edited"));
+        assertTrue(reopened.getRecovered().isEmpty());
+        assertEquals(1, reopened.getPendingCount());
+    }
+
+    @Test
+    public void replayStopsAtARecordWithCrcMismatch() throws IOException {
+        BookOutbox outbox = open();
+        outbox.appendUpsert(book(1, "first"));
+        outbox.appendUpsert(book(2, "second"));
+        outbox.appendUpsert(book(3, "third"));
+        outbox.commit();
+
+        //flip a byte of the book name of the second record
+        int second = HEADER_SIZE + recordSize(book(1, "first"));
+        try (RandomAccessFile log = new RandomAccessFile(file, "rw")) {
+            int offset = second + 4 + 8 + 8 + 1 + 4 + 4;
+            log.seek(offset);
+            int value = log.read();
+            log.seek(offset);
+            log.write(value ^ 0xFF);
+        }
+
+        List<BookOutbox.Entry> recovered = open().getRecovered();
+        assertEquals(1, recovered.size());
+        assertEntry(recovered.get(0), 1, "first", false);
+    }
+
+    @Test
+    public void replayStopsAtATornRecord() throws IOException {
+        BookOutbox outbox = open();
+        outbox.appendUpsert(book(1, "first"));
+        outbox.appendUpsert(book(2, "second"));
+        outbox.commit();
+
+        //the length of the second record was written, the rest of it never reached the disk
+        int second = HEADER_SIZE + recordSize(book(1, "first"));
+        try (RandomAccessFile log = new RandomAccessFile(file, "rw")) {
+            log.seek(second + 4);
+            log.write(new byte[recordSize(book(2, "second")) - 4]);
+        }
+
+        List<BookOutbox.Entry> recovered = open().getRecovered();
+        assertEquals(1, recovered.size());
+        assertEntry(recovered.get(0), 1, "first", false);
+    }
+
+    @Test
+    public void replayStopsAtALengthBeyondTheFile() throws IOException {
+        BookOutbox outbox = open();
+        outbox.appendUpsert(book(1, "first"));
+        outbox.appendUpsert(book(2, "second"));
+        outbox.commit();
+
+        int second = HEADER_SIZE + recordSize(book(1, "first"));
+        try (RandomAccessFile log = new RandomAccessFile(file, "rw")) {
+            log.seek(second);
+            log.writeInt(Integer.MAX_VALUE - 4);
+        }
+
+        List<BookOutbox.Entry> recovered = open().getRecovered();
+        assertEquals(1, recovered.size());
+        assertEntry(recovered.get(0), 1, "first", false);
+    }
+
+    @Test
+    public void staleRecordsOfThePreviousEpochAreNotReplayed() throws IOException {
+        //fill the log beyond half of its initial capacity, acknowledging everything rolls the epoch over
+        BookOutbox outbox = open();
+        List<Book> books = new ArrayList<>();
+        for (int id = 1; id <= 8_000; id++) {
+            Book book = book(id, String.format("Book %05d", id));
+            books.add(book);
+            outbox.appendUpsert(book);
+        }
+        outbox.ack(books, false);
+        assertEquals(0, outbox.getPendingCount());
+
+        //same size as the stale first record, so the terminator after it lands on the stale second one
+        Book latest = book(2, "Book 99999");
+        outbox.appendUpsert(latest);
+        outbox.commit();
+        //the terminator was lost, the stale second record (an upsert of book 2, acknowledged later) follows
+        int size = recordSize(latest);
+        try (RandomAccessFile log = new RandomAccessFile(file, "rw")) {
+            log.seek(HEADER_SIZE + size);
+            log.writeInt(size - 8);
+        }
+
+        List<BookOutbox.Entry> recovered = open().getRecovered();
+        assertEquals(1, recovered.size());
+        assertEntry(recovered.get(0), 2, "Book 99999", false);
+    }
+
+    @Test
+    public void openCompactsTheLogThroughATemporaryFile() throws IOException {
+        BookOutbox outbox = open();
+        for (int id = 1; id <= 100; id++) {
+            outbox.appendUpsert(book(id, "book " + id));
+        }
+        List<Book> acked = new ArrayList<>();
+        for (int id = 1; id <= 99; id++) {
+            acked.add(book(id, "book " + id));
+        }
+        outbox.ack(acked, false);
+        outbox.commit();
+
+        //a compaction which crashed before the rename left its temporary file
+        File compacted = new File(file.getPath() + ".tmp");
+        assertTrue(compacted.createNewFile());
+
+        BookOutbox reopened = open();
+        assertFalse(compacted.exists());
+        List<BookOutbox.Entry> recovered = reopened.getRecovered();
+        assertEquals(1, recovered.size());
+        assertEntry(recovered.get(0), 100, "book 100", false);
+
+        //only the remaining write was rewritten
+        try (RandomAccessFile log = new RandomAccessFile(file, "r")) {
+            log.seek(HEADER_SIZE + recordSize(book(100, "book 100")));
+            assertEquals(0, log.readInt());
+        }
+        recovered = open().getRecovered();
+        assertEquals(1, recovered.size());
+        assertEntry(recovered.get(0), 100, "book 100", false);
+    }
+
+    @Test
+    public void acknowledgedWritesAreCompactedInTheBackground() throws Exception {
+        BookOutbox outbox = open();
+        List<Book> acked = new ArrayList<>();
+        for (int id = 1; id <= 40_000; id++) {
+            Book book = book(id, "book " + id);
+            outbox.appendUpsert(book);
+            if (id > 10) {
+                acked.add(book);
+            }
+        }
+        assertTrue(file.length() > 1 << 20);
+        outbox.ack(acked, false);
+        assertEquals(10, outbox.getPendingCount());
+
+        //the pending writes are rewritten into a new log of the initial size
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (file.length() > 1 << 20 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1 << 20, file.length());
+
+        //the compacted log goes on taking writes and acknowledgements
+        outbox.appendUpsert(book(5, "edited 5"));
+        outbox.appendDelete(book(7, null));
+        outbox.ack(Collections.singletonList(book(1, "book 1")), false);
+        outbox.commit();
+
+        List<BookOutbox.Entry> recovered = open().getRecovered();
+        assertEquals(9, recovered.size());
+        assertEntry(recovered.get(0), 2, "book 2", false);
+        assertEntry(recovered.get(7), 5, "edited 5", false);
+        assertEntry(recovered.get(8), 7, null, true);
+    }
+
+    @Test
+    public void unknownFormatIsDropped() throws IOException {
+        try (RandomAccessFile log = new RandomAccessFile(file, "rw")) {
+            log.writeInt(0x12345678);
+            log.writeLong(1);
+            log.writeInt(0);
+        }
+        assertTrue(open().getRecovered().isEmpty());
+    }
+
+    @Test
+    public void replaysManyWrites() throws IOException {
+        int count = 100_000;
+        BookOutbox outbox = open();
+        for (int id = 1; id <= count; id++) {
+            outbox.appendUpsert(book(id, "book " + id));
+        }
+        //every second book is edited again, only its last state is replayed
+        for (int id = 2; id <= count; id += 2) {
+            outbox.appendUpsert(book(id, "edited " + id));
+        }
+        outbox.commit();
+
+        List<BookOutbox.Entry> recovered = open().getRecovered();
+        assertEquals(count, recovered.size());
+        //log order: odd books first, then the edits
+        assertEntry(recovered.get(0), 1, "book 1", false);
+        assertEntry(recovered.get(count / 2), 2, "edited 2", false);
+        assertEntry(recovered.get(count - 1), count, "edited " + count, false);
+    }
+
+    private BookOutbox open() throws IOException {
+        BookOutbox outbox = new BookOutbox(file);
+        opened.add(outbox);
+        return outbox;
+    }
+
+    private static Book book(int id, String name) {
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName(name);
+        return book;
+    }
+
+    /**
+     * Size of an upsert record: [int length][long epoch][long seq][byte type][int id]
+     * [int nameLength][name][int descriptionLength (-1)][int crc]
+     */
+    private static int recordSize(Book book) {
+        return 4 + 8 + 8 + 1 + 4 + 4 + book.getBookName().getBytes(StandardCharsets.UTF_8).length + 4 + 4;
+    }
+
+    private static void assertEntry(BookOutbox.Entry entry, int id, String name, boolean delete) {
+        assertEquals(id, (int) entry.getBook().getId());
+        assertEquals(delete, entry.isDelete());
+        if (delete) {
+            assertNull(entry.getBook().getBookName());
+        } else {
+            assertEquals(name, entry.getBook().getBookName());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BookQueryTest {
+
+    private static final int TABLE_SIZE = 1_000;
+
+    private final ExecutorService mainThread = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        mainThread.shutdownNow();
+    }
+
+    @Test
+    public void queriesOfTheSameShapeShareThePlan() {
+        BookQuery.Plan plan = new BookQuery(null).nameBeginsWith("A").idGreaterThan(10)
+                .orderByName(false).limit(20).getPlan();
+
+        //other values and another limit, same shape
+        assertSame(plan, new BookQuery(null).nameBeginsWith("B").idGreaterThan(500)
+                .orderByName(false).limit(5).getPlan());
+    }
+
+    @Test
+    public void anotherShapeMissesTheCache() {
+        BookQuery.Plan plan = new BookQuery(null).idAtLeast(1).orderById(false).getPlan();
+
+        assertNotSame(plan, new BookQuery(null).idAtMost(1).orderById(false).getPlan());
+        //filter order, sort direction, sort field and limit are part of the shape
+        assertNotSame(plan, new BookQuery(null).idAtLeast(1).idAtLeast(2).orderById(false).getPlan());
+        assertNotSame(plan, new BookQuery(null).idAtLeast(1).orderById(true).getPlan());
+        assertNotSame(plan, new BookQuery(null).idAtLeast(1).orderByName(false).getPlan());
+        assertNotSame(plan, new BookQuery(null).idAtLeast(1).orderById(false).limit(10).getPlan());
+        assertNotSame(new BookQuery(null).idAtLeast(1).idLessThan(9).getPlan(),
+                new BookQuery(null).idLessThan(9).idAtLeast(1).getPlan());
+    }
+
+    @Test
+    public void idBetweenHasTheShapeOfBothBounds() {
+        assertSame(new BookQuery(null).idAtLeast(1).idAtMost(5).getPlan(),
+                new BookQuery(null).idBetween(3, 8).getPlan());
+    }
+
+    @Test
+    public void planOrdersResultsLikeTheQuery() {
+        assertNull(new BookQuery(null).nameEqualTo("A").getPlan().getOrder());
+        assertSame(ShardedSnapshot.BY_ID, new BookQuery(null).orderById(false).getPlan().getOrder());
+        assertSame(ShardedSnapshot.BY_NAME, new BookQuery(null).orderByName(false).getPlan().getOrder());
+
+        Book first = book(1, "a");
+        Book second = book(2, "a");
+        assertTrue(new BookQuery(null).orderById(true).getPlan().getOrder().compare(first, second) > 0);
+        assertTrue(new BookQuery(null).orderByName(true).getPlan().getOrder().compare(first, second) > 0);
+    }
+
+    @Test
+    public void filtersCutRowsAndBytesInProportionToSelectivity() throws Exception {
+        InMemoryBookZone zone = newZone();
+        CloudDB all = newCloudDB(zone);
+        CloudDBDeltaSyncTest.getAll(all);
+        CloudDBMetrics.Snapshot full = all.getMetrics().snapshot().get(CloudDBMetrics.Operation.QUERY);
+        assertEquals(TABLE_SIZE, full.getRows());
+
+        //one name in ten starts with "A", one book in four is in the id range
+        assertTransfer(zone, query -> query.nameBeginsWith("A"), TABLE_SIZE / 10, full);
+        assertTransfer(zone, query -> query.idBetween(1, TABLE_SIZE / 4), TABLE_SIZE / 4, full);
+        assertTransfer(zone, query -> query.nameBeginsWith("A").idBetween(1, TABLE_SIZE / 4),
+                TABLE_SIZE / 40, full);
+        assertTransfer(zone, query -> query.nameEqualTo("B 0001"), 1, full);
+    }
+
+    @Test
+    public void limitCutsRowsOfOrderedQueries() throws Exception {
+        CloudDB cloudDB = newCloudDB(newZone());
+
+        List<Book> books = execute(cloudDB.query().nameBeginsWith("C").orderByName(true).limit(5));
+
+        assertEquals(5, books.size());
+        assertEquals(5, cloudDB.getMetrics().snapshot().get(CloudDBMetrics.Operation.QUERY).getRows());
+        assertEquals("C 0992", books.get(0).getBookName());
+        assertEquals("C 0952", books.get(4).getBookName());
+    }
+
+    private void assertTransfer(InMemoryBookZone zone, UnaryOperator<BookQuery> filter,
+            int expectedRows, CloudDBMetrics.Snapshot full) throws Exception {
+        CloudDB cloudDB = newCloudDB(zone);
+        List<Book> books = execute(filter.apply(cloudDB.query()));
+
+        List<Book> expected = new ArrayList<>();
+        long expectedBytes = 0;
+        for (int id = 1; id <= TABLE_SIZE; id++) {
+            Book book = zone.get(id);
+            if (filter.apply(new BookQuery(null)).matches(book)) {
+                expected.add(book);
+                expectedBytes += CloudDBMetrics.estimateBytes(book);
+            }
+        }
+        assertEquals(expectedRows, expected.size());
+        assertEquals(expectedRows, books.size());
+
+        CloudDBMetrics.Snapshot query = cloudDB.getMetrics().snapshot().get(CloudDBMetrics.Operation.QUERY);
+        assertEquals(expectedRows, query.getRows());
+        assertEquals(expectedBytes, query.getBytes());
+        double selectivity = (double) expectedRows / TABLE_SIZE;
+        assertEquals(selectivity, (double) query.getBytes() / full.getBytes(), 1e-9);
+    }
+
+    private CloudDB newCloudDB(InMemoryBookZone zone) {
+        CloudDB cloudDB = CloudDB.withZones(mainThread, zone);
+        cloudDB.setQueryPolicy(CloudDB.QueryPolicy.CLOUD_ONLY);
+        cloudDB.setGetAllFreshness(0);
+        cloudDB.setFullSyncInterval(Long.MAX_VALUE);
+        return cloudDB;
+    }
+
+    //names "B 0001", "C 0002", ... "A 0010" cycle through ten letters, rows are all of one size
+    private static InMemoryBookZone newZone() {
+        InMemoryBookZone zone = new InMemoryBookZone();
+        for (int id = 1; id <= TABLE_SIZE; id++) {
+            zone.put(InMemoryBookZone.book(id, String.format("%c %04d", 'A' + id % 10, id),
+                    String.format("Description of book %04d", id)));
+        }
+        return zone;
+    }
+
+    private static List<Book> execute(BookQuery query) throws Exception {
+        CompletableFuture<List<Book>> books = new CompletableFuture<>();
+        query.execute(books::complete);
+        return books.get(5, TimeUnit.SECONDS);
+    }
+
+    private static Book book(int id, String name) {
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName(name);
+        return book;
+    }
+}
@@ -0,0 +1,158 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BookSearchIndexTest {
+
+    @Test
+    public void everyTokenHasToMatch() {
+        BookSearchIndex index = new BookSearchIndex();
+        index.put(book(1, "Java Concurrency", "threads"));
+        index.put(book(2, "Java Puzzlers", "traps"));
+        index.put(book(3, "Concurrency in Go", null));
+
+        assertArrayEquals(new int[]{1}, index.search("java concurrency", 10));
+        assertEquals(2, index.search("JAVA", 10).length);
+        assertArrayEquals(new int[0], index.search("java go", 10));
+    }
+
+    @Test
+    public void tokenMatchesTermsItIsAPrefixOf() {
+        BookSearchIndex index = new BookSearchIndex();
+        index.put(book(1, "Javascript", null));
+        index.put(book(2, "Java", null));
+
+        assertEquals(2, index.search("jav", 10).length);
+        //the exact match ranks above the prefix match
+        assertArrayEquals(new int[]{2, 1}, index.search("java", 10));
+    }
+
+    @Test
+    public void nameMatchesRankAboveDescriptionMatches() {
+        BookSearchIndex index = new BookSearchIndex();
+        index.put(book(1, "Cooking", "about java"));
+        index.put(book(2, "Java", "about cooking"));
+
+        assertArrayEquals(new int[]{2, 1}, index.search("java", 10));
+    }
+
+    @Test
+    public void limitKeepsTheBestMatches() {
+        BookSearchIndex index = new BookSearchIndex();
+        for (int id = 1; id <= 100; id++) {
+            index.put(book(id, id == 42 ? "java java" : "java", null));
+        }
+
+        int[] result = index.search("java", 3);
+
+        assertEquals(3, result.length);
+        assertEquals(42, result[0]);
+        //equal scores are ordered by id
+        assertArrayEquals(new int[]{42, 1, 2}, result);
+    }
+
+    @Test
+    public void updateAndRemoveChangeTheResults() {
+        BookSearchIndex index = new BookSearchIndex();
+        index.put(book(1, "Java", null));
+        index.put(book(2, "Java", null));
+
+        index.put(book(1, "Kotlin", null));
+        index.remove(2);
+
+        assertArrayEquals(new int[0], index.search("java", 10));
+        assertArrayEquals(new int[]{1}, index.search("kotlin", 10));
+        assertEquals(1, index.size());
+        assertEquals(1, index.getTermCount());
+    }
+
+    @Test
+    public void outOfOrderChangesAreMerged() {
+        BookSearchIndex index = new BookSearchIndex();
+        Set<Integer> expected = new HashSet<>();
+        for (int id = 1000; id > 0; id--) {
+            index.put(book(id, "java", null));
+            expected.add(id);
+        }
+        for (int id = 1; id <= 1000; id += 3) {
+            index.remove(id);
+            expected.remove(id);
+        }
+
+        int[] result = index.search("java", 2000);
+
+        assertEquals(expected.size(), result.length);
+        Set<Integer> found = new HashSet<>();
+        for (int id : result) {
+            found.add(id);
+        }
+        assertEquals(expected, found);
+    }
+
+    @Test
+    public void sparseIdsAreFound() {
+        BookSearchIndex index = new BookSearchIndex();
+        int[] ids = {0, 7, 1 << 20, 1 << 30, Integer.MAX_VALUE - 1, Integer.MAX_VALUE};
+        for (int id : ids) {
+            index.put(book(id, "sparse", null));
+        }
+        index.put(book(Integer.MAX_VALUE, "sparse dense", null));
+
+        int[] result = index.search("sparse", 10);
+        Arrays.sort(result);
+
+        assertArrayEquals(ids, result);
+        assertArrayEquals(new int[]{Integer.MAX_VALUE}, index.search("sparse dense", 10));
+    }
+
+    @Test
+    public void sparseIdsDoNotGrowTheScratchByTheLargestId() {
+        BookSearchIndex index = new BookSearchIndex();
+        for (int i = 1; i <= 1000; i++) {
+            //ids spread over the whole int range, scratch by id would need gigabytes
+            index.put(book(i * 2_000_000, "book " + i, null));
+        }
+        long before = usedMemory();
+
+        int[] result = index.search("book", 2000);
+
+        assertEquals(1000, result.length);
+        assertEquals(1, index.search("book 777", 10).length);
+        //a scratch table sized by the candidates count is a few kilobytes
+        long grown = usedMemory() - before;
+        assertTrue("grew by " + grown, grown < 64L << 20);
+    }
+
+    @Test
+    public void blankQueryFindsNothing() {
+        BookSearchIndex index = new BookSearchIndex();
+        index.put(book(1, "Java", null));
+
+        assertArrayEquals(new int[0], index.search(" ,.", 10));
+        assertArrayEquals(new int[0], index.search("java", 0));
+        assertArrayEquals(new int[0], index.search("absent", 10));
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Book book(int id, String name, String description) {
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName(name);
+        book.setDescription(description);
+        return book;
+    }
+}
@@ -0,0 +1,164 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class BookTransferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void stoppedImportResumesAfterTheCheckpoint() throws Exception {
+        byte[] file = BookFormatTest.write(BookFormat.CSV, books(1, 10));
+        File checkpoint = new File(folder.getRoot(), "import.checkpoint");
+        BookTransfer transfer = new BookTransfer(3, 1);
+        List<Integer> imported = new ArrayList<>();
+
+        //the third batch fails, rows 1 to 6 are acknowledged
+        try {
+            transfer.importBooks(channel(file), BookFormat.CSV, (books, completion) -> {
+                if (books.get(0).getId() == 7) {
+                    completion.onComplete(null, new Exception("network"));
+                    return;
+                }
+                addIds(imported, books);
+                completion.onComplete(books.size(), null);
+            }, checkpoint);
+            fail("failed batch is not reported");
+        } catch (IOException expected) {
+            //expected
+        }
+        assertEquals("6", readCheckpoint(checkpoint));
+
+        BookTransfer.Result result = transfer.importBooks(channel(file), BookFormat.CSV, (books, completion) -> {
+            addIds(imported, books);
+            completion.onComplete(books.size(), null);
+        }, checkpoint);
+
+        assertEquals(6, result.getSkippedRows());
+        assertEquals(4, result.getRows());
+        assertEquals(ids(1, 10), imported);
+        //a finished import starts the next one from the first row
+        assertFalse(checkpoint.exists());
+    }
+
+    @Test
+    public void checkpointStopsAtTheFirstUnacknowledgedBatch() throws Exception {
+        byte[] file = BookFormatTest.write(BookFormat.NDJSON, books(1, 9));
+        File checkpoint = new File(folder.getRoot(), "import.checkpoint");
+        List<RetryExecutor.Completion<Integer>> held = new ArrayList<>();
+
+        //batches complete out of order: the second succeeds, then the first fails
+        try {
+            new BookTransfer(3, 2).importBooks(channel(file), BookFormat.NDJSON, (books, completion) -> {
+                held.add(completion);
+                if (held.size() == 2) {
+                    held.get(1).onComplete(3, null);
+                    held.get(0).onComplete(null, new Exception("network"));
+                }
+            }, checkpoint);
+            fail("failed batch is not reported");
+        } catch (IOException expected) {
+            //expected
+        }
+        //nothing is acknowledged without a gap, rows of the second batch are sent again
+        assertFalse(checkpoint.exists());
+
+        List<Integer> imported = new ArrayList<>();
+        BookTransfer.Result result = new BookTransfer(3, 2).importBooks(channel(file), BookFormat.NDJSON,
+                (books, completion) -> {
+                    addIds(imported, books);
+                    completion.onComplete(books.size(), null);
+                }, checkpoint);
+        assertEquals(0, result.getSkippedRows());
+        assertEquals(ids(1, 9), imported);
+    }
+
+    @Test
+    public void checkpointAfterTheEndOfTheFileIsRejected() throws Exception {
+        File checkpoint = new File(folder.getRoot(), "import.checkpoint");
+        Files.write(checkpoint.toPath(), "5\n".getBytes(StandardCharsets.UTF_8));
+        byte[] file = BookFormatTest.write(BookFormat.BINARY, books(1, 3));
+        try {
+            new BookTransfer(2, 1).importBooks(channel(file), BookFormat.BINARY,
+                    (books, completion) -> completion.onComplete(books.size(), null), checkpoint);
+            fail("checkpoint of another file is used");
+        } catch (IOException expected) {
+            //expected
+        }
+    }
+
+    @Test
+    public void exportWritesEveryPageInIdOrder() throws Exception {
+        TreeMap<Integer, Book> zone = new TreeMap<>();
+        for (Book book : books(1, 8)) {
+            zone.put(book.getId() * 3, BookFormatTest.book(book.getId() * 3, book.getBookName(), null));
+        }
+        List<Integer> pages = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //a full last page needs one more empty page to end the export
+        BookTransfer.Result result = new BookTransfer(4, 1).exportBooks((afterId, count, completion) -> {
+            pages.add(afterId);
+            List<Book> page = new ArrayList<>(zone.tailMap(afterId, false).values());
+            completion.onComplete(page.subList(0, Math.min(count, page.size())), null);
+        }, BookFormat.NDJSON, Channels.newChannel(out));
+
+        assertEquals(8, result.getRows());
+        List<Integer> exported = new ArrayList<>();
+        addIds(exported, BookFormatTest.read(BookFormat.NDJSON, out.toByteArray()));
+        assertEquals(new ArrayList<>(zone.keySet()), exported);
+        assertEquals(Arrays.asList(0, 12, 24), pages);
+    }
+
+    private static List<Book> books(int first, int last) {
+        List<Book> books = new ArrayList<>();
+        for (int id = first; id <= last; id++) {
+            books.add(BookFormatTest.book(id, "book " + id, id % 2 == 0 ? null : "d, " + id));
+        }
+        return books;
+    }
+
+    private static List<Integer> ids(int first, int last) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = first; id <= last; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static void addIds(List<Integer> ids, List<Book> books) {
+        for (Book book : books) {
+            ids.add(book.getId());
+        }
+    }
+
+    private static ReadableByteChannel channel(byte[] file) {
+        return Channels.newChannel(new ByteArrayInputStream(file));
+    }
+
+    private static String readCheckpoint(File checkpoint) throws IOException {
+        return new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.UTF_8).trim();
+    }
+}
@@ -0,0 +1,214 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BookWriteQueueTest {
+
+    private final RecordingSender sender = new RecordingSender();
+    private final RetryExecutor retryExecutor = new RetryExecutor(new CircuitBreaker(Integer.MAX_VALUE, 0));
+    private final BookWriteQueue queue = new BookWriteQueue(sender, new BookWriteQueue.BatchCallBack() {
+        @Override
+        public void onBatchSuccess(BookWriteQueue.Batch batch) {
+        }
+
+        @Override
+        public void onBatchFailure(BookWriteQueue.Batch batch, Exception e) {
+            failedBatch = batch;
+            failure = e;
+        }
+    }, retryExecutor);
+    private volatile BookWriteQueue.Batch failedBatch;
+    private volatile Exception failure;
+
+    @Test
+    public void lastUpsertOfAnIdWins() throws Exception {
+        queue.setPolicy(Integer.MAX_VALUE, TimeUnit.HOURS.toMillis(1));
+        assertFalse(queue.upsert(book(1, "v1"), true));
+        assertTrue(queue.upsert(book(1, "v2"), true));
+        assertTrue(queue.upsert(book(1, "v3"), true));
+        queue.upsert(book(2, "v1"), false);
+        assertEquals(2, queue.getPendingCount());
+
+        assertTrue(queue.awaitFlush(10, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("upsert 1 v3", "upsert 2 v1"), sender.calls);
+    }
+
+    @Test
+    public void upsertThenDeleteOfANewBookSendsNothing() throws Exception {
+        queue.setPolicy(Integer.MAX_VALUE, TimeUnit.HOURS.toMillis(1));
+        queue.upsert(book(1, "v1"), true);
+        queue.upsert(book(1, "v2"), true);
+        assertFalse(queue.delete(book(1, "v2")));
+        //the book exists in the cloud, its delete is sent instead of the upsert
+        queue.upsert(book(2, "v1"), false);
+        assertTrue(queue.delete(book(2, "v1")));
+        assertEquals(1, queue.getPendingCount());
+
+        assertTrue(queue.awaitFlush(10, TimeUnit.SECONDS));
+
+        assertEquals(Collections.singletonList("delete 2 v1"), sender.calls);
+    }
+
+    @Test
+    public void fullBatchIsFlushedAtOnce() throws Exception {
+        queue.setPolicy(3, TimeUnit.HOURS.toMillis(1));
+        queue.upsert(book(1, "v1"), false);
+        queue.upsert(book(2, "v1"), false);
+        Thread.sleep(100);
+        assertEquals(0, sender.calls.size());
+
+        queue.upsert(book(3, "v1"), false);
+        sender.awaitCalls(3);
+        assertEquals(Arrays.asList("upsert 1 v1", "upsert 2 v1", "upsert 3 v1"), sender.calls);
+        assertEquals(1, sender.sends);
+    }
+
+    @Test
+    public void partialBatchIsFlushedAfterTheDelay() throws Exception {
+        queue.setPolicy(Integer.MAX_VALUE, 50);
+        long start = System.nanoTime();
+        queue.upsert(book(1, "v1"), false);
+        queue.delete(book(2, "v1"));
+
+        sender.awaitCalls(2);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        //one flush sends both, one call per operation
+        assertEquals(2, sender.sends);
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    public void awaitFlushWaitsForTheSentBatches() throws Exception {
+        queue.setPolicy(Integer.MAX_VALUE, TimeUnit.HOURS.toMillis(1));
+        sender.holdNext = true;
+        queue.upsert(book(1, "v1"), false);
+
+        assertFalse(queue.awaitFlush(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, sender.calls.size());
+
+        sender.completeHeld(null);
+        assertTrue(queue.awaitFlush(10, TimeUnit.SECONDS));
+        assertTrue(queue.awaitFlush(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void failedBatchIsReportedWithItsBooks() throws Exception {
+        queue.setPolicy(Integer.MAX_VALUE, TimeUnit.HOURS.toMillis(1));
+        sender.holdNext = true;
+        queue.upsert(book(1, "v1"), false);
+        queue.flush();
+        sender.awaitCalls(1);
+        Exception error = new Exception("network");
+
+        sender.completeHeld(error);
+        assertTrue(queue.awaitFlush(10, TimeUnit.SECONDS));
+
+        assertSame(error, failure);
+        assertEquals(1, failedBatch.getUpserts().size());
+        assertEquals(Integer.valueOf(1), failedBatch.getUpserts().get(0).getId());
+    }
+
+    @Test
+    public void writesOfOneIdStayInOrderAcrossRetries() throws Exception {
+        retryExecutor.setPolicy(CloudDBMetrics.Operation.UPSERT, new RetryPolicy(3, 0, 0));
+        retryExecutor.setPolicy(CloudDBMetrics.Operation.DELETE, new RetryPolicy(3, 0, 0));
+        queue.setPolicy(Integer.MAX_VALUE, TimeUnit.HOURS.toMillis(1));
+        sender.holdNext = true;
+        queue.upsert(book(1, "v1"), false);
+        queue.flush();
+        sender.awaitCalls(1);
+
+        //the upsert is in flight, its delete and the write of another id are queued behind it
+        queue.delete(book(1, "v1"));
+        queue.upsert(book(2, "v1"), false);
+        queue.flush();
+        sender.awaitCalls(2);
+        assertEquals("upsert 2 v1", sender.calls.get(1));
+
+        //the held upsert fails and is retried before the delete is sent
+        sender.completeHeld(new Exception("network"));
+        assertTrue(queue.awaitFlush(10, TimeUnit.SECONDS));
+
+        assertEquals(4, sender.calls.size());
+        assertEquals("upsert 1 v1", sender.calls.get(2));
+        assertEquals("delete 1 v1", sender.calls.get(3));
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    static Book book(int id, String name) {
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName(name);
+        return book;
+    }
+
+    /**
+     * Records every attempt as "operation id name", one entry per book, and counts the calls.
+     * With holdNext the next call is not completed until completeHeld, other calls succeed at once
+     */
+    static class RecordingSender implements BookWriteQueue.Sender {
+        final List<String> calls = new ArrayList<>();
+        volatile int sends;
+        volatile boolean holdNext;
+        private RetryExecutor.Completion<Integer> held;
+
+        @Override
+        public boolean upsert(List<Book> books, RetryExecutor.Completion<Integer> completion) {
+            return send("upsert", books, completion);
+        }
+
+        @Override
+        public boolean delete(List<Book> books, RetryExecutor.Completion<Integer> completion) {
+            return send("delete", books, completion);
+        }
+
+        private boolean send(String operation, List<Book> books, RetryExecutor.Completion<Integer> completion) {
+            synchronized (this) {
+                sends++;
+                for (Book book : books) {
+                    calls.add(operation + " " + book.getId() + " " + book.getBookName());
+                }
+                notifyAll();
+                if (holdNext) {
+                    holdNext = false;
+                    held = completion;
+                    return true;
+                }
+            }
+            completion.onComplete(books.size(), null);
+            return true;
+        }
+
+        void completeHeld(Exception e) {
+            RetryExecutor.Completion<Integer> completion;
+            synchronized (this) {
+                completion = held;
+                held = null;
+            }
+            completion.onComplete(e == null ? 1 : null, e);
+        }
+
+        synchronized void awaitCalls(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (calls.size() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue("expected " + count + " calls, got " + calls, remaining > 0);
+                wait(remaining);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agconnect.cloud.database.CloudDBZoneObject;
+import com.huawei.agconnect.cloud.database.annotations.PrimaryKey;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeTrackerTest {
+
+    private final ChangeTracker<Book> tracker = new ChangeTracker<>(Book.class);
+
+    @Test
+    public void unknownBookIsDirty() {
+        assertTrue(tracker.isDirty(book(1, "Dune", "desert")));
+    }
+
+    @Test
+    public void upsertWithoutChangesIsSkipped() {
+        tracker.markClean(book(1, "Dune", "desert"));
+
+        //another instance with the same content, e.g. saved again from the edit dialog
+        assertFalse(tracker.isDirty(book(1, "Dune", "desert")));
+        assertTrue(tracker.isDirty(book(1, "Dune", "spice")));
+        assertTrue(tracker.isDirty(book(1, "Dune", null)));
+        assertTrue(tracker.isDirty(book(2, "Dune", "desert")));
+    }
+
+    @Test
+    public void editInPlaceAfterMarkCleanIsDirty() {
+        Book book = book(1, "Dune", "desert");
+        tracker.markClean(book);
+
+        //the UI edits the same instance, the tracker compares against its own copy
+        book.setDescription("spice");
+        assertTrue(tracker.isDirty(book));
+
+        tracker.markClean(book);
+        assertFalse(tracker.isDirty(book));
+        book.setDescription("desert");
+        assertTrue(tracker.isDirty(book));
+    }
+
+    @Test
+    public void forgetOnDeleteMakesTheNextUpsertDirty() {
+        Book book = book(1, "Dune", "desert");
+        tracker.markClean(book);
+        tracker.markClean(book(2, "Emma", null));
+        assertEquals(2, tracker.size());
+
+        tracker.forget(1);
+        assertEquals(1, tracker.size());
+        //written again after the delete, it must be sent even without changes
+        assertTrue(tracker.isDirty(book));
+        assertFalse(tracker.isDirty(book(2, "Emma", null)));
+
+        tracker.forget(null);
+        tracker.clear();
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void bookWithoutIdIsAlwaysDirty() {
+        Book book = book(null, "Dune", "desert");
+        tracker.markClean(book);
+
+        assertEquals(0, tracker.size());
+        assertTrue(tracker.isDirty(book));
+    }
+
+    @Test
+    public void fingerprintCollisionFallsBackToTheFields() {
+        ChangeTracker<Counter> counters = new ChangeTracker<>(Counter.class);
+        ObjectAccessor<Counter> accessor = ObjectAccessors.of(Counter.class);
+        Counter clean = new Counter(1, 10L, 20L);
+        //second field changed, third chosen so the fingerprint is the same
+        Counter edited = new Counter(1, 11L, collidingLast(clean, 11L));
+        assertEquals(accessor.fingerprint(clean), accessor.fingerprint(edited));
+        assertFalse(accessor.sameContent(clean, edited));
+
+        counters.markClean(clean);
+        assertTrue(counters.isDirty(edited));
+        assertFalse(counters.isDirty(new Counter(1, 10L, 20L)));
+    }
+
+    /**
+     * Get the last field which gives the edited counter the fingerprint of the clean one,
+     * Long fields are mixed into the fingerprint as they are
+     */
+    private static long collidingLast(Counter clean, long editedFirst) {
+        long head = ObjectAccessors.fingerprint(ObjectAccessors.FINGERPRINT_SEED, clean.id);
+        long cleanHead = ObjectAccessors.fingerprint(head, clean.first);
+        long editedHead = ObjectAccessors.fingerprint(head, editedFirst);
+        return cleanHead ^ editedHead ^ clean.last;
+    }
+
+    private static Book book(Integer id, String name, String description) {
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName(name);
+        book.setDescription(description);
+        return book;
+    }
+
+    /**
+     * ObjectType without a generated accessor, so the reflective ObjectTypeMeta is used
+     */
+    public static class Counter extends CloudDBZoneObject {
+        @PrimaryKey
+        private Integer id;
+        private Long first;
+        private Long last;
+
+        public Counter() {
+            super();
+        }
+
+        Counter(Integer id, Long first, Long last) {
+            super();
+            this.id = id;
+            this.first = first;
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.huawei.agc.clouddb.java.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60_000);
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowCall());
+
+        //a success in between starts the count again
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowCall());
+    }
+
+    @Test
+    public void halfOpenLetsOneTrialThrough() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        //the open time has elapsed, one trial call and nothing else
+        assertTrue(breaker.allowCall());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowCall());
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowCall());
+        assertTrue(breaker.allowCall());
+    }
+
+    @Test
+    public void failedTrialOpensAgain() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 0);
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertTrue(breaker.allowCall());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        //a single failure of the trial is enough, the threshold is not counted again
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void cancelledTrialLetsTheNextCallThrough() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.onFailure();
+        assertTrue(breaker.allowCall());
+        assertFalse(breaker.allowCall());
+
+        breaker.onCancelled();
+        assertTrue(breaker.allowCall());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,148 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CloudDBConflictTest {
+
+    private final ExecutorService mainThread = Executors.newSingleThreadExecutor();
+    private final InMemoryBookZone zone = new InMemoryBookZone();
+    private final List<Book> addedItemsOfB = new CopyOnWriteArrayList<>();
+    private CloudDB clientA;
+    private CloudDB clientB;
+
+    @Before
+    public void setUp() throws Exception {
+        zone.put(InMemoryBookZone.book(1, "Name", "Description"));
+        clientA = newClient();
+        clientB = newClient();
+        clientB.addCallBacks(new CloudDB.UiCallBack() {
+            @Override
+            public void onStart(List<Book> books) {
+            }
+
+            @Override
+            public void onAddItem(Book book) {
+                addedItemsOfB.add(book);
+            }
+
+            @Override
+            public void onChanged(BookDiff diff) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mainThread.shutdownNow();
+    }
+
+    private CloudDB newClient() throws Exception {
+        CloudDB cloudDB = CloudDB.withZones(mainThread, zone);
+        cloudDB.setQueryPolicy(CloudDB.QueryPolicy.CLOUD_ONLY);
+        cloudDB.setGetAllFreshness(0);
+        cloudDB.setFullSyncInterval(Long.MAX_VALUE);
+        cloudDB.setWriteBatchPolicy(1, 0);
+        CloudDBDeltaSyncTest.getAll(cloudDB);
+        return cloudDB;
+    }
+
+    /**
+     * Edit a copy of the synced book 1 and update it through the client, wait until it is written
+     */
+    private void update(CloudDB client, Book base, String name, String description) throws Exception {
+        Book local = InMemoryBookZone.copy(base);
+        local.setBookName(name);
+        local.setDescription(description);
+        client.updateBook(BookVersion.of(base), local);
+        settle(client);
+    }
+
+    private void settle(CloudDB client) throws Exception {
+        //the conflict check is processed after the query results queued before it
+        CompletableFuture<Void> processed = new CompletableFuture<>();
+        client.getDispatcher().process(() -> processed.complete(null));
+        processed.get(5, TimeUnit.SECONDS);
+        assertTrue(client.awaitWrites(5, TimeUnit.SECONDS));
+        mainThread.submit(() -> { }).get(5, TimeUnit.SECONDS);
+    }
+
+    private Book lastAddedItemOfB() {
+        assertFalse(addedItemsOfB.isEmpty());
+        return addedItemsOfB.get(addedItemsOfB.size() - 1);
+    }
+
+    private static long conflicts(CloudDB client) {
+        return client.getMetrics().snapshot().get(CloudDBMetrics.Operation.UPSERT).getConflicts();
+    }
+
+    @Test
+    public void editsOfOtherFieldsAreMerged() throws Exception {
+        Book baseOfA = InMemoryBookZone.copy(zone.get(1));
+        Book baseOfB = InMemoryBookZone.copy(zone.get(1));
+
+        update(clientA, baseOfA, "Name of A", "Description");
+        update(clientB, baseOfB, "Name", "Description of B");
+
+        assertEquals(0, conflicts(clientA));
+        assertEquals(1, conflicts(clientB));
+        Book stored = zone.get(1);
+        assertEquals("Name of A", stored.getBookName());
+        assertEquals("Description of B", stored.getDescription());
+        //the merged book is shown without a getAll
+        Book shown = lastAddedItemOfB();
+        assertEquals("Name of A", shown.getBookName());
+        assertEquals("Description of B", shown.getDescription());
+    }
+
+    @Test
+    public void fieldEditedOnBothSidesTakesTheLastWriter() throws Exception {
+        Book baseOfA = InMemoryBookZone.copy(zone.get(1));
+        Book baseOfB = InMemoryBookZone.copy(zone.get(1));
+
+        update(clientA, baseOfA, "Name of A", "Description of A");
+        update(clientB, baseOfB, "Name of B", "Description");
+
+        assertEquals(1, conflicts(clientB));
+        Book stored = zone.get(1);
+        assertEquals("Name of B", stored.getBookName());
+        assertEquals("Description of A", stored.getDescription());
+    }
+
+    @Test
+    public void remoteWinsDropsTheLocalEdit() throws Exception {
+        clientB.setMergeStrategy(BookMergeStrategy.REMOTE_WINS);
+        Book baseOfA = InMemoryBookZone.copy(zone.get(1));
+        Book baseOfB = InMemoryBookZone.copy(zone.get(1));
+
+        update(clientA, baseOfA, "Name of A", "Description");
+        update(clientB, baseOfB, "Name", "Description of B");
+
+        assertEquals(1, conflicts(clientB));
+        assertEquals("Description", zone.get(1).getDescription());
+        assertEquals("Name of A", lastAddedItemOfB().getBookName());
+    }
+
+    @Test
+    public void updateFromTheCurrentVersionIsNoConflict() throws Exception {
+        update(clientA, InMemoryBookZone.copy(zone.get(1)), "Name of A", "Description");
+        update(clientB, InMemoryBookZone.copy(zone.get(1)), "Name of A", "Description of B");
+
+        assertEquals(0, conflicts(clientB));
+        assertEquals("Description of B", zone.get(1).getDescription());
+    }
+}
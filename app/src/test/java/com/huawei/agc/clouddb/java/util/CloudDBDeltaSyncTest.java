@@ -0,0 +1,176 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CloudDBDeltaSyncTest {
+
+    private static final int ROUNDS = 5;
+    private static final int NEW_BOOKS_PER_ROUND = 10;
+
+    private final ExecutorService mainThread = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        mainThread.shutdownNow();
+    }
+
+    private CloudDB newCloudDB(InMemoryBookZone zone) {
+        CloudDB cloudDB = CloudDB.withZones(mainThread, zone);
+        cloudDB.setQueryPolicy(CloudDB.QueryPolicy.CLOUD_ONLY);
+        cloudDB.setGetAllFreshness(0);
+        //every getAll is a delta sync, the first one from an empty high-water mark
+        cloudDB.setFullSyncInterval(Long.MAX_VALUE);
+        return cloudDB;
+    }
+
+    static List<Book> getAll(CloudDB cloudDB) throws Exception {
+        CompletableFuture<List<Book>> books = new CompletableFuture<>();
+        cloudDB.getAll(books::complete);
+        return books.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void deltaTrafficStaysFlatAsTheTableGrows() throws Exception {
+        for (int tableSize : new int[]{100, 1_000, 10_000}) {
+            InMemoryBookZone zone = new InMemoryBookZone().fill(1, tableSize);
+            CloudDB cloudDB = newCloudDB(zone);
+
+            assertEquals(tableSize, getAll(cloudDB).size());
+            assertEquals(tableSize, zone.getCloudRows());
+
+            int lastId = tableSize;
+            for (int round = 0; round < ROUNDS; round++) {
+                zone.fill(lastId + 1, lastId + NEW_BOOKS_PER_ROUND);
+                lastId += NEW_BOOKS_PER_ROUND;
+                long rowsBefore = zone.getCloudRows();
+
+                List<Book> books = getAll(cloudDB);
+
+                assertEquals("rows of getAll " + round + " over " + tableSize + " books",
+                        NEW_BOOKS_PER_ROUND, zone.getCloudRows() - rowsBefore);
+                assertEquals(lastId, books.size());
+                assertEquals(lastId, (int) books.get(books.size() - 1).getId());
+            }
+            assertEquals(tableSize + ROUNDS * NEW_BOOKS_PER_ROUND,
+                    cloudDB.getMetrics().snapshot().get(CloudDBMetrics.Operation.QUERY).getRows());
+        }
+    }
+
+    @Test
+    public void unchangedTableTransfersNoRows() throws Exception {
+        InMemoryBookZone zone = new InMemoryBookZone().fill(1, 1_000);
+        CloudDB cloudDB = newCloudDB(zone);
+        getAll(cloudDB);
+        long rowsAfterFirstSync = zone.getCloudRows();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            assertEquals(1_000, getAll(cloudDB).size());
+        }
+        assertEquals(rowsAfterFirstSync, zone.getCloudRows());
+        assertEquals(1 + ROUNDS, zone.getCloudQueries());
+    }
+
+    @Test
+    public void remoteEditsAndDeletesBelowTheHighWaterMarkArrive() throws Exception {
+        InMemoryBookZone zone = new InMemoryBookZone().fill(1, 100);
+        CloudDB cloudDB = newCloudDB(zone);
+        CompletableFuture<BookDiff> changed = new CompletableFuture<>();
+        cloudDB.addCallBacks(new CloudDB.UiCallBack() {
+            @Override
+            public void onStart(List<Book> books) {
+            }
+
+            @Override
+            public void onAddItem(Book book) {
+            }
+
+            @Override
+            public void onChanged(BookDiff diff) {
+                changed.complete(diff);
+            }
+        });
+        getAll(cloudDB);
+        assertEquals(100, cloudDB.getBookIndex());
+        //subscribe again above the synced books, like a zone opened after a restart
+        cloudDB.onSignedIn();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (zone.getSubscribeCalls() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(2, zone.getSubscribeCalls());
+
+        //another device edits book 5 and deletes book 7, both far below the high-water mark
+        zone.executeUpsert(Collections.singletonList(InMemoryBookZone.book(5, "Edited", "Remote edit")),
+                (result, e) -> { });
+        BookDiff diff = changed.get(5, TimeUnit.SECONDS);
+        zone.executeDelete(Collections.singletonList(zone.get(7)), (result, e) -> { });
+        long rowsBefore = zone.getCloudRows();
+
+        assertTrue(diff.getInserted().isEmpty());
+        assertEquals(1, diff.getUpdated().size());
+        assertEquals(5, (int) diff.getUpdated().get(0).getId());
+        List<Book> books = getAll(cloudDB);
+        assertEquals(99, books.size());
+        assertEquals("Edited", books.get(4).getBookName());
+        for (Book book : books) {
+            assertFalse(book.getId() == 7);
+        }
+        //both changes came with the subscription, the delta query found nothing new
+        assertEquals(rowsBefore, zone.getCloudRows());
+    }
+
+    @Test
+    public void onlyTheFirstFillPostsTheWholeList() throws Exception {
+        InMemoryBookZone zone = new InMemoryBookZone().fill(1, 100);
+        CloudDB cloudDB = newCloudDB(zone);
+        List<String> events = new CopyOnWriteArrayList<>();
+        CloudDB.UiCallBack ui = new CloudDB.UiCallBack() {
+            @Override
+            public void onStart(List<Book> books) {
+                events.add("start " + books.size());
+            }
+
+            @Override
+            public void onAddItem(Book book) {
+                events.add("add " + book.getId());
+            }
+
+            @Override
+            public void onChanged(BookDiff diff) {
+                events.add("changed +" + diff.getInserted().size() + " ~" + diff.getUpdated().size()
+                        + " -" + diff.getDeleted().size());
+            }
+        };
+        cloudDB.addCallBacks(ui);
+
+        getAll(cloudDB);
+        zone.fill(101, 110);
+        getAll(cloudDB);
+        //nothing new, nothing posted
+        getAll(cloudDB);
+        cloudDB.setGetAllFreshness(TimeUnit.MINUTES.toMillis(1));
+        getAll(cloudDB);
+        //a new UI gets the whole list again
+        cloudDB.addCallBacks(ui);
+        getAll(cloudDB);
+        mainThread.submit(() -> { }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("start 100", "changed +10 ~0 -0", "start 110"), events);
+    }
+}
@@ -0,0 +1,229 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agconnect.cloud.database.CloudDBZoneQuery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BookZone which keeps the table in memory and answers on the calling thread.
+ * Queries are evaluated with BookQuery.matches, books are copied in and out, so every client
+ * holds its own instances like with a real zone. Writes through the zone reach the subscriptions
+ * of every client of the zone; fill and put change the table without a snapshot, like rows
+ * written before the subscription. Local-only queries see no local cache and return nothing.
+ * Every row returned by a cloud query is counted as traffic
+ */
+class InMemoryBookZone implements BookZone {
+
+    private final TreeMap<Integer, Book> books = new TreeMap<>();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong cloudRows = new AtomicLong();
+    private final AtomicLong cloudQueries = new AtomicLong();
+    private final AtomicLong subscribeCalls = new AtomicLong();
+
+    /**
+     * Add books first..last without a snapshot
+     */
+    InMemoryBookZone fill(int first, int last) {
+        for (int id = first; id <= last; id++) {
+            put(book(id, "Book " + id, "Description " + id));
+        }
+        return this;
+    }
+
+    /**
+     * Write a book without a snapshot
+     */
+    void put(Book book) {
+        synchronized (books) {
+            books.put(book.getId(), copy(book));
+        }
+    }
+
+    Book get(int id) {
+        synchronized (books) {
+            return copy(books.get(id));
+        }
+    }
+
+    int size() {
+        synchronized (books) {
+            return books.size();
+        }
+    }
+
+    long getCloudRows() {
+        return cloudRows.get();
+    }
+
+    long getCloudQueries() {
+        return cloudQueries.get();
+    }
+
+    long getSubscribeCalls() {
+        return subscribeCalls.get();
+    }
+
+    @Override
+    public void executeQuery(BookQuery query, CloudDBZoneQuery.CloudDBZoneQueryPolicy policy,
+            RetryExecutor.Completion<Snapshot> completion) {
+        List<Book> result = new ArrayList<>();
+        if (policy != CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_LOCAL_ONLY) {
+            result = select(query);
+            cloudQueries.incrementAndGet();
+            cloudRows.addAndGet(result.size());
+        }
+        completion.onComplete(new ListSnapshot(result, Collections.emptyList(), Collections.emptyList()), null);
+    }
+
+    @Override
+    public void executeUpsert(List<Book> upserts, RetryExecutor.Completion<Integer> completion) {
+        synchronized (books) {
+            for (Book book : upserts) {
+                books.put(book.getId(), copy(book));
+            }
+        }
+        notifySubscriptions(upserts, Collections.emptyList());
+        completion.onComplete(upserts.size(), null);
+    }
+
+    @Override
+    public void executeDelete(List<Book> deletes, RetryExecutor.Completion<Integer> completion) {
+        synchronized (books) {
+            for (Book book : deletes) {
+                books.remove(book.getId());
+            }
+        }
+        notifySubscriptions(Collections.emptyList(), deletes);
+        completion.onComplete(deletes.size(), null);
+    }
+
+    @Override
+    public Registration subscribeSnapshot(BookQuery query, SnapshotListener listener) {
+        Subscription subscription = new Subscription(query, listener);
+        subscriptions.add(subscription);
+        subscribeCalls.incrementAndGet();
+        return () -> subscriptions.remove(subscription);
+    }
+
+    private List<Book> select(BookQuery query) {
+        List<Book> result = new ArrayList<>();
+        synchronized (books) {
+            for (Book book : books.values()) {
+                if (query.matches(book)) {
+                    result.add(copy(book));
+                }
+            }
+        }
+        Comparator<Book> order = query.getOrder();
+        if (order != null) {
+            result.sort(order);
+        }
+        if (query.getLimit() > 0 && result.size() > query.getLimit()) {
+            result = new ArrayList<>(result.subList(0, query.getLimit()));
+        }
+        return result;
+    }
+
+    private void notifySubscriptions(List<Book> upserted, List<Book> deleted) {
+        for (Subscription subscription : subscriptions) {
+            List<Book> matchedUpserts = new ArrayList<>();
+            for (Book book : upserted) {
+                if (subscription.query.matches(book)) {
+                    matchedUpserts.add(copy(book));
+                }
+            }
+            List<Book> matchedDeletes = new ArrayList<>();
+            for (Book book : deleted) {
+                if (subscription.query.matches(book)) {
+                    matchedDeletes.add(copy(book));
+                }
+            }
+            if (!matchedUpserts.isEmpty() || !matchedDeletes.isEmpty()) {
+                subscription.listener.onSnapshot(
+                        new ListSnapshot(select(subscription.query), matchedUpserts, matchedDeletes), null);
+            }
+        }
+    }
+
+    static Book book(int id, String name, String description) {
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName(name);
+        book.setDescription(description);
+        return book;
+    }
+
+    static Book copy(Book book) {
+        return book == null ? null : book(book.getId(), book.getBookName(), book.getDescription());
+    }
+
+    private static class Subscription {
+        private final BookQuery query;
+        private final SnapshotListener listener;
+
+        Subscription(BookQuery query, SnapshotListener listener) {
+            this.query = query;
+            this.listener = listener;
+        }
+    }
+
+    static class ListSnapshot implements Snapshot {
+        private final List<Book> objects;
+        private final List<Book> upserted;
+        private final List<Book> deleted;
+        private volatile boolean released = false;
+
+        ListSnapshot(List<Book> objects, List<Book> upserted, List<Book> deleted) {
+            this.objects = objects;
+            this.upserted = upserted;
+            this.deleted = deleted;
+        }
+
+        @Override
+        public ShardedSnapshot.Cursor getSnapshotObjects() {
+            return cursor(objects);
+        }
+
+        @Override
+        public ShardedSnapshot.Cursor getUpsertedObjects() {
+            return cursor(upserted);
+        }
+
+        @Override
+        public ShardedSnapshot.Cursor getDeletedObjects() {
+            return cursor(deleted);
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+
+        boolean isReleased() {
+            return released;
+        }
+
+        private static ShardedSnapshot.Cursor cursor(List<Book> list) {
+            return new ShardedSnapshot.Cursor() {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next < list.size();
+                }
+
+                @Override
+                public Book next() {
+                    return hasNext() ? list.get(next++) : null;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agconnect.cloud.database.CloudDBZoneObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ObjectZone which keeps the table of one ObjectType in memory and answers on the calling thread,
+ * like InMemoryBookZone. Objects are copied in and out with the accessor of the type, writes reach
+ * every subscription, put changes the table without a snapshot. failNextWrites makes writes fail
+ *
+ * @param <T> ObjectType class
+ */
+class InMemoryObjectZone<T extends CloudDBZoneObject> implements ObjectZone<T> {
+
+    private final ObjectAccessor<T> accessor;
+    private final TreeMap<Object, T> objects = new TreeMap<>();
+    private final List<SnapshotListener<T>> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicInteger queries = new AtomicInteger();
+    private final AtomicInteger writes = new AtomicInteger();
+    private final AtomicInteger failingWrites = new AtomicInteger();
+
+    InMemoryObjectZone(Class<T> type) {
+        this.accessor = ObjectAccessors.of(type);
+    }
+
+    /**
+     * Write an object without a snapshot
+     */
+    void put(T object) {
+        synchronized (objects) {
+            objects.put(accessor.getKey(object), accessor.copy(object));
+        }
+    }
+
+    T get(Object key) {
+        synchronized (objects) {
+            T object = objects.get(key);
+            return object == null ? null : accessor.copy(object);
+        }
+    }
+
+    int size() {
+        synchronized (objects) {
+            return objects.size();
+        }
+    }
+
+    int getQueries() {
+        return queries.get();
+    }
+
+    int getWrites() {
+        return writes.get();
+    }
+
+    int getSubscriptions() {
+        return subscriptions.size();
+    }
+
+    void failNextWrites(int count) {
+        failingWrites.set(count);
+    }
+
+    @Override
+    public void queryAll(RetryExecutor.Completion<List<T>> completion) {
+        queries.incrementAndGet();
+        synchronized (objects) {
+            completion.onComplete(copies(objects.values()), null);
+        }
+    }
+
+    @Override
+    public void queryPage(int afterKey, int limit, RetryExecutor.Completion<List<T>> completion) {
+        queries.incrementAndGet();
+        List<T> page;
+        synchronized (objects) {
+            page = copies(objects.tailMap(afterKey, false).values());
+        }
+        completion.onComplete(page.size() > limit ? new ArrayList<>(page.subList(0, limit)) : page, null);
+    }
+
+    @Override
+    public void queryByKey(Object key, RetryExecutor.Completion<List<T>> completion) {
+        queries.incrementAndGet();
+        T object = get(key);
+        completion.onComplete(object == null ? new ArrayList<>() : new ArrayList<>(Collections.singletonList(object)),
+                null);
+    }
+
+    @Override
+    public void executeUpsert(List<T> upserts, RetryExecutor.Completion<Integer> completion) {
+        if (failWrite(completion)) {
+            return;
+        }
+        for (T object : upserts) {
+            put(object);
+        }
+        notifySubscriptions(upserts, Collections.emptyList());
+        completion.onComplete(upserts.size(), null);
+    }
+
+    @Override
+    public void executeDelete(List<T> deletes, RetryExecutor.Completion<Integer> completion) {
+        if (failWrite(completion)) {
+            return;
+        }
+        synchronized (objects) {
+            for (T object : deletes) {
+                objects.remove(accessor.getKey(object));
+            }
+        }
+        notifySubscriptions(Collections.emptyList(), deletes);
+        completion.onComplete(deletes.size(), null);
+    }
+
+    @Override
+    public BookZone.Registration subscribeSnapshot(SnapshotListener<T> listener) {
+        subscriptions.add(listener);
+        return () -> subscriptions.remove(listener);
+    }
+
+    /**
+     * Send a snapshot to every subscription without changing the table, like a late echo
+     */
+    void sendSnapshot(List<T> upserted, List<T> deleted) {
+        notifySubscriptions(upserted, deleted);
+    }
+
+    private boolean failWrite(RetryExecutor.Completion<Integer> completion) {
+        writes.incrementAndGet();
+        if (failingWrites.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+            completion.onComplete(null, new IllegalStateException("write is failed"));
+            return true;
+        }
+        return false;
+    }
+
+    private void notifySubscriptions(List<T> upserted, List<T> deleted) {
+        for (SnapshotListener<T> listener : subscriptions) {
+            listener.onSnapshot(copies(upserted), copies(deleted), null);
+        }
+    }
+
+    private List<T> copies(Iterable<T> source) {
+        List<T> list = new ArrayList<>();
+        for (T object : source) {
+            list.add(accessor.copy(object));
+        }
+        return list;
+    }
+
+    /**
+     * Keys of the table, for assertions
+     */
+    List<Object> keys() {
+        synchronized (objects) {
+            return new ArrayList<>(objects.keySet());
+        }
+    }
+}
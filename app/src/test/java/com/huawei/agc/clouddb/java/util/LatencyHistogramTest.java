@@ -0,0 +1,121 @@
+package com.huawei.agc.clouddb.java.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    //a bucket above 64 spans 1/32 of its power of two, the reported value is its highest value
+    private static final double MAX_RELATIVE_ERROR = 1.0 / 32;
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 63; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(32, histogram.getValueAtPercentile(50));
+        assertEquals(63, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void medianOfAMillionValuesIsAboutOnePointSixPercentHigh() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 1_000_000; value++) {
+            histogram.record(value);
+        }
+
+        //the exact median is 500000, it falls into the bucket [491520, 507903]
+        assertEquals(507903, histogram.getValueAtPercentile(50));
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(500000.5, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void percentilesAreNeverLowAndAtMostOneBucketHigh() {
+        Random random = new Random(42);
+        long[] values = new long[100_000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            //log-uniform over 1us..100s like latencies
+            values[i] = (long) Math.pow(10, random.nextDouble() * 8);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{1, 10, 50, 90, 99, 99.9, 99.99}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue(percentile + ": " + reported + " vs " + exact,
+                    reported - exact <= exact * MAX_RELATIVE_ERROR);
+        }
+    }
+
+    @Test
+    public void reportedValueIsCappedByTheMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+
+        assertEquals(1000, histogram.getValueAtPercentile(99));
+        assertEquals(1000, histogram.getMax());
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void valuesBeyondTheRangeGoToTheLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1L << 50);
+
+        assertEquals(1L << 50, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executor.execute(() -> {
+                for (int value = 1; value <= 100_000; value++) {
+                    histogram.record(value);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(400_000, histogram.getCount());
+        assertEquals(100_000, histogram.getMax());
+    }
+}
@@ -0,0 +1,65 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agconnect.cloud.database.CloudDBZoneObject;
+import com.huawei.agconnect.cloud.database.annotations.IsIndex;
+import com.huawei.agconnect.cloud.database.annotations.PrimaryKey;
+
+/**
+ * Second ObjectType of the tests, shaped like a class generated from the console: an int key
+ * which isn't the first field, two indexes and fields which aren't persisted
+ */
+public class Note extends CloudDBZoneObject {
+    static final String UNUSED = "static fields are not persisted";
+
+    @IsIndex(indexName = "title")
+    private String title;
+
+    @PrimaryKey
+    private Integer noteId;
+
+    @IsIndex(indexName = "updatedAt")
+    private Long updatedAt;
+
+    private String text;
+
+    private transient int views;
+
+    public Note() {
+        super();
+    }
+
+    Note(int noteId, String title, long updatedAt, String text) {
+        this.noteId = noteId;
+        this.title = title;
+        this.updatedAt = updatedAt;
+        this.text = text;
+    }
+
+    public Integer getNoteId() {
+        return noteId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public Long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public int getViews() {
+        return views;
+    }
+
+    public void setViews(int views) {
+        this.views = views;
+    }
+}
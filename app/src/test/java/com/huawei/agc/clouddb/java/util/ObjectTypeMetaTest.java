@@ -0,0 +1,139 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agconnect.cloud.database.CloudDBZoneObject;
+import com.huawei.agconnect.cloud.database.annotations.PrimaryKey;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ObjectTypeMetaTest {
+
+    @Test
+    public void keyAndIndexesAreFoundByAnnotation() {
+        ObjectTypeMeta<Note> meta = ObjectTypeMeta.of(Note.class);
+
+        assertSame(Note.class, meta.getType());
+        assertEquals("noteId", meta.getPrimaryKeyName());
+        assertTrue(meta.hasIntKey());
+        assertEquals(Arrays.asList("title", "updatedAt"), meta.getIndexNames());
+        assertEquals("title", meta.getIndexFieldName("title"));
+        assertEquals("updatedAt", meta.getIndexFieldName("updatedAt"));
+        //looked up once per class
+        assertSame(meta, ObjectTypeMeta.of(Note.class));
+        assertSame(meta, ObjectAccessors.of(Note.class));
+    }
+
+    @Test
+    public void valuesAreReadFromTheAnnotatedFields() {
+        ObjectTypeMeta<Note> meta = ObjectTypeMeta.of(Note.class);
+        Note note = new Note(7, "Plan", 1000L, "text");
+
+        assertEquals(7, meta.getKey(note));
+        assertEquals(7, meta.getIntKey(note));
+        assertEquals("Plan", meta.getIndexValue(note, "title"));
+        assertEquals(1000L, meta.getIndexValue(note, "updatedAt"));
+    }
+
+    @Test
+    public void indexComparatorBreaksTiesByKey() {
+        ObjectTypeMeta<Note> meta = ObjectTypeMeta.of(Note.class);
+        List<Note> notes = new ArrayList<>(Arrays.asList(new Note(3, "b", 20L, null),
+                new Note(1, "b", 10L, null), new Note(2, "a", 30L, null), new Note(4, null, 5L, null)));
+
+        notes.sort(meta.getIndexComparator("title"));
+        assertEquals(Arrays.asList(4, 2, 1, 3), keys(notes));
+
+        notes.sort(meta.getIndexComparator("updatedAt"));
+        assertEquals(Arrays.asList(4, 1, 3, 2), keys(notes));
+
+        notes.sort(meta.getKeyComparator());
+        assertEquals(Arrays.asList(1, 2, 3, 4), keys(notes));
+        assertSame(meta.getIndexComparator("title"), meta.getIndexComparator("title"));
+    }
+
+    @Test
+    public void unknownIndexIsRejected() {
+        try {
+            ObjectTypeMeta.of(Note.class).getIndexComparator("text");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("text"));
+        }
+    }
+
+    @Test
+    public void contentCopyAndFingerprintCoverPersistedFieldsOnly() {
+        ObjectTypeMeta<Note> meta = ObjectTypeMeta.of(Note.class);
+        Note note = new Note(1, "Plan", 10L, "text");
+        note.setViews(5);
+
+        Note copy = meta.copy(note);
+        assertNotSame(note, copy);
+        assertTrue(meta.sameContent(note, copy));
+        assertEquals(meta.fingerprint(note), meta.fingerprint(copy));
+        //transient fields are not persisted, so they are neither copied nor compared
+        assertEquals(0, copy.getViews());
+
+        copy.setText("edited");
+        assertFalse(meta.sameContent(note, copy));
+        assertNotEquals(meta.fingerprint(note), meta.fingerprint(copy));
+        assertTrue(meta.keyEquals(note, copy));
+        assertEquals(meta.keyHashCode(note), meta.keyHashCode(copy));
+    }
+
+    @Test
+    public void stringKeyHasNoIntKey() {
+        ObjectTypeMeta<Tag> meta = ObjectTypeMeta.of(Tag.class);
+        Tag tag = new Tag();
+        tag.name = "java";
+
+        assertEquals("name", meta.getPrimaryKeyName());
+        assertFalse(meta.hasIntKey());
+        assertEquals("java", meta.getKey(tag));
+        assertTrue(meta.getIndexNames().isEmpty());
+        try {
+            meta.getIntKey(tag);
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("not an int"));
+        }
+    }
+
+    @Test
+    public void typeWithoutPrimaryKeyIsRejected() {
+        try {
+            ObjectTypeMeta.of(Untyped.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("@PrimaryKey"));
+        }
+    }
+
+    private static List<Integer> keys(List<Note> notes) {
+        List<Integer> keys = new ArrayList<>();
+        for (Note note : notes) {
+            keys.add(note.getNoteId());
+        }
+        return keys;
+    }
+
+    public static class Tag extends CloudDBZoneObject {
+        @PrimaryKey
+        private String name;
+    }
+
+    public static class Untyped extends CloudDBZoneObject {
+        private String name;
+    }
+}
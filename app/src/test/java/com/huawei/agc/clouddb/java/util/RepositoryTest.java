@@ -0,0 +1,231 @@
+package com.huawei.agc.clouddb.java.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Repository over the second ObjectType Note, with a zone which answers on the calling thread,
+ * so every callback has run when a call returns
+ */
+public class RepositoryTest {
+
+    private InMemoryObjectZone<Note> zone;
+    private CloudDBMetrics metrics;
+    private Repository<Note> repository;
+
+    @Before
+    public void setUp() {
+        zone = new InMemoryObjectZone<>(Note.class);
+        metrics = new CloudDBMetrics();
+        repository = newRepository();
+    }
+
+    @Test
+    public void getAllReturnsTheTableOrderedByKey() {
+        zone.put(new Note(3, "c", 30L, "three"));
+        zone.put(new Note(1, "a", 10L, "one"));
+        zone.put(new Note(2, "b", 20L, "two"));
+
+        List<Note> notes = getAll(repository);
+
+        assertEquals(Arrays.asList(1, 2, 3), keys(notes));
+        assertEquals("two", notes.get(1).getText());
+        assertEquals(3, metrics.snapshot().get(CloudDBMetrics.Operation.QUERY).getRows());
+    }
+
+    @Test
+    public void getReadsThroughOnceThenServesTheSyncedObject() {
+        zone.put(new Note(5, "e", 50L, "five"));
+        List<Note> results = new ArrayList<>();
+
+        repository.get(5, results::add);
+        repository.get(5, results::add);
+        repository.get(6, results::add);
+
+        assertEquals(5, (int) results.get(0).getNoteId());
+        assertSame(results.get(0), results.get(1));
+        assertNull(results.get(2));
+        //the synced object is served without a query, the missing one is queried
+        assertEquals(2, zone.getQueries());
+    }
+
+    @Test
+    public void pagesWalkTheIntKey() {
+        for (int id = 1; id <= 5; id++) {
+            zone.put(new Note(id, "t" + id, id, null));
+        }
+        List<List<Note>> pages = new ArrayList<>();
+        List<Boolean> hasMore = new ArrayList<>();
+        int afterKey = 0;
+        do {
+            repository.queryPage(afterKey, 2, (page, more) -> {
+                pages.add(page);
+                hasMore.add(more);
+            });
+            List<Note> last = pages.get(pages.size() - 1);
+            afterKey = last.isEmpty() ? afterKey : last.get(last.size() - 1).getNoteId();
+        } while (hasMore.get(hasMore.size() - 1));
+
+        assertEquals(Arrays.asList(1, 2), keys(pages.get(0)));
+        assertEquals(Arrays.asList(3, 4), keys(pages.get(1)));
+        assertEquals(Collections.singletonList(5), keys(pages.get(2)));
+        assertEquals(Arrays.asList(true, true, false), hasMore);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), keys(repository.getSyncedByIndex("updatedAt")));
+    }
+
+    @Test
+    public void upsertSkipsObjectsEqualToTheirSyncedState() {
+        zone.put(new Note(1, "a", 10L, "one"));
+        zone.put(new Note(2, "b", 20L, "two"));
+        List<Note> synced = getAll(repository);
+        Note unchanged = ObjectAccessors.of(Note.class).copy(synced.get(0));
+        Note edited = ObjectAccessors.of(Note.class).copy(synced.get(1));
+        edited.setText("edited");
+        Note added = new Note(3, "c", 30L, "three");
+        List<Note> written = new ArrayList<>();
+
+        repository.upsert(Arrays.asList(unchanged, edited, added), (objects, e) -> {
+            assertNull(e);
+            written.addAll(objects);
+        });
+
+        assertEquals(Arrays.asList(2, 3), keys(written));
+        assertEquals(1, zone.getWrites());
+        assertEquals("edited", zone.get(2).getText());
+        assertEquals(3, zone.size());
+        CloudDBMetrics.Snapshot upserts = metrics.snapshot().get(CloudDBMetrics.Operation.UPSERT);
+        assertEquals(1, upserts.getAvoided());
+        assertEquals(2, upserts.getRows());
+
+        //written objects are synced, so writing them again sends nothing
+        repository.upsert(Arrays.asList(edited, added), null);
+        assertEquals(1, zone.getWrites());
+    }
+
+    @Test
+    public void failedWriteIsReportedAndNotSynced() {
+        Note note = new Note(1, "a", 10L, "one");
+        zone.failNextWrites(1);
+        List<Exception> errors = new ArrayList<>();
+
+        repository.upsert(Collections.singletonList(note), (objects, e) -> errors.add(e));
+
+        assertNotNull(errors.get(0));
+        assertEquals(0, zone.size());
+        assertTrue(repository.getSyncedByIndex("title").isEmpty());
+
+        repository.upsert(Collections.singletonList(note), (objects, e) -> errors.add(e));
+        assertNull(errors.get(1));
+        assertEquals(1, zone.size());
+        assertEquals(2, zone.getWrites());
+    }
+
+    @Test
+    public void deleteRemovesFromTheZoneAndTheSyncedObjects() {
+        zone.put(new Note(1, "b", 10L, null));
+        zone.put(new Note(2, "a", 20L, null));
+        List<Note> synced = getAll(repository);
+
+        repository.delete(Collections.singletonList(synced.get(0)), null);
+
+        assertEquals(Collections.singletonList(2), zone.keys());
+        assertEquals(Collections.singletonList(2), keys(repository.getSyncedByIndex("title")));
+    }
+
+    @Test
+    public void syncedObjectsAreOrderedByIndex() {
+        zone.put(new Note(1, "c", 30L, null));
+        zone.put(new Note(2, "a", 20L, null));
+        zone.put(new Note(3, "b", 10L, null));
+        getAll(repository);
+
+        assertEquals(Arrays.asList(2, 3, 1), keys(repository.getSyncedByIndex("title")));
+        assertEquals(Arrays.asList(3, 2, 1), keys(repository.getSyncedByIndex("updatedAt")));
+    }
+
+    @Test
+    public void subscriptionPassesOnlyChangedObjects() {
+        zone.put(new Note(1, "a", 10L, "one"));
+        getAll(repository);
+        List<List<Note>> upserts = new ArrayList<>();
+        List<List<Note>> deletes = new ArrayList<>();
+        repository.subscribe((upserted, deleted) -> {
+            upserts.add(upserted);
+            deletes.add(deleted);
+        });
+        Repository<Note> otherClient = newRepository();
+
+        Note edited = new Note(1, "a", 10L, "edited");
+        otherClient.upsert(Arrays.asList(edited, new Note(2, "b", 20L, "two")), null);
+        //an echo of the synced state is no change
+        zone.sendSnapshot(Collections.singletonList(edited), Collections.emptyList());
+        otherClient.delete(Collections.singletonList(edited), null);
+
+        assertEquals(2, upserts.size());
+        assertEquals(Arrays.asList(1, 2), keys(upserts.get(0)));
+        assertEquals("edited", upserts.get(0).get(0).getText());
+        assertTrue(deletes.get(0).isEmpty());
+        assertTrue(upserts.get(1).isEmpty());
+        assertEquals(Collections.singletonList(1), keys(deletes.get(1)));
+        assertEquals(Collections.singletonList(2), keys(repository.getSyncedByIndex("title")));
+
+        repository.unsubscribe();
+        assertEquals(0, zone.getSubscriptions());
+    }
+
+    @Test
+    public void closedZoneAnswersEmpty() {
+        Repository<Note> closed = new Repository<>(Note.class, () -> null, metrics,
+                new RetryExecutor(new CircuitBreaker(10, 60_000)));
+        List<Note> results = new ArrayList<>();
+        List<Exception> errors = new ArrayList<>();
+
+        assertTrue(getAll(closed).isEmpty());
+        closed.get(1, results::add);
+        closed.upsert(Collections.singletonList(new Note(1, "a", 10L, null)), (objects, e) -> errors.add(e));
+
+        assertNull(results.get(0));
+        assertNotNull(errors.get(0));
+        assertEquals(0, zone.getQueries());
+    }
+
+    @Test
+    public void unsupportedKeyIsRejected() {
+        try {
+            repository.get(1L, object -> fail());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("1"));
+        }
+    }
+
+    private Repository<Note> newRepository() {
+        return new Repository<>(Note.class, () -> zone, metrics, new RetryExecutor(new CircuitBreaker(10, 60_000)));
+    }
+
+    private static List<Note> getAll(Repository<Note> repository) {
+        List<Note> result = new ArrayList<>();
+        repository.getAll(result::addAll);
+        return result;
+    }
+
+    private static List<Integer> keys(List<Note> notes) {
+        List<Integer> keys = new ArrayList<>();
+        for (Note note : notes) {
+            keys.add(note.getNoteId());
+        }
+        return keys;
+    }
+}
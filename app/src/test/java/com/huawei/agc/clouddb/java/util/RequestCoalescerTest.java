@@ -0,0 +1,113 @@
+package com.huawei.agc.clouddb.java.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCoalescerTest {
+
+    private long now = 1000;
+    private final RequestCoalescer<Integer, String> coalescer = new RequestCoalescer<>(() -> now, 100);
+
+    @Test
+    public void callsInFlightJoinTheFirstRequest() {
+        assertEquals(RequestCoalescer.Join.STARTED, coalescer.join(1, "a"));
+        assertEquals(RequestCoalescer.Join.JOINED, coalescer.join(1, "b"));
+        assertEquals(RequestCoalescer.Join.JOINED, coalescer.join(1, null));
+
+        assertEquals(Arrays.asList("a", "b"), coalescer.complete(1, true));
+    }
+
+    @Test
+    public void keysAreCoalescedSeparately() {
+        assertEquals(RequestCoalescer.Join.STARTED, coalescer.join(1, "a"));
+        assertEquals(RequestCoalescer.Join.STARTED, coalescer.join(2, "b"));
+
+        assertEquals(Collections.singletonList("b"), coalescer.complete(2, false));
+        assertEquals(Collections.singletonList("a"), coalescer.complete(1, false));
+    }
+
+    @Test
+    public void succeededRequestIsFreshWithinTheWindow() {
+        coalescer.join(1, "a");
+        coalescer.complete(1, true);
+
+        now += 99;
+        assertEquals(RequestCoalescer.Join.FRESH, coalescer.join(1, "b"));
+        now += 1;
+        assertEquals(RequestCoalescer.Join.STARTED, coalescer.join(1, "c"));
+        //the fresh call was answered at once and is not a waiter
+        assertEquals(Collections.singletonList("c"), coalescer.complete(1, true));
+    }
+
+    @Test
+    public void failedRequestIsNotFresh() {
+        coalescer.join(1, "a");
+        coalescer.complete(1, false);
+
+        assertEquals(RequestCoalescer.Join.STARTED, coalescer.join(1, "b"));
+    }
+
+    @Test
+    public void invalidateEndsTheWindow() {
+        coalescer.join(1, "a");
+        coalescer.complete(1, true);
+
+        coalescer.invalidate();
+
+        assertEquals(RequestCoalescer.Join.STARTED, coalescer.join(1, "b"));
+    }
+
+    @Test
+    public void zeroFreshnessStartsEveryCall() {
+        coalescer.setFreshnessMillis(0);
+        coalescer.join(1, "a");
+        coalescer.complete(1, true);
+
+        assertEquals(RequestCoalescer.Join.STARTED, coalescer.join(1, "b"));
+    }
+
+    @Test
+    public void completeWithoutRequestHasNoWaiters() {
+        assertTrue(coalescer.complete(1, true).isEmpty());
+    }
+
+    @Test
+    public void concurrentCallsStartOneRequest() throws InterruptedException {
+        RequestCoalescer<Integer, Integer> shared = new RequestCoalescer<>(() -> 0, 0);
+        int threads = 8;
+        int callsPerThread = 1000;
+        AtomicInteger started = new AtomicInteger();
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < callsPerThread; i++) {
+                    if (shared.join(1, i) == RequestCoalescer.Join.STARTED) {
+                        started.incrementAndGet();
+                    }
+                }
+            });
+        }
+        go.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, started.get());
+        assertEquals(threads * callsPerThread, shared.complete(1, true).size());
+    }
+}
@@ -0,0 +1,176 @@
+package com.huawei.agc.clouddb.java.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RetryExecutorTest {
+
+    @Test
+    public void backoffDoublesUpToTheMaxDelay() {
+        RetryPolicy policy = new RetryPolicy(8, 10, 50);
+        long[] bounds = {10, 20, 40, 50, 50};
+        for (int attempt = 1; attempt <= bounds.length; attempt++) {
+            long max = 0;
+            for (int i = 0; i < 2_000; i++) {
+                long delay = policy.getDelayMillis(attempt);
+                assertTrue("delay " + delay + " of attempt " + attempt, delay >= 0 && delay <= bounds[attempt - 1]);
+                max = Math.max(max, delay);
+            }
+            //full jitter spreads the delays over the whole range
+            assertTrue(max > bounds[attempt - 1] / 2);
+        }
+        assertEquals(0, RetryPolicy.NO_RETRY.getDelayMillis(1));
+    }
+
+    @Test
+    public void failedCallIsRetriedUntilItSucceeds() throws Exception {
+        RetryExecutor executor = new RetryExecutor(new CircuitBreaker(10, 60_000));
+        executor.setPolicy(CloudDBMetrics.Operation.UPSERT, new RetryPolicy(5, 1, 2));
+        FaultyCall call = new FaultyCall(2);
+        Result result = new Result();
+
+        executor.execute(CloudDBMetrics.Operation.UPSERT, call, result);
+
+        result.await();
+        assertNull(result.error);
+        assertEquals(Integer.valueOf(3), result.value);
+        assertEquals(3, call.attempts.get());
+        assertEquals(CircuitBreaker.State.CLOSED, executor.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void lastFailureIsReportedAfterMaxAttempts() throws Exception {
+        RetryExecutor executor = new RetryExecutor(new CircuitBreaker(10, 60_000));
+        executor.setPolicy(CloudDBMetrics.Operation.DELETE, new RetryPolicy(3, 1, 2));
+        FaultyCall call = new FaultyCall(Integer.MAX_VALUE);
+        Result result = new Result();
+
+        executor.execute(CloudDBMetrics.Operation.DELETE, call, result);
+
+        result.await();
+        assertEquals(3, call.attempts.get());
+        assertSame(call.lastFailure, result.error);
+    }
+
+    @Test
+    public void operationsWithoutPolicyAreNotRetried() throws Exception {
+        RetryExecutor executor = new RetryExecutor(new CircuitBreaker(10, 60_000));
+        FaultyCall call = new FaultyCall(1);
+        Result result = new Result();
+
+        executor.execute(CloudDBMetrics.Operation.QUERY, call, result);
+
+        result.await();
+        assertEquals(1, call.attempts.get());
+        assertSame(call.lastFailure, result.error);
+    }
+
+    @Test
+    public void callThatCantBeMadeFailsAndFreesTheTrial() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.onFailure();
+        RetryExecutor executor = new RetryExecutor(breaker);
+        executor.setPolicy(CloudDBMetrics.Operation.UPSERT, new RetryPolicy(5, 1, 2));
+        AtomicInteger attempts = new AtomicInteger();
+        Result result = new Result();
+
+        executor.<Integer>execute(CloudDBMetrics.Operation.UPSERT, completion -> {
+            attempts.incrementAndGet();
+            return false;
+        }, result);
+
+        result.await();
+        assertEquals(1, attempts.get());
+        assertTrue(result.error instanceof IllegalStateException);
+        //the trial was not used, so the next call is let through
+        assertTrue(breaker.allowCall());
+    }
+
+    @Test
+    public void openCircuitFailsFast() throws Exception {
+        RetryExecutor executor = new RetryExecutor(new CircuitBreaker(2, 60_000));
+        FaultyCall call = new FaultyCall(Integer.MAX_VALUE);
+        for (int i = 0; i < 2; i++) {
+            Result failed = new Result();
+            executor.execute(CloudDBMetrics.Operation.QUERY, call, failed);
+            failed.await();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, executor.getCircuitBreaker().getState());
+
+        Result result = new Result();
+        executor.execute(CloudDBMetrics.Operation.QUERY, call, result);
+
+        result.await();
+        assertEquals(2, call.attempts.get());
+        assertTrue(result.error instanceof CircuitBreaker.CircuitOpenException);
+    }
+
+    @Test
+    public void retriesOverTheLimitFailAtOnce() throws Exception {
+        RetryExecutor executor = new RetryExecutor(new CircuitBreaker(10, 60_000));
+        executor.setMaxConcurrentRetries(1);
+        //the first retry waits long enough to hold the only slot during the test
+        executor.setPolicy(CloudDBMetrics.Operation.UPSERT, new RetryPolicy(2, 600_000, 600_000));
+        FaultyCall waiting = new FaultyCall(Integer.MAX_VALUE);
+        executor.execute(CloudDBMetrics.Operation.UPSERT, waiting, new Result());
+        FaultyCall rejected = new FaultyCall(Integer.MAX_VALUE);
+        Result result = new Result();
+
+        executor.execute(CloudDBMetrics.Operation.UPSERT, rejected, result);
+
+        result.await();
+        assertEquals(1, waiting.attempts.get());
+        assertEquals(1, rejected.attempts.get());
+        assertSame(rejected.lastFailure, result.error);
+    }
+
+    /**
+     * Fails the first attempts with a new exception each, then succeeds with the attempts count
+     */
+    private static class FaultyCall implements RetryExecutor.Call<Integer> {
+        private final int failures;
+        private final AtomicInteger attempts = new AtomicInteger();
+        private volatile Exception lastFailure;
+
+        FaultyCall(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public boolean execute(RetryExecutor.Completion<Integer> completion) {
+            int attempt = attempts.incrementAndGet();
+            if (attempt <= failures) {
+                lastFailure = new Exception("attempt " + attempt + " is failed");
+                completion.onComplete(null, lastFailure);
+            } else {
+                completion.onComplete(attempt, null);
+            }
+            return true;
+        }
+    }
+
+    private static class Result implements RetryExecutor.Completion<Integer> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Integer value;
+        private volatile Exception error;
+
+        @Override
+        public void onComplete(Integer result, Exception e) {
+            value = result;
+            error = e;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("call is not completed", done.await(10, TimeUnit.SECONDS));
+        }
+    }
+}
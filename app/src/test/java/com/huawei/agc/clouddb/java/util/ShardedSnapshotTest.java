@@ -0,0 +1,144 @@
+package com.huawei.agc.clouddb.java.util;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agconnect.cloud.database.exceptions.AGConnectCloudDBException;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedSnapshotTest {
+
+    @Test
+    public void mergeReturnsBooksOfAllShardsById() throws AGConnectCloudDBException {
+        ShardedSnapshot.Cursor cursor = ShardedSnapshot.merge(Arrays.asList(
+                shard(book(1, "a"), book(4, "d"), book(7, "g")),
+                shard(book(2, "b"), book(5, "e")),
+                shard(),
+                shard(book(3, "c"), book(6, "f"), book(8, "h"), book(9, "i"))),
+                ShardedSnapshot.BY_ID);
+
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, ids(cursor));
+        assertFalse(cursor.hasNext());
+        assertNull(cursor.next());
+    }
+
+    @Test
+    public void mergeByNameOrdersTiesById() throws AGConnectCloudDBException {
+        ShardedSnapshot.Cursor cursor = ShardedSnapshot.merge(Arrays.asList(
+                shard(book(2, "a"), book(4, "b"), book(1, "c")),
+                shard(book(5, null), book(1, "a"), book(3, "b"))),
+                ShardedSnapshot.BY_NAME);
+
+        //null names first, as ObjectAccessors.compare orders them
+        assertArrayEquals(new int[]{5, 1, 2, 3, 4, 1}, ids(cursor));
+    }
+
+    @Test
+    public void mergeInDescendingOrder() throws AGConnectCloudDBException {
+        ShardedSnapshot.Cursor cursor = ShardedSnapshot.merge(Arrays.asList(
+                shard(book(9, "i"), book(4, "d")),
+                shard(book(8, "h"), book(5, "e"), book(1, "a"))),
+                ShardedSnapshot.BY_ID.reversed());
+
+        assertArrayEquals(new int[]{9, 8, 5, 4, 1}, ids(cursor));
+    }
+
+    @Test
+    public void mergeHoldsOneBookPerShard() throws AGConnectCloudDBException {
+        ListCursor first = shard(book(1, "a"), book(3, "c"), book(5, "e"));
+        ListCursor second = shard(book(2, "b"), book(4, "d"), book(6, "f"));
+        ShardedSnapshot.Cursor cursor = ShardedSnapshot.merge(Arrays.asList(first, second),
+                ShardedSnapshot.BY_ID);
+
+        assertEquals(1, (int) cursor.next().getId());
+        assertEquals(2, first.read);
+        assertEquals(1, second.read);
+    }
+
+    @Test
+    public void concatReadsShardsOneAfterAnother() throws AGConnectCloudDBException {
+        ShardedSnapshot.Cursor cursor = ShardedSnapshot.concat(Arrays.asList(
+                shard(book(7, "g"), book(1, "a")),
+                shard(),
+                shard(book(2, "b"))));
+
+        assertArrayEquals(new int[]{7, 1, 2}, ids(cursor));
+    }
+
+    @Test
+    public void emptyShardsGiveAnEmptyCursor() throws AGConnectCloudDBException {
+        assertFalse(ShardedSnapshot.merge(Collections.emptyList(), ShardedSnapshot.BY_ID).hasNext());
+        assertFalse(ShardedSnapshot.merge(Arrays.asList(shard(), shard()), ShardedSnapshot.BY_ID).hasNext());
+        assertFalse(ShardedSnapshot.concat(Collections.emptyList()).hasNext());
+    }
+
+    @Test
+    public void moduloSpreadsSequentialIdsOverEveryShard() {
+        int[] books = new int[4];
+        for (int id = 1; id <= 400; id++) {
+            int shard = ShardFunction.MODULO.shardOf(id, books.length);
+            assertTrue(shard >= 0 && shard < books.length);
+            books[shard]++;
+        }
+        assertArrayEquals(new int[]{100, 100, 100, 100}, books);
+        assertEquals(0, ShardFunction.MODULO.shardOf(42, 1));
+        assertEquals(3, ShardFunction.MODULO.shardOf(-1, 4));
+    }
+
+    private static int[] ids(ShardedSnapshot.Cursor cursor) throws AGConnectCloudDBException {
+        List<Integer> ids = new ArrayList<>();
+        while (cursor.hasNext()) {
+            ids.add(cursor.next().getId());
+        }
+        int[] result = new int[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    private static ListCursor shard(Book... books) {
+        return new ListCursor(Arrays.asList(books));
+    }
+
+    private static Book book(int id, String name) {
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName(name);
+        return book;
+    }
+
+    /**
+     * Ordered result of one zone
+     */
+    private static class ListCursor implements ShardedSnapshot.Cursor {
+        private final Iterator<Book> books;
+        private int read = 0;
+
+        ListCursor(List<Book> books) {
+            this.books = books.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return books.hasNext();
+        }
+
+        @Override
+        public Book next() {
+            read++;
+            return books.next();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.huawei.agc.clouddb.java.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ZoneLifecycleTest {
+
+    //runs tasks when the test says so, like a busy zone executor
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final Executor executor = tasks::add;
+    private final List<String> log = new ArrayList<>();
+    private final AtomicInteger opened = new AtomicInteger();
+    private final ZoneLifecycle<String> lifecycle = new ZoneLifecycle<>(executor,
+            () -> {
+                String zone = "zone" + opened.incrementAndGet();
+                log.add("open " + zone);
+                return zone;
+            },
+            () -> log.add("close"));
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    @Test
+    public void usersShareOneOpening() {
+        CompletableFuture<String> first = lifecycle.acquire();
+        CompletableFuture<String> second = lifecycle.acquire();
+
+        assertSame(first, second);
+        assertFalse(first.isDone());
+        runTasks();
+        assertEquals("zone1", first.join());
+        assertEquals(1, opened.get());
+    }
+
+    @Test
+    public void lastReleaseCloses() {
+        lifecycle.acquire();
+        lifecycle.acquire();
+        runTasks();
+
+        assertTrue(lifecycle.release());
+        runTasks();
+        assertTrue(lifecycle.isAcquired());
+        assertEquals(1, log.size());
+
+        assertTrue(lifecycle.release());
+        runTasks();
+        assertFalse(lifecycle.isAcquired());
+        assertNull(lifecycle.getOpening());
+        assertEquals("close", log.get(1));
+    }
+
+    @Test
+    public void releaseWithoutAcquireIsRejected() {
+        assertFalse(lifecycle.release());
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void reacquireAfterCloseOpensAgain() {
+        CompletableFuture<String> first = lifecycle.acquire();
+        lifecycle.release();
+        CompletableFuture<String> second = lifecycle.acquire();
+        runTasks();
+
+        assertNotSame(first, second);
+        assertEquals("zone2", second.join());
+        //open and close run in call order on the executor
+        assertEquals("open zone1", log.get(0));
+        assertEquals("close", log.get(1));
+        assertEquals("open zone2", log.get(2));
+    }
+
+    @Test
+    public void releaseBeforeOpenIsFinishedClosesAfterIt() {
+        CompletableFuture<String> opening = lifecycle.acquire();
+        lifecycle.release();
+
+        assertNull(lifecycle.getOpening());
+        runTasks();
+        assertEquals("zone1", opening.join());
+        assertEquals(2, log.size());
+        assertEquals("close", log.get(1));
+    }
+}
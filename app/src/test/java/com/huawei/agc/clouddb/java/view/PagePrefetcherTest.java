@@ -0,0 +1,302 @@
+package com.huawei.agc.clouddb.java.view;
+
+import android.content.ComponentCallbacks2;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.CloudDB;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.huawei.agc.clouddb.java.util.Constants.MAX_PREFETCH_PAGES;
+import static com.huawei.agc.clouddb.java.util.Constants.PAGE_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Paging against a table of TOTAL_BOOKS books, the test plays the main thread, the clock and the cloud
+ */
+public class PagePrefetcherTest {
+
+    private static final int TOTAL_BOOKS = 1_000;
+    private static final long FETCH_MILLIS = 300;
+
+    private FakeEnvironment environment;
+    private List<List<Book>> pages;
+    private PagePrefetcher prefetcher;
+    private int rows;
+
+    @Before
+    public void setUp() {
+        environment = new FakeEnvironment();
+        pages = new ArrayList<>();
+        prefetcher = new PagePrefetcher(environment, (books, hasMore) -> {
+            pages.add(books);
+            rows += books.size();
+        });
+    }
+
+    @Test
+    public void firstPageIsDeliveredAndOnePageIsLoadedAheadAtRest() {
+        startAndShowFirstPage();
+
+        assertEquals(1, pages.size());
+        assertEquals(1, (int) pages.get(0).get(0).getId());
+        assertEquals(1, prefetcher.getTargetPages());
+        //one page ahead, then nothing more while the list doesn't move
+        assertEquals(PAGE_SIZE, environment.pendingQuery().afterId);
+        completeQueries();
+        assertEquals(2, environment.queryCount);
+        assertEquals(0, prefetcher.getStalls());
+    }
+
+    @Test
+    public void fastScrollWidensTheWindowUpToTheLimit() {
+        startAndShowFirstPage();
+        scroll(0, 39, 1);
+
+        assertEquals(MAX_PREFETCH_PAGES, prefetcher.getTargetPages());
+        completeQueries();
+        assertEquals(1 + MAX_PREFETCH_PAGES, environment.queryCount);
+    }
+
+    @Test
+    public void readyPageIsHandedOverNearTheEnd() {
+        startAndShowFirstPage();
+        completeQueries();
+
+        prefetcher.onBind(rows - 5, rows);
+        environment.runPosted();
+        assertEquals(2, pages.size());
+        assertEquals(PAGE_SIZE + 1, (int) pages.get(1).get(0).getId());
+        assertEquals(1, prefetcher.getHits());
+        assertEquals(0, prefetcher.getStalls());
+    }
+
+    @Test
+    public void stallIsMeasuredUntilThePageArrives() {
+        startAndShowFirstPage();
+        assertNotNull(environment.pendingQuery());
+
+        prefetcher.onBind(rows - 5, rows);
+        assertEquals(1, prefetcher.getStalls());
+        environment.now += 120;
+        environment.complete(environment.pendingQuery());
+        environment.runPosted();
+        assertEquals(2, pages.size());
+        assertEquals(1, prefetcher.getStallMillis().getCount());
+        assertEquals(120, prefetcher.getStallMillis().getMax());
+    }
+
+    @Test
+    public void trimMemoryEvictsAllButTheNearestPage() {
+        startAndShowFirstPage();
+        scroll(0, 39, 1);
+        completeQueries();
+
+        prefetcher.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(MAX_PREFETCH_PAGES - 1, prefetcher.getEvictedPages());
+        assertEquals(1, prefetcher.getTargetPages());
+
+        //the kept page is handed over, paging continues after it
+        prefetcher.onBind(rows - 5, rows);
+        environment.runPosted();
+        assertEquals(PAGE_SIZE + 1, (int) pages.get(1).get(0).getId());
+        assertEquals(2 * PAGE_SIZE, environment.pendingQuery().afterId);
+    }
+
+    @Test
+    public void trimMemoryDropsThePageInFlight() {
+        startAndShowFirstPage();
+        scroll(0, 39, 1);
+        //pages 2 and 3 ready, page 4 in flight
+        completeQuery();
+        completeQuery();
+        Query inFlight = environment.pendingQuery();
+        assertEquals(3 * PAGE_SIZE, inFlight.afterId);
+
+        prefetcher.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(1, prefetcher.getEvictedPages());
+        int queries = environment.queryCount;
+        environment.complete(inFlight);
+        assertEquals(queries, environment.queryCount);
+
+        prefetcher.onBind(rows - 5, rows);
+        environment.runPosted();
+        assertEquals(PAGE_SIZE + 1, (int) pages.get(1).get(0).getId());
+        assertEquals(2 * PAGE_SIZE, environment.pendingQuery().afterId);
+    }
+
+    @Test
+    public void moderateTrimKeepsReadyPages() {
+        startAndShowFirstPage();
+        scroll(0, 39, 1);
+        completeQueries();
+
+        prefetcher.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(0, prefetcher.getEvictedPages());
+        assertEquals(MAX_PREFETCH_PAGES, prefetcher.getTargetPages());
+    }
+
+    @Test
+    public void failedFetchIsRetriedWithoutABind() {
+        prefetcher.start();
+        Query query = environment.pendingQuery();
+        environment.queries.remove(query);
+        query.callBack.onPage(Collections.emptyList(), true);
+
+        assertNull(environment.pendingQuery());
+        assertNotNull(environment.delayed);
+        environment.runDelayed();
+        assertEquals(0, environment.pendingQuery().afterId);
+        completeQuery();
+        environment.runPosted();
+        assertEquals(1, pages.size());
+    }
+
+    @Test
+    public void stopDropsPostedPagesAndRetries() {
+        prefetcher.start();
+        completeQuery();
+        prefetcher.stop(0);
+        environment.runPosted();
+        assertTrue(pages.isEmpty());
+
+        prefetcher.start();
+        Query query = environment.pendingQuery();
+        environment.queries.remove(query);
+        query.callBack.onPage(Collections.emptyList(), true);
+        prefetcher.stop(0);
+        assertNull(environment.delayed);
+    }
+
+    @Test
+    public void lastPageEndsPaging() {
+        environment.total = PAGE_SIZE + 10;
+        startAndShowFirstPage();
+        completeQueries();
+        prefetcher.onBind(rows - 5, rows);
+        environment.runPosted();
+
+        assertEquals(2, pages.size());
+        assertEquals(10, pages.get(1).size());
+        prefetcher.onBind(rows - 1, rows);
+        assertNull(environment.pendingQuery());
+        assertFalse(prefetcher.getStalls() > 0);
+    }
+
+    private void startAndShowFirstPage() {
+        prefetcher.start();
+        completeQuery();
+        environment.runPosted();
+    }
+
+    /**
+     * Bind positions from first to last, one row every millisPerRow
+     */
+    private void scroll(int first, int last, long millisPerRow) {
+        for (int position = first; position <= last; position++) {
+            environment.now += millisPerRow;
+            prefetcher.onBind(position, rows);
+        }
+    }
+
+    private void completeQuery() {
+        environment.now += FETCH_MILLIS;
+        environment.complete(environment.pendingQuery());
+    }
+
+    private void completeQueries() {
+        while (environment.pendingQuery() != null) {
+            completeQuery();
+        }
+    }
+
+    private static class Query {
+        private final int afterId;
+        private final CloudDB.PageCallBack callBack;
+
+        Query(int afterId, CloudDB.PageCallBack callBack) {
+            this.afterId = afterId;
+            this.callBack = callBack;
+        }
+    }
+
+    private static class FakeEnvironment implements PagePrefetcher.Environment {
+        private final List<Query> queries = new ArrayList<>();
+        private final List<Runnable> posted = new ArrayList<>();
+        private int total = TOTAL_BOOKS;
+        private int queryCount = 0;
+        private Runnable delayed;
+        private long now = 10_000;
+
+        @Override
+        public void queryPage(int afterId, int pageSize, CloudDB.PageCallBack callBack) {
+            queries.add(new Query(afterId, callBack));
+            queryCount++;
+        }
+
+        @Override
+        public Book getSyncedBook(int id) {
+            return null;
+        }
+
+        @Override
+        public void post(Runnable action) {
+            posted.add(action);
+        }
+
+        @Override
+        public void postDelayed(Runnable action, long delayMillis) {
+            delayed = action;
+        }
+
+        @Override
+        public void removeCallbacks(Runnable action) {
+            if (delayed == action) {
+                delayed = null;
+            }
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+
+        Query pendingQuery() {
+            return queries.isEmpty() ? null : queries.get(queries.size() - 1);
+        }
+
+        void complete(Query query) {
+            queries.remove(query);
+            List<Book> books = new ArrayList<>();
+            for (int id = query.afterId + 1; id <= Math.min(query.afterId + PAGE_SIZE, total); id++) {
+                Book book = new Book();
+                book.setId(id);
+                books.add(book);
+            }
+            query.callBack.onPage(books, query.afterId + PAGE_SIZE < total);
+        }
+
+        void runPosted() {
+            List<Runnable> actions = new ArrayList<>(posted);
+            posted.clear();
+            for (Runnable action : actions) {
+                action.run();
+            }
+        }
+
+        void runDelayed() {
+            Runnable action = delayed;
+            delayed = null;
+            action.run();
+        }
+    }
+}
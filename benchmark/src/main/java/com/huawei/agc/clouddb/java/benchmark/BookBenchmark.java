@@ -0,0 +1,40 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.model.Book;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of Book objects as every query result row does, run with -prof gc for the allocation rate
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookBenchmark {
+
+    private final String bookName = "Book";
+    private final String description = "Description of a book";
+    private int id;
+
+    @Benchmark
+    public Book newBook() {
+        Book book = new Book();
+        book.setId(++id);
+        book.setBookName(bookName);
+        book.setDescription(description);
+        return book;
+    }
+}
@@ -0,0 +1,92 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.BookCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups, replacing puts and ordered iteration of BookCache. Lookups by id are compared with
+ * a HashMap with boxed keys, the usual alternative. The bound keeps about half of the books,
+ * so boundedPut evicts on every call
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookCacheBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    private BookCache cache;
+    private BookCache boundedCache;
+    private final Map<Integer, Book> map = new HashMap<>();
+    private Book[] books;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        cache = new BookCache(BookCache.UNBOUNDED);
+        books = new Book[size];
+        for (int i = 0; i < size; i++) {
+            books[i] = FakeZone.newBook(i + 1);
+            cache.put(books[i]);
+            map.put(i + 1, books[i]);
+        }
+        boundedCache = new BookCache(cache.getBytes() / 2);
+        for (Book book : books) {
+            boundedCache.put(book);
+        }
+    }
+
+    private int nextIndex() {
+        if (++next == size) {
+            next = 0;
+        }
+        return next;
+    }
+
+    @Benchmark
+    public Book get() {
+        return cache.get(nextIndex() + 1);
+    }
+
+    @Benchmark
+    public Book hashMapGet() {
+        return map.get(nextIndex() + 1);
+    }
+
+    @Benchmark
+    public Book put() {
+        return cache.put(books[nextIndex()]);
+    }
+
+    @Benchmark
+    public Book boundedPut() {
+        return boundedCache.put(books[nextIndex()]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Book> booksByName() {
+        return cache.getBooksByName();
+    }
+}
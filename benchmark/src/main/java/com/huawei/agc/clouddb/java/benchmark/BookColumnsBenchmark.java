@@ -0,0 +1,121 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.BookColumns;
+import com.huawei.agc.clouddb.java.util.BookDiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Rows of ItemAdapter held as BookColumns versus the ArrayList of Books it replaced:
+ * building the list from a query result, binding a screen of rows and diffing a refresh.
+ * Run with -prof gc for the allocation rate; the retained heap per row of both containers is
+ * printed once per trial
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class BookColumnsBenchmark {
+
+    private static final int VISIBLE_ROWS = 20;
+
+    //keeps the measured container reachable until it is measured
+    private static volatile Object retained;
+
+    @Param({"100000"})
+    private int rows;
+
+    @Param({"COLUMNS", "ARRAY_LIST"})
+    private String container;
+
+    private List<Book> queryResult;
+    private List<Book> refreshed;
+    private List<Book> list;
+    private int firstVisible;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        queryResult = newQueryResult(rows);
+        refreshed = newQueryResult(rows);
+        //a refresh with every hundredth book edited
+        for (int i = 0; i < rows; i += 100) {
+            refreshed.get(i).setDescription("edited");
+        }
+        list = build();
+    }
+
+    @TearDown(Level.Trial)
+    public void printRetainedBytes() {
+        long bytes = retainedBytes(() -> container.equals("COLUMNS")
+                ? new BookColumns(newQueryResult(rows)) : newQueryResult(rows));
+        System.out.println();
+        System.out.println(container + " retains about " + bytes / rows + " bytes per row");
+    }
+
+    private static List<Book> newQueryResult(int rows) {
+        List<Book> books = new ArrayList<>(rows);
+        for (int id = 1; id <= rows; id++) {
+            books.add(FakeZone.newBook(id));
+        }
+        return books;
+    }
+
+    private static long retainedBytes(Supplier<Object> factory) {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        retained = factory.get();
+        System.gc();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+        retained = null;
+        return after - before;
+    }
+
+    private List<Book> build() {
+        return container.equals("COLUMNS") ? new BookColumns(queryResult) : new ArrayList<>(queryResult);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Book> buildFromQuery() {
+        return build();
+    }
+
+    @Benchmark
+    public void bindScreen(Blackhole blackhole) {
+        firstVisible = (firstVisible + VISIBLE_ROWS) % (rows - VISIBLE_ROWS);
+        for (int i = firstVisible; i < firstVisible + VISIBLE_ROWS; i++) {
+            Book book = list.get(i);
+            blackhole.consume(book.getBookName());
+            blackhole.consume(book.getDescription());
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BookDiff diffRefresh() {
+        return list instanceof BookColumns ? ((BookColumns) list).diffTo(refreshed)
+                : BookDiff.between(list, refreshed);
+    }
+}
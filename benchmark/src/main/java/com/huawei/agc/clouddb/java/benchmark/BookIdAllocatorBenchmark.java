@@ -0,0 +1,226 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.util.BookIdAllocator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Id allocation and updateBookIndex (observe) under contention of 4 threads,
+ * as dispatcher workers record query results while the user adds books.
+ * BookIdAllocator is compared with the counter it replaced, the bookIndex guarded by
+ * a ReentrantReadWriteLock, and with a synchronized counter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookIdAllocatorBenchmark {
+
+    private static final int BLOCK_SIZE = 64;
+
+    @Param({"ALLOCATOR", "READ_WRITE_LOCK", "SYNCHRONIZED"})
+    private CounterType counterType;
+
+    private IdCounter counter;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        counter = counterType.create();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int nextId() {
+        return counter.nextId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void observe(ObservedIds ids) {
+        counter.observe(ids.next());
+    }
+
+    /**
+     * Bulk insert: ids are taken from blocks leased by one call each
+     */
+    @Benchmark
+    @Threads(4)
+    public int blockNextId(LeasedBlock block) {
+        if (block.next == block.end) {
+            block.next = counter.reserve(BLOCK_SIZE);
+            block.end = block.next + BLOCK_SIZE;
+        }
+        return block.next++;
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public void mixedObserve(ObservedIds ids) {
+        counter.observe(ids.next());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public int mixedNextId() {
+        return counter.nextId();
+    }
+
+    /**
+     * Rising ids of query results seen by one thread, threads overtake each other
+     */
+    @State(Scope.Thread)
+    public static class ObservedIds {
+        private int id;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            id = 0;
+        }
+
+        int next() {
+            id += 3;
+            return id;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LeasedBlock {
+        private int next;
+        private int end;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            next = 0;
+            end = 0;
+        }
+    }
+
+    public enum CounterType {
+        ALLOCATOR {
+            @Override
+            IdCounter create() {
+                BookIdAllocator allocator = new BookIdAllocator();
+                return new IdCounter() {
+                    @Override
+                    public void observe(int id) {
+                        allocator.observe(id);
+                    }
+
+                    @Override
+                    public int reserve(int count) {
+                        return allocator.reserveBlock(count).next();
+                    }
+                };
+            }
+        },
+        READ_WRITE_LOCK {
+            @Override
+            IdCounter create() {
+                return new ReadWriteLockCounter();
+            }
+        },
+        SYNCHRONIZED {
+            @Override
+            IdCounter create() {
+                return new SynchronizedCounter();
+            }
+        };
+
+        abstract IdCounter create();
+    }
+
+    interface IdCounter {
+        void observe(int id);
+
+        /**
+         * Take count consecutive new ids
+         *
+         * @return first id
+         */
+        int reserve(int count);
+
+        default int nextId() {
+            return reserve(1);
+        }
+    }
+
+    /**
+     * The former bookIndex of CloudDB, made collision-safe by allocating under the write lock
+     */
+    private static class ReadWriteLockCounter implements IdCounter {
+        private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+        private int bookIndex = 0;
+
+        @Override
+        public void observe(int id) {
+            readWriteLock.readLock().lock();
+            try {
+                if (bookIndex >= id) {
+                    return;
+                }
+            } finally {
+                readWriteLock.readLock().unlock();
+            }
+            readWriteLock.writeLock().lock();
+            try {
+                if (bookIndex < id) {
+                    bookIndex = id;
+                }
+            } finally {
+                readWriteLock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public int reserve(int count) {
+            readWriteLock.writeLock().lock();
+            try {
+                int start = bookIndex + 1;
+                bookIndex += count;
+                return start;
+            } finally {
+                readWriteLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static class SynchronizedCounter implements IdCounter {
+        private int bookIndex = 0;
+
+        @Override
+        public synchronized void observe(int id) {
+            if (bookIndex < id) {
+                bookIndex = id;
+            }
+        }
+
+        @Override
+        public synchronized int reserve(int count) {
+            int start = bookIndex + 1;
+            bookIndex += count;
+            return start;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.util.BookOutbox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening an outbox left by a killed process: replay of the log, deduplication by id and
+ * compaction into a new log. Every open compacts the log into one with the same writes,
+ * so each invocation replays the same entries
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BookOutboxBenchmark {
+
+    @Param({"100000"})
+    private int entries;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("outbox", ".log");
+        BookOutbox outbox = new BookOutbox(file);
+        for (int id = 1; id <= entries; id++) {
+            outbox.appendUpsert(FakeZone.newBook(id));
+        }
+        outbox.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public int replay() throws IOException {
+        BookOutbox outbox = new BookOutbox(file);
+        int recovered = outbox.getRecovered().size();
+        outbox.close();
+        if (recovered != entries) {
+            throw new IllegalStateException("Replayed " + recovered + " of " + entries + " writes");
+        }
+        return recovered;
+    }
+}
@@ -0,0 +1,77 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.BookSearchIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ranked search over 100k books with dense ids 1..n and with sparse ids spread over the int range,
+ * as imported books may have. Titles and descriptions are drawn from a small vocabulary,
+ * so a common word matches about a tenth of the books and a rare word a few of them
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookSearchIndexBenchmark {
+
+    private static final String[] WORDS = {"java", "kotlin", "android", "cloud", "database", "concurrency",
+            "patterns", "guide", "practice", "effective"};
+
+    @Param({"100000"})
+    private int rows;
+
+    @Param({"DENSE", "SPARSE"})
+    private String ids;
+
+    private final BookSearchIndex index = new BookSearchIndex();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 1; i <= rows; i++) {
+            Book book = new Book();
+            book.setId(ids.equals("DENSE") ? i : i * (Integer.MAX_VALUE / rows));
+            book.setBookName(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]
+                    + " vol" + random.nextInt(10000));
+            book.setDescription(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]);
+            index.put(book);
+        }
+    }
+
+    @Benchmark
+    public int[] commonWord() {
+        return index.search("java", 20);
+    }
+
+    @Benchmark
+    public int[] twoWords() {
+        return index.search("java cloud", 20);
+    }
+
+    @Benchmark
+    public int[] prefix() {
+        return index.search("con", 20);
+    }
+
+    @Benchmark
+    public int[] rareWord() {
+        return index.search("vol1234", 20);
+    }
+}
@@ -0,0 +1,87 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.util.BookFormat;
+import com.huawei.agc.clouddb.java.util.BookTransfer;
+import com.huawei.agc.clouddb.java.util.Constants;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draining pages of a zone (export) and batch upserts into a zone (import) against FakeZone,
+ * with tunable row count and network latency per page or batch
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BookTransferBenchmark {
+
+    @Param({"10000"})
+    private int rows;
+
+    @Param({"0", "5"})
+    private long latencyMillis;
+
+    @Param({"BINARY", "NDJSON"})
+    private BookFormat format;
+
+    private FakeZone source;
+    private FakeZone target;
+    private byte[] file;
+    private final BookTransfer transfer = new BookTransfer(Constants.TRANSFER_BATCH_SIZE,
+            Constants.TRANSFER_MAX_IN_FLIGHT);
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        source = new FakeZone(latencyMillis).fill(rows);
+        target = new FakeZone(latencyMillis);
+        file = export().toByteArray();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTarget() {
+        target.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        source.close();
+        target.close();
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream exportBooks() throws IOException, InterruptedException {
+        return export();
+    }
+
+    @Benchmark
+    public BookTransfer.Result importBooks() throws IOException, InterruptedException {
+        return transfer.importBooks(Channels.newChannel(new ByteArrayInputStream(file)), format, target, null);
+    }
+
+    private ByteArrayOutputStream export() throws IOException, InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rows * 64);
+        transfer.exportBooks(source, format, Channels.newChannel(out));
+        return out;
+    }
+}
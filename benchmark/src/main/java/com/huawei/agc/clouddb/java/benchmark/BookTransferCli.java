@@ -0,0 +1,93 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.BookFormat;
+import com.huawei.agc.clouddb.java.util.BookTransfer;
+import com.huawei.agc.clouddb.java.util.Constants;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Plain JVM entry point of BookTransfer, runs against FakeZone instead of the cloud,
+ * no device or emulator. Run it with ./gradlew :benchmark:transfer -Ptransfer="bench NDJSON 100000 5"
+ * <pre>
+ * bench &lt;CSV|NDJSON|BINARY&gt; &lt;rows&gt; [latencyMillis] [maxInFlight]
+ *     export rows from a local zone into a temporary file, import it into an empty one, print rows/s
+ * convert &lt;inFormat&gt; &lt;inFile&gt; &lt;outFormat&gt; &lt;outFile&gt;
+ *     stream a file into another format
+ * </pre>
+ */
+public final class BookTransferCli {
+
+    private BookTransferCli() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 3 && "bench".equals(args[0])) {
+            bench(parseFormat(args[1]), Integer.parseInt(args[2]),
+                    args.length > 3 ? Long.parseLong(args[3]) : 0,
+                    args.length > 4 ? Integer.parseInt(args[4]) : Constants.TRANSFER_MAX_IN_FLIGHT);
+        } else if (args.length == 5 && "convert".equals(args[0])) {
+            convert(parseFormat(args[1]), new File(args[2]), parseFormat(args[3]), new File(args[4]));
+        } else {
+            System.err.println("Usage: bench <CSV|NDJSON|BINARY> <rows> [latencyMillis] [maxInFlight]");
+            System.err.println("       convert <inFormat> <inFile> <outFormat> <outFile>");
+            System.exit(2);
+        }
+    }
+
+    private static BookFormat parseFormat(String name) {
+        return BookFormat.valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    private static void bench(BookFormat format, int rows, long latencyMillis, int maxInFlight)
+            throws IOException, InterruptedException {
+        FakeZone source = new FakeZone(latencyMillis).fill(rows);
+        FakeZone target = new FakeZone(latencyMillis);
+        BookTransfer transfer = new BookTransfer(Constants.TRANSFER_BATCH_SIZE, maxInFlight);
+        File file = File.createTempFile("books", "." + format.name().toLowerCase(Locale.ROOT));
+        File checkpoint = new File(file.getPath() + ".checkpoint");
+        try {
+            BookTransfer.Result exported;
+            try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+                exported = transfer.exportBooks(source, format, channel);
+            }
+            BookTransfer.Result imported;
+            try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                imported = transfer.importBooks(channel, format, target, checkpoint);
+            }
+            System.out.println(format + ", " + file.length() + " bytes, latency " + latencyMillis
+                    + "ms, " + maxInFlight + " batches in flight");
+            System.out.println("export: " + exported);
+            System.out.println("import: " + imported);
+            if (target.size() != rows) {
+                throw new IllegalStateException("Imported " + target.size() + " of " + rows + " rows");
+            }
+        } finally {
+            source.close();
+            target.close();
+            file.delete();
+        }
+    }
+
+    private static void convert(BookFormat inFormat, File in, BookFormat outFormat, File out) throws IOException {
+        long rows = 0;
+        try (FileChannel input = new FileInputStream(in).getChannel();
+             FileChannel output = new FileOutputStream(out).getChannel()) {
+            BookFormat.RecordReader reader = inFormat.newReader(input);
+            BookFormat.RecordWriter writer = outFormat.newWriter(output);
+            Book book;
+            while ((book = reader.read()) != null) {
+                writer.write(book);
+                rows++;
+            }
+            writer.flush();
+        }
+        System.out.println(rows + " rows converted");
+    }
+}
@@ -0,0 +1,94 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.BookWriteQueue;
+import com.huawei.agc.clouddb.java.util.CircuitBreaker;
+import com.huawei.agc.clouddb.java.util.RetryExecutor;
+import com.huawei.agc.clouddb.java.util.ShardFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch upsert assembly: queueing writes, merging repeated writes of an id and splitting
+ * the flushed batch by shard. The sender issues no CloudDBZone call, so the batch completes
+ * right away and only the queue itself is measured
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookWriteQueueBenchmark {
+
+    @Param({"50", "500"})
+    private int writes;
+
+    @Param({"1", "4"})
+    private int shards;
+
+    private BookWriteQueue queue;
+    private Book[] books;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        books = new Book[writes];
+        for (int i = 0; i < writes; i++) {
+            //every fourth write edits a book queued before
+            books[i] = FakeZone.newBook(i % 4 == 3 ? i - 1 : i + 1);
+        }
+        queue = new BookWriteQueue(new BookWriteQueue.Sender() {
+            @Override
+            public boolean upsert(List<Book> books, RetryExecutor.Completion<Integer> completion) {
+                BookWriteQueueBenchmark.this.blackhole.consume(books);
+                return false;
+            }
+
+            @Override
+            public boolean delete(List<Book> books, RetryExecutor.Completion<Integer> completion) {
+                BookWriteQueueBenchmark.this.blackhole.consume(books);
+                return false;
+            }
+
+            @Override
+            public int shardOf(Book book) {
+                return ShardFunction.MODULO.shardOf(book.getId(), shards);
+            }
+        }, new BookWriteQueue.BatchCallBack() {
+            @Override
+            public void onBatchSuccess(BookWriteQueue.Batch batch) {
+            }
+
+            @Override
+            public void onBatchFailure(BookWriteQueue.Batch batch, Exception e) {
+                //no zone behind the sender, expected
+            }
+        }, new RetryExecutor(new CircuitBreaker(Integer.MAX_VALUE, 0)));
+        //flushed by the benchmark only
+        queue.setPolicy(Integer.MAX_VALUE, TimeUnit.HOURS.toMillis(1));
+    }
+
+    @Benchmark
+    public void upsertAndFlush() {
+        for (Book book : books) {
+            queue.upsert(book, false);
+        }
+        queue.flush();
+    }
+}
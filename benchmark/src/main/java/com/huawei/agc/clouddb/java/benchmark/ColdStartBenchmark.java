@@ -0,0 +1,106 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.BookDiff;
+import com.huawei.agc.clouddb.java.util.CloudDB;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of getAll over a FakeZone which holds the table in its local persisted cache and
+ * answers cloud queries after a simulated network latency. firstRender waits for the first
+ * non-empty list on the UI, reconciled for the getAll callback, i.e. the cloud result merged.
+ * With CACHE_THEN_NETWORK the first render comes from the local cache, with CLOUD_ONLY
+ * it waits for the network
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ColdStartBenchmark {
+
+    @Param({"1000"})
+    private int rows;
+
+    @Param({"50", "200"})
+    private long latencyMillis;
+
+    @Param({"CACHE_THEN_NETWORK", "CLOUD_ONLY"})
+    private CloudDB.QueryPolicy policy;
+
+    private FakeZone zone;
+    private ExecutorService mainThread;
+    private CloudDB cloudDB;
+    private CompletableFuture<Void> rendered;
+
+    @Setup
+    public void setUp() {
+        zone = new FakeZone(latencyMillis).fill(rows).withLocalCache();
+        mainThread = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * A new CloudDB with nothing synced, like a process started again
+     */
+    @Setup(Level.Invocation)
+    public void coldStart() {
+        cloudDB = CloudDB.withZones(mainThread, zone);
+        cloudDB.setQueryPolicy(policy);
+        rendered = new CompletableFuture<>();
+        cloudDB.addCallBacks(new CloudDB.UiCallBack() {
+            @Override
+            public void onStart(List<Book> books) {
+                if (!books.isEmpty()) {
+                    rendered.complete(null);
+                }
+            }
+
+            @Override
+            public void onAddItem(Book book) {
+            }
+
+            @Override
+            public void onChanged(BookDiff diff) {
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        mainThread.shutdownNow();
+        zone.close();
+    }
+
+    @Benchmark
+    public void firstRender() throws Exception {
+        cloudDB.getAll();
+        rendered.get(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public List<Book> reconciled() throws Exception {
+        CompletableFuture<List<Book>> books = new CompletableFuture<>();
+        cloudDB.getAll(books::complete);
+        return books.get(10, TimeUnit.SECONDS);
+    }
+}
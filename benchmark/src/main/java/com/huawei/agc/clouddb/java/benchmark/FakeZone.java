@@ -0,0 +1,288 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.BookQuery;
+import com.huawei.agc.clouddb.java.util.BookTransfer;
+import com.huawei.agc.clouddb.java.util.BookZone;
+import com.huawei.agc.clouddb.java.util.RetryExecutor;
+import com.huawei.agc.clouddb.java.util.ShardedSnapshot;
+import com.huawei.agconnect.cloud.database.CloudDBZoneQuery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process stand-in of a CloudDBZone: books in memory, every read and write answers after
+ * a simulated network latency on a pool of "network" threads, like a CloudDBZoneTask.
+ * Latency 0 completes on the network thread right away, so only the local cost is measured.
+ * As a BookZone it runs CloudDB through CloudDB.withZones: queries are evaluated with
+ * BookQuery.matches, writes reach the subscriptions after the latency; books are shared with
+ * the caller, not copied like by a real zone
+ */
+public class FakeZone implements BookZone, BookTransfer.Sink, BookTransfer.Source {
+
+    private final TreeMap<Integer, Book> books = new TreeMap<>();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final long latencyMillis;
+    private final ScheduledExecutorService network = Executors.newScheduledThreadPool(4);
+    private volatile boolean localCache = false;
+    private volatile long rowMicros = 0;
+
+    public FakeZone(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Fill the zone with books 1..rows
+     *
+     * @param rows books count
+     * @return this zone
+     */
+    public FakeZone fill(int rows) {
+        synchronized (books) {
+            for (int id = 1; id <= rows; id++) {
+                books.put(id, newBook(id));
+            }
+        }
+        return this;
+    }
+
+    public static Book newBook(int id) {
+        Book book = new Book();
+        book.setId(id);
+        book.setBookName("Book " + id);
+        book.setDescription("Description of book " + id + ", with \"quotes\", commas and \u00fcn\u00efc\u00f6d\u00e9");
+        return book;
+    }
+
+    /**
+     * Answer local-only queries from the books, like the persisted cache of an earlier session,
+     * without the network latency. Without it local-only queries find nothing
+     *
+     * @return this zone
+     */
+    public FakeZone withLocalCache() {
+        localCache = true;
+        return this;
+    }
+
+    /**
+     * Add server time per row read or written to the latency of queries and writes through
+     * BookZone, so a zone holding fewer books answers sooner
+     *
+     * @param rowMicros microseconds per row
+     * @return this zone
+     */
+    public FakeZone withRowCost(long rowMicros) {
+        this.rowMicros = rowMicros;
+        return this;
+    }
+
+    /**
+     * Write books without a snapshot, like writes made while nobody was subscribed
+     *
+     * @param batch books to write
+     */
+    public void put(List<Book> batch) {
+        synchronized (books) {
+            for (Book book : batch) {
+                books.put(book.getId(), book);
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (books) {
+            return books.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (books) {
+            books.clear();
+        }
+    }
+
+    @Override
+    public void write(List<Book> batch, RetryExecutor.Completion<Integer> completion) {
+        network.schedule(() -> {
+            synchronized (books) {
+                for (Book book : batch) {
+                    books.put(book.getId(), book);
+                }
+            }
+            completion.onComplete(batch.size(), null);
+        }, latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void read(int afterId, int count, RetryExecutor.Completion<List<Book>> completion) {
+        network.schedule(() -> {
+            List<Book> page = new ArrayList<>(count);
+            synchronized (books) {
+                for (Book book : books.tailMap(afterId, false).values()) {
+                    if (page.size() == count) {
+                        break;
+                    }
+                    page.add(book);
+                }
+            }
+            completion.onComplete(page, null);
+        }, latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void executeQuery(BookQuery query, CloudDBZoneQuery.CloudDBZoneQueryPolicy policy,
+            RetryExecutor.Completion<Snapshot> completion) {
+        boolean local = policy == CloudDBZoneQuery.CloudDBZoneQueryPolicy.POLICY_QUERY_FROM_LOCAL_ONLY;
+        List<Book> result = local && !localCache ? Collections.emptyList() : select(query);
+        network.schedule(() -> completion.onComplete(
+                new ListSnapshot(result, Collections.emptyList(), Collections.emptyList()), null),
+                local ? 0 : delayMicros(result.size()), TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public void executeUpsert(List<Book> batch, RetryExecutor.Completion<Integer> completion) {
+        network.schedule(() -> {
+            put(batch);
+            notifySubscriptions(batch, Collections.emptyList());
+            completion.onComplete(batch.size(), null);
+        }, delayMicros(batch.size()), TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public void executeDelete(List<Book> batch, RetryExecutor.Completion<Integer> completion) {
+        network.schedule(() -> {
+            synchronized (books) {
+                for (Book book : batch) {
+                    books.remove(book.getId());
+                }
+            }
+            notifySubscriptions(Collections.emptyList(), batch);
+            completion.onComplete(batch.size(), null);
+        }, delayMicros(batch.size()), TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public Registration subscribeSnapshot(BookQuery query, SnapshotListener listener) {
+        Subscription subscription = new Subscription(query, listener);
+        subscriptions.add(subscription);
+        return () -> subscriptions.remove(subscription);
+    }
+
+    private long delayMicros(int rows) {
+        return latencyMillis * 1000 + rows * rowMicros;
+    }
+
+    private List<Book> select(BookQuery query) {
+        List<Book> result = new ArrayList<>();
+        synchronized (books) {
+            for (Book book : books.values()) {
+                if (query.matches(book)) {
+                    result.add(book);
+                }
+            }
+        }
+        Comparator<Book> order = query.getOrder();
+        if (order != null) {
+            result.sort(order);
+        }
+        if (query.getLimit() > 0 && result.size() > query.getLimit()) {
+            return new ArrayList<>(result.subList(0, query.getLimit()));
+        }
+        return result;
+    }
+
+    private void notifySubscriptions(List<Book> upserted, List<Book> deleted) {
+        for (Subscription subscription : subscriptions) {
+            List<Book> matchedUpserts = new ArrayList<>();
+            for (Book book : upserted) {
+                if (subscription.query.matches(book)) {
+                    matchedUpserts.add(book);
+                }
+            }
+            List<Book> matchedDeletes = new ArrayList<>();
+            for (Book book : deleted) {
+                if (subscription.query.matches(book)) {
+                    matchedDeletes.add(book);
+                }
+            }
+            if (!matchedUpserts.isEmpty() || !matchedDeletes.isEmpty()) {
+                //snapshot objects aren't read by CloudDB, they are left out
+                subscription.listener.onSnapshot(
+                        new ListSnapshot(Collections.emptyList(), matchedUpserts, matchedDeletes), null);
+            }
+        }
+    }
+
+    public void close() {
+        network.shutdownNow();
+    }
+
+    private static class Subscription {
+        private final BookQuery query;
+        private final SnapshotListener listener;
+
+        Subscription(BookQuery query, SnapshotListener listener) {
+            this.query = query;
+            this.listener = listener;
+        }
+    }
+
+    private static class ListSnapshot implements Snapshot {
+        private final List<Book> objects;
+        private final List<Book> upserted;
+        private final List<Book> deleted;
+
+        ListSnapshot(List<Book> objects, List<Book> upserted, List<Book> deleted) {
+            this.objects = objects;
+            this.upserted = upserted;
+            this.deleted = deleted;
+        }
+
+        @Override
+        public ShardedSnapshot.Cursor getSnapshotObjects() {
+            return new ListCursor(objects);
+        }
+
+        @Override
+        public ShardedSnapshot.Cursor getUpsertedObjects() {
+            return new ListCursor(upserted);
+        }
+
+        @Override
+        public ShardedSnapshot.Cursor getDeletedObjects() {
+            return new ListCursor(deleted);
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    private static class ListCursor implements ShardedSnapshot.Cursor {
+        private final List<Book> books;
+        private int next = 0;
+
+        ListCursor(List<Book> books) {
+            this.books = books;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < books.size();
+        }
+
+        @Override
+        public Book next() {
+            return hasNext() ? books.get(next++) : null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.util.LatencyHistogram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording into LatencyHistogram, as every CloudDB call does, from one thread and from 4 threads,
+ * and reading a percentile as a metrics snapshot does. Run with -prof gc to see that recording
+ * does not allocate
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(latency());
+        }
+    }
+
+    //log-uniform latency over 1us..100s
+    private static long latency() {
+        return (long) Math.pow(10, ThreadLocalRandom.current().nextDouble() * 8);
+    }
+
+    @State(Scope.Thread)
+    public static class Latencies {
+        private final long[] values = new long[1024];
+        private int next;
+
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = latency();
+            }
+        }
+
+        long next() {
+            next = (next + 1) & (values.length - 1);
+            return values[next];
+        }
+    }
+
+    @Benchmark
+    public void record(Latencies latencies) {
+        histogram.record(latencies.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended(Latencies latencies) {
+        histogram.record(latencies.next());
+    }
+
+    @Benchmark
+    public long p99() {
+        return histogram.getValueAtPercentile(99);
+    }
+}
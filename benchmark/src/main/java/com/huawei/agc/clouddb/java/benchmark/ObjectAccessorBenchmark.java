@@ -0,0 +1,71 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.ObjectAccessor;
+import com.huawei.agc.clouddb.java.util.ObjectAccessors;
+import com.huawei.agc.clouddb.java.util.ObjectTypeMeta;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The generated BookAccessor against the reflective ObjectTypeMeta it replaces,
+ * for the calls made per row: key, fingerprint, content comparison and copy
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectAccessorBenchmark {
+
+    @Param({"GENERATED", "REFLECTION"})
+    private String accessorType;
+
+    private ObjectAccessor<Book> accessor;
+    private Book book;
+    private Book same;
+
+    @Setup
+    public void setUp() {
+        accessor = "GENERATED".equals(accessorType)
+                ? ObjectAccessors.of(Book.class) : ObjectTypeMeta.of(Book.class);
+        if ("GENERATED".equals(accessorType) && accessor instanceof ObjectTypeMeta) {
+            throw new IllegalStateException("BookAccessor is not generated");
+        }
+        book = FakeZone.newBook(42);
+        same = FakeZone.newBook(42);
+    }
+
+    @Benchmark
+    public int getIntKey() {
+        return accessor.getIntKey(book);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return accessor.fingerprint(book);
+    }
+
+    @Benchmark
+    public boolean sameContent() {
+        return accessor.sameContent(book, same);
+    }
+
+    @Benchmark
+    public Book copy() {
+        return accessor.copy(book);
+    }
+}
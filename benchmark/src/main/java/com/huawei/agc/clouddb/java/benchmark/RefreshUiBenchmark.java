@@ -0,0 +1,157 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.BookColumns;
+import com.huawei.agc.clouddb.java.util.BookDiff;
+import com.huawei.agc.clouddb.java.util.CloudDB;
+import com.huawei.agc.clouddb.java.util.LatencyHistogram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Main thread time of a getAll refresh which edits a few books of a large list.
+ * DIFF is the current path: the diff is built on the result thread and the UI applies it.
+ * WHOLE_LIST is the path it replaced: every refresh posts the whole list and the UI diffs it
+ * against its rows, like ItemAdapter.submitList; it is forced by adding the UI callback again
+ * before every refresh. The score is the whole refresh, the uiTimeMicros histogram of
+ * CloudDBDispatcher of the last iteration is printed once per trial
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RefreshUiBenchmark {
+
+    private static final int EDITS_PER_REFRESH = 10;
+
+    @Param({"10000"})
+    private int rows;
+
+    @Param({"DIFF", "WHOLE_LIST"})
+    private String mode;
+
+    private FakeZone zone;
+    private ExecutorService mainThread;
+    private CloudDB cloudDB;
+    private ListUi ui;
+    private int nextEdit = 0;
+    private int version = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        zone = new FakeZone(0).fill(rows);
+        mainThread = Executors.newSingleThreadExecutor();
+        cloudDB = CloudDB.withZones(mainThread, zone);
+        cloudDB.setQueryPolicy(CloudDB.QueryPolicy.CLOUD_ONLY);
+        cloudDB.setGetAllFreshness(0);
+        //every refresh fetches and reconciles the whole table, the edits are below the high-water mark
+        cloudDB.setFullSyncInterval(0);
+        ui = new ListUi();
+        cloudDB.addCallBacks(ui);
+        refresh();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetHistogram() {
+        cloudDB.getDispatcher().getUiTimeMicros().reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        LatencyHistogram uiTime = cloudDB.getDispatcher().getUiTimeMicros();
+        System.out.println();
+        System.out.println(mode + " main thread per refresh: mean " + Math.round(uiTime.getMean())
+                + " us, p50 " + uiTime.getValueAtPercentile(50) + " us, p99 "
+                + uiTime.getValueAtPercentile(99) + " us, max " + uiTime.getMax() + " us, rows "
+                + ui.rows.size());
+        mainThread.shutdownNow();
+        zone.close();
+    }
+
+    @Benchmark
+    public int refresh() throws Exception {
+        List<Book> edits = new ArrayList<>(EDITS_PER_REFRESH);
+        version++;
+        for (int i = 0; i < EDITS_PER_REFRESH; i++) {
+            nextEdit = nextEdit % rows + 1;
+            Book book = FakeZone.newBook(nextEdit);
+            book.setDescription("Edit " + version);
+            edits.add(book);
+        }
+        zone.put(edits);
+        if (mode.equals("WHOLE_LIST")) {
+            cloudDB.addCallBacks(ui);
+        }
+        CompletableFuture<List<Book>> done = new CompletableFuture<>();
+        cloudDB.getAll(done::complete);
+        done.get(10, TimeUnit.SECONDS);
+        //UI events are delivered before the callback, the refresh is shown
+        return ui.rows.size();
+    }
+
+    /**
+     * Rows of the list shown like ItemAdapter keeps them, without the view notifications
+     */
+    private static class ListUi implements CloudDB.UiCallBack {
+        private final BookColumns rows = new BookColumns();
+
+        @Override
+        public void onStart(List<Book> books) {
+            onChanged(rows.diffTo(books));
+        }
+
+        @Override
+        public void onAddItem(Book book) {
+            int index = rows.indexOfId(book.getId());
+            if (index >= 0) {
+                rows.replaceRow(index, book);
+            } else {
+                rows.add(-index - 1, book);
+            }
+        }
+
+        @Override
+        public void onChanged(BookDiff diff) {
+            List<Book> deleted = diff.getDeleted();
+            for (int i = deleted.size() - 1; i >= 0; i--) {
+                int index = rows.indexOfId(deleted.get(i).getId());
+                if (index >= 0) {
+                    rows.removeRow(index);
+                }
+            }
+            for (Book book : diff.getUpdated()) {
+                int index = rows.indexOfId(book.getId());
+                if (index >= 0) {
+                    rows.replaceRow(index, book);
+                }
+            }
+            for (Book book : diff.getInserted()) {
+                int index = rows.indexOfId(book.getId());
+                if (index < 0) {
+                    rows.add(-index - 1, book);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.huawei.agc.clouddb.java.benchmark;
+
+import com.huawei.agc.clouddb.java.model.Book;
+import com.huawei.agc.clouddb.java.util.CloudDB;
+import com.huawei.agc.clouddb.java.util.ShardFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of CloudDB over 1..8 FakeZones holding one table, spread by ShardFunction.MODULO.
+ * Every zone answers after a fixed latency plus a server time per row, so shards which hold
+ * fewer books answer sooner: a query fans out to all zones in parallel and their results are
+ * k-way merged by name, a write batch is split by owner and the parts are sent in parallel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardScalingBenchmark {
+
+    private static final long LATENCY_MILLIS = 2;
+    private static final long ROW_MICROS = 5;
+
+    @Param({"1", "2", "4", "8"})
+    private int shards;
+
+    @Param({"4000"})
+    private int rows;
+
+    @Param({"200"})
+    private int writes;
+
+    private FakeZone[] zones;
+    private ExecutorService mainThread;
+    private CloudDB cloudDB;
+    private int version = 0;
+
+    @Setup
+    public void setUp() {
+        zones = new FakeZone[shards];
+        List<List<Book>> books = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            zones[shard] = new FakeZone(LATENCY_MILLIS).withRowCost(ROW_MICROS);
+            books.add(new ArrayList<>());
+        }
+        for (int id = 1; id <= rows; id++) {
+            books.get(ShardFunction.MODULO.shardOf(id, shards)).add(FakeZone.newBook(id));
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            zones[shard].put(books.get(shard));
+        }
+        mainThread = Executors.newSingleThreadExecutor();
+        cloudDB = CloudDB.withZones(mainThread, zones);
+        //one batch per invocation, sent by awaitWrites
+        cloudDB.setWriteBatchPolicy(Integer.MAX_VALUE, TimeUnit.HOURS.toMillis(1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        mainThread.shutdownNow();
+        for (FakeZone zone : zones) {
+            zone.close();
+        }
+    }
+
+    @Benchmark
+    public List<Book> queryByName() throws Exception {
+        CompletableFuture<List<Book>> books = new CompletableFuture<>();
+        cloudDB.query().orderByName(false).execute(books::complete);
+        return books.get(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public boolean writeBatch() throws Exception {
+        version++;
+        for (int i = 0; i < writes; i++) {
+            Book book = FakeZone.newBook((version * writes + i) % rows + 1);
+            book.setDescription("Edit " + version);
+            cloudDB.insertBook(book);
+        }
+        return cloudDB.awaitWrites(10, TimeUnit.SECONDS);
+    }
+}
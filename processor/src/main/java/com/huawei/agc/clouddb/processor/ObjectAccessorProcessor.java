@@ -0,0 +1,623 @@
+package com.huawei.agc.clouddb.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates an ObjectAccessor and ObjectCodec for every ObjectType class with a @PrimaryKey field.
+ * For a class Book the class BookAccessor is written into the same package. It reads the primary key
+ * and the @IsIndex fields through the getters of the class without reflection or boxing of primitive
+ * fields, compares and hashes by primary key, orders by indexed fields and encodes the object
+ * into the compact binary form described by ObjectCodec.
+ * Classes with field types the codec doesn't know are skipped with a warning, they keep the
+ * reflective ObjectTypeMeta at runtime.
+ */
+@SupportedAnnotationTypes({
+        ObjectAccessorProcessor.PRIMARY_KEY,
+        ObjectAccessorProcessor.IS_INDEX
+})
+public class ObjectAccessorProcessor extends AbstractProcessor {
+
+    static final String PRIMARY_KEY = "com.huawei.agconnect.cloud.database.annotations.PrimaryKey";
+    static final String IS_INDEX = "com.huawei.agconnect.cloud.database.annotations.IsIndex";
+
+    private static final String UTIL_PACKAGE = "com.huawei.agc.clouddb.java.util";
+    private static final String GENERATED_SUFFIX = "Accessor";
+    private static final int MAX_FIELDS = 64;
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement primaryKey = processingEnv.getElementUtils().getTypeElement(PRIMARY_KEY);
+        if (primaryKey == null) {
+            return false;
+        }
+        Set<TypeElement> types = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(primaryKey)) {
+            if (element.getKind() == ElementKind.FIELD
+                    && element.getEnclosingElement().getKind() == ElementKind.CLASS) {
+                types.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+        for (TypeElement type : types) {
+            if (generated.add(type.getQualifiedName().toString())) {
+                generate(type);
+            }
+        }
+        //the annotations belong to the CloudDB SDK, other processors may read them too
+        return false;
+    }
+
+    private void generate(TypeElement type) {
+        List<FieldModel> fields = new ArrayList<>();
+        FieldModel key = null;
+        for (Element element : type.getEnclosedElements()) {
+            if (element.getKind() != ElementKind.FIELD || element.getModifiers().contains(Modifier.STATIC)
+                    || element.getModifiers().contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            VariableElement field = (VariableElement) element;
+            FieldModel model = FieldModel.of(field, fields.size());
+            if (model == null) {
+                warn(type, "field " + field.getSimpleName() + " has type " + field.asType()
+                        + " which ObjectAccessorProcessor doesn't support");
+                return;
+            }
+            if (!hasMethod(type, model.getter, 0) || !hasMethod(type, model.setter, 1)) {
+                warn(type, "field " + model.name + " has no public " + model.getter + "/" + model.setter);
+                return;
+            }
+            for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+                String name = annotation.getAnnotationType().toString();
+                if (name.equals(PRIMARY_KEY) && key == null) {
+                    model.primaryKey = true;
+                    key = model;
+                } else if (name.equals(IS_INDEX)) {
+                    model.indexName = annotationValue(annotation, "indexName");
+                }
+            }
+            fields.add(model);
+        }
+        if (key == null) {
+            return;
+        }
+        if (fields.size() > MAX_FIELDS) {
+            warn(type, "more than " + MAX_FIELDS + " fields");
+            return;
+        }
+        if (!hasPublicNoArgConstructor(type)) {
+            warn(type, "no public no-arg constructor");
+            return;
+        }
+
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = packageElement.getQualifiedName().toString();
+        String typeName = type.getSimpleName().toString();
+        String accessorName = typeName + GENERATED_SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? accessorName : packageName + "." + accessorName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(new SourceWriter(packageName, typeName, accessorName, fields, key).write());
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Can't write " + qualifiedName + ": " + e.getMessage(), type);
+        }
+    }
+
+    private void warn(TypeElement type, String reason) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                "No accessor is generated for " + type.getQualifiedName() + ", " + reason
+                        + ". The reflective ObjectTypeMeta is used instead", type);
+    }
+
+    private static boolean hasMethod(TypeElement type, String name, int parameters) {
+        for (Element element : type.getEnclosedElements()) {
+            if (element.getKind() == ElementKind.METHOD && element.getSimpleName().contentEquals(name)
+                    && element.getModifiers().contains(Modifier.PUBLIC)
+                    && ((ExecutableElement) element).getParameters().size() == parameters) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasPublicNoArgConstructor(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        boolean anyConstructor = false;
+        for (Element element : type.getEnclosedElements()) {
+            if (element.getKind() != ElementKind.CONSTRUCTOR) {
+                continue;
+            }
+            anyConstructor = true;
+            if (element.getModifiers().contains(Modifier.PUBLIC)
+                    && ((ExecutableElement) element).getParameters().isEmpty()) {
+                return true;
+            }
+        }
+        return !anyConstructor;
+    }
+
+    private static String annotationValue(AnnotationMirror annotation, String name) {
+        for (ExecutableElement element : annotation.getElementValues().keySet()) {
+            if (element.getSimpleName().contentEquals(name)) {
+                AnnotationValue value = annotation.getElementValues().get(element);
+                return String.valueOf(value.getValue());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Field types the generated code can read, compare and encode
+     */
+    enum Kind {
+        INT("int", "Integer", 4, "Int"),
+        LONG("long", "Long", 8, "Long"),
+        SHORT("short", "Short", 2, "Short"),
+        BYTE("byte", "Byte", 1, ""),
+        BOOLEAN("boolean", "Boolean", 1, null),
+        FLOAT("float", "Float", 4, "Float"),
+        DOUBLE("double", "Double", 8, "Double"),
+        STRING(null, "String", -1, null),
+        DATE(null, "java.util.Date", 8, null);
+
+        final String primitive;
+        final String boxed;
+        final int size;
+        final String bufferSuffix;
+
+        Kind(String primitive, String boxed, int size, String bufferSuffix) {
+            this.primitive = primitive;
+            this.boxed = boxed;
+            this.size = size;
+            this.bufferSuffix = bufferSuffix;
+        }
+
+        static Kind ofPrimitive(TypeKind typeKind) {
+            switch (typeKind) {
+                case INT:
+                    return INT;
+                case LONG:
+                    return LONG;
+                case SHORT:
+                    return SHORT;
+                case BYTE:
+                    return BYTE;
+                case BOOLEAN:
+                    return BOOLEAN;
+                case FLOAT:
+                    return FLOAT;
+                case DOUBLE:
+                    return DOUBLE;
+                default:
+                    return null;
+            }
+        }
+
+        static Kind ofDeclared(String name) {
+            if (name.equals("java.lang.String")) {
+                return STRING;
+            }
+            if (name.equals("java.util.Date")) {
+                return DATE;
+            }
+            for (Kind kind : values()) {
+                if (kind.primitive != null && name.equals("java.lang." + kind.boxed)) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+    }
+
+    static class FieldModel {
+        final String name;
+        final Kind kind;
+        //boxed fields, strings and dates may be null
+        final boolean nullable;
+        final int ordinal;
+        final String getter;
+        final String setter;
+        boolean primaryKey;
+        String indexName;
+
+        FieldModel(String name, Kind kind, boolean nullable, int ordinal) {
+            this.name = name;
+            this.kind = kind;
+            this.nullable = nullable;
+            this.ordinal = ordinal;
+            String capitalized = name.substring(0, 1).toUpperCase(Locale.ROOT) + name.substring(1);
+            this.getter = "get" + capitalized;
+            this.setter = "set" + capitalized;
+        }
+
+        static FieldModel of(VariableElement field, int ordinal) {
+            TypeMirror type = field.asType();
+            String name = field.getSimpleName().toString();
+            if (type.getKind().isPrimitive()) {
+                Kind kind = Kind.ofPrimitive(type.getKind());
+                return kind == null ? null : new FieldModel(name, kind, false, ordinal);
+            }
+            if (type.getKind() == TypeKind.DECLARED) {
+                Kind kind = Kind.ofDeclared(type.toString());
+                return kind == null ? null : new FieldModel(name, kind, true, ordinal);
+            }
+            return null;
+        }
+
+        String type() {
+            return nullable ? kind.boxed : kind.primitive;
+        }
+
+        String read(String object) {
+            return object + "." + getter + "()";
+        }
+    }
+
+    /**
+     * Writes the source of one accessor
+     */
+    static class SourceWriter {
+        private final StringBuilder out = new StringBuilder();
+        private final String packageName;
+        private final String typeName;
+        private final String accessorName;
+        private final List<FieldModel> fields;
+        private final FieldModel key;
+
+        SourceWriter(String packageName, String typeName, String accessorName, List<FieldModel> fields,
+                FieldModel key) {
+            this.packageName = packageName;
+            this.typeName = typeName;
+            this.accessorName = accessorName;
+            this.fields = fields;
+            this.key = key;
+        }
+
+        String write() {
+            if (!packageName.isEmpty()) {
+                line("package " + packageName + ";");
+                line("");
+            }
+            line("import " + UTIL_PACKAGE + ".ObjectAccessor;");
+            line("import " + UTIL_PACKAGE + ".ObjectAccessors;");
+            line("import " + UTIL_PACKAGE + ".ObjectCodec;");
+            line("");
+            line("import java.nio.ByteBuffer;");
+            line("import java.util.Arrays;");
+            line("import java.util.Collections;");
+            line("import java.util.Comparator;");
+            line("import java.util.List;");
+            line("");
+            line("/**");
+            line(" * Accessor and codec of ObjectType " + typeName + ".");
+            line(" * Generated by ObjectAccessorProcessor from @PrimaryKey and @IsIndex.  DO NOT EDIT!");
+            line(" */");
+            line("public final class " + accessorName + " implements ObjectAccessor<" + typeName + ">, ObjectCodec<"
+                    + typeName + "> {");
+            line("");
+            line("    public static final " + accessorName + " INSTANCE = new " + accessorName + "();");
+            line("");
+            writeComparators();
+            line("    private " + accessorName + "() {");
+            line("    }");
+            line("");
+            writeKeyMethods();
+            writeIndexMethods();
+            writeContentMethods();
+            writeCodec();
+            line("}");
+            return out.toString();
+        }
+
+        private void writeComparators() {
+            line("    private static final List<String> INDEX_NAMES = " + indexNamesList() + ";");
+            line("");
+            line("    private static final Comparator<" + typeName + "> KEY_COMPARATOR = (first, second) ->");
+            line("            " + compare(key, "first", "second") + ";");
+            line("");
+            for (FieldModel field : fields) {
+                if (field.indexName == null) {
+                    continue;
+                }
+                line("    private static final Comparator<" + typeName + "> " + comparatorName(field)
+                        + " = (first, second) -> {");
+                line("        int compare = " + compare(field, "first", "second") + ";");
+                line("        return compare != 0 ? compare : KEY_COMPARATOR.compare(first, second);");
+                line("    };");
+                line("");
+            }
+        }
+
+        private void writeKeyMethods() {
+            override("Class<" + typeName + "> getType()");
+            line("        return " + typeName + ".class;");
+            line("    }");
+            line("");
+            override("String getPrimaryKeyName()");
+            line("        return \"" + key.name + "\";");
+            line("    }");
+            line("");
+            override("boolean hasIntKey()");
+            line("        return " + (key.kind == Kind.INT) + ";");
+            line("    }");
+            line("");
+            override("Object getKey(" + typeName + " object)");
+            line("        return " + key.read("object") + ";");
+            line("    }");
+            line("");
+            override("int getIntKey(" + typeName + " object)");
+            if (key.kind != Kind.INT) {
+                line("        throw new IllegalStateException(\"" + typeName + " primary key is not an int\");");
+            } else if (key.nullable) {
+                line("        Integer key = " + key.read("object") + ";");
+                line("        return key == null ? 0 : key;");
+            } else {
+                line("        return " + key.read("object") + ";");
+            }
+            line("    }");
+            line("");
+            override("boolean keyEquals(" + typeName + " first, " + typeName + " second)");
+            line("        return " + equal(key, "first", "second") + ";");
+            line("    }");
+            line("");
+            override("int keyHashCode(" + typeName + " object)");
+            line("        return " + (key.nullable ? "java.util.Objects.hashCode(" + key.read("object") + ")"
+                    : key.kind.boxed + ".hashCode(" + key.read("object") + ")") + ";");
+            line("    }");
+            line("");
+            override("Comparator<" + typeName + "> getKeyComparator()");
+            line("        return KEY_COMPARATOR;");
+            line("    }");
+            line("");
+        }
+
+        private void writeIndexMethods() {
+            override("List<String> getIndexNames()");
+            line("        return INDEX_NAMES;");
+            line("    }");
+            line("");
+            writeIndexSwitch("String getIndexFieldName(String indexName)", field -> "\"" + field.name + "\"");
+            writeIndexSwitch("Object getIndexValue(" + typeName + " object, String indexName)",
+                    field -> field.read("object"));
+            writeIndexSwitch("Comparator<" + typeName + "> getIndexComparator(String indexName)",
+                    this::comparatorName);
+        }
+
+        private void writeIndexSwitch(String signature, ValueWriter value) {
+            override(signature);
+            boolean any = false;
+            for (FieldModel field : fields) {
+                if (field.indexName != null) {
+                    if (!any) {
+                        line("        switch (indexName) {");
+                        any = true;
+                    }
+                    line("            case \"" + field.indexName + "\":");
+                    line("                return " + value.write(field) + ";");
+                }
+            }
+            if (any) {
+                line("            default:");
+                line("                break;");
+                line("        }");
+            }
+            line("        throw new IllegalArgumentException(\"" + typeName + " has no index \" + indexName);");
+            line("    }");
+            line("");
+        }
+
+        private void writeContentMethods() {
+            override("boolean sameContent(" + typeName + " first, " + typeName + " second)");
+            StringBuilder same = new StringBuilder();
+            for (FieldModel field : fields) {
+                if (same.length() > 0) {
+                    same.append("\n                && ");
+                }
+                same.append(equal(field, "first", "second"));
+            }
+            line("        return " + (same.length() == 0 ? "true" : same) + ";");
+            line("    }");
+            line("");
+            override(typeName + " copy(" + typeName + " object)");
+            line("        " + typeName + " copy = new " + typeName + "();");
+            for (FieldModel field : fields) {
+                line("        copy." + field.setter + "(" + field.read("object") + ");");
+            }
+            line("        return copy;");
+            line("    }");
+            line("");
+            override("long fingerprint(" + typeName + " object)");
+            line("        long hash = ObjectAccessors.FINGERPRINT_SEED;");
+            for (FieldModel field : fields) {
+                line("        hash = ObjectAccessors.fingerprint(hash, " + field.read("object") + ");");
+            }
+            line("        return hash;");
+            line("    }");
+            line("");
+            override("long estimateBytes(" + typeName + " object)");
+            int fixedFields = 0;
+            StringBuilder strings = new StringBuilder();
+            for (FieldModel field : fields) {
+                if (field.kind == Kind.STRING) {
+                    strings.append("\n                + ObjectAccessors.estimateBytes(")
+                            .append(field.read("object")).append(")");
+                } else {
+                    fixedFields++;
+                }
+            }
+            line("        return " + (8L * fixedFields) + "L" + strings + ";");
+            line("    }");
+            line("");
+        }
+
+        private void writeCodec() {
+            override("int getEncodedSize(" + typeName + " object)");
+            int fixed = 8;
+            for (FieldModel field : fields) {
+                if (!field.nullable) {
+                    fixed += field.kind.size;
+                }
+            }
+            line("        int size = " + fixed + ";");
+            for (FieldModel field : fields) {
+                if (!field.nullable) {
+                    continue;
+                }
+                String local = local(field);
+                line("        " + field.type() + " " + local + " = " + field.read("object") + ";");
+                line("        if (" + local + " != null) {");
+                line("            size += " + (field.kind == Kind.STRING
+                        ? "4 + ObjectAccessors.utf8Length(" + local + ")" : String.valueOf(field.kind.size)) + ";");
+                line("        }");
+            }
+            line("        return size;");
+            line("    }");
+            line("");
+
+            override("void encode(" + typeName + " object, ByteBuffer buffer)");
+            line("        long nullBits = 0;");
+            for (FieldModel field : fields) {
+                if (field.nullable) {
+                    line("        " + field.type() + " " + local(field) + " = " + field.read("object") + ";");
+                    line("        if (" + local(field) + " == null) {");
+                    line("            nullBits |= 1L << " + field.ordinal + ";");
+                    line("        }");
+                }
+            }
+            line("        buffer.putLong(nullBits);");
+            for (FieldModel field : fields) {
+                String value = field.nullable ? local(field) : field.read("object");
+                if (field.nullable) {
+                    line("        if (" + value + " != null) {");
+                    line("            " + put(field, value) + ";");
+                    line("        }");
+                } else {
+                    line("        " + put(field, value) + ";");
+                }
+            }
+            line("    }");
+            line("");
+
+            override(typeName + " decode(ByteBuffer buffer)");
+            line("        " + typeName + " object = new " + typeName + "();");
+            line("        long nullBits = buffer.getLong();");
+            for (FieldModel field : fields) {
+                if (field.nullable) {
+                    line("        if ((nullBits & (1L << " + field.ordinal + ")) == 0) {");
+                    line("            object." + field.setter + "(" + get(field) + ");");
+                    line("        }");
+                } else {
+                    line("        object." + field.setter + "(" + get(field) + ");");
+                }
+            }
+            line("        return object;");
+            line("    }");
+        }
+
+        private String indexNamesList() {
+            StringBuilder names = new StringBuilder();
+            for (FieldModel field : fields) {
+                if (field.indexName != null) {
+                    names.append(names.length() == 0 ? "" : ", ").append('"').append(field.indexName).append('"');
+                }
+            }
+            return names.length() == 0 ? "Collections.emptyList()"
+                    : "Collections.unmodifiableList(Arrays.asList(" + names + "))";
+        }
+
+        private String comparatorName(FieldModel field) {
+            return "INDEX_" + field.name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT);
+        }
+
+        private static String local(FieldModel field) {
+            return field.name + "Value";
+        }
+
+        private static String compare(FieldModel field, String first, String second) {
+            if (field.nullable) {
+                return "ObjectAccessors.compare(" + field.read(first) + ", " + field.read(second) + ")";
+            }
+            return field.kind.boxed + ".compare(" + field.read(first) + ", " + field.read(second) + ")";
+        }
+
+        private static String equal(FieldModel field, String first, String second) {
+            if (field.nullable) {
+                return "java.util.Objects.equals(" + field.read(first) + ", " + field.read(second) + ")";
+            }
+            if (field.kind == Kind.FLOAT || field.kind == Kind.DOUBLE) {
+                return field.kind.boxed + ".compare(" + field.read(first) + ", " + field.read(second) + ") == 0";
+            }
+            return field.read(first) + " == " + field.read(second);
+        }
+
+        private static String put(FieldModel field, String value) {
+            switch (field.kind) {
+                case BOOLEAN:
+                    return "buffer.put((byte) (" + value + " ? 1 : 0))";
+                case STRING:
+                    return "ObjectAccessors.putString(buffer, " + value + ")";
+                case DATE:
+                    return "buffer.putLong(" + value + ".getTime())";
+                default:
+                    return "buffer.put" + field.kind.bufferSuffix + "(" + value + ")";
+            }
+        }
+
+        private static String get(FieldModel field) {
+            switch (field.kind) {
+                case BOOLEAN:
+                    return "buffer.get() != 0";
+                case STRING:
+                    return "ObjectAccessors.getString(buffer)";
+                case DATE:
+                    return "new java.util.Date(buffer.getLong())";
+                default:
+                    return "buffer.get" + field.kind.bufferSuffix + "()";
+            }
+        }
+
+        private void override(String signature) {
+            line("    @Override");
+            line("    public " + signature + " {");
+        }
+
+        private void line(String line) {
+            out.append(line).append('\n');
+        }
+    }
+
+    private interface ValueWriter {
+        String write(FieldModel field);
+    }
+}